@@ -226,13 +226,33 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
      * AppenderSkeleton#append} method.
      */
     public synchronized void doAppend(LoggingEvent event) {
+        if (!isAppendable(event)) {
+            return;
+        }
+
+        // the appender may keep the event, its message can not be reused
+        ParameterizedMessage.capture(event);
+
+        //这里是具体执行日志记录的逻辑实现
+        this.append(event);
+    }
+
+    /**
+     * Performs the checks of {@link #doAppend}: returns true if this
+     * appender is not closed, the event is as severe as the threshold
+     * and no filter denies it. Appenders overriding <code>doAppend</code>
+     * call it before appending.
+     *
+     * @since 1.2.18
+     */
+    protected boolean isAppendable(LoggingEvent event) {
         if (closed) {
             LogLog.error("Attempted to append to closed appender named [" + name + "].");
-            return;
+            return false;
         }
 
         if (!isAsSevereAsThreshold(event.getLevel())) {
-            return;
+            return false;
         }
 
         /**
@@ -254,16 +274,14 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
         while (f != null) {
             switch (f.decide(event)) {
                 case Filter.DENY:
-                    return;
+                    return false;
                 case Filter.ACCEPT:
                     break FILTER_LOOP;
                 case Filter.NEUTRAL:
                     f = f.getNext();
             }
         }
-
-        //这里是具体执行日志记录的逻辑实现
-        this.append(event);
+        return true;
     }
 
     /**
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.DeferredWaits;
 import org.apache.log4j.spi.AppenderAttachable;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -594,10 +595,16 @@ public class AsyncAppender extends AppenderSkeleton
                     //   process events after lock on buffer is released.
                     //   通过appenders进行处理，这里是异步的处理
                     if (events != null) {
-                        for (int i = 0; i < events.length; i++) {
-                            synchronized (appenders) {
-                                appenders.appendLoopOnAppenders(events[i]);
+                        // appenders may postpone their flushes to the end of the batch
+                        DeferredWaits.begin();
+                        try {
+                            for (int i = 0; i < events.length; i++) {
+                                synchronized (appenders) {
+                                    appenders.appendLoopOnAppenders(events[i]);
+                                }
                             }
+                        } finally {
+                            DeferredWaits.end();
                         }
                     }
                 }
@@ -32,16 +32,19 @@
 package org.apache.log4j;
 
 import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.DeferredMessage;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LoggerRepository;
 import org.apache.log4j.spi.HierarchyEventListener;
 import org.apache.log4j.helpers.NullEnumeration;
 import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.DeferredWaits;
 
 import java.util.Enumeration;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.function.Supplier;
 
 
 /**
@@ -206,16 +209,27 @@ public class Category implements AppenderAttachable {
          * 这里是对rootLogger进行加锁的 那么不就相当于串行打日志？
          * log4j2使用了disruptor来进行优化
          */
-        for (Category c = this; c != null; c = c.parent) {
-            // Protected against simultaneous call to addAppender, removeAppender,...
-            synchronized (c) {
-                if (c.aai != null) {
-                    writes += c.aai.appendLoopOnAppenders(event);
-                }
-                if (!c.additive) {
-                    break;
+        boolean deferWaits = DeferredWaits.isUsed();
+        if (deferWaits) {
+            DeferredWaits.begin();
+        }
+        try {
+            for (Category c = this; c != null; c = c.parent) {
+                // Protected against simultaneous call to addAppender, removeAppender,...
+                synchronized (c) {
+                    if (c.aai != null) {
+                        writes += c.aai.appendLoopOnAppenders(event);
+                    }
+                    if (!c.additive) {
+                        break;
+                    }
                 }
             }
+        } finally {
+            // waits, such as group commits, happen once the locks are released
+            if (deferWaits) {
+                DeferredWaits.end();
+            }
         }
 
         if (writes == 0) {
@@ -286,6 +300,42 @@ public class Category implements AppenderAttachable {
             forcedLog(FQCN, Level.DEBUG, message, t);
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>DEBUG</code> level. The supplier is not called unless this
+     * category is <code>DEBUG</code> enabled and the event is accepted
+     * by the threshold and the filters of at least one appender. The
+     * produced object is rendered once, like the message of
+     * {@link #debug(Object)}.
+     *
+     * @param supplier produces the message object to log.
+     * @since 1.2.18
+     */
+    public void debug(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.DEBUG_INT))
+            return;
+        if (Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.DEBUG, new DeferredMessage(supplier), null);
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>DEBUG</code> level including the stack trace of the
+     * {@link Throwable} <code>t</code> passed as parameter.
+     *
+     * <p>See {@link #debug(Supplier)} form for more detailed information.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void debug(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.DEBUG_INT))
+            return;
+        if (Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.DEBUG, new DeferredMessage(supplier), t);
+    }
+
     /**
      * Log a message object with the {@link Level#ERROR ERROR} Level.
      *
@@ -330,6 +380,42 @@ public class Category implements AppenderAttachable {
 
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>ERROR</code> level. The supplier is not called unless this
+     * category is <code>ERROR</code> enabled and the event is accepted
+     * by the threshold and the filters of at least one appender. The
+     * produced object is rendered once, like the message of
+     * {@link #error(Object)}.
+     *
+     * @param supplier produces the message object to log.
+     * @since 1.2.18
+     */
+    public void error(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.ERROR_INT))
+            return;
+        if (Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.ERROR, new DeferredMessage(supplier), null);
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>ERROR</code> level including the stack trace of the
+     * {@link Throwable} <code>t</code> passed as parameter.
+     *
+     * <p>See {@link #error(Supplier)} form for more detailed information.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void error(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.ERROR_INT))
+            return;
+        if (Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.ERROR, new DeferredMessage(supplier), t);
+    }
+
 
     /**
      * If the named category exists (in the default hierarchy) then it
@@ -388,6 +474,42 @@ public class Category implements AppenderAttachable {
             forcedLog(FQCN, Level.FATAL, message, t);
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>FATAL</code> level. The supplier is not called unless this
+     * category is <code>FATAL</code> enabled and the event is accepted
+     * by the threshold and the filters of at least one appender. The
+     * produced object is rendered once, like the message of
+     * {@link #fatal(Object)}.
+     *
+     * @param supplier produces the message object to log.
+     * @since 1.2.18
+     */
+    public void fatal(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.FATAL_INT))
+            return;
+        if (Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.FATAL, new DeferredMessage(supplier), null);
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>FATAL</code> level including the stack trace of the
+     * {@link Throwable} <code>t</code> passed as parameter.
+     *
+     * <p>See {@link #fatal(Supplier)} form for more detailed information.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void fatal(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.FATAL_INT))
+            return;
+        if (Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.FATAL, new DeferredMessage(supplier), t);
+    }
+
 
     /**
      * This method creates a new logging event and logs the event
@@ -672,6 +794,42 @@ public class Category implements AppenderAttachable {
             forcedLog(FQCN, Level.INFO, message, t);
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>INFO</code> level. The supplier is not called unless this
+     * category is <code>INFO</code> enabled and the event is accepted
+     * by the threshold and the filters of at least one appender. The
+     * produced object is rendered once, like the message of
+     * {@link #info(Object)}.
+     *
+     * @param supplier produces the message object to log.
+     * @since 1.2.18
+     */
+    public void info(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.INFO_INT))
+            return;
+        if (Level.INFO.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.INFO, new DeferredMessage(supplier), null);
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>INFO</code> level including the stack trace of the
+     * {@link Throwable} <code>t</code> passed as parameter.
+     *
+     * <p>See {@link #info(Supplier)} form for more detailed information.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void info(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.INFO_INT))
+            return;
+        if (Level.INFO.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.INFO, new DeferredMessage(supplier), t);
+    }
+
     /**
      * Is the appender passed as parameter attached to this category?
      */
@@ -820,6 +978,24 @@ public class Category implements AppenderAttachable {
             forcedLog(FQCN, priority, message, null);
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the given
+     * priority. The supplier is called only if the event reaches an
+     * appender, see {@link #debug(Supplier)}.
+     *
+     * @param priority the priority of the message.
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void log(Priority priority, Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(priority.level)) {
+            return;
+        }
+        if (priority.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, priority, new DeferredMessage(supplier), t);
+    }
+
     /**
      * This is the most generic printing method. It is intended to be
      * invoked by <b>wrapper</b> classes.
@@ -1035,4 +1211,40 @@ public class Category implements AppenderAttachable {
         if (Level.WARN.isGreaterOrEqual(this.getEffectiveLevel()))
             forcedLog(FQCN, Level.WARN, message, t);
     }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>WARN</code> level. The supplier is not called unless this
+     * category is <code>WARN</code> enabled and the event is accepted
+     * by the threshold and the filters of at least one appender. The
+     * produced object is rendered once, like the message of
+     * {@link #warn(Object)}.
+     *
+     * @param supplier produces the message object to log.
+     * @since 1.2.18
+     */
+    public void warn(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.WARN_INT))
+            return;
+        if (Level.WARN.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.WARN, new DeferredMessage(supplier), null);
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>WARN</code> level including the stack trace of the
+     * {@link Throwable} <code>t</code> passed as parameter.
+     *
+     * <p>See {@link #warn(Supplier)} form for more detailed information.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void warn(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.WARN_INT))
+            return;
+        if (Level.WARN.isGreaterOrEqual(this.getEffectiveLevel()))
+            forcedLog(FQCN, Level.WARN, new DeferredMessage(supplier), t);
+    }
 }
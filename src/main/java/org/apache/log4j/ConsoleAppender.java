@@ -17,10 +17,18 @@
 
 package org.apache.log4j;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 
+import org.apache.log4j.helpers.ChannelWriter;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
 
 /**
  * ConsoleAppender appends log events to <code>System.out</code> or
@@ -44,6 +52,20 @@ public class ConsoleAppender extends WriterAppender {
      */
     private boolean follow = false;
 
+    /**
+     * Write to the file descriptor instead of the PrintStream.
+     */
+    private boolean direct = false;
+
+    /**
+     * Hand the output over to a writer thread.
+     */
+    private boolean nonBlocking = false;
+
+    private int bufferSize = 8 * 1024;
+
+    private int queueSize = 1024 * 1024;
+
     /**
      * Constructs an unconfigured appender.
      */
@@ -122,6 +144,98 @@ public class ConsoleAppender extends WriterAppender {
         return follow;
     }
 
+    /**
+     * Returns the value of the <b>Direct</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getDirect() {
+        return direct;
+    }
+
+    /**
+     * The <b>Direct</b> option takes a boolean value, false by default.
+     * When set, events are encoded into a buffer which is written to
+     * the standard output or error file descriptor through a channel,
+     * bypassing the synchronized <code>PrintStream</code>, its encoder
+     * and its autoflush. With <b>ImmediateFlush</b> set to false, the
+     * buffer is written when full, so that many events are written at
+     * once.
+     *
+     * <p>Before each write, the appender flushes
+     * <code>System.out</code> or <code>System.err</code> while holding
+     * its lock, so that output printed through the stream comes first
+     * and is not interleaved with a write of the appender. The
+     * <b>Follow</b> option does not apply.
+     *
+     * @since 1.2.18
+     */
+    public void setDirect(boolean direct) {
+        this.direct = direct;
+    }
+
+    /**
+     * Returns the value of the <b>NonBlocking</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * The <b>NonBlocking</b> option takes a boolean value, false by
+     * default. It implies <b>Direct</b>, and additionally hands the
+     * encoded events over to a writer thread through a queue of
+     * <b>QueueSize</b> bytes, so that logging threads never wait for a
+     * slow pipe. Events which do not fit in the queue are dropped, and
+     * the number of dropped events is reported through {@link LogLog}
+     * once the output catches up.
+     *
+     * @since 1.2.18
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Returns the value of the <b>BufferSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Size of the buffer events are encoded into in <b>Direct</b> mode,
+     * 8K by default.
+     *
+     * @since 1.2.18
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Returns the value of the <b>QueueSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Size in bytes of the queue of the <b>NonBlocking</b> mode, 1M by
+     * default.
+     *
+     * @since 1.2.18
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
     void targetWarn(String val) {
         LogLog.warn("[" + val + "] should be System.out or System.err.");
         LogLog.warn("Using previously set target, System.out by default.");
@@ -131,7 +245,23 @@ public class ConsoleAppender extends WriterAppender {
      * Prepares the appender for use.
      */
     public void activateOptions() {
-        if (follow) {
+        if (direct || nonBlocking) {
+            boolean err = target.equals(SYSTEM_ERR);
+            WritableByteChannel channel = new FileOutputStream(
+                    err ? FileDescriptor.err : FileDescriptor.out).getChannel();
+            PrintStream stream = err ? System.err : System.out;
+            try {
+                if (nonBlocking) {
+                    setWriter(new NonBlockingWriter(channel, stream, getCharset(), bufferSize,
+                            queueSize, "log4j-console-" + name));
+                } else {
+                    setWriter(new DirectWriter(channel, stream, getCharset(), bufferSize));
+                }
+            } catch (IOException e) {
+                LogLog.error("Could not write directly to " + target + ".", e);
+                setWriter(createWriter(stream));
+            }
+        } else if (follow) {
             if (target.equals(SYSTEM_ERR)) {
                 setWriter(createWriter(new SystemErrStream()));
             } else {
@@ -153,11 +283,197 @@ public class ConsoleAppender extends WriterAppender {
      */
     protected
     final void closeWriter() {
-        if (follow) {
+        if (follow || direct || nonBlocking) {
+            // direct writers flush on close but leave the descriptor open
             super.closeWriter();
         }
     }
 
+    /**
+     * In <b>NonBlocking</b> mode, each event is handed over to the
+     * writer thread as a whole.
+     *
+     * @since 1.2.18
+     */
+    protected boolean shouldFlush(final LoggingEvent event) {
+        return nonBlocking || super.shouldFlush(event);
+    }
+
+    /**
+     * Returns the charset designated by the <code>encoding</code>
+     * property, or the default charset.
+     */
+    private Charset getCharset() {
+        String enc = getEncoding();
+        if (enc != null) {
+            try {
+                return Charset.forName(enc);
+            } catch (IllegalArgumentException e) {
+                LogLog.warn("Error initializing output writer.");
+                LogLog.warn("Unsupported encoding?");
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Writes to the channel of a standard file descriptor, holding the
+     * lock of the matching PrintStream.
+     */
+    private static class DirectWriter extends ChannelWriter {
+        private final PrintStream stream;
+
+        DirectWriter(WritableByteChannel channel, PrintStream stream, Charset charset,
+                     int bufferSize) throws IOException {
+            super(channel, charset, bufferSize);
+            this.stream = stream;
+        }
+
+        protected void writeBuffer(ByteBuffer buffer) throws IOException {
+            synchronized (stream) {
+                stream.flush();
+                super.writeBuffer(buffer);
+            }
+        }
+
+        /**
+         * Flushes, the descriptor stays open.
+         */
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Queues the encoded events for a writer thread, dropping those
+     * which do not fit. The bytes of an event, stack trace included,
+     * are collected until the flush ending the event, and queued or
+     * dropped as a whole.
+     */
+    private static final class NonBlockingWriter extends DirectWriter {
+        private final byte[] queue;
+        private int start;
+        private int count;
+        private int dropped;
+        private boolean closed;
+        private final ByteBuffer out;
+        private final Thread thread;
+        private byte[] event;
+        private int eventLength;
+        private boolean eventTooLarge;
+
+        NonBlockingWriter(WritableByteChannel channel, PrintStream stream, Charset charset,
+                          int bufferSize, int queueSize, String threadName)
+                throws IOException {
+            super(channel, stream, charset, bufferSize);
+            queue = new byte[Math.max(queueSize, bufferSize)];
+            event = new byte[bufferSize];
+            out = ByteBuffer.allocateDirect(Math.min(queue.length, 64 * 1024));
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    drainQueue();
+                }
+            }, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Adds the encoded bytes to the current event.
+         */
+        protected void writeBuffer(ByteBuffer buffer) {
+            int n = buffer.remaining();
+            if (eventTooLarge || n > queue.length - eventLength) {
+                eventTooLarge = true;
+                buffer.position(buffer.limit());
+                return;
+            }
+            if (n > event.length - eventLength) {
+                byte[] b = new byte[Math.min(queue.length, Math.max(eventLength + n, event.length * 2))];
+                System.arraycopy(event, 0, b, 0, eventLength);
+                event = b;
+            }
+            buffer.get(event, eventLength, n);
+            eventLength += n;
+        }
+
+        /**
+         * Ends the current event, queueing it if it fits.
+         */
+        public void flush() throws IOException {
+            super.flush();
+            if (eventLength == 0 && !eventTooLarge) {
+                return;
+            }
+            int n = eventLength;
+            synchronized (queue) {
+                if (closed || eventTooLarge || n > queue.length - count) {
+                    dropped++;
+                } else {
+                    int end = (start + count) % queue.length;
+                    int first = Math.min(n, queue.length - end);
+                    System.arraycopy(event, 0, queue, end, first);
+                    System.arraycopy(event, first, queue, 0, n - first);
+                    count += n;
+                    queue.notifyAll();
+                }
+            }
+            eventLength = 0;
+            eventTooLarge = false;
+        }
+
+        private void drainQueue() {
+            while (true) {
+                int lost;
+                synchronized (queue) {
+                    while (count == 0 && !closed) {
+                        try {
+                            queue.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (count == 0) {
+                        return;
+                    }
+                    int n = Math.min(Math.min(count, out.capacity()), queue.length - start);
+                    out.clear();
+                    out.put(queue, start, n);
+                    start = (start + n) % queue.length;
+                    count -= n;
+                    lost = dropped;
+                    dropped = 0;
+                    queue.notifyAll();
+                }
+                out.flip();
+                try {
+                    super.writeBuffer(out);
+                } catch (IOException e) {
+                    LogLog.error("Could not write to the console.", e);
+                }
+                if (lost > 0) {
+                    LogLog.warn("Dropped " + lost + " console events, the output is too slow.");
+                }
+            }
+        }
+
+        /**
+         * Flushes and waits up to one second for the queue to be written.
+         */
+        public void close() throws IOException {
+            flush();
+            synchronized (queue) {
+                closed = true;
+                queue.notifyAll();
+            }
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
 
     /**
      * An implementation of OutputStream that redirects to the
@@ -279,6 +279,10 @@ public class DailyRollingFileAppender extends FileAppender {
     // GMT (the epoch).
 
     int computeCheckPeriod() {
+        return computeCheckPeriod(datePattern);
+    }
+
+    static int computeCheckPeriod(String datePattern) {
         RollingCalendar rollingCalendar = new RollingCalendar(gmtTimeZone, Locale.getDefault());
         // set sate to 1970-01-01 00:00:00 GMT
         Date epoch = new Date(0);
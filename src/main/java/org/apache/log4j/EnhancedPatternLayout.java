@@ -258,7 +258,8 @@ import org.apache.log4j.spi.LoggingEvent;
  * <code>clientNumber</code> is the key. The value in the MDC
  * corresponding to the key will be output. If no additional sub-option
  * is specified, then the entire contents of the MDC key value pair set
- * is output using a format {{key1,val1},{key2,val2}}</p>
+ * is output using a format {{key1,val1},{key2,val2}}, sorted by key.
+ * Before log4j 1.2.18 the pairs were output in hashtable order.</p>
  *
  * <p>See {@link MDC} class for more details.
  * </p>
@@ -277,7 +278,8 @@ import org.apache.log4j.spi.LoggingEvent;
  * <code>application</code> is the key. The value in the Properties bundle
  * corresponding to the key will be output. If no additional sub-option
  * is specified, then the entire contents of the Properties key value pair set
- * is output using a format {{key1,val1},{key2,val2}}</p>
+ * is output using a format {{key1,val1},{key2,val2}}, sorted by key.
+ * Before log4j 1.2.18 the pairs were output in hashtable order.</p>
  * </td>
  * </tr>
  *
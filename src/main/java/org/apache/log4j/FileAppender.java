@@ -23,11 +23,22 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 
+import org.apache.log4j.helpers.ChannelWriter;
+import org.apache.log4j.helpers.DeferredWaits;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.MappedWriter;
+import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorCode;
+import org.apache.log4j.spi.LoggingEvent;
 
 // Contibutors: Jens Uwe Pipka <jens.pipka@gmx.de>
 //              Ben Sandee
@@ -69,6 +80,113 @@ public class FileAppender extends WriterAppender {
      */
     protected int bufferSize = 8 * 1024;
 
+    /**
+     * Do we write through a {@link java.nio.channels.FileChannel}?
+     *
+     * @since 1.2.18
+     */
+    protected boolean channelIO = false;
+
+    /**
+     * Do we write into memory mapped regions of the file?
+     *
+     * @since 1.2.18
+     */
+    protected boolean memoryMappedIO = false;
+
+    /**
+     * Size of the mapped regions. Default is 4M.
+     *
+     * @since 1.2.18
+     */
+    protected int mapRegionSize = 4 * 1024 * 1024;
+
+    /**
+     * Number of bytes the file is extended by when full, zero for no
+     * preallocation.
+     *
+     * @since 1.2.18
+     */
+    protected long preallocationSize = 0;
+
+    /**
+     * Values of the <b>Durability</b> option.
+     */
+    private static final String[] DURABILITY_NAMES = {"NONE", "INTERVAL", "EVENTS", "SYNC"};
+    private static final int DURABILITY_NONE = 0;
+    private static final int DURABILITY_INTERVAL = 1;
+    private static final int DURABILITY_EVENTS = 2;
+    private static final int DURABILITY_SYNC = 3;
+
+    private int durability = DURABILITY_NONE;
+
+    /**
+     * Maximum time in milliseconds between two flushes under the
+     * <code>INTERVAL</code> durability policy. Default is one second.
+     *
+     * @since 1.2.18
+     */
+    protected long flushInterval = 1000;
+
+    /**
+     * Number of events between two flushes under the
+     * <code>EVENTS</code> durability policy. Default is 100.
+     *
+     * @since 1.2.18
+     */
+    protected int flushEvents = 100;
+
+    /**
+     * Minimum time in milliseconds between two synchronizations of the
+     * file under the <code>SYNC</code> durability policy. Default is 0.
+     *
+     * @since 1.2.18
+     */
+    protected long syncInterval = 0;
+
+    private long lastFlush;
+    private int unflushedEvents;
+
+    /**
+     * Time in milliseconds after which unflushed events are flushed by
+     * a background thread, 0 to disable.
+     *
+     * @since 1.2.18
+     */
+    protected long backgroundFlushInterval = 0;
+
+    /**
+     * Set when events were written but not flushed. Read without the
+     * appender lock by the background flusher.
+     */
+    private volatile boolean dirty;
+    private volatile long lastFlushTime;
+
+    /**
+     * Channel and mapped writer of the current file, used to force
+     * written bytes to the storage device.
+     */
+    private volatile FileChannel fileChannel;
+    private volatile MappedWriter mappedWriter;
+
+    /**
+     * Number of events appended, guarded by the appender lock.
+     */
+    private long appendedCount;
+
+    /**
+     * Number of events appended and flushed to the operating system.
+     */
+    private volatile long writtenCount;
+
+    /**
+     * Group commit state, guarded by syncLock.
+     */
+    private final Object syncLock = new Object();
+    private long syncedCount;
+    private boolean syncing;
+    private long lastSync;
+
 
     /**
      * The default constructor does not do anything.
@@ -179,6 +297,15 @@ public class FileAppender extends WriterAppender {
      */
     protected void closeFile() {
         if (this.qw != null) {
+            if (durability == DURABILITY_SYNC) {
+                // threads still waiting for a force are covered by this one
+                this.qw.flush();
+                try {
+                    force();
+                } catch (IOException e) {
+                    LogLog.error("Could not force " + fileName, e);
+                }
+            }
             try {
                 this.qw.close();
             } catch (java.io.IOException e) {
@@ -249,6 +376,238 @@ public class FileAppender extends WriterAppender {
         this.bufferSize = bufferSize;
     }
 
+    /**
+     * Get the value of the <b>ChannelIO</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getChannelIO() {
+        return this.channelIO;
+    }
+
+    /**
+     * The <b>ChannelIO</b> option takes a boolean value. It is set to
+     * <code>false</code> by default. If true, then log events are
+     * encoded into a reusable direct byte buffer which is written to
+     * the file through a {@link java.nio.channels.FileChannel}, instead
+     * of going through an {@link java.io.OutputStreamWriter} and an
+     * optional {@link BufferedWriter}. The size of the buffer is the
+     * value of the <b>BufferSize</b> option when <b>BufferedIO</b> is
+     * set, 8K otherwise.
+     *
+     * <p>Sizes reported to {@link RollingFileAppender} are then counted
+     * in bytes rather than in characters.
+     *
+     * @since 1.2.18
+     */
+    public void setChannelIO(boolean channelIO) {
+        this.channelIO = channelIO;
+    }
+
+    /**
+     * Returns the value of the <b>PreallocationSize</b> option in bytes.
+     *
+     * @since 1.2.18
+     */
+    public long getPreallocationSize() {
+        return preallocationSize;
+    }
+
+    /**
+     * The <b>PreallocationSize</b> option makes the appender extend the
+     * file by large steps, for example "64MB", instead of growing it
+     * with every write, which saves the file system from updating the
+     * file size and extent metadata on each flush. The appender keeps
+     * track of the end of the data and truncates the file back to it
+     * when the file is closed, including on rollover.
+     *
+     * <p>The file is written through a channel as with the
+     * <b>ChannelIO</b> option. After a crash, the space left at the end
+     * of the file is filled with zero bytes, which are skipped when the
+     * file is reopened in append mode. Memory mapped files are extended
+     * by the <b>MapRegionSize</b> instead.
+     *
+     * <p>Since the end of the data is told by the zero bytes after it,
+     * this option is ignored, with a warning, for encodings such as
+     * UTF-16 or UTF-32 which write zero bytes for other characters.
+     *
+     * @since 1.2.18
+     */
+    public void setPreallocationSize(String value) {
+        preallocationSize = OptionConverter.toFileSize(value, preallocationSize);
+    }
+
+    /**
+     * Get the value of the <b>MemoryMappedIO</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getMemoryMappedIO() {
+        return this.memoryMappedIO;
+    }
+
+    /**
+     * The <b>MemoryMappedIO</b> option takes a boolean value. It is set
+     * to <code>false</code> by default. If true, then log events are
+     * copied into a memory mapped region of the file, the next region
+     * being mapped in the background before the current one is full.
+     * The file is truncated to its actual length when it is closed or
+     * rolled over. This option takes precedence over <b>ChannelIO</b>
+     * and makes <b>ImmediateFlush</b> irrelevant: written events are
+     * visible to readers of the file right away.
+     *
+     * <p>If the application crashes, the file ends with zero bytes up
+     * to the end of the last mapped region. These are skipped when the
+     * file is reopened in append mode.
+     *
+     * @since 1.2.18
+     */
+    public void setMemoryMappedIO(boolean memoryMappedIO) {
+        this.memoryMappedIO = memoryMappedIO;
+    }
+
+    /**
+     * Get the size of the mapped regions.
+     *
+     * @since 1.2.18
+     */
+    public int getMapRegionSize() {
+        return this.mapRegionSize;
+    }
+
+    /**
+     * Set the size of the regions mapped when <b>MemoryMappedIO</b> is
+     * set, 4M by default.
+     *
+     * @since 1.2.18
+     */
+    public void setMapRegionSize(int mapRegionSize) {
+        this.mapRegionSize = mapRegionSize;
+    }
+
+    /**
+     * Returns the value of the <b>Durability</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getDurability() {
+        return DURABILITY_NAMES[durability];
+    }
+
+    /**
+     * The <b>Durability</b> option decides when written events reach
+     * the operating system and the storage device. It takes one of the
+     * following values.
+     *
+     * <dl>
+     * <dt><code>NONE</code></dt>
+     * <dd>The default. Events are flushed to the operating system
+     * according to the <b>ImmediateFlush</b> option and never forced to
+     * the storage device.</dd>
+     * <dt><code>INTERVAL</code></dt>
+     * <dd>Events are flushed to the operating system by the first event
+     * written <b>FlushInterval</b> milliseconds or more after the
+     * previous flush. When no such event comes, the background thread
+     * of the <b>BackgroundFlushInterval</b> option flushes them, so
+     * that events wait at most about one and a half
+     * <b>FlushInterval</b>.</dd>
+     * <dt><code>EVENTS</code></dt>
+     * <dd>Events are flushed to the operating system every
+     * <b>FlushEvents</b> events.</dd>
+     * <dt><code>SYNC</code></dt>
+     * <dd>Each event is flushed, and the logging thread waits until the
+     * file is forced to the storage device. Threads logging at the same
+     * time share a single force, and no more than one force happens
+     * every <b>SyncInterval</b> milliseconds. No event is lost once the
+     * logging call returns, unless the force failed, which is reported
+     * to the error handler, or the logging thread was interrupted. A
+     * failed force is retried by the next waiting thread.</dd>
+     * </dl>
+     *
+     * <p>The <b>ImmediateFlush</b> option is ignored by the other
+     * policies.
+     *
+     * @since 1.2.18
+     */
+    public void setDurability(String value) {
+        String v = value.trim();
+        for (int i = 0; i < DURABILITY_NAMES.length; i++) {
+            if (DURABILITY_NAMES[i].equalsIgnoreCase(v)) {
+                durability = i;
+                return;
+            }
+        }
+        LogLog.warn("Unknown durability [" + value + "] for appender [" + name
+                + "], using NONE.");
+        durability = DURABILITY_NONE;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Set the maximum time in milliseconds between two flushes under
+     * the <code>INTERVAL</code> durability policy.
+     *
+     * @since 1.2.18
+     */
+    public void setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public int getFlushEvents() {
+        return flushEvents;
+    }
+
+    /**
+     * Set the number of events between two flushes under the
+     * <code>EVENTS</code> durability policy.
+     *
+     * @since 1.2.18
+     */
+    public void setFlushEvents(int flushEvents) {
+        this.flushEvents = flushEvents;
+    }
+
+    public long getBackgroundFlushInterval() {
+        return backgroundFlushInterval;
+    }
+
+    /**
+     * The <b>BackgroundFlushInterval</b> option takes a number of
+     * milliseconds, 0 by default. If positive, a background thread
+     * shared by all file appenders flushes this appender when it holds
+     * unflushed events and its last flush is older than the interval.
+     * Events buffered because of <b>BufferedIO</b> or a durability
+     * policy then reach the file even when the application stops
+     * logging.
+     *
+     * <p>The background thread does not take the appender lock unless
+     * there is something to flush.
+     *
+     * @since 1.2.18
+     */
+    public void setBackgroundFlushInterval(long backgroundFlushInterval) {
+        this.backgroundFlushInterval = backgroundFlushInterval;
+    }
+
+    public long getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * Set the minimum time in milliseconds between two forces of the
+     * file under the <code>SYNC</code> durability policy. A larger
+     * value lets more threads share each force, at the price of a
+     * longer wait for each of them.
+     *
+     * @since 1.2.18
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
     /**
      * <p>Sets and <i>opens</i> the file where the log output will
      * go. The specified file must be writable.
@@ -277,6 +636,42 @@ public class FileAppender extends WriterAppender {
         //如果qw不为空，则关闭已有的qw
         reset();
 
+        Writer fw;
+        if (memoryMappedIO) {
+            fw = createMappedWriter(fileName, append);
+        } else if (preallocationSize > 0) {
+            if (encodesZeroBytes(getCharset())) {
+                LogLog.warn("PreallocationSize is ignored by appender [" + name
+                        + "], its encoding writes zero bytes.");
+                fw = createFileWriter(fileName, append, bufferedIO, bufferSize);
+            } else {
+                fw = createPreallocatedWriter(fileName, append, bufferedIO ? bufferSize : 8 * 1024);
+            }
+        } else {
+            fw = createFileWriter(fileName, append, bufferedIO, bufferSize);
+        }
+        //对qw进行构建
+        this.setQWForFiles(fw);
+        this.fileName = fileName;
+        this.fileAppend = append;
+        this.bufferedIO = bufferedIO;
+        this.bufferSize = bufferSize;
+        //这里为writeHeader，如HTMLLayout Header就是在这里write的
+        writeHeader();
+        if (getTimerFlushInterval() > 0) {
+            dirty = true;
+            FileFlusher.register(this);
+        }
+        LogLog.debug("setFile ended");
+    }
+
+
+    /**
+     * Opens <code>fileName</code> for writing through a stream or,
+     * if <b>ChannelIO</b> is set, through a channel.
+     */
+    private Writer createFileWriter(String fileName, boolean append, boolean bufferedIO,
+                                    int bufferSize) throws IOException {
         FileOutputStream ostream = null;
         try {
             //
@@ -302,21 +697,162 @@ public class FileAppender extends WriterAppender {
                 throw ex;
             }
         }
+        fileChannel = ostream.getChannel();
+        if (channelIO) {
+            return createChannelWriter(ostream, bufferedIO ? bufferSize : 8 * 1024);
+        }
         Writer fw = createWriter(ostream);
         if (bufferedIO) {
             fw = new BufferedWriter(fw, bufferSize);
         }
-        //对qw进行构建
-        this.setQWForFiles(fw);
-        this.fileName = fileName;
-        this.fileAppend = append;
-        this.bufferedIO = bufferedIO;
-        this.bufferSize = bufferSize;
-        //这里为writeHeader，如HTMLLayout Header就是在这里write的
-        writeHeader();
-        LogLog.debug("setFile ended");
+        return fw;
+    }
+
+    /**
+     * Returns a {@link MappedWriter} writing to <code>fileName</code>,
+     * creating missing parent directories.
+     *
+     * @since 1.2.18
+     */
+    protected MappedWriter createMappedWriter(String fileName, boolean append)
+            throws IOException {
+        File parentDir = new File(fileName).getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            Charset charset = getCharset();
+            long position = append ? findEndOfData(channel, mapRegionSize, charset) : 0;
+            mappedWriter = new MappedWriter(channel, position, charset,
+                    mapRegionSize, bufferSize);
+            return mappedWriter;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a {@link ChannelWriter} extending <code>fileName</code> by
+     * <b>PreallocationSize</b> steps, creating missing parent
+     * directories.
+     */
+    private Writer createPreallocatedWriter(String fileName, boolean append, int bufferSize)
+            throws IOException {
+        File parentDir = new File(fileName).getAbsoluteFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+        RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            if (append) {
+                channel.position(findEndOfData(channel, preallocationSize, getCharset()));
+            } else {
+                channel.truncate(0);
+            }
+            ChannelWriter writer = new ChannelWriter(channel, getCharset(), bufferSize,
+                    preallocationSize);
+            fileChannel = channel;
+            return writer;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
     }
 
+    /**
+     * Returns true if <code>charset</code> writes zero bytes for
+     * characters other than NUL, which would be taken for the zero
+     * bytes of a preallocation.
+     */
+    private static boolean encodesZeroBytes(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        byte[] b = "\n\r\t Az09~\u00e9\u4e2d".getBytes(charset);
+        for (int i = 0; i < b.length; i++) {
+            if (b[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the length of the file without the zero bytes left by a
+     * preallocation or a mapped region which was not truncated, looking
+     * back at most <code>window</code> bytes. For encodings writing zero
+     * bytes, such as UTF-16, the length is rounded up to a whole number
+     * of characters so that the zero bytes of the last character are
+     * kept.
+     */
+    private static long findEndOfData(FileChannel channel, long window, Charset charset)
+            throws IOException {
+        long end = skipZeroBytes(channel, window);
+        if (encodesZeroBytes(charset)) {
+            int unit = Math.round(charset.newEncoder().averageBytesPerChar());
+            if (unit > 1) {
+                end = Math.min(channel.size(), (end + unit - 1) / unit * unit);
+            }
+        }
+        return end;
+    }
+
+    private static long skipZeroBytes(FileChannel channel, long window) throws IOException {
+        long end = channel.size();
+        long limit = Math.max(0, end - window);
+        ByteBuffer buf = ByteBuffer.allocate(8 * 1024);
+        while (end > limit) {
+            int n = (int) Math.min(buf.capacity(), end - limit);
+            buf.clear().limit(n);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, end - n + buf.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                if (buf.get(i) != 0) {
+                    return end - n + i + 1;
+                }
+            }
+            end -= n;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the charset designated by the <code>encoding</code>
+     * property, or the default charset if the property is not set or
+     * not supported.
+     */
+    private Charset getCharset() {
+        String enc = getEncoding();
+        if (enc != null) {
+            try {
+                return Charset.forName(enc);
+            } catch (IllegalArgumentException e) {
+                LogLog.warn("Error initializing output writer.");
+                LogLog.warn("Unsupported encoding?");
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Returns a {@link ChannelWriter} writing to the channel of
+     * <code>ostream</code>, using the charset designated by the
+     * <code>encoding</code> property or the default charset if the
+     * property is not set or not supported.
+     *
+     * @since 1.2.18
+     */
+    protected ChannelWriter createChannelWriter(FileOutputStream ostream, int bufferSize)
+            throws IOException {
+        return new ChannelWriter(ostream.getChannel(), getCharset(), bufferSize);
+    }
 
     /**
      * Sets the quiet writer being used.
@@ -327,13 +863,197 @@ public class FileAppender extends WriterAppender {
         this.qw = new QuietWriter(writer, errorHandler);
     }
 
+    /**
+     * Under the <code>SYNC</code> durability policy, waits after
+     * appending the event until the file is forced to the storage
+     * device. The wait happens outside of the appender lock, and after
+     * the category locks are released when the event comes from a
+     * category, so that other threads can append and share the same
+     * force.
+     *
+     * @since 1.2.18
+     */
+    public void doAppend(LoggingEvent event) {
+        if (durability != DURABILITY_SYNC) {
+            super.doAppend(event);
+            return;
+        }
+        final long count;
+        synchronized (this) {
+            long before = appendedCount;
+            super.doAppend(event);
+            if (appendedCount == before) {
+                // discarded by the threshold or a filter
+                return;
+            }
+            // the event is flushed, a force from now on covers it
+            count = appendedCount;
+            writtenCount = count;
+        }
+        Runnable wait = new Runnable() {
+            public void run() {
+                awaitSync(count);
+            }
+        };
+        if (!DeferredWaits.defer(wait)) {
+            wait.run();
+        }
+    }
+
+    /**
+     * Decides whether to flush according to the durability policy.
+     *
+     * @since 1.2.18
+     */
+    protected boolean shouldFlush(final LoggingEvent event) {
+        boolean flush = decideFlush(event);
+        if (getTimerFlushInterval() > 0) {
+            if (flush) {
+                dirty = false;
+                lastFlushTime = event.timeStamp;
+            } else if (!dirty) {
+                dirty = true;
+            }
+        }
+        return flush;
+    }
+
+    private boolean decideFlush(final LoggingEvent event) {
+        switch (durability) {
+            case DURABILITY_INTERVAL:
+                if (event.timeStamp - lastFlush >= flushInterval) {
+                    lastFlush = event.timeStamp;
+                    return true;
+                }
+                return false;
+            case DURABILITY_EVENTS:
+                if (++unflushedEvents >= flushEvents) {
+                    unflushedEvents = 0;
+                    return true;
+                }
+                return false;
+            case DURABILITY_SYNC:
+                appendedCount++;
+                return true;
+            default:
+                return super.shouldFlush(event);
+        }
+    }
+
+    /**
+     * Called by the background flusher, flushes if events are waiting
+     * and the last flush is older than the background flush interval.
+     */
+    void backgroundFlush(long now) {
+        if (!dirty || now - lastFlushTime < getTimerFlushInterval()) {
+            return;
+        }
+        synchronized (this) {
+            if (dirty && qw != null) {
+                qw.flush();
+                dirty = false;
+                lastFlushTime = now;
+            }
+        }
+    }
+
+    /**
+     * Returns the time after which the background flusher flushes
+     * waiting events: the shortest of the <b>BackgroundFlushInterval</b>
+     * and, under the <code>INTERVAL</code> durability policy, the
+     * <b>FlushInterval</b>; 0 when there is no background flush.
+     */
+    long getTimerFlushInterval() {
+        long interval = backgroundFlushInterval;
+        if (durability == DURABILITY_INTERVAL && flushInterval > 0
+                && (interval <= 0 || flushInterval < interval)) {
+            interval = flushInterval;
+        }
+        return interval;
+    }
+
+    /**
+     * Waits until the first <code>count</code> events are forced to
+     * the storage device. The first waiting thread forces the file on
+     * behalf of all the events written so far, the others wait for it.
+     * If the force fails or is interrupted, the waiting threads are
+     * woken up and the next one forces the file again.
+     */
+    private void awaitSync(long count) {
+        synchronized (syncLock) {
+            while (syncedCount < count && syncing) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (syncedCount >= count) {
+                return;
+            }
+            syncing = true;
+        }
+        long covered = 0;
+        try {
+            long delay = lastSync + syncInterval - System.currentTimeMillis();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            // everything counted so far was flushed to the operating system
+            long written = writtenCount;
+            force();
+            covered = written;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            errorHandler.error("Failed to force [" + fileName + "].", e,
+                    ErrorCode.FLUSH_FAILURE);
+        } finally {
+            lastSync = System.currentTimeMillis();
+            synchronized (syncLock) {
+                syncedCount = Math.max(syncedCount, covered);
+                syncing = false;
+                syncLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces the bytes written to the current file to the storage
+     * device. Bytes still held in the writer buffers are not included.
+     *
+     * @since 1.2.18
+     */
+    protected void force() throws IOException {
+        MappedWriter mapped = mappedWriter;
+        FileChannel channel = fileChannel;
+        try {
+            if (mapped != null) {
+                mapped.force();
+            } else if (channel != null) {
+                channel.force(false);
+            }
+        } catch (ClosedByInterruptException e) {
+            throw e;
+        } catch (ClosedChannelException e) {
+            // the file was closed, and forced, by a rollover
+        }
+    }
+
 
     /**
      * Close any previously opened file and call the parent's
      * <code>reset</code>.
      */
     protected void reset() {
+        FileFlusher.unregister(this);
         closeFile();
+        this.fileChannel = null;
+        this.mappedWriter = null;
         this.fileName = null;
         super.reset();
     }
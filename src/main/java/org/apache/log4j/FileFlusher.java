@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A daemon thread shared by all the file appenders having a
+ * <b>BackgroundFlushInterval</b> or the <code>INTERVAL</code>
+ * durability policy. It periodically asks each of them to
+ * flush if it holds unflushed events and was not flushed for longer
+ * than its interval.
+ *
+ * @since 1.2.18
+ */
+final class FileFlusher extends Thread {
+
+    private static FileFlusher instance;
+
+    private final CopyOnWriteArrayList appenders = new CopyOnWriteArrayList();
+
+    /**
+     * Time between two checks, half the shortest registered interval.
+     */
+    private long tick = Long.MAX_VALUE;
+
+    private FileFlusher() {
+        super("log4j-flusher");
+        setDaemon(true);
+    }
+
+    static synchronized void register(FileAppender appender) {
+        if (instance == null) {
+            instance = new FileFlusher();
+            instance.start();
+        }
+        instance.add(appender);
+    }
+
+    static synchronized void unregister(FileAppender appender) {
+        if (instance != null) {
+            instance.appenders.remove(appender);
+        }
+    }
+
+    private synchronized void add(FileAppender appender) {
+        if (appenders.addIfAbsent(appender)) {
+            tick = Math.min(tick, Math.max(1, appender.getTimerFlushInterval() / 2));
+            notify();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    if (appenders.isEmpty()) {
+                        tick = Long.MAX_VALUE;
+                        wait();
+                    } else {
+                        wait(tick);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            long now = System.currentTimeMillis();
+            for (Iterator i = appenders.iterator(); i.hasNext(); ) {
+                ((FileAppender) i.next()).backgroundFlush(now);
+            }
+        }
+    }
+}
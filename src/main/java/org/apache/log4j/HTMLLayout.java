@@ -38,6 +38,12 @@ public class HTMLLayout extends Layout {
 
     static String TRACE_PREFIX = "<br>&nbsp;&nbsp;&nbsp;&nbsp;";
 
+    // markup ending with a line separator, built once instead of per event
+    private static final String ROW_START = Layout.LINE_SEP + "<tr>" + Layout.LINE_SEP;
+    private static final String ROW_END = "</tr>" + Layout.LINE_SEP;
+    private static final String CELL_END = "</td>" + Layout.LINE_SEP;
+    private static final String DETAIL_ROW_END = "</td></tr>" + Layout.LINE_SEP;
+
     // output buffer appended to when format() is invoked
     private StringBuffer sbuf = new StringBuffer(BUF_SIZE);
 
@@ -126,62 +132,68 @@ public class HTMLLayout extends Layout {
             sbuf.setLength(0);
         }
 
-        sbuf.append(Layout.LINE_SEP + "<tr>" + Layout.LINE_SEP);
+        sbuf.append(ROW_START);
 
         sbuf.append("<td>");
         sbuf.append(event.timeStamp - LoggingEvent.getStartTime());
-        sbuf.append("</td>" + Layout.LINE_SEP);
+        sbuf.append(CELL_END);
 
-        String escapedThread = Transform.escapeTags(event.getThreadName());
-        sbuf.append("<td title=\"" + escapedThread + " thread\">");
-        sbuf.append(escapedThread);
-        sbuf.append("</td>" + Layout.LINE_SEP);
+        String threadName = event.getThreadName();
+        sbuf.append("<td title=\"");
+        Transform.appendEscapingTags(sbuf, threadName);
+        sbuf.append(" thread\">");
+        Transform.appendEscapingTags(sbuf, threadName);
+        sbuf.append(CELL_END);
 
         sbuf.append("<td title=\"Level\">");
         //根据日志级别决定html字体的颜色
         if (event.getLevel().equals(Level.DEBUG)) {
             sbuf.append("<font color=\"#339933\">");
-            sbuf.append(Transform.escapeTags(String.valueOf(event.getLevel())));
+            Transform.appendEscapingTags(sbuf, String.valueOf(event.getLevel()));
             sbuf.append("</font>");
         } else if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
             sbuf.append("<font color=\"#993300\"><strong>");
-            sbuf.append(Transform.escapeTags(String.valueOf(event.getLevel())));
+            Transform.appendEscapingTags(sbuf, String.valueOf(event.getLevel()));
             sbuf.append("</strong></font>");
         } else {
-            sbuf.append(Transform.escapeTags(String.valueOf(event.getLevel())));
+            Transform.appendEscapingTags(sbuf, String.valueOf(event.getLevel()));
         }
-        sbuf.append("</td>" + Layout.LINE_SEP);
+        sbuf.append(CELL_END);
 
-        String escapedLogger = Transform.escapeTags(event.getLoggerName());
-        sbuf.append("<td title=\"" + escapedLogger + " category\">");
-        sbuf.append(escapedLogger);
-        sbuf.append("</td>" + Layout.LINE_SEP);
+        String loggerName = event.getLoggerName();
+        sbuf.append("<td title=\"");
+        Transform.appendEscapingTags(sbuf, loggerName);
+        sbuf.append(" category\">");
+        Transform.appendEscapingTags(sbuf, loggerName);
+        sbuf.append(CELL_END);
 
         if (locationInfo) {
             LocationInfo locInfo = event.getLocationInformation();
             sbuf.append("<td>");
-            sbuf.append(Transform.escapeTags(locInfo.getFileName()));
+            Transform.appendEscapingTags(sbuf, locInfo.getFileName());
             sbuf.append(':');
             sbuf.append(locInfo.getLineNumber());
-            sbuf.append("</td>" + Layout.LINE_SEP);
+            sbuf.append(CELL_END);
         }
 
         sbuf.append("<td title=\"Message\">");
-        sbuf.append(Transform.escapeTags(event.getRenderedMessage()));
-        sbuf.append("</td>" + Layout.LINE_SEP);
-        sbuf.append("</tr>" + Layout.LINE_SEP);
+        Transform.appendEscapingTags(sbuf, event.getRenderedMessage());
+        sbuf.append(CELL_END);
+        sbuf.append(ROW_END);
 
-        if (event.getNDC() != null) {
+        String ndc = event.getNDC();
+        if (ndc != null) {
             sbuf.append("<tr><td bgcolor=\"#EEEEEE\" style=\"font-size : xx-small;\" colspan=\"6\" title=\"Nested Diagnostic Context\">");
-            sbuf.append("NDC: " + Transform.escapeTags(event.getNDC()));
-            sbuf.append("</td></tr>" + Layout.LINE_SEP);
+            sbuf.append("NDC: ");
+            Transform.appendEscapingTags(sbuf, ndc);
+            sbuf.append(DETAIL_ROW_END);
         }
 
         String[] s = event.getThrowableStrRep();
         if (s != null) {
             sbuf.append("<tr><td bgcolor=\"#993300\" style=\"color:White; font-size : xx-small;\" colspan=\"6\">");
             appendThrowableAsHTML(s, sbuf);
-            sbuf.append("</td></tr>" + Layout.LINE_SEP);
+            sbuf.append(DETAIL_ROW_END);
         }
 
         return sbuf.toString();
@@ -192,11 +204,11 @@ public class HTMLLayout extends Layout {
             int len = s.length;
             if (len == 0)
                 return;
-            sbuf.append(Transform.escapeTags(s[0]));
+            Transform.appendEscapingTags(sbuf, s[0]);
             sbuf.append(Layout.LINE_SEP);
             for (int i = 1; i < len; i++) {
                 sbuf.append(TRACE_PREFIX);
-                sbuf.append(Transform.escapeTags(s[i]));
+                Transform.appendEscapingTags(sbuf, s[i]);
                 sbuf.append(Layout.LINE_SEP);
             }
         }
@@ -24,6 +24,7 @@ import java.text.NumberFormat;
 import java.util.Date;
 import java.util.ResourceBundle;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -36,7 +37,9 @@ import java.util.Locale;
  * a simple fast compatible formatter is used.  
  * If the pattern contains more complex conversion patterns,
  * formatting will be delegated to java.text.MessageFormatter
- * which can be substantially slower.
+ * which can be substantially slower. Parsed patterns
+ * are cached, and number and date formats are kept per thread
+ * so that concurrent callers do not contend on them.
  *
  * @see org.apache.log4j.LogSF
  * @since 1.2.16
@@ -51,34 +54,96 @@ public final class LogMF extends LogXF {
     }
 
     /**
-     * Number format.
+     * Maximum number of parsed patterns kept in the cache.
      */
-    private static NumberFormat numberFormat = null;
+    private static final int MAX_CACHED_PATTERNS = 256;
+
     /**
-     * Locale at time of last number format request.
+     * Parsed patterns keyed by pattern. Values are either
+     * {@link SimplePattern} or {@link MessageFormatPattern} instances.
+     * The cache is emptied when it reaches its maximum size.
      */
-    private static Locale numberLocale = null;
+    private static final ConcurrentHashMap patternCache =
+            new ConcurrentHashMap();
+
     /**
-     * Date format.
+     * Number and date formats of the current thread.
      */
-    private static DateFormat dateFormat = null;
+    private static final ThreadLocal formats = new ThreadLocal() {
+        protected Object initialValue() {
+            return new Formats();
+        }
+    };
+
     /**
-     * Locale at time of last date format request.
+     * Per-thread number and date formats, rebuilt when the default
+     * locale changes. Neither format is thread safe, so they can
+     * not be shared.
      */
-    private static Locale dateLocale = null;
+    private static final class Formats {
+        /**
+         * Number format.
+         */
+        private NumberFormat numberFormat;
+        /**
+         * Locale at time of last number format request.
+         */
+        private Locale numberLocale;
+        /**
+         * Date format.
+         */
+        private DateFormat dateFormat;
+        /**
+         * Locale at time of last date format request.
+         */
+        private Locale dateLocale;
+
+        private NumberFormat getNumberFormat() {
+            Locale currentLocale = Locale.getDefault();
+            if (currentLocale != numberLocale || numberFormat == null) {
+                numberLocale = currentLocale;
+                numberFormat = NumberFormat.getInstance(currentLocale);
+            }
+            return numberFormat;
+        }
+
+        String formatNumber(final Object n) {
+            return getNumberFormat().format(n);
+        }
+
+        String formatNumber(final double n) {
+            return getNumberFormat().format(n);
+        }
+
+        String formatDate(final Object d) {
+            Locale currentLocale = Locale.getDefault();
+            if (currentLocale != dateLocale || dateFormat == null) {
+                dateLocale = currentLocale;
+                dateFormat = DateFormat.getDateTimeInstance(
+                                    DateFormat.SHORT,
+                                    DateFormat.SHORT,
+                                    currentLocale);
+            }
+            return dateFormat.format(d);
+        }
+    }
 
     /**
      * Format number.
      * @param n number to format, may not be null.
      * @return formatted value.
      */
-    private static synchronized String formatNumber(final Object n) {
-        Locale currentLocale = Locale.getDefault();
-        if (currentLocale != numberLocale || numberFormat == null) {
-            numberLocale = currentLocale;
-            numberFormat = NumberFormat.getInstance(currentLocale);
-        }
-        return numberFormat.format(n);
+    private static String formatNumber(final Object n) {
+        return ((Formats) formats.get()).formatNumber(n);
+    }
+
+    /**
+     * Format a floating point number like a "{0}" formatting specifier.
+     * @param n number to format.
+     * @return formatted value.
+     */
+    static String formatNumber(final double n) {
+        return ((Formats) formats.get()).formatNumber(n);
     }
 
 
@@ -87,16 +152,8 @@ public final class LogMF extends LogXF {
      * @param d date, may not be null.
      * @return formatted value.
      */
-    private static synchronized String formatDate(final Object d) {
-        Locale currentLocale = Locale.getDefault();
-        if (currentLocale != dateLocale || dateFormat == null) {
-            dateLocale = currentLocale;
-            dateFormat = DateFormat.getDateTimeInstance(
-                                DateFormat.SHORT,
-                                DateFormat.SHORT,
-                                currentLocale);
-        }
-        return dateFormat.format(d);
+    private static String formatDate(final Object d) {
+        return ((Formats) formats.get()).formatDate(d);
     }
 
     /**
@@ -143,6 +200,179 @@ public final class LogMF extends LogXF {
 
     }
 
+    /**
+     * A pattern containing only literal text and {n} format elements,
+     * split into literal segments and argument indexes.
+     */
+    private static final class SimplePattern {
+        /**
+         * Literal text preceding each format element, the last entry
+         * follows the last format element.
+         */
+        private final String[] literals;
+        /**
+         * Argument index of each format element.
+         */
+        private final int[] indexes;
+        /**
+         * Format elements as they appear in the pattern, output when
+         * no matching argument is supplied.
+         */
+        private final String[] elements;
+
+        SimplePattern(final String pattern) {
+            int count = 0;
+            for (int pos = pattern.indexOf('{'); pos >= 0;
+                 pos = pattern.indexOf('{', pos + 3)) {
+                count++;
+            }
+            literals = new String[count + 1];
+            indexes = new int[count];
+            elements = new String[count];
+            int prev = 0;
+            int pos = pattern.indexOf('{');
+            for (int i = 0; i < count; i++) {
+                literals[i] = pattern.substring(prev, pos);
+                indexes[i] = pattern.charAt(pos + 1) - '0';
+                elements[i] = pattern.substring(pos, pos + 3);
+                prev = pos + 3;
+                pos = pattern.indexOf('{', prev);
+            }
+            literals[count] = pattern.substring(prev);
+        }
+
+        String format(final Object[] arguments) {
+            if (indexes.length == 0) {
+                return literals[0];
+            }
+            String[] formatted = new String[10];
+            StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < indexes.length; i++) {
+                buf.append(literals[i]);
+                int index = indexes[i];
+                if (formatted[index] == null) {
+                    if (arguments == null || index >= arguments.length) {
+                        formatted[index] = elements[i];
+                    } else {
+                        formatted[index] = formatObject(arguments[index]);
+                    }
+                }
+                buf.append(formatted[index]);
+            }
+            buf.append(literals[indexes.length]);
+            return buf.toString();
+        }
+
+        String format(final Object arg0) {
+            if (indexes.length == 0) {
+                return literals[0];
+            }
+            String formatted = null;
+            StringBuffer buf = new StringBuffer();
+            for (int i = 0; i < indexes.length; i++) {
+                buf.append(literals[i]);
+                if (indexes[i] != 0) {
+                    buf.append(elements[i]);
+                } else {
+                    if (formatted == null) {
+                        formatted = formatObject(arg0);
+                    }
+                    buf.append(formatted);
+                }
+            }
+            buf.append(literals[indexes.length]);
+            return buf.toString();
+        }
+
+        void formatTo(final StringBuffer buf, final ParameterizedMessage arg0) {
+            for (int i = 0; i < indexes.length; i++) {
+                buf.append(literals[i]);
+                if (indexes[i] != 0) {
+                    buf.append(elements[i]);
+                } else {
+                    arg0.appendArgument(buf, true);
+                }
+            }
+            buf.append(literals[indexes.length]);
+        }
+    }
+
+    /**
+     * A pattern delegated to java.text.MessageFormat. The parsed
+     * MessageFormat serves as a prototype which is cloned for each
+     * use since MessageFormat is not thread safe.
+     */
+    private static final class MessageFormatPattern {
+        /**
+         * Pattern text, output as is if formatting fails.
+         */
+        private final String pattern;
+
+        /**
+         * Parsed pattern, never used directly. <code>null</code> if the
+         * pattern is malformed.
+         */
+        private final MessageFormat prototype;
+
+        MessageFormatPattern(final String pattern) {
+            this.pattern = pattern;
+            MessageFormat mf;
+            try {
+                mf = new MessageFormat(pattern);
+            } catch (IllegalArgumentException ex) {
+                mf = null;
+            }
+            prototype = mf;
+        }
+
+        /**
+         * Returns true if the pattern was parsed for the current
+         * default locale.
+         */
+        boolean isCurrent() {
+            return prototype == null
+                    || prototype.getLocale() == Locale.getDefault(Locale.Category.FORMAT);
+        }
+
+        String format(final Object[] arguments) {
+            if (prototype == null) {
+                return pattern;
+            }
+            try {
+                return ((MessageFormat) prototype.clone()).format(arguments);
+            } catch (IllegalArgumentException ex) {
+                return pattern;
+            }
+        }
+    }
+
+    /**
+     * Returns the parsed form of <code>pattern</code>, from the cache if
+     * possible.
+     *
+     * @param pattern pattern, may not be null.
+     * @return a SimplePattern or MessageFormatPattern.
+     */
+    private static Object parse(final String pattern) {
+        Object parsed = patternCache.get(pattern);
+        if (parsed instanceof MessageFormatPattern
+                && !((MessageFormatPattern) parsed).isCurrent()) {
+            parsed = null;
+        }
+        if (parsed == null) {
+            if (isSimple(pattern)) {
+                parsed = new SimplePattern(pattern);
+            } else {
+                parsed = new MessageFormatPattern(pattern);
+            }
+            if (patternCache.size() >= MAX_CACHED_PATTERNS) {
+                patternCache.clear();
+            }
+            patternCache.put(pattern, parsed);
+        }
+        return parsed;
+    }
+
     /**
      * Formats arguments using MessageFormat.
      * @param pattern pattern, may be malformed or null.
@@ -153,88 +383,51 @@ public final class LogMF extends LogXF {
                                  final Object[] arguments) {
         if (pattern == null) {
             return null;
-        } else if(isSimple(pattern)) {
-            String formatted[] = new String[10];
-            int prev = 0;
-            String retval = "";
-            int pos = pattern.indexOf('{');
-            while(pos >= 0) {
-                if(pos + 2 < pattern.length() && 
-                      pattern.charAt(pos+2) == '}' &&
-                      pattern.charAt(pos+1) >= '0' &&
-                      pattern.charAt(pos+1) <= '9') {
-                    int index = pattern.charAt(pos+1) - '0';
-                    retval += pattern.substring(prev, pos);
-                    if (formatted[index] == null) {
-                         if (arguments == null || index >= arguments.length) {
-                            formatted[index] = pattern.substring(pos, pos+3);
-                         } else {
-                            formatted[index] = formatObject(arguments[index]);
-                         }
-                    }
-                    retval += formatted[index];
-                    prev = pos + 3;
-                    pos = pattern.indexOf('{', prev);
-                } else {
-                    pos = pattern.indexOf('{', pos + 1);
-                }
-            }
-            retval += pattern.substring(prev);
-            return retval;
         }
-        try {
-            return MessageFormat.format(pattern, arguments);
-        } catch (IllegalArgumentException ex) {
-            return pattern;
+        Object parsed = parse(pattern);
+        if (parsed instanceof SimplePattern) {
+            return ((SimplePattern) parsed).format(arguments);
         }
+        return ((MessageFormatPattern) parsed).format(arguments);
     }
 
     /**
      * Formats a single argument using MessageFormat.
      * @param pattern pattern, may be malformed or null.
-     * @param arguments arguments, may be null or mismatched.
+     * @param arg0 argument, may be null or mismatched.
      * @return Message string or null
      */
     private static String format(final String pattern,
                                  final Object arg0) {
         if (pattern == null) {
             return null;
-        } else if(isSimple(pattern)) {
-            String formatted = null;
-            int prev = 0;
-            String retval = "";
-            int pos = pattern.indexOf('{');
-            while(pos >= 0) {
-                if(pos + 2 < pattern.length() &&
-                      pattern.charAt(pos+2) == '}' &&
-                      pattern.charAt(pos+1) >= '0' &&
-                      pattern.charAt(pos+1) <= '9') {
-                    int index = pattern.charAt(pos+1) - '0';
-                    retval += pattern.substring(prev, pos);
-                    if (index != 0) {
-                        retval += pattern.substring(pos, pos+3);
-                    } else {
-                        if (formatted == null) {
-                            formatted = formatObject(arg0);
-                        }
-                        retval += formatted;
-                    }
-                    prev = pos + 3;
-                    pos = pattern.indexOf('{', prev);
-                } else {
-                    pos = pattern.indexOf('{', pos + 1);
-                }
-            }
-            retval += pattern.substring(prev);
-            return retval;
         }
-        try {
-            return MessageFormat.format(pattern, new Object[] { arg0 });
-        } catch (IllegalArgumentException ex) {
-            return pattern;
+        Object parsed = parse(pattern);
+        if (parsed instanceof SimplePattern) {
+            return ((SimplePattern) parsed).format(arg0);
         }
+        return ((MessageFormatPattern) parsed).format(new Object[] { arg0 });
     }
 
+    /**
+     * Formats the single primitive argument of a message into
+     * <code>buf</code>, without boxing it unless the pattern has to
+     * be handled by MessageFormat.
+     * @param buf destination.
+     * @param pattern pattern, may be malformed, may not be null.
+     * @param arg0 message holding the argument.
+     */
+    static void formatTo(final StringBuffer buf,
+                         final String pattern,
+                         final ParameterizedMessage arg0) {
+        Object parsed = parse(pattern);
+        if (parsed instanceof SimplePattern) {
+            ((SimplePattern) parsed).formatTo(buf, arg0);
+        } else {
+            buf.append(((MessageFormatPattern) parsed).format(
+                    new Object[] { arg0.getArgument() }));
+        }
+    }
 
     /**
      * Formats arguments using MessageFormat using a pattern from
@@ -296,6 +489,24 @@ public final class LogMF extends LogXF {
                                   final Throwable t) {
         logger.callAppenders(new LoggingEvent(FQCN, logger, level, msg, t));
     }
+
+    /**
+     * Equivalent of Logger.forcedLog for a message holding a primitive
+     * argument, the message is formatted only if it gets rendered.
+     *
+     * @param logger logger, may not be null.
+     * @param level level, may not be null.
+     * @param msg message, may not be null.
+     */
+    private static void forcedLog(final Logger logger,
+                                  final Level level,
+                                  final ParameterizedMessage msg) {
+        try {
+            logger.callAppenders(new LoggingEvent(FQCN, logger, level, msg, null));
+        } finally {
+            msg.release();
+        }
+    }
     /**
          * Log a parameterized message at trace level.
          * @param logger logger, may not be null.
@@ -483,7 +694,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -496,7 +708,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -509,7 +722,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -522,7 +736,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -535,7 +750,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -548,7 +764,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -561,7 +778,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -574,7 +792,8 @@ public final class LogMF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -649,7 +868,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -662,7 +882,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -675,7 +896,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -688,7 +910,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -701,7 +924,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -714,7 +938,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -727,7 +952,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -740,7 +966,8 @@ public final class LogMF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -815,7 +1042,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -828,7 +1056,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -841,7 +1070,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -854,7 +1084,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -867,7 +1098,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -880,7 +1112,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -893,7 +1126,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -906,7 +1140,8 @@ public final class LogMF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -980,7 +1215,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -993,7 +1229,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1006,7 +1243,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1019,7 +1257,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1032,7 +1271,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1045,7 +1285,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1058,7 +1299,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -1071,7 +1313,8 @@ public final class LogMF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.MESSAGE_FORMAT, pattern, argument));
         }
     }
 
@@ -101,6 +101,31 @@ public final class LogSF extends LogXF {
         return pattern;
     }
 
+    /**
+     * Formats the single primitive argument of a message into
+     * <code>buf</code>, without boxing it unless the pattern contains
+     * an escaped brace.
+     * @param buf destination.
+     * @param pattern pattern, may be malformed, may not be null.
+     * @param arg0 message holding the argument.
+     */
+    static void formatTo(final StringBuffer buf,
+                         final String pattern,
+                         final ParameterizedMessage arg0) {
+        if (pattern.indexOf("\\{") >= 0) {
+            buf.append(format(pattern, new Object[] { arg0.getArgument() }));
+            return;
+        }
+        int pos = pattern.indexOf("{}");
+        if (pos >= 0) {
+            buf.append(pattern, 0, pos);
+            arg0.appendArgument(buf, false);
+            buf.append(pattern, pos + 2, pattern.length());
+        } else {
+            buf.append(pattern);
+        }
+    }
+
     /**
      * Formats arguments using MessageFormat using a pattern from
      * a resource bundle.
@@ -161,6 +186,24 @@ public final class LogSF extends LogXF {
                                   final Throwable t) {
         logger.callAppenders(new LoggingEvent(FQCN, logger, level, msg, t));
     }
+
+    /**
+     * Equivalent of Logger.forcedLog for a message holding a primitive
+     * argument, the message is formatted only if it gets rendered.
+     *
+     * @param logger logger, may not be null.
+     * @param level level, may not be null.
+     * @param msg message, may not be null.
+     */
+    private static void forcedLog(final Logger logger,
+                                  final Level level,
+                                  final ParameterizedMessage msg) {
+        try {
+            logger.callAppenders(new LoggingEvent(FQCN, logger, level, msg, null));
+        } finally {
+            msg.release();
+        }
+    }
     /**
          * Log a parameterized message at trace level.
          * @param logger logger, may not be null.
@@ -348,7 +391,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -361,7 +405,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -374,7 +419,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -387,7 +433,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -400,7 +447,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -413,7 +461,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -426,7 +475,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -439,7 +489,8 @@ public final class LogSF extends LogXF {
     public static void trace(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isEnabledFor(TRACE)) {
-            forcedLog(logger, TRACE, format(pattern, valueOf(argument)));
+            forcedLog(logger, TRACE, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -514,7 +565,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -527,7 +579,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -540,7 +593,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -553,7 +607,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -566,7 +621,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -579,7 +635,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -592,7 +649,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -605,7 +663,8 @@ public final class LogSF extends LogXF {
     public static void debug(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isDebugEnabled()) {
-            forcedLog(logger, Level.DEBUG, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.DEBUG, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -680,7 +739,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -693,7 +753,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -706,7 +767,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -719,7 +781,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -732,7 +795,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -745,7 +809,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -758,7 +823,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -771,7 +837,8 @@ public final class LogSF extends LogXF {
     public static void info(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isInfoEnabled()) {
-            forcedLog(logger, Level.INFO, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.INFO, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -845,7 +912,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final boolean argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -858,7 +926,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final char argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -871,7 +940,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final byte argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -884,7 +954,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final short argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -897,7 +968,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final int argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -910,7 +982,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final long argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -923,7 +996,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final float argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -936,7 +1010,8 @@ public final class LogSF extends LogXF {
     public static void warn(final Logger logger, final String pattern,
         final double argument) {
         if (logger.isEnabledFor(Level.WARN)) {
-            forcedLog(logger, Level.WARN, format(pattern, valueOf(argument)));
+            forcedLog(logger, Level.WARN, ParameterizedMessage.obtain(
+                    ParameterizedMessage.SIMPLE_FORMAT, pattern, argument));
         }
     }
 
@@ -61,7 +61,7 @@ public abstract class LogXF {
      * @return a Character instance representing c.
      */
     protected static Character valueOf(final char c) {
-        return new Character(c);
+        return Character.valueOf(c);
     }
 
     /**
@@ -72,7 +72,7 @@ public abstract class LogXF {
      * @return a Byte instance representing b.
      */
     protected static Byte valueOf(final byte b) {
-        return new Byte(b);
+        return Byte.valueOf(b);
     }
 
     /**
@@ -83,7 +83,7 @@ public abstract class LogXF {
      * @return a Byte instance representing b.
      */
     protected static Short valueOf(final short b) {
-        return new Short(b);
+        return Short.valueOf(b);
     }
 
     /**
@@ -94,7 +94,7 @@ public abstract class LogXF {
      * @return an Integer instance representing b.
      */
     protected static Integer valueOf(final int b) {
-        return new Integer(b);
+        return Integer.valueOf(b);
     }
 
     /**
@@ -105,7 +105,7 @@ public abstract class LogXF {
      * @return a Long instance representing b.
      */
     protected static Long valueOf(final long b) {
-        return new Long(b);
+        return Long.valueOf(b);
     }
 
     /**
@@ -116,7 +116,7 @@ public abstract class LogXF {
      * @return a Float instance representing b.
      */
     protected static Float valueOf(final float b) {
-        return new Float(b);
+        return Float.valueOf(b);
     }
 
     /**
@@ -127,7 +127,7 @@ public abstract class LogXF {
      * @return a Byte instance representing b.
      */
     protected static Double valueOf(final double b) {
-        return new Double(b);
+        return Double.valueOf(b);
     }
 
     /**
@@ -17,8 +17,11 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.DeferredMessage;
 import org.apache.log4j.spi.LoggerFactory;
 
+import java.util.function.Supplier;
+
 
 /**
  * This is the central class in the log4j package. Most logging
@@ -189,6 +192,43 @@ public class Logger extends Category {
         }
     }
 
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * {@link org.apache.log4j.Level#TRACE TRACE} level.
+     *
+     * @param supplier produces the message object to log.
+     * @see #debug(java.util.function.Supplier) for an explanation of the logic applied.
+     * @since 1.2.18
+     */
+    public void trace(Supplier<?> supplier) {
+        if (repository.isDisabled(Level.TRACE_INT)) {
+            return;
+        }
+
+        if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+            forcedLog(FQCN, Level.TRACE, new DeferredMessage(supplier), null);
+        }
+    }
+
+    /**
+     * Log a message produced by <code>supplier</code> with the
+     * <code>TRACE</code> level including the stack trace of the
+     * {@link Throwable}<code>t</code> passed as parameter.
+     *
+     * @param supplier produces the message object to log.
+     * @param t        the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void trace(Supplier<?> supplier, Throwable t) {
+        if (repository.isDisabled(Level.TRACE_INT)) {
+            return;
+        }
+
+        if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+            forcedLog(FQCN, Level.TRACE, new DeferredMessage(supplier), t);
+        }
+    }
+
     /**
      * Check whether this category is enabled for the TRACE  Level.
      *
@@ -23,6 +23,7 @@ import java.util.Hashtable;
 
 import org.apache.log4j.helpers.Loader;
 import org.apache.log4j.helpers.ThreadLocalMap;
+import org.apache.log4j.helpers.VersionedHashtable;
 
 /**
  * The MDC class is similar to the {@link NDC} class except that it is
@@ -138,7 +139,7 @@ public class MDC {
         } else {
             Hashtable ht = (Hashtable) ((ThreadLocalMap) tlm).get();
             if (ht == null) {
-                ht = new Hashtable(HT_SIZE);
+                ht = new VersionedHashtable(HT_SIZE);
                 ((ThreadLocalMap) tlm).set(ht);
             }
             ht.put(key, o);
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A message made of a pattern and a single primitive argument, as
+ * passed to the primitive overloads of {@link LogMF} and {@link LogSF}.
+ * The argument is kept unboxed and the message is only formatted when
+ * it is rendered, possibly straight into the buffer of a layout by
+ * {@link #appendTo}.
+ *
+ * <p>Each thread reuses the same instance from one logging request to
+ * the next, as long as the logging event carrying it was not handed to
+ * an appender. Once an appender receives the event, the message is
+ * captured: it is never modified again and the thread switches to a
+ * new instance. Consequently, requests discarded by appender thresholds
+ * or filters do not leave any message behind.
+ *
+ * @since 1.2.18
+ */
+public final class ParameterizedMessage {
+
+    /**
+     * Pattern syntax of {@link LogMF}.
+     */
+    static final int MESSAGE_FORMAT = 0;
+
+    /**
+     * Pattern syntax of {@link LogSF}.
+     */
+    static final int SIMPLE_FORMAT = 1;
+
+    private static final int BOOLEAN = 0;
+    private static final int CHAR = 1;
+    private static final int LONG = 2;
+    private static final int FLOAT = 3;
+    private static final int DOUBLE = 4;
+
+    /**
+     * The message reused by the current thread.
+     */
+    private static final ThreadLocal reusable = new ThreadLocal();
+
+    private int style;
+    private String pattern;
+    private int type;
+    private long longValue;
+    private double doubleValue;
+
+    /**
+     * Cached result of {@link #toString}.
+     */
+    private String formatted;
+
+    /**
+     * Set once the message was handed to an appender.
+     */
+    private volatile boolean captured;
+
+    /**
+     * Set while the logging request using this message is in progress.
+     */
+    private boolean inUse;
+
+    private ParameterizedMessage() {
+    }
+
+    /**
+     * Returns the message of the current thread if it can be reused, a
+     * new message otherwise.
+     */
+    private static ParameterizedMessage obtain(final int style,
+                                               final String pattern,
+                                               final int type) {
+        ParameterizedMessage msg = (ParameterizedMessage) reusable.get();
+        if (msg == null || msg.captured) {
+            msg = new ParameterizedMessage();
+            reusable.set(msg);
+        } else if (msg.inUse) {
+            // a nested request, for instance logging from within a filter
+            msg = new ParameterizedMessage();
+        }
+        msg.inUse = true;
+        msg.style = style;
+        msg.pattern = pattern;
+        msg.type = type;
+        msg.formatted = null;
+        return msg;
+    }
+
+    static ParameterizedMessage obtain(final int style, final String pattern,
+                                       final boolean argument) {
+        ParameterizedMessage msg = obtain(style, pattern, BOOLEAN);
+        msg.longValue = argument ? 1 : 0;
+        return msg;
+    }
+
+    static ParameterizedMessage obtain(final int style, final String pattern,
+                                       final char argument) {
+        ParameterizedMessage msg = obtain(style, pattern, CHAR);
+        msg.longValue = argument;
+        return msg;
+    }
+
+    static ParameterizedMessage obtain(final int style, final String pattern,
+                                       final long argument) {
+        ParameterizedMessage msg = obtain(style, pattern, LONG);
+        msg.longValue = argument;
+        return msg;
+    }
+
+    static ParameterizedMessage obtain(final int style, final String pattern,
+                                       final float argument) {
+        ParameterizedMessage msg = obtain(style, pattern, FLOAT);
+        msg.doubleValue = argument;
+        return msg;
+    }
+
+    static ParameterizedMessage obtain(final int style, final String pattern,
+                                       final double argument) {
+        ParameterizedMessage msg = obtain(style, pattern, DOUBLE);
+        msg.doubleValue = argument;
+        return msg;
+    }
+
+    /**
+     * Called when the logging request using this message completes.
+     */
+    void release() {
+        inUse = false;
+    }
+
+    /**
+     * Marks the message of <code>event</code> as captured, if it is a
+     * <code>ParameterizedMessage</code>. Must be called before the
+     * event is handed to an appender.
+     */
+    public static void capture(final LoggingEvent event) {
+        if (event.isMessageDeferred()) {
+            return;
+        }
+        Object message = event.getMessage();
+        if (message instanceof ParameterizedMessage) {
+            ((ParameterizedMessage) message).captured = true;
+        }
+    }
+
+    /**
+     * Returns the pattern, may be null.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the argument, boxed.
+     */
+    public Object getArgument() {
+        switch (type) {
+            case BOOLEAN:
+                return Boolean.valueOf(longValue != 0);
+            case CHAR:
+                return Character.valueOf((char) longValue);
+            case FLOAT:
+                return Float.valueOf((float) doubleValue);
+            case DOUBLE:
+                return Double.valueOf(doubleValue);
+            default:
+                return Long.valueOf(longValue);
+        }
+    }
+
+    /**
+     * Appends the argument to <code>buf</code> without boxing it.
+     *
+     * @param numberFormat if true, floating point values are formatted
+     *                     like {@link LogMF} does.
+     */
+    void appendArgument(final StringBuffer buf, final boolean numberFormat) {
+        switch (type) {
+            case BOOLEAN:
+                buf.append(longValue != 0);
+                break;
+            case CHAR:
+                buf.append((char) longValue);
+                break;
+            case FLOAT:
+                if (numberFormat) {
+                    buf.append(LogMF.formatNumber(doubleValue));
+                } else {
+                    buf.append((float) doubleValue);
+                }
+                break;
+            case DOUBLE:
+                if (numberFormat) {
+                    buf.append(LogMF.formatNumber(doubleValue));
+                } else {
+                    buf.append(doubleValue);
+                }
+                break;
+            default:
+                buf.append(longValue);
+        }
+    }
+
+    /**
+     * Formats the message into <code>buf</code>.
+     *
+     * @return false if the pattern is null, in which case nothing is
+     * appended.
+     */
+    public boolean appendTo(final StringBuffer buf) {
+        if (pattern == null) {
+            return false;
+        }
+        if (formatted != null) {
+            buf.append(formatted);
+        } else if (style == MESSAGE_FORMAT) {
+            LogMF.formatTo(buf, pattern, this);
+        } else {
+            LogSF.formatTo(buf, pattern, this);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the formatted message, null if the pattern is null.
+     */
+    public String toString() {
+        if (formatted == null && pattern != null) {
+            StringBuffer buf = new StringBuffer(pattern.length() + 16);
+            appendTo(buf);
+            formatted = buf.toString();
+        }
+        return formatted;
+    }
+}
@@ -21,7 +21,18 @@ package org.apache.log4j;
 import java.io.IOException;
 import java.io.Writer;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.helpers.LogLog;
@@ -53,6 +64,76 @@ public class RollingFileAppender extends FileAppender {
 
     private long nextRollover = 0;
 
+    private static final String[] COMPRESSION_NAMES = {"NONE", "GZIP", "DEFLATE"};
+    private static final String[] COMPRESSION_EXTENSIONS = {"", ".gz", ".deflate"};
+    private static final int COMPRESSION_NONE = 0;
+    private static final int COMPRESSION_GZIP = 1;
+
+    /**
+     * Rename the backup files on a background thread.
+     *
+     * @since 1.2.18
+     */
+    protected boolean asyncRollover = false;
+
+    /**
+     * Index in {@link #COMPRESSION_NAMES} of the compression applied to
+     * backup files.
+     *
+     * @since 1.2.18
+     */
+    protected int compression = COMPRESSION_NONE;
+
+    /**
+     * Compression level, from 0 to 9 or -1 for the default level.
+     *
+     * @since 1.2.18
+     */
+    protected int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Maximum number of rolled files waiting to be processed.
+     *
+     * @since 1.2.18
+     */
+    protected int maxPendingRollovers = 2;
+
+    /**
+     * Rolled files not yet moved to their backup name, oldest first.
+     * Also used as the lock guarding <code>draining</code>.
+     */
+    private final LinkedList pending = new LinkedList();
+
+    private boolean draining;
+
+    private int rolledCount;
+
+    /**
+     * A file renamed away from <b>File</b>, with the options in effect
+     * when it was rolled.
+     */
+    private static final class Rolled {
+        final File source;
+        final String base;
+        final int maxBackupIndex;
+        final int compression;
+        final int level;
+
+        Rolled(File source, String base, int maxBackupIndex, int compression, int level) {
+            this.source = source;
+            this.base = base;
+            this.maxBackupIndex = maxBackupIndex;
+            this.compression = compression;
+            this.level = level;
+        }
+    }
+
+    private final Runnable drainer = new Runnable() {
+        public void run() {
+            drainRolled();
+        }
+    };
+
     /**
      * The default constructor simply calls its {@link
      * FileAppender#FileAppender parents constructor}.
@@ -103,6 +184,106 @@ public class RollingFileAppender extends FileAppender {
         return maxFileSize;
     }
 
+    /**
+     * Returns the value of the <b>AsyncRollover</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getAsyncRollover() {
+        return asyncRollover;
+    }
+
+    /**
+     * The <b>AsyncRollover</b> option takes a boolean value. When set,
+     * a rollover only renames <b>File</b> and opens a fresh one while
+     * holding the appender lock. Shifting the backup files and the
+     * optional compression are left to a background thread. It is
+     * false by default.
+     *
+     * @since 1.2.18
+     */
+    public void setAsyncRollover(boolean asyncRollover) {
+        this.asyncRollover = asyncRollover;
+    }
+
+    /**
+     * Returns the value of the <b>Compression</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getCompression() {
+        return COMPRESSION_NAMES[compression];
+    }
+
+    /**
+     * The <b>Compression</b> option takes one of <code>NONE</code>,
+     * <code>GZIP</code> or <code>DEFLATE</code>. Backup files are then
+     * compressed and named <code>File.1.gz</code> or
+     * <code>File.1.deflate</code>. Compression happens on the
+     * background thread when <b>AsyncRollover</b> is set, in the
+     * logging thread otherwise.
+     *
+     * @since 1.2.18
+     */
+    public void setCompression(String value) {
+        String v = value.trim();
+        for (int i = 0; i < COMPRESSION_NAMES.length; i++) {
+            if (COMPRESSION_NAMES[i].equalsIgnoreCase(v)) {
+                compression = i;
+                return;
+            }
+        }
+        LogLog.warn("Unknown compression [" + value + "] for appender [" + name
+                + "], using NONE.");
+        compression = COMPRESSION_NONE;
+    }
+
+    /**
+     * Returns the value of the <b>CompressionLevel</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the level used by the <b>Compression</b> option, from 1
+     * (fastest) to 9 (smallest), or 0 to store the data uncompressed.
+     * By default the compressor picks its own trade-off.
+     *
+     * @since 1.2.18
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            LogLog.warn("Invalid compression level [" + compressionLevel
+                    + "] for appender [" + name + "], using the default level.");
+            compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the value of the <b>MaxPendingRollovers</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getMaxPendingRollovers() {
+        return maxPendingRollovers;
+    }
+
+    /**
+     * Sets how many rolled files may wait for the background thread.
+     * A rollover finding that many files still pending waits for the
+     * oldest one to be processed, so that a burst of rollovers cannot
+     * pile up unbounded work. The default is 2.
+     *
+     * @since 1.2.18
+     */
+    public void setMaxPendingRollovers(int maxPendingRollovers) {
+        this.maxPendingRollovers = Math.max(1, maxPendingRollovers);
+    }
+
     /**
      * Implements the usual roll over behaviour.
      *
@@ -115,12 +296,22 @@ public class RollingFileAppender extends FileAppender {
      *
      * <p>If <code>MaxBackupIndex</code> is equal to zero, then the
      * <code>File</code> is truncated with no backup files created.
+     *
+     * <p>With <b>AsyncRollover</b> or <b>Compression</b>,
+     * <code>File</code> is first renamed to a temporary name, and the
+     * backup files are shifted afterwards, see {@link
+     * #setAsyncRollover}.
      */
     public // synchronization not necessary since doAppend is alreasy synched
     void rollOver() {
         File target;
         File file;
 
+        if (maxBackupIndex > 0 && (asyncRollover || compression != COMPRESSION_NONE)) {
+            switchFile();
+            return;
+        }
+
         if (qw != null) {
             long size = ((CountingQuietWriter) qw).getCount();
             LogLog.debug("rolling over count=" + size);
@@ -192,6 +383,274 @@ public class RollingFileAppender extends FileAppender {
         }
     }
 
+    /**
+     * Moves <b>File</b> out of the way and opens a fresh one, then hands
+     * the rolled file over to {@link #drainRolled}.
+     */
+    private void switchFile() {
+        if (qw != null) {
+            long size = ((CountingQuietWriter) qw).getCount();
+            LogLog.debug("rolling over count=" + size);
+            nextRollover = size + maxFileSize;
+        }
+        awaitPending(maxPendingRollovers);
+
+        File rolled;
+        do {
+            rolled = new File(fileName + ".rolling" + (++rolledCount));
+        } while (rolled.exists());
+
+        this.closeFile(); // keep windows happy.
+
+        File file = new File(fileName);
+        LogLog.debug("Renaming file " + file + " to " + rolled);
+        boolean renameSucceeded = file.renameTo(rolled);
+        try {
+            // if file rename failed, reopen file with append = true
+            this.setFile(fileName, !renameSucceeded, bufferedIO, bufferSize);
+            if (renameSucceeded) {
+                nextRollover = 0;
+            }
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            LogLog.error("setFile(" + fileName + ", " + !renameSucceeded + ") call failed.", e);
+        }
+        if (!renameSucceeded) {
+            return;
+        }
+        enqueue(new File[]{rolled});
+    }
+
+    /**
+     * Adds <code>rolled</code> to the pending files and starts draining
+     * them if nobody does.
+     */
+    private void enqueue(File[] rolled) {
+        boolean start;
+        synchronized (pending) {
+            for (int i = 0; i < rolled.length; i++) {
+                pending.addLast(new Rolled(rolled[i], fileName, maxBackupIndex, compression,
+                        compressionLevel));
+            }
+            start = !draining;
+            draining = true;
+        }
+        if (start) {
+            if (asyncRollover) {
+                RolloverWorker.execute(drainer);
+            } else {
+                drainer.run();
+            }
+        }
+    }
+
+    /**
+     * Opens <b>File</b>, then finishes the rollovers interrupted by a
+     * crash or a failed compression, see {@link #recoverRolled}.
+     *
+     * @since 1.2.18
+     */
+    public void activateOptions() {
+        super.activateOptions();
+        if (fileName != null) {
+            recoverRolled();
+        }
+    }
+
+    /**
+     * Moves the <code>File.rolling<em>N</em></code> files left by an
+     * earlier run to the backups, oldest first, so that they count
+     * against <b>MaxBackupIndex</b> instead of piling up. They are
+     * deleted when <b>MaxBackupIndex</b> is zero.
+     */
+    private void recoverRolled() {
+        File file = new File(fileName).getAbsoluteFile();
+        File dir = file.getParentFile();
+        final String prefix = file.getName() + ".rolling";
+        File[] leftovers = dir == null ? null : dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+                    return false;
+                }
+                for (int i = prefix.length(); i < name.length(); i++) {
+                    if (!Character.isDigit(name.charAt(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        if (leftovers == null || leftovers.length == 0) {
+            return;
+        }
+        if (maxBackupIndex <= 0) {
+            for (int i = 0; i < leftovers.length; i++) {
+                LogLog.warn("Deleting " + leftovers[i] + " left by an earlier rollover.");
+                if (!leftovers[i].delete()) {
+                    LogLog.error("Could not delete " + leftovers[i] + ".");
+                }
+            }
+            return;
+        }
+        Arrays.sort(leftovers, new Comparator() {
+            public int compare(Object o1, Object o2) {
+                File f1 = (File) o1;
+                File f2 = (File) o2;
+                if (f1.lastModified() != f2.lastModified()) {
+                    return f1.lastModified() < f2.lastModified() ? -1 : 1;
+                }
+                int n = f1.getName().length() - f2.getName().length();
+                return n != 0 ? n : f1.getName().compareTo(f2.getName());
+            }
+        });
+        for (int i = 0; i < leftovers.length; i++) {
+            LogLog.warn("Finishing the rollover of " + leftovers[i] + " left by an earlier run.");
+        }
+        enqueue(leftovers);
+    }
+
+    /**
+     * Waits until fewer than <code>limit</code> rolled files are
+     * pending.
+     */
+    private void awaitPending(int limit) {
+        synchronized (pending) {
+            while (pending.size() >= limit) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes the pending rolled files in the order they were rolled.
+     */
+    private void drainRolled() {
+        while (true) {
+            Rolled rolled;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    draining = false;
+                    return;
+                }
+                rolled = (Rolled) pending.getFirst();
+            }
+            try {
+                shiftBackups(rolled);
+            } catch (RuntimeException e) {
+                LogLog.error("Could not roll over " + rolled.source + ".", e);
+            } finally {
+                synchronized (pending) {
+                    pending.removeFirst();
+                    pending.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Shifts the backup files of <code>rolled.base</code> by one and
+     * moves the rolled file to the first backup, compressing it if
+     * requested.
+     */
+    private static void shiftBackups(Rolled rolled) {
+        String extension = COMPRESSION_EXTENSIONS[rolled.compression];
+        boolean renameSucceeded = true;
+
+        // Delete the oldest file, to keep Windows happy.
+        File file = new File(rolled.base + '.' + rolled.maxBackupIndex + extension);
+        if (file.exists())
+            renameSucceeded = file.delete();
+
+        // Map {(maxBackupIndex - 1), ..., 2, 1} to {maxBackupIndex, ..., 3, 2}
+        for (int i = rolled.maxBackupIndex - 1; i >= 1 && renameSucceeded; i--) {
+            file = new File(rolled.base + "." + i + extension);
+            if (file.exists()) {
+                File target = new File(rolled.base + '.' + (i + 1) + extension);
+                LogLog.debug("Renaming file " + file + " to " + target);
+                renameSucceeded = file.renameTo(target);
+            }
+        }
+        if (!renameSucceeded) {
+            LogLog.error("Could not shift the backups of " + rolled.base
+                    + ", leaving " + rolled.source + " in place.");
+            return;
+        }
+
+        File target = new File(rolled.base + ".1" + extension);
+        if (rolled.compression == COMPRESSION_NONE) {
+            LogLog.debug("Renaming file " + rolled.source + " to " + target);
+            if (!rolled.source.renameTo(target)) {
+                LogLog.error("Could not rename " + rolled.source + " to " + target + ".");
+            }
+            return;
+        }
+        LogLog.debug("Compressing file " + rolled.source + " to " + target);
+        try {
+            compress(rolled.source, target, rolled.compression, rolled.level);
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            LogLog.error("Could not compress " + rolled.source + " to " + target + ".", e);
+            target.delete();
+            return;
+        }
+        if (!rolled.source.delete()) {
+            LogLog.warn("Could not delete " + rolled.source + " after compressing it.");
+        }
+    }
+
+    private static void compress(File source, File target, int compression, final int level)
+            throws IOException {
+        InputStream in = new FileInputStream(source);
+        try {
+            Deflater deflater = null;
+            OutputStream out = new FileOutputStream(target);
+            try {
+                if (compression == COMPRESSION_GZIP) {
+                    out = new GZIPOutputStream(out, 8192) {
+                        {
+                            def.setLevel(level);
+                        }
+                    };
+                } else {
+                    deflater = new Deflater(level);
+                    out = new DeflaterOutputStream(out, deflater, 8192);
+                }
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+            } finally {
+                out.close();
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Closes the file, then waits until the rolled files still pending
+     * are moved to their backup names.
+     *
+     * @since 1.2.18
+     */
+    public void close() {
+        super.close();
+        awaitPending(1);
+    }
+
     public
     synchronized void setFile(String fileName, boolean append, boolean bufferedIO, int bufferSize)
             throws IOException {
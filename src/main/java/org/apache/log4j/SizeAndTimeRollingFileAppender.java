@@ -0,0 +1,536 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedList;
+
+import org.apache.log4j.helpers.CountingQuietWriter;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * SizeAndTimeRollingFileAppender rolls the log file over when the
+ * period given by the <b>DatePattern</b> ends, as {@link
+ * DailyRollingFileAppender} does, and also when the file grows past
+ * <b>MaxFileSize</b>, as {@link RollingFileAppender} does.
+ *
+ * <p>Rolled files are named after the file, the period they belong to
+ * and an index within that period, for example
+ * <code>app.log.2026-10-19.0</code>, <code>app.log.2026-10-19.1</code>.
+ * A rollover is a single rename: existing archives are never renamed.
+ *
+ * <p>Old archives are deleted according to the <b>MaxHistory</b>,
+ * <b>MaxAge</b> and <b>TotalSizeCap</b> options. The cleanup runs on a
+ * background thread: the directory is listed once, then the archives
+ * produced by later rollovers are added to the list kept in memory, so
+ * logging threads never scan the directory.
+ *
+ * <pre>
+ * log4j.appender.R=org.apache.log4j.SizeAndTimeRollingFileAppender
+ * log4j.appender.R.File=app.log
+ * log4j.appender.R.DatePattern='.'yyyy-MM-dd
+ * log4j.appender.R.MaxFileSize=100MB
+ * log4j.appender.R.MaxHistory=50
+ * log4j.appender.R.MaxAge=30d
+ * log4j.appender.R.TotalSizeCap=5GB
+ * </pre>
+ *
+ * @since 1.2.18
+ */
+public class SizeAndTimeRollingFileAppender extends FileAppender {
+
+    /**
+     * The date pattern, daily rollover by default.
+     */
+    private String datePattern = "'.'yyyy-MM-dd";
+
+    /**
+     * The default maximum file size is 10MB.
+     */
+    protected long maxFileSize = 10 * 1024 * 1024;
+
+    /**
+     * Maximum number of archives kept, no limit when zero.
+     */
+    protected int maxHistory = 0;
+
+    /**
+     * Maximum age of the archives in milliseconds, no limit when zero.
+     */
+    protected long maxAge = 0;
+
+    /**
+     * Maximum total size of the archives, no limit when zero.
+     */
+    protected long totalSizeCap = 0;
+
+    private SimpleDateFormat sdf;
+
+    private final RollingCalendar rc = new RollingCalendar();
+
+    private final Date now = new Date();
+
+    private long nextCheck;
+
+    /**
+     * Date part of the name of the archives of the current period.
+     */
+    private String periodSuffix;
+
+    /**
+     * Index of the next archive of the current period.
+     */
+    private int periodIndex;
+
+    private long nextRollover = 0;
+
+    /**
+     * Archives rolled but not yet seen by the cleanup, oldest first.
+     * Also used as the lock guarding <code>cleaning</code>.
+     */
+    private final LinkedList rolled = new LinkedList();
+
+    private boolean cleaning;
+
+    /**
+     * Known archives, oldest first. Only accessed by the cleanup.
+     */
+    private ArrayList archives;
+
+    /**
+     * File and date pattern the archives are named after, kept for the
+     * cleanup since closing the appender clears <code>fileName</code>.
+     */
+    private volatile File archiveBase;
+
+    private volatile String archivePattern;
+
+    private final Runnable cleaner = new Runnable() {
+        public void run() {
+            cleanUp();
+        }
+    };
+
+    /**
+     * An archive seen by the cleanup.
+     */
+    private static final class Archive {
+        final File file;
+        final long date;
+        final int index;
+        final long size;
+        final long lastModified;
+
+        Archive(File file, long date, int index) {
+            this.file = file;
+            this.date = date;
+            this.index = index;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+        }
+    }
+
+    private static final Comparator ARCHIVE_ORDER = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            Archive a1 = (Archive) o1;
+            Archive a2 = (Archive) o2;
+            if (a1.date != a2.date) {
+                return a1.date < a2.date ? -1 : 1;
+            }
+            return a1.index - a2.index;
+        }
+    };
+
+    /**
+     * The default constructor does nothing.
+     */
+    public SizeAndTimeRollingFileAppender() {
+    }
+
+    /**
+     * Returns the value of the <b>DatePattern</b> option.
+     */
+    public String getDatePattern() {
+        return datePattern;
+    }
+
+    /**
+     * The <b>DatePattern</b> takes a string in the same format as
+     * expected by {@link SimpleDateFormat}. It determines the time
+     * based rollover schedule and the date part of the archive names.
+     */
+    public void setDatePattern(String datePattern) {
+        this.datePattern = datePattern;
+    }
+
+    /**
+     * Get the maximum size that the output file is allowed to reach
+     * before being rolled over.
+     */
+    public long getMaximumFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * Set the maximum size that the output file is allowed to reach
+     * before being rolled over.
+     *
+     * @see #setMaxFileSize(String)
+     */
+    public void setMaximumFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    /**
+     * Set the maximum size that the output file is allowed to reach
+     * before being rolled over. The value may have a "KB", "MB" or "GB"
+     * suffix.
+     */
+    public void setMaxFileSize(String value) {
+        maxFileSize = OptionConverter.toFileSize(value, maxFileSize + 1);
+    }
+
+    /**
+     * Returns the value of the <b>MaxHistory</b> option.
+     */
+    public int getMaxHistory() {
+        return maxHistory;
+    }
+
+    /**
+     * Sets the maximum number of archives to keep, the oldest ones being
+     * deleted first. Zero, the default, keeps them all.
+     */
+    public void setMaxHistory(int maxHistory) {
+        this.maxHistory = maxHistory;
+    }
+
+    /**
+     * Returns the value of the <b>MaxAge</b> option in milliseconds.
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets how long archives are kept, based on their last
+     * modification time. The value takes a "s", "m", "h" or "d" suffix,
+     * for example "30d". Zero, the default, keeps them all.
+     */
+    public void setMaxAge(String value) {
+        maxAge = OptionConverter.toDuration(value, maxAge);
+    }
+
+    /**
+     * Returns the value of the <b>TotalSizeCap</b> option.
+     */
+    public long getTotalSizeCap() {
+        return totalSizeCap;
+    }
+
+    /**
+     * Sets the maximum total size of the archives, the active file not
+     * included. The value may have a "KB", "MB" or "GB" suffix. Zero,
+     * the default, means no limit.
+     */
+    public void setTotalSizeCap(String value) {
+        totalSizeCap = OptionConverter.toFileSize(value, totalSizeCap);
+    }
+
+    public void activateOptions() {
+        if (datePattern == null) {
+            LogLog.error("DatePattern option not set for appender [" + name + "].");
+            return;
+        }
+        sdf = new SimpleDateFormat(datePattern);
+        int type = DailyRollingFileAppender.computeCheckPeriod(datePattern);
+        if (type == DailyRollingFileAppender.TOP_OF_TROUBLE) {
+            LogLog.error("DatePattern [" + datePattern + "] of appender [" + name
+                    + "] does not define a rollover period.");
+            return;
+        }
+        rc.setType(type);
+        super.activateOptions();
+        if (fileName != null) {
+            File file = new File(fileName);
+            long n = System.currentTimeMillis();
+            periodSuffix = sdf.format(new Date(file.exists() ? file.lastModified() : n));
+            periodIndex = 0;
+            archiveBase = file.getAbsoluteFile();
+            archivePattern = datePattern;
+            now.setTime(n);
+            nextCheck = n;
+            scheduleCleanUp();
+        }
+    }
+
+    public synchronized void setFile(String fileName, boolean append, boolean bufferedIO,
+                                     int bufferSize) throws IOException {
+        super.setFile(fileName, append, this.bufferedIO, this.bufferSize);
+        if (append) {
+            File f = new File(fileName);
+            ((CountingQuietWriter) qw).setCount(f.length());
+        }
+    }
+
+    protected void setQWForFiles(Writer writer) {
+        this.qw = new CountingQuietWriter(writer, errorHandler);
+    }
+
+    /**
+     * Rolls the file over when the current period ends before writing
+     * the event, or when the file grew past <b>MaxFileSize</b> after
+     * writing it.
+     */
+    protected void subAppend(LoggingEvent event) {
+        if (periodSuffix != null) {
+            long n = System.currentTimeMillis();
+            if (n >= nextCheck) {
+                now.setTime(n);
+                nextCheck = rc.getNextCheckMillis(now);
+                String suffix = sdf.format(now);
+                if (!suffix.equals(periodSuffix)) {
+                    if (((CountingQuietWriter) qw).getCount() > 0) {
+                        rollOver();
+                    }
+                    periodSuffix = suffix;
+                    periodIndex = 0;
+                }
+            }
+        }
+        super.subAppend(event);
+        if (periodSuffix != null && qw != null) {
+            long size = ((CountingQuietWriter) qw).getCount();
+            if (size >= maxFileSize && size >= nextRollover) {
+                rollOver();
+            }
+        }
+    }
+
+    /**
+     * Renames the file to the next archive name of the current period
+     * and opens a fresh file.
+     */
+    void rollOver() {
+        if (qw != null) {
+            long size = ((CountingQuietWriter) qw).getCount();
+            LogLog.debug("rolling over count=" + size);
+            //   if operation fails, do not roll again until
+            //      maxFileSize more bytes are written
+            nextRollover = size + maxFileSize;
+        }
+
+        File target;
+        do {
+            target = new File(fileName + periodSuffix + '.' + periodIndex++);
+        } while (target.exists());
+
+        this.closeFile();
+
+        File file = new File(fileName);
+        LogLog.debug("Renaming file " + file + " to " + target);
+        boolean renameSucceeded = file.renameTo(target);
+        if (!renameSucceeded) {
+            LogLog.error("Failed to rename [" + fileName + "] to [" + target + "].");
+        }
+        try {
+            // if file rename failed, reopen file with append = true
+            this.setFile(fileName, !renameSucceeded, bufferedIO, bufferSize);
+            if (renameSucceeded) {
+                nextRollover = 0;
+            }
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            LogLog.error("setFile(" + fileName + ", " + !renameSucceeded + ") call failed.", e);
+        }
+        if (renameSucceeded) {
+            synchronized (rolled) {
+                rolled.addLast(target);
+            }
+            scheduleCleanUp();
+        }
+    }
+
+    private void scheduleCleanUp() {
+        if (maxHistory <= 0 && maxAge <= 0 && totalSizeCap <= 0) {
+            return;
+        }
+        synchronized (rolled) {
+            if (cleaning) {
+                return;
+            }
+            cleaning = true;
+        }
+        RolloverWorker.execute(cleaner);
+    }
+
+    /**
+     * Deletes the archives beyond the retention limits. Runs on the
+     * rollover worker, one call at a time per appender.
+     */
+    private void cleanUp() {
+        try {
+            while (true) {
+                SimpleDateFormat format = new SimpleDateFormat(archivePattern);
+                if (archives == null) {
+                    archives = scan(format);
+                }
+                synchronized (rolled) {
+                    if (rolled.isEmpty()) {
+                        break;
+                    }
+                    while (!rolled.isEmpty()) {
+                        Archive archive = toArchive((File) rolled.removeFirst(), format);
+                        if (archive != null && !contains(archive.file)) {
+                            archives.add(archive);
+                        }
+                    }
+                }
+                Collections.sort(archives, ARCHIVE_ORDER);
+            }
+            deleteExpired();
+        } catch (RuntimeException e) {
+            LogLog.error("Archive cleanup failed for appender [" + name + "].", e);
+        } finally {
+            boolean again;
+            synchronized (rolled) {
+                again = !rolled.isEmpty();
+                cleaning = again;
+                rolled.notifyAll();
+            }
+            if (again) {
+                RolloverWorker.execute(cleaner);
+            }
+        }
+    }
+
+    /**
+     * Lists the archives of the file, the only directory scan done by
+     * this appender.
+     */
+    private ArrayList scan(SimpleDateFormat format) {
+        ArrayList list = new ArrayList();
+        File file = archiveBase;
+        File dir = file.getParentFile();
+        String[] names = dir == null ? null : dir.list();
+        if (names == null) {
+            return list;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].startsWith(file.getName())) {
+                Archive archive = toArchive(new File(dir, names[i]), format);
+                if (archive != null) {
+                    list.add(archive);
+                }
+            }
+        }
+        Collections.sort(list, ARCHIVE_ORDER);
+        return list;
+    }
+
+    /**
+     * Returns the archive named <code>file</code>, or null if the name
+     * is not the name of an archive of this appender.
+     */
+    private Archive toArchive(File file, SimpleDateFormat format) {
+        String base = archiveBase.getName();
+        String name = file.getName();
+        if (!name.startsWith(base) || !file.isFile()) {
+            return null;
+        }
+        String rest = name.substring(base.length());
+        int dot = rest.lastIndexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        int index;
+        try {
+            index = Integer.parseInt(rest.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String datePart = rest.substring(0, dot);
+        ParsePosition pos = new ParsePosition(0);
+        Date date = format.parse(datePart, pos);
+        if (date == null || pos.getIndex() != datePart.length()) {
+            return null;
+        }
+        return new Archive(file, date.getTime(), index);
+    }
+
+    private boolean contains(File file) {
+        for (int i = 0; i < archives.size(); i++) {
+            if (((Archive) archives.get(i)).file.equals(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deleteExpired() {
+        long totalSize = 0;
+        for (int i = 0; i < archives.size(); i++) {
+            totalSize += ((Archive) archives.get(i)).size;
+        }
+        long oldest = System.currentTimeMillis() - maxAge;
+        while (!archives.isEmpty()) {
+            Archive archive = (Archive) archives.get(0);
+            if ((maxHistory <= 0 || archives.size() <= maxHistory)
+                    && (totalSizeCap <= 0 || totalSize <= totalSizeCap)
+                    && (maxAge <= 0 || archive.lastModified >= oldest)) {
+                break;
+            }
+            LogLog.debug("Deleting archive " + archive.file);
+            if (!archive.file.delete() && archive.file.exists()) {
+                LogLog.warn("Could not delete archive " + archive.file + ".");
+            }
+            archives.remove(0);
+            totalSize -= archive.size;
+        }
+    }
+
+    /**
+     * Closes the file, then waits for a running cleanup to complete.
+     */
+    public void close() {
+        super.close();
+        synchronized (rolled) {
+            while (cleaning) {
+                try {
+                    rolled.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
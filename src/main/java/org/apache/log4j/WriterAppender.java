@@ -22,7 +22,11 @@ import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.log4j.helpers.DeferredWaits;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorHandler;
@@ -70,6 +74,53 @@ public class WriterAppender extends AppenderSkeleton {
      */
     protected QuietWriter qw;
 
+    /**
+     * Slots of the combining mode, null when the mode is off.
+     */
+    private volatile Combiner combiner;
+
+    private boolean locationInfo = false;
+
+    private boolean adaptiveFlush = false;
+
+    /**
+     * Number of threads appending in <b>AdaptiveFlush</b> mode.
+     */
+    private final AtomicInteger appending = new AtomicInteger();
+
+    /**
+     * Set while a combiner writes a batch, or while an event is written
+     * in <b>AdaptiveFlush</b> mode, flushes are then postponed to the
+     * end of the batch. Guarded by this.
+     */
+    private boolean batching;
+
+    private boolean flushPending;
+
+    private final Runnable pendingFlush = new Runnable() {
+        public void run() {
+            flushIfIdle();
+        }
+    };
+
+    /**
+     * Events published by the threads waiting for the appender, and the
+     * lock of the thread writing them.
+     */
+    private static final class Combiner {
+        static final int SLOTS = 64;
+
+        /**
+         * Number of times a waiting thread yields before blocking on
+         * the lock.
+         */
+        static final int SPINS = 16;
+
+        final AtomicReferenceArray slots = new AtomicReferenceArray(SLOTS);
+        final ReentrantLock lock = new ReentrantLock();
+        final int[] taken = new int[SLOTS];
+    }
+
 
     /**
      * This default constructor does nothing.
@@ -123,12 +174,260 @@ public class WriterAppender extends AppenderSkeleton {
         return immediateFlush;
     }
 
+    /**
+     * Returns value of the <b>Combining</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getCombining() {
+        return combiner != null;
+    }
+
+    /**
+     * The <b>Combining</b> option takes a boolean value, false by
+     * default. When set, a thread logging to the appender does not
+     * queue on the appender lock. It publishes its event in a slot and
+     * waits; whichever thread gets the lock writes all the published
+     * events in one batch, followed by a single flush, then releases
+     * their threads. Under contention, the lock is taken once per batch
+     * instead of once per event, and the <b>ImmediateFlush</b> option
+     * costs one flush per batch. An event is still written and flushed
+     * when its logging call returns.
+     *
+     * <p>The wait happens once the logging thread has released the
+     * category locks, so that other threads can publish their events
+     * meanwhile. As events may be formatted by another thread, their
+     * message is rendered and their NDC, MDC and thread name captured
+     * before they are published, and their location when
+     * <b>LocationInfo</b> is set.
+     *
+     * @since 1.2.18
+     */
+    public void setCombining(boolean value) {
+        if (value != (combiner != null)) {
+            combiner = value ? new Combiner() : null;
+        }
+    }
+
+    /**
+     * Returns value of the <b>LocationInfo</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getLocationInfo() {
+        return locationInfo;
+    }
+
+    /**
+     * In <b>Combining</b> mode, the location of an event formatted by
+     * another thread would be wrong. Set <b>LocationInfo</b> to true if
+     * the layout prints the location, so that it is captured by the
+     * logging thread. False by default.
+     *
+     * @since 1.2.18
+     */
+    public void setLocationInfo(boolean flag) {
+        locationInfo = flag;
+    }
+
+    /**
+     * Returns value of the <b>AdaptiveFlush</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getAdaptiveFlush() {
+        return adaptiveFlush;
+    }
+
+    /**
+     * The <b>AdaptiveFlush</b> option takes a boolean value, false by
+     * default. When set, a flush requested by {@link #shouldFlush} is
+     * postponed while other events are about to be written, so that a
+     * burst of events ends with a single flush:
+     *
+     * <ul>
+     * <li>while other threads are appending, the last one to finish
+     * flushes;</li>
+     * <li>the flush waits until the logging thread is done calling
+     * appenders, and until the {@link AsyncAppender} dispatcher has
+     * dispatched the events it took from its buffer.</li>
+     * </ul>
+     *
+     * <p>An event logged alone is flushed before the logging call
+     * returns, as with <b>ImmediateFlush</b>.
+     *
+     * @since 1.2.18
+     */
+    public void setAdaptiveFlush(boolean value) {
+        adaptiveFlush = value;
+    }
+
     /**
      * Does nothing.
      */
     public void activateOptions() {
     }
 
+    /**
+     * In <b>Combining</b> mode, publishes the event for the thread
+     * holding the lock to write it, see {@link #setCombining}. In
+     * <b>AdaptiveFlush</b> mode, postpones the flush to the end of the
+     * burst, see {@link #setAdaptiveFlush}.
+     *
+     * @since 1.2.18
+     */
+    public void doAppend(final LoggingEvent event) {
+        if (Thread.holdsLock(this)) {
+            super.doAppend(event);
+            return;
+        }
+        final Combiner c = combiner;
+        if (c == null) {
+            if (adaptiveFlush) {
+                appendAdaptive(event);
+            } else {
+                super.doAppend(event);
+            }
+            return;
+        }
+        // the event may be formatted by another thread
+        event.getNDC();
+        event.getThreadName();
+        event.getMDCCopy();
+        if (locationInfo) {
+            event.getLocationInformation();
+        }
+        event.getRenderedMessage();
+        final int slot = (int) (Thread.currentThread().getId() % Combiner.SLOTS);
+        if (!c.slots.compareAndSet(slot, null, event)) {
+            // the slot is used by another thread
+            c.lock.lock();
+            try {
+                combine(c, event);
+            } finally {
+                c.lock.unlock();
+            }
+            return;
+        }
+        Runnable wait = new Runnable() {
+            public void run() {
+                awaitCombined(c, slot, event);
+            }
+        };
+        if (!DeferredWaits.defer(wait)) {
+            wait.run();
+        }
+    }
+
+    private void appendAdaptive(LoggingEvent event) {
+        appending.incrementAndGet();
+        boolean last;
+        try {
+            synchronized (this) {
+                batching = true;
+                try {
+                    super.doAppend(event);
+                } finally {
+                    batching = false;
+                }
+            }
+        } finally {
+            last = appending.decrementAndGet() == 0;
+        }
+        if (last && flushPending) {
+            if (!DeferredWaits.defer(pendingFlush)) {
+                pendingFlush.run();
+            }
+        }
+    }
+
+    /**
+     * Flushes the postponed flush unless another thread is appending,
+     * in which case that thread will flush when done.
+     */
+    private synchronized void flushIfIdle() {
+        if (flushPending && appending.get() == 0) {
+            flushPending = false;
+            if (qw != null) {
+                qw.flush();
+            }
+        }
+    }
+
+    /**
+     * Waits until the event published in <code>slot</code> is written,
+     * writing it along with the other published events if no other
+     * thread does.
+     */
+    private void awaitCombined(Combiner c, int slot, LoggingEvent event) {
+        int spins = 0;
+        while (c.slots.get(slot) == event) {
+            if (!c.lock.tryLock()) {
+                if (++spins < Combiner.SPINS) {
+                    Thread.yield();
+                    continue;
+                }
+                // the batch takes long, stop competing with its writer
+                c.lock.lock();
+            }
+            try {
+                if (c.slots.get(slot) == event) {
+                    combine(c, null);
+                }
+            } finally {
+                c.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the published events, then <code>own</code>, flushes once,
+     * then frees their slots. Called with the combiner lock held.
+     * <code>own</code> comes last because the slot of the calling
+     * thread may hold an earlier event of that thread, published while
+     * its wait was deferred.
+     */
+    private void combine(Combiner c, LoggingEvent own) {
+        int n = 0;
+        try {
+            synchronized (this) {
+                batching = true;
+                try {
+                    for (int i = 0; i < Combiner.SLOTS; i++) {
+                        LoggingEvent event = (LoggingEvent) c.slots.get(i);
+                        if (event != null) {
+                            c.taken[n++] = i;
+                            appendCombined(event);
+                        }
+                    }
+                    if (own != null) {
+                        appendCombined(own);
+                    }
+                } finally {
+                    batching = false;
+                    if (flushPending) {
+                        flushPending = false;
+                        if (qw != null) {
+                            qw.flush();
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < n; i++) {
+                c.slots.set(c.taken[i], null);
+            }
+        }
+    }
+
+    private void appendCombined(LoggingEvent event) {
+        try {
+            super.doAppend(event);
+        } catch (RuntimeException e) {
+            LogLog.error("Failed to append an event to appender [" + name + "].", e);
+        }
+    }
+
 
     /**
      * This method is called by the {@link AppenderSkeleton#doAppend}
@@ -328,7 +627,11 @@ public class WriterAppender extends AppenderSkeleton {
         }
 
         if (shouldFlush(event)) {
-            this.qw.flush();
+            if (batching) {
+                flushPending = true;
+            } else {
+                this.qw.flush();
+            }
         }
     }
 
@@ -21,6 +21,8 @@ import org.apache.log4j.spi.AppenderAttachable;
 import org.apache.log4j.spi.LoggingEvent;
 
 import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.ParameterizedMessage;
 
 import java.util.Vector;
 import java.util.Enumeration;
@@ -70,6 +72,11 @@ public class AppenderAttachableImpl implements AppenderAttachable {
                  * appender负责的即为日志的记录
                  * 有consoleAppender、FileAPppender等等 有许多的appender种类
                  */
+                if (!(appender instanceof AppenderSkeleton)) {
+                    // AppenderSkeleton captures the message only when
+                    // the event passes its threshold and filters
+                    ParameterizedMessage.capture(event);
+                }
                 appender.doAppend(event);
             }
         }
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An output stream compressing its data on a dedicated thread, in the
+ * gzip or zlib format.
+ *
+ * <p>Written bytes are copied into chunks. Full chunks are handed over
+ * to the compressing thread, so that writing costs a copy, not a
+ * compression. A few chunks are allocated once and recycled; a writer
+ * outpacing the compressor waits for a chunk to be released.
+ *
+ * <p>{@link #flush} does not hand the current chunk over. Instead, a
+ * partially filled chunk is taken by the compressing thread when no
+ * full chunk arrived for <code>syncFlushInterval</code> milliseconds,
+ * and the compressor is sync-flushed at least that often. The file can
+ * therefore be decompressed up to the data written
+ * <code>syncFlushInterval</code> milliseconds ago, even if the process
+ * dies without closing the stream.
+ *
+ * @since 1.2.18
+ */
+public class BackgroundDeflaterOutputStream extends OutputStream {
+
+    private static final int CHUNKS = 4;
+
+    private static final byte[] GZIP_HEADER = {
+            (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * Marks the end of the stream in the queue of full chunks.
+     */
+    private static final Chunk END = new Chunk(0);
+
+    private final OutputStream out;
+
+    private final boolean gzip;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private final long syncFlushInterval;
+
+    private final ArrayBlockingQueue full = new ArrayBlockingQueue(CHUNKS + 1);
+
+    private final ArrayBlockingQueue free = new ArrayBlockingQueue(CHUNKS);
+
+    /**
+     * Chunk being filled, guarded by this.
+     */
+    private Chunk current;
+
+    private boolean closed;
+
+    private final byte[] deflated;
+
+    private final Thread compressor;
+
+    private volatile IOException failure;
+
+    /**
+     * Creates a stream compressing to <code>out</code>.
+     *
+     * @param out               the stream receiving the compressed data.
+     * @param gzip              true for the gzip format, false for zlib.
+     * @param level             compression level, from 0 to 9 or -1.
+     * @param chunkSize         size of the chunks handed to the compressor.
+     * @param syncFlushInterval maximum time in milliseconds data may wait
+     *                          before being compressed and written.
+     * @param threadName        name of the compressing thread.
+     */
+    public BackgroundDeflaterOutputStream(OutputStream out, boolean gzip, int level,
+                                          int chunkSize, long syncFlushInterval,
+                                          String threadName) throws IOException {
+        this.out = out;
+        this.gzip = gzip;
+        this.deflater = new Deflater(level, gzip);
+        this.syncFlushInterval = syncFlushInterval;
+        this.deflated = new byte[chunkSize];
+        for (int i = 0; i < CHUNKS; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+        if (gzip) {
+            out.write(GZIP_HEADER);
+        }
+        compressor = new Thread(new Runnable() {
+            public void run() {
+                compress();
+            }
+        }, threadName);
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            if (current == null) {
+                current = (Chunk) take(free);
+            }
+            int n = Math.min(len, current.data.length - current.length);
+            System.arraycopy(b, off, current.data, current.length, n);
+            current.length += n;
+            off += n;
+            len -= n;
+            if (current.length == current.data.length) {
+                put(current);
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * Only reports a failure of the compressing thread, the data is
+     * written within <code>syncFlushInterval</code> milliseconds.
+     */
+    public void flush() throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Compresses the remaining data, writes the end of the stream and
+     * closes the underlying stream.
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                put(current);
+                current = null;
+            }
+            put(END);
+        }
+        try {
+            compressor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the compressor.");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    private Object take(ArrayBlockingQueue queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compressor.");
+        }
+    }
+
+    private void put(Chunk chunk) throws IOException {
+        try {
+            full.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the compressor.");
+        }
+    }
+
+    /**
+     * Takes the chunk being filled if it holds data.
+     */
+    private synchronized Chunk steal() {
+        if (current == null || current.length == 0) {
+            return null;
+        }
+        Chunk chunk = current;
+        current = null;
+        return chunk;
+    }
+
+    /**
+     * Body of the compressing thread.
+     */
+    private void compress() {
+        long lastSync = System.currentTimeMillis();
+        boolean unsynced = false;
+        try {
+            while (true) {
+                Chunk chunk;
+                if (syncFlushInterval > 0) {
+                    chunk = (Chunk) full.poll(syncFlushInterval, TimeUnit.MILLISECONDS);
+                } else {
+                    chunk = (Chunk) full.take();
+                }
+                if (chunk == END) {
+                    finish();
+                    return;
+                }
+                boolean sync = false;
+                if (chunk == null) {
+                    chunk = steal();
+                    sync = chunk != null || unsynced;
+                }
+                long now = System.currentTimeMillis();
+                if (syncFlushInterval > 0 && now - lastSync >= syncFlushInterval) {
+                    sync = true;
+                }
+                if (chunk != null) {
+                    deflate(chunk.data, chunk.length, sync ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH);
+                    chunk.length = 0;
+                    free.add(chunk);
+                    unsynced = !sync;
+                } else if (sync) {
+                    deflate(null, 0, Deflater.SYNC_FLUSH);
+                    unsynced = false;
+                }
+                if (sync) {
+                    lastSync = now;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Compressor interrupted.");
+        } finally {
+            deflater.end();
+            if (failure != null) {
+                discard();
+            }
+        }
+    }
+
+    /**
+     * After a failure, recycles the chunks until the end of the stream
+     * so that writers do not wait forever.
+     */
+    private void discard() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // already failed
+        }
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = (Chunk) full.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (chunk == END) {
+                return;
+            }
+            chunk.length = 0;
+            free.add(chunk);
+        }
+    }
+
+    private void deflate(byte[] data, int length, int flush) throws IOException {
+        if (length > 0) {
+            deflater.setInput(data, 0, length);
+            if (gzip) {
+                crc.update(data, 0, length);
+            }
+            while (!deflater.needsInput()) {
+                int n = deflater.deflate(deflated, 0, deflated.length, Deflater.NO_FLUSH);
+                if (n > 0) {
+                    out.write(deflated, 0, n);
+                }
+            }
+        }
+        if (flush == Deflater.SYNC_FLUSH) {
+            int n;
+            do {
+                n = deflater.deflate(deflated, 0, deflated.length, Deflater.SYNC_FLUSH);
+                if (n > 0) {
+                    out.write(deflated, 0, n);
+                }
+            } while (n == deflated.length);
+            out.flush();
+        }
+    }
+
+    private void finish() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(deflated, 0, deflated.length);
+            if (n > 0) {
+                out.write(deflated, 0, n);
+            }
+        }
+        if (gzip) {
+            writeInt((int) crc.getValue());
+            writeInt((int) deflater.getBytesRead());
+        }
+        out.close();
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 24) & 0xff);
+    }
+}
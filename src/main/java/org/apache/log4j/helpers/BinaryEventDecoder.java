@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.log4j.Category;
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+ * Decodes the records produced by a {@link BinaryEventEncoder} back
+ * into {@link LoggingEvent} objects.
+ *
+ * <p>Records must be decoded in the order they were encoded and the
+ * decoder must be {@link #reset} at the points where the encoder
+ * was reset. Loggers are looked up in the repository given at
+ * construction time.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @since 1.2.18
+ */
+public class BinaryEventDecoder {
+
+    static final Class[] TO_LEVEL_PARAMS = new Class[]{int.class};
+
+    private final LoggerRepository repository;
+
+    private final List loggers = new ArrayList();
+    private final List threads = new ArrayList();
+    private final List levels = new ArrayList();
+    private final List fragments = new ArrayList();
+
+    private long lastTimeStamp;
+
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    /**
+     * Create a decoder resolving logger names in <code>repository</code>.
+     */
+    public BinaryEventDecoder(LoggerRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Forget all dictionary entries and the timestamp of the previous
+     * event.
+     */
+    public void reset() {
+        loggers.clear();
+        threads.clear();
+        levels.clear();
+        fragments.clear();
+        lastTimeStamp = 0;
+    }
+
+    /**
+     * Read the length prefix of the record starting at
+     * <code>offset</code>.
+     *
+     * @return the length of the record body, or -1 if fewer than
+     * <code>length</code> bytes are available to read the prefix.
+     */
+    public static int readRecordLength(byte[] b, int offset, int length)
+            throws StreamCorruptedException {
+        int result = 0;
+        for (int shift = 0, i = 0; shift < 32; shift += 7, i++) {
+            if (i >= length) {
+                return -1;
+            }
+            int v = b[offset + i];
+            result |= (v & 0x7F) << shift;
+            if ((v & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("Malformed record length.");
+    }
+
+    /**
+     * Returns the number of bytes taken by the length prefix of a
+     * record of the given length.
+     */
+    public static int recordLengthSize(int length) {
+        int size = 1;
+        while ((length & ~0x7F) != 0) {
+            size++;
+            length >>>= 7;
+        }
+        return size;
+    }
+
+    /**
+     * Decode the record body held in <code>b</code> between
+     * <code>offset</code> and <code>offset + length</code>. The length
+     * prefix must already have been consumed.
+     */
+    public LoggingEvent decode(byte[] b, int offset, int length)
+            throws StreamCorruptedException {
+        this.buf = b;
+        this.pos = offset;
+        this.limit = offset + length;
+        try {
+            int flags = readByte();
+            long timeStamp = lastTimeStamp + readSignedVarLong();
+            lastTimeStamp = timeStamp;
+
+            Level level = readLevel();
+            Category logger = readLogger();
+            String threadName = readRef(threads);
+            String message = readString();
+
+            String ndc = null;
+            if ((flags & BinaryEventEncoder.FLAG_NDC) != 0) {
+                ndc = readString();
+            }
+            ThrowableInformation throwable = null;
+            if ((flags & BinaryEventEncoder.FLAG_THROWABLE) != 0) {
+                String[] rep = new String[readVarInt()];
+                for (int i = 0; i < rep.length; i++) {
+                    rep[i] = readString();
+                }
+                throwable = new ThrowableInformation(rep);
+            }
+            LocationInfo location;
+            if ((flags & BinaryEventEncoder.FLAG_LOCATION) != 0) {
+                String className = readRef(fragments);
+                String methodName = readRef(fragments);
+                String fileName = readRef(fragments);
+                String lineNumber = readRef(fragments);
+                location = new LocationInfo(fileName, className, methodName, lineNumber);
+            } else {
+                // Make sure that no location info is available to Layouts
+                location = new LocationInfo(null, null);
+            }
+            Hashtable properties = null;
+            if ((flags & BinaryEventEncoder.FLAG_PROPERTIES) != 0) {
+                int n = readVarInt();
+                properties = new Hashtable(n * 2);
+                for (int i = 0; i < n; i++) {
+                    String key = readRef(fragments);
+                    String value = readString();
+                    if (key != null && value != null) {
+                        properties.put(key, value);
+                    }
+                }
+            }
+            if (pos != limit) {
+                throw new StreamCorruptedException("Trailing bytes in record.");
+            }
+            return new LoggingEvent(null, logger, timeStamp, level, message,
+                    threadName, throwable, ndc, location, properties);
+        } finally {
+            this.buf = null;
+        }
+    }
+
+    private Level readLevel() throws StreamCorruptedException {
+        int ref = readVarInt();
+        if (ref >= BinaryEventEncoder.REF_BASE) {
+            return (Level) lookup(levels, ref);
+        }
+        if (ref == BinaryEventEncoder.REF_NULL) {
+            throw new StreamCorruptedException("Missing level.");
+        }
+        int p = (int) readSignedVarLong();
+        String levelStr = readString();
+        String className = readString();
+        Level level = toLevel(p, levelStr, className);
+        if (ref == BinaryEventEncoder.REF_NEW) {
+            levels.add(level);
+        }
+        return level;
+    }
+
+    private static Level toLevel(int p, String levelStr, String className) {
+        if (className != null) {
+            try {
+                Class clazz = Loader.loadClass(className);
+                Method m = clazz.getDeclaredMethod("toLevel", TO_LEVEL_PARAMS);
+                return (Level) m.invoke(null, new Object[]{new Integer(p)});
+            } catch (Exception e) {
+                LogLog.warn("Level deserialization failed, reverting to default.", e);
+            }
+        }
+        Level level = Level.toLevel(levelStr, null);
+        if (level == null || level.toInt() != p) {
+            level = Level.toLevel(p);
+        }
+        return level;
+    }
+
+    private Category readLogger() throws StreamCorruptedException {
+        int ref = readVarInt();
+        if (ref >= BinaryEventEncoder.REF_BASE) {
+            return (Category) lookup(loggers, ref);
+        }
+        if (ref == BinaryEventEncoder.REF_NULL) {
+            throw new StreamCorruptedException("Missing logger name.");
+        }
+        Category logger = repository.getLogger(readString());
+        if (ref == BinaryEventEncoder.REF_NEW) {
+            loggers.add(logger);
+        }
+        return logger;
+    }
+
+    private String readRef(List dictionary) throws StreamCorruptedException {
+        int ref = readVarInt();
+        if (ref >= BinaryEventEncoder.REF_BASE) {
+            return (String) lookup(dictionary, ref);
+        }
+        if (ref == BinaryEventEncoder.REF_NULL) {
+            return null;
+        }
+        String s = readString();
+        if (ref == BinaryEventEncoder.REF_NEW) {
+            dictionary.add(s);
+        }
+        return s;
+    }
+
+    private static Object lookup(List dictionary, int ref)
+            throws StreamCorruptedException {
+        int index = ref - BinaryEventEncoder.REF_BASE;
+        if (index >= dictionary.size()) {
+            throw new StreamCorruptedException("Unknown dictionary entry " + index + ".");
+        }
+        return dictionary.get(index);
+    }
+
+    private String readString() throws StreamCorruptedException {
+        int len = readVarInt() - 1;
+        if (len < 0) {
+            return null;
+        }
+        if (len > limit - pos) {
+            throw new StreamCorruptedException("String exceeds record.");
+        }
+        String s = new String(buf, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+
+    private int readByte() throws StreamCorruptedException {
+        if (pos >= limit) {
+            throw new StreamCorruptedException("Unexpected end of record.");
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private int readVarInt() throws StreamCorruptedException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int v = readByte();
+            result |= (v & 0x7F) << shift;
+            if ((v & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer.");
+    }
+
+    private long readSignedVarLong() throws StreamCorruptedException {
+        long z = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int v = readByte();
+            z |= (long) (v & 0x7F) << shift;
+            if ((v & 0x80) == 0) {
+                return (z >>> 1) ^ -(z & 1);
+            }
+        }
+        throw new StreamCorruptedException("Malformed variable length integer.");
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Encodes {@link LoggingEvent} objects into a compact binary form.
+ *
+ * <p>Each event is appended to an internal buffer as a record
+ * prefixed by its length. Timestamps are written as variable length
+ * deltas from the previous event. Logger names, thread names, levels
+ * and location fragments are written in full only the first time they
+ * are seen, subsequent occurrences refer to the first one by index.
+ * Consequently, records can only be decoded in order, by a {@link
+ * BinaryEventDecoder} that has seen every record since the last call
+ * to {@link #reset}.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @since 1.2.18
+ */
+public class BinaryEventEncoder {
+
+    /**
+     * Reference code for a <code>null</code> string.
+     */
+    static final int REF_NULL = 0;
+
+    /**
+     * Reference code for a string which follows inline and is added
+     * to the dictionary.
+     */
+    static final int REF_NEW = 1;
+
+    /**
+     * Reference code for a string which follows inline but is not
+     * added to the dictionary because the dictionary is full.
+     */
+    static final int REF_LITERAL = 2;
+
+    /**
+     * Dictionary indexes are written offset by this value.
+     */
+    static final int REF_BASE = 3;
+
+    static final int FLAG_NDC = 1;
+    static final int FLAG_THROWABLE = 2;
+    static final int FLAG_LOCATION = 4;
+    static final int FLAG_PROPERTIES = 8;
+
+    /**
+     * Maximum number of entries held in each dictionary.
+     */
+    static final int MAX_DICTIONARY_SIZE = 4096;
+
+    /**
+     * Space reserved in front of a record for its length prefix.
+     */
+    private static final int LENGTH_RESERVE = 5;
+
+    private final boolean locationInfo;
+
+    private final Map loggers = new HashMap();
+    private final Map threads = new HashMap();
+    private final Map levels = new IdentityHashMap();
+    private final Map fragments = new HashMap();
+
+    private long lastTimeStamp;
+
+    private byte[] buf;
+    private int count;
+
+    /**
+     * Create an encoder which does not write location information.
+     */
+    public BinaryEventEncoder() {
+        this(false);
+    }
+
+    /**
+     * Create an encoder.
+     *
+     * @param locationInfo if true, the location information of each
+     *                     event is encoded as well.
+     */
+    public BinaryEventEncoder(boolean locationInfo) {
+        this.locationInfo = locationInfo;
+        this.buf = new byte[1024];
+    }
+
+    /**
+     * Forget all dictionary entries and the timestamp of the previous
+     * event. The matching decoder must be reset at the same point of
+     * the stream. Buffered records are left untouched.
+     */
+    public void reset() {
+        loggers.clear();
+        threads.clear();
+        levels.clear();
+        fragments.clear();
+        lastTimeStamp = 0;
+    }
+
+    /**
+     * Discard the buffered records.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Returns the internal buffer. Only the first {@link #size} bytes
+     * are meaningful.
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Returns the number of buffered bytes.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Append <code>event</code> to the buffer as a length prefixed
+     * record.
+     *
+     * @return the size of the buffer after the record was added.
+     */
+    public int encode(LoggingEvent event) {
+        int start = count;
+        ensureCapacity(LENGTH_RESERVE);
+        count += LENGTH_RESERVE;
+
+        String ndc = event.getNDC();
+        String[] throwable = event.getThrowableStrRep();
+        LocationInfo location = null;
+        if (locationInfo) {
+            location = event.getLocationInformation();
+        }
+        Map properties = event.getProperties();
+
+        int flags = 0;
+        if (ndc != null) {
+            flags |= FLAG_NDC;
+        }
+        if (throwable != null) {
+            flags |= FLAG_THROWABLE;
+        }
+        if (location != null) {
+            flags |= FLAG_LOCATION;
+        }
+        if (!properties.isEmpty()) {
+            flags |= FLAG_PROPERTIES;
+        }
+        ensureCapacity(1);
+        buf[count++] = (byte) flags;
+
+        long timeStamp = event.getTimeStamp();
+        writeSignedVarLong(timeStamp - lastTimeStamp);
+        lastTimeStamp = timeStamp;
+
+        writeLevel(event.getLevel());
+        writeRef(loggers, event.getLoggerName());
+        writeRef(threads, event.getThreadName());
+        writeString(event.getRenderedMessage());
+
+        if (ndc != null) {
+            writeString(ndc);
+        }
+        if (throwable != null) {
+            writeVarInt(throwable.length);
+            for (int i = 0; i < throwable.length; i++) {
+                writeString(throwable[i]);
+            }
+        }
+        if (location != null) {
+            writeRef(fragments, location.getClassName());
+            writeRef(fragments, location.getMethodName());
+            writeRef(fragments, location.getFileName());
+            writeRef(fragments, location.getLineNumber());
+        }
+        if (!properties.isEmpty()) {
+            writeVarInt(properties.size());
+            Iterator iter = properties.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                writeRef(fragments, String.valueOf(entry.getKey()));
+                Object value = entry.getValue();
+                writeString(value == null ? null : value.toString());
+            }
+        }
+
+        // Move the record next to its length prefix.
+        int length = count - start - LENGTH_RESERVE;
+        int prefix = varIntSize(length);
+        count = start;
+        writeVarInt(length);
+        System.arraycopy(buf, start + LENGTH_RESERVE, buf, start + prefix, length);
+        count = start + prefix + length;
+        return count;
+    }
+
+    private void writeLevel(Level level) {
+        Integer index = (Integer) levels.get(level);
+        if (index != null) {
+            writeVarInt(REF_BASE + index.intValue());
+            return;
+        }
+        if (levels.size() < MAX_DICTIONARY_SIZE) {
+            levels.put(level, new Integer(levels.size()));
+            writeVarInt(REF_NEW);
+        } else {
+            writeVarInt(REF_LITERAL);
+        }
+        writeSignedVarLong(level.toInt());
+        writeString(level.toString());
+        Class clazz = level.getClass();
+        writeString(clazz == Level.class ? null : clazz.getName());
+    }
+
+    private void writeRef(Map dictionary, String s) {
+        if (s == null) {
+            writeVarInt(REF_NULL);
+            return;
+        }
+        Integer index = (Integer) dictionary.get(s);
+        if (index != null) {
+            writeVarInt(REF_BASE + index.intValue());
+            return;
+        }
+        if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.put(s, new Integer(dictionary.size()));
+            writeVarInt(REF_NEW);
+        } else {
+            writeVarInt(REF_LITERAL);
+        }
+        writeString(s);
+    }
+
+    /**
+     * Strings are written as their UTF-8 length plus one, followed by
+     * the UTF-8 bytes. A length of zero denotes <code>null</code>.
+     */
+    private void writeString(String s) {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        int len = s.length();
+        boolean ascii = true;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            writeVarInt(len + 1);
+            ensureCapacity(len);
+            for (int i = 0; i < len; i++) {
+                buf[count++] = (byte) s.charAt(i);
+            }
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+    }
+
+    private void writeVarInt(int v) {
+        ensureCapacity(5);
+        while ((v & ~0x7F) != 0) {
+            buf[count++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[count++] = (byte) v;
+    }
+
+    private void writeSignedVarLong(long v) {
+        // zig-zag encoding keeps small negative deltas small
+        long z = (v << 1) ^ (v >> 63);
+        ensureCapacity(10);
+        while ((z & ~0x7FL) != 0) {
+            buf[count++] = (byte) ((z & 0x7F) | 0x80);
+            z >>>= 7;
+        }
+        buf[count++] = (byte) z;
+    }
+
+    private static int varIntSize(int v) {
+        int size = 1;
+        while ((v & ~0x7F) != 0) {
+            size++;
+            v >>>= 7;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            int newLength = Math.max(buf.length << 1, count + extra);
+            byte[] newBuf = new byte[newLength];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+    }
+}
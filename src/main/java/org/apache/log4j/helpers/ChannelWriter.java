@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * ChannelWriter encodes characters into a reusable direct
+ * {@link ByteBuffer} which is written to a {@link FileChannel} when it
+ * is full or flushed. It replaces the chain of
+ * <code>OutputStreamWriter</code>, <code>BufferedWriter</code> and
+ * <code>FileOutputStream</code> used by {@link org.apache.log4j.FileAppender}.
+ *
+ * <p>Each call to a <code>write</code> method is encoded as a whole,
+ * a surrogate pair split across two calls is replaced like any other
+ * malformed input. Unless it does not fit in the buffer, the text of
+ * one call is written to the channel in a single write, so that events
+ * are not split between two writes.
+ *
+ * <p>With a preallocation size, the file is extended by that many
+ * bytes whenever the data would go past its end, instead of growing
+ * with each write, and truncated back to the written data when the
+ * writer is closed.
+ *
+ * <p>This class is not thread safe, the enclosing appender serializes
+ * access to it.
+ *
+ * @since 1.2.18
+ */
+public class ChannelWriter extends Writer {
+
+    private final WritableByteChannel channel;
+    private final FileChannel fileChannel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private final char[] single = new char[1];
+    private final long preallocationSize;
+
+    /**
+     * Length of the file, beyond the written data when preallocating.
+     */
+    private long allocated;
+
+    /**
+     * Number of bytes written to the file, including its length when
+     * it was opened.
+     */
+    private long written;
+
+    /**
+     * @param channel    channel to write to, positioned at the end of
+     *                   the file.
+     * @param charset    charset used to encode characters.
+     * @param bufferSize size of the byte buffer.
+     */
+    public ChannelWriter(FileChannel channel, Charset charset, int bufferSize)
+            throws IOException {
+        this(channel, charset, bufferSize, 0);
+    }
+
+    /**
+     * @param channel           channel to write to, positioned at the end
+     *                          of the data, which may be followed by
+     *                          preallocated space.
+     * @param charset           charset used to encode characters.
+     * @param bufferSize        size of the byte buffer.
+     * @param preallocationSize number of bytes the file is extended by
+     *                          when full, no preallocation when zero.
+     */
+    public ChannelWriter(FileChannel channel, Charset charset, int bufferSize,
+                         long preallocationSize) throws IOException {
+        this(channel, channel, charset, bufferSize, preallocationSize);
+    }
+
+    /**
+     * Creates a writer to a channel which is not a file, such as a pipe
+     * or a socket. The count starts at zero.
+     *
+     * @param channel    channel to write to.
+     * @param charset    charset used to encode characters.
+     * @param bufferSize size of the byte buffer.
+     */
+    public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize)
+            throws IOException {
+        this(channel, null, charset, bufferSize, 0);
+    }
+
+    private ChannelWriter(WritableByteChannel channel, FileChannel fileChannel,
+                          Charset charset, int bufferSize, long preallocationSize)
+            throws IOException {
+        this.channel = channel;
+        this.fileChannel = fileChannel;
+        this.preallocationSize = preallocationSize;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int size = Math.max(bufferSize, (int) Math.ceil(encoder.maxBytesPerChar()) * 2);
+        this.buffer = ByteBuffer.allocateDirect(size);
+        this.written = fileChannel != null ? fileChannel.position() : 0;
+        this.allocated = preallocationSize > 0 ? fileChannel.size() : 0;
+    }
+
+    public void write(int c) throws IOException {
+        single[0] = (char) c;
+        encode(CharBuffer.wrap(single));
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    public void write(String str) throws IOException {
+        encode(CharBuffer.wrap(str));
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(str, off, off + len));
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        int start = buffer.position();
+        int from = in.position();
+        CoderResult result;
+        do {
+            result = encoder.encode(in, buffer, true);
+            if (result.isOverflow()) {
+                if (start > 0) {
+                    // write the previous data alone and start over with an empty buffer
+                    buffer.position(start);
+                    drain();
+                    encoder.reset();
+                    in.position(from);
+                    start = 0;
+                } else {
+                    drain();
+                }
+            }
+        } while (!result.isUnderflow());
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+        encoder.reset();
+    }
+
+    /**
+     * Write the content of the buffer to the channel.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        if (preallocationSize > 0 && written + buffer.remaining() > allocated) {
+            allocated = written + buffer.remaining() + preallocationSize;
+            // writing the last byte extends the file without moving the position
+            fileChannel.write(ByteBuffer.allocate(1), allocated - 1);
+        }
+        int n = buffer.remaining();
+        writeBuffer(buffer);
+        written += n;
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining content of <code>buffer</code> to the channel.
+     * Subclasses may override this method to coordinate with other
+     * writers of the same channel, or to write it elsewhere.
+     *
+     * @param buffer encoded bytes, flipped for reading.
+     */
+    protected void writeBuffer(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the size of the file in bytes, counting the bytes still
+     * held in the buffer.
+     */
+    public long getCount() {
+        return written + buffer.position();
+    }
+
+    /**
+     * Writes buffered bytes to the channel. The data is handed to the
+     * operating system but not forced to the storage device.
+     */
+    public void flush() throws IOException {
+        if (buffer.position() > 0) {
+            drain();
+        }
+    }
+
+    /**
+     * Flushes the buffer and, when preallocating, truncates the file to
+     * the written data before closing the channel.
+     */
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            try {
+                flush();
+                if (preallocationSize > 0 && allocated > written) {
+                    fileChannel.truncate(written);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
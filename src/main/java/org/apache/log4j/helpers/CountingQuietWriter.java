@@ -46,7 +46,18 @@ public class CountingQuietWriter extends QuietWriter {
         }
     }
 
+    /**
+     * Returns the number of characters written, or the number of bytes
+     * if the underlying writer is a {@link ChannelWriter} or a
+     * {@link MappedWriter}.
+     */
     public long getCount() {
+        if (out instanceof ChannelWriter) {
+            return ((ChannelWriter) out).getCount();
+        }
+        if (out instanceof MappedWriter) {
+            return ((MappedWriter) out).getCount();
+        }
         return count;
     }
 
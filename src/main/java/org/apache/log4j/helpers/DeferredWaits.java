@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.ArrayList;
+
+/**
+ * Lets appenders postpone a wait until the logging thread has
+ * released the category locks taken by
+ * {@link org.apache.log4j.Category#callAppenders}. An appender waiting
+ * for a group commit while holding these locks would prevent other
+ * threads from joining the group.
+ *
+ * @since 1.2.18
+ */
+public final class DeferredWaits {
+
+    /**
+     * Set once an appender deferred a wait, until then categories do
+     * not track the calling threads.
+     */
+    private static volatile boolean used;
+
+    private static final ThreadLocal state = new ThreadLocal();
+
+    private static final class State {
+        int depth;
+        final ArrayList waits = new ArrayList();
+    }
+
+    private DeferredWaits() {
+    }
+
+    /**
+     * Returns true if some appender ever deferred a wait.
+     */
+    public static boolean isUsed() {
+        return used;
+    }
+
+    /**
+     * Called when the current thread starts calling appenders.
+     */
+    public static void begin() {
+        State s = (State) state.get();
+        if (s == null) {
+            s = new State();
+            state.set(s);
+        }
+        s.depth++;
+    }
+
+    /**
+     * Called when the current thread is done calling appenders, runs
+     * the deferred waits once the outermost call completes.
+     */
+    public static void end() {
+        State s = (State) state.get();
+        if (--s.depth > 0 || s.waits.isEmpty()) {
+            return;
+        }
+        try {
+            for (int i = 0; i < s.waits.size(); i++) {
+                ((Runnable) s.waits.get(i)).run();
+            }
+        } finally {
+            s.waits.clear();
+        }
+    }
+
+    /**
+     * Defers <code>wait</code> until the current thread is done calling
+     * appenders.
+     *
+     * @return false if the current thread is not calling appenders
+     * through a category, in which case the caller should wait right
+     * away.
+     */
+    public static boolean defer(Runnable wait) {
+        used = true;
+        State s = (State) state.get();
+        if (s == null || s.depth == 0) {
+            return false;
+        }
+        s.waits.add(wait);
+        return true;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * MappedWriter writes characters into memory mapped regions of a
+ * file. Once half of the current region is used, the next region is
+ * mapped by a background thread so that writing remains a memory copy.
+ *
+ * <p>Mapping extends the file to the end of the mapped region. The
+ * file is truncated to the length actually written when the writer is
+ * closed. Should the application crash, the file ends with zero bytes
+ * up to the end of the last mapped region, which the caller has to
+ * skip when opening the file again.
+ *
+ * <p>Mapped regions are released by the garbage collector. On systems
+ * which do not allow truncating a mapped file, the file keeps its
+ * mapped length and a warning is logged.
+ *
+ * <p>This class is not thread safe, the enclosing appender serializes
+ * access to it.
+ *
+ * @since 1.2.18
+ */
+public class MappedWriter extends Writer {
+
+    /**
+     * Maps regions ahead of the writers.
+     */
+    private static final ExecutorService mapper =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "log4j-mapper");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final int regionSize;
+
+    /**
+     * Encoded bytes waiting to be copied to the mapped region.
+     */
+    private final ByteBuffer scratch;
+    private final char[] single = new char[1];
+
+    /**
+     * File offset of the current region.
+     */
+    private long regionStart;
+    private MappedByteBuffer region;
+
+    /**
+     * The following region, being mapped.
+     */
+    private Future next;
+
+    /**
+     * @param channel    a readable and writable channel.
+     * @param position   offset at which writing starts, the file is
+     *                   truncated to it.
+     * @param charset    charset used to encode characters.
+     * @param regionSize size of the mapped regions.
+     * @param bufferSize size of the buffer holding encoded characters
+     *                   before they are copied to the mapped region.
+     */
+    public MappedWriter(FileChannel channel, long position, Charset charset,
+                        int regionSize, int bufferSize) throws IOException {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.regionSize = regionSize;
+        this.scratch = ByteBuffer.allocate(
+                Math.max(bufferSize, (int) Math.ceil(encoder.maxBytesPerChar()) * 2));
+        if (channel.size() > position) {
+            channel.truncate(position);
+        }
+        regionStart = position;
+        region = map(regionStart);
+    }
+
+    private MappedByteBuffer map(long position) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+    }
+
+    public void write(int c) throws IOException {
+        single[0] = (char) c;
+        encode(CharBuffer.wrap(single));
+    }
+
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    public void write(String str) throws IOException {
+        encode(CharBuffer.wrap(str));
+    }
+
+    public void write(String str, int off, int len) throws IOException {
+        encode(CharBuffer.wrap(str, off, off + len));
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(in, scratch, true);
+            if (result.isOverflow()) {
+                copy();
+            }
+        } while (!result.isUnderflow());
+        while (encoder.flush(scratch).isOverflow()) {
+            copy();
+        }
+        encoder.reset();
+        copy();
+    }
+
+    /**
+     * Copy encoded bytes to the mapped regions.
+     */
+    private void copy() throws IOException {
+        scratch.flip();
+        while (scratch.hasRemaining()) {
+            if (!region.hasRemaining()) {
+                nextRegion();
+            }
+            int n = Math.min(scratch.remaining(), region.remaining());
+            int limit = scratch.limit();
+            scratch.limit(scratch.position() + n);
+            region.put(scratch);
+            scratch.limit(limit);
+        }
+        scratch.clear();
+        if (next == null && region.position() > regionSize / 2) {
+            final long position = regionStart + regionSize;
+            next = mapper.submit(new Callable() {
+                public Object call() throws IOException {
+                    return map(position);
+                }
+            });
+        }
+    }
+
+    private void nextRegion() throws IOException {
+        MappedByteBuffer mapped = null;
+        if (next != null) {
+            try {
+                mapped = (MappedByteBuffer) next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while mapping " + channel);
+            } catch (ExecutionException e) {
+                LogLog.debug("Mapping ahead failed, mapping again.", e.getCause());
+            }
+            next = null;
+        }
+        regionStart += regionSize;
+        region = mapped != null ? mapped : map(regionStart);
+    }
+
+    /**
+     * Returns the number of bytes written to the file.
+     */
+    public long getCount() {
+        return regionStart + region.position();
+    }
+
+    /**
+     * Does nothing, written bytes are already visible to other
+     * processes reading the file.
+     */
+    public void flush() {
+    }
+
+    /**
+     * Forces the written bytes to the storage device. Bytes of previous
+     * regions are forced through the channel, which most systems
+     * honour for mapped files.
+     */
+    public void force() throws IOException {
+        region.force();
+        channel.force(false);
+    }
+
+    /**
+     * Truncates the file to the length actually written and closes the
+     * channel.
+     */
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            if (next != null) {
+                try {
+                    next.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // nothing was written to the region
+                }
+                next = null;
+            }
+            try {
+                channel.truncate(getCount());
+            } catch (IOException e) {
+                LogLog.warn("Could not truncate mapped file to " + getCount() + " bytes.", e);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
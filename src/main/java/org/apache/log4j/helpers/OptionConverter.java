@@ -280,6 +280,42 @@ public class OptionConverter {
         return dEfault;
     }
 
+    /**
+     * Converts a duration such as "30s", "15m", "12h" or "7d" to
+     * milliseconds. A value without suffix is taken as milliseconds.
+     *
+     * @since 1.2.18
+     */
+    public
+    static long toDuration(String value, long dEfault) {
+        if (value == null)
+            return dEfault;
+
+        String s = value.trim().toUpperCase();
+        long multiplier = 1;
+        if (s.endsWith("MS")) {
+            s = s.substring(0, s.length() - 2);
+        } else if (s.endsWith("S")) {
+            multiplier = 1000;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("M")) {
+            multiplier = 60 * 1000;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("H")) {
+            multiplier = 60 * 60 * 1000;
+            s = s.substring(0, s.length() - 1);
+        } else if (s.endsWith("D")) {
+            multiplier = 24 * 60 * 60 * 1000;
+            s = s.substring(0, s.length() - 1);
+        }
+        try {
+            return Long.valueOf(s.trim()).longValue() * multiplier;
+        } catch (NumberFormatException e) {
+            LogLog.error("[" + value + "] not in expected format.", e);
+        }
+        return dEfault;
+    }
+
     /**
      * Find the value corresponding to <code>key</code> in
      * <code>props</code>. Then perform variable substitution on the
@@ -17,14 +17,14 @@
 package org.apache.log4j.helpers;
 
 import org.apache.log4j.Layout;
+import org.apache.log4j.ParameterizedMessage;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LocationInfo;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Map;
-import java.util.Arrays;
+import java.util.Hashtable;
 
 // Contributors:   Nelson Minar <(nelson@monkey.org>
 //                 Igor E. Poteryaev <jah@mail.ru>
@@ -385,6 +385,19 @@ public class PatternParser {
             this.type = type;
         }
 
+        public void format(StringBuffer sbuf, LoggingEvent event) {
+            // messages holding a primitive argument are formatted in
+            // place when neither padding nor truncation applies
+            if (type == MESSAGE_CONVERTER && min < 0 && max == 0x7FFFFFFF) {
+                Object message = event.getMessage();
+                if (message instanceof ParameterizedMessage
+                        && ((ParameterizedMessage) message).appendTo(sbuf)) {
+                    return;
+                }
+            }
+            super.format(sbuf, event);
+        }
+
         public String convert(LoggingEvent event) {
             //根据type决定解析逻辑 返回内容
             switch (type) {
@@ -454,21 +467,11 @@ public class PatternParser {
 
         public String convert(LoggingEvent event) {
             if (key == null) {
-                StringBuffer buf = new StringBuffer("{");
-                Map properties = event.getProperties();
-                if (properties.size() > 0) {
-                    Object[] keys = properties.keySet().toArray();
-                    Arrays.sort(keys);
-                    for (int i = 0; i < keys.length; i++) {
-                        buf.append('{');
-                        buf.append(keys[i]);
-                        buf.append(',');
-                        buf.append(properties.get(keys[i]));
-                        buf.append('}');
-                    }
+                Hashtable context = event.getMDCContext();
+                if (context instanceof VersionedHashtable) {
+                    return ((VersionedHashtable) context).toSortedString();
                 }
-                buf.append('}');
-                return buf.toString();
+                return VersionedHashtable.toSortedString(context);
             } else {
                 Object val = event.getMDC(key);
                 if (val == null) {
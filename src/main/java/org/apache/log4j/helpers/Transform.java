@@ -31,6 +31,35 @@ public class Transform {
    private static final String CDATA_EMBEDED_END = CDATA_END + CDATA_PSEUDO_END + CDATA_START;
    private static final int CDATA_END_LEN = CDATA_END.length();
 
+  /**
+   * Entity references indexed by character, <code>null</code> for
+   * characters which need no escaping. Only characters up to
+   * <code>'&gt;'</code> can require escaping.
+   */
+  private static final String[] TAG_ESCAPES = new String['>' + 1];
+
+  static {
+    TAG_ESCAPES['<'] = "&lt;";
+    TAG_ESCAPES['>'] = "&gt;";
+    TAG_ESCAPES['&'] = "&amp;";
+    TAG_ESCAPES['"'] = "&quot;";
+  }
+
+  /**
+   * Returns the index of the first character of <code>input</code>
+   * that needs escaping, or -1 if there is none.
+   */
+  private static int indexOfTag(final String input, final int from) {
+    int len = input.length();
+    for (int i = from; i < len; i++) {
+      char ch = input.charAt(i);
+      if (ch <= '>' && TAG_ESCAPES[ch] != null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   /**
    * This method takes a string which may contain HTML tags (ie,
    * &lt;b&gt;, &lt;table&gt;, etc) and replaces any
@@ -44,39 +73,51 @@ public class Transform {
     //Check if the string is null, zero length or devoid of special characters
     // if so, return what was sent in.
 
-    if(input == null
-       || input.length() == 0
-       || (input.indexOf('"') == -1 &&
-           input.indexOf('&') == -1 &&
-           input.indexOf('<') == -1 &&
-           input.indexOf('>') == -1)) {
+    if (input == null) {
+      return input;
+    }
+    int first = indexOfTag(input, 0);
+    if (first < 0) {
       return input;
     }
-
-    //Use a StringBuffer in lieu of String concatenation -- it is
-    //much more efficient this way.
 
     StringBuffer buf = new StringBuffer(input.length() + 6);
-    char ch = ' ';
+    appendEscapingTags(buf, input, first);
+    return buf.toString();
+  }
 
-    int len = input.length();
-    for(int i=0; i < len; i++) {
-      ch = input.charAt(i);
-      if (ch > '>') {
-          buf.append(ch);
-      } else if(ch == '<') {
-	      buf.append("&lt;");
-      } else if(ch == '>') {
-	      buf.append("&gt;");
-      } else if(ch == '&') {
-	      buf.append("&amp;");
-      } else if(ch == '"') {
-	      buf.append("&quot;");
-      } else {
-	      buf.append(ch);
-      }
+  /**
+   * Appends <code>input</code> to <code>buf</code>, replacing any
+   * '<',  '>' , '&' or '"' characters with respective predefined
+   * entity references. The input is scanned once and no intermediate
+   * string is created, so this method should be preferred to
+   * {@link #escapeTags} when the result is appended to a buffer.
+   *
+   * @param buf   buffer receiving the escaped text.
+   * @param input The text to be converted, "null" is appended if
+   *              <code>null</code>.
+   * @since 1.2.18
+   */
+  static public void appendEscapingTags(final StringBuffer buf,
+                                        final String input) {
+    if (input == null) {
+      buf.append(input);
+    } else {
+      appendEscapingTags(buf, input, indexOfTag(input, 0));
     }
-    return buf.toString();
+  }
+
+  private static void appendEscapingTags(final StringBuffer buf,
+                                         final String input,
+                                         int next) {
+    int start = 0;
+    while (next >= 0) {
+      buf.append(input, start, next);
+      buf.append(TAG_ESCAPES[input.charAt(next)]);
+      start = next + 1;
+      next = indexOfTag(input, start);
+    }
+    buf.append(input, start, input.length());
   }
 
   /**
@@ -97,7 +138,7 @@ public class Transform {
           } else {
               int start = 0;
               while (end > -1) {
-                  buf.append(str.substring(start, end));
+                  buf.append(str, start, end);
                   buf.append(CDATA_EMBEDED_END);
                   start = end + CDATA_END_LEN;
                   if (start < str.length()) {
@@ -106,7 +147,7 @@ public class Transform {
                       return;
                   }
               }
-              buf.append(str.substring(start));
+              buf.append(str, start, str.length());
           }
       }
   }
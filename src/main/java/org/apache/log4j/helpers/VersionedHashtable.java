@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * <code>VersionedHashtable</code> is the hashtable holding the MDC of
+ * a thread. Its version is incremented on each modification made
+ * through the map methods so that renderings of its content can be
+ * cached while the map is unchanged.
+ *
+ * <p>Removals made through the iterators of the collection views are
+ * not tracked.
+ *
+ * <p>Instances are serialized as plain {@link Hashtable} objects so
+ * that logging events remain readable by older versions of log4j.
+ *
+ * @since 1.2.18
+ */
+public final class VersionedHashtable extends Hashtable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient long version;
+
+    private transient long sortedVersion = -1;
+    private transient String sorted;
+
+    public VersionedHashtable(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * Returns the number of modifications made to this map.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the content of this map sorted by key, in the form
+     * <code>{{key1,value1}{key2,value2}}</code>. The result is cached
+     * until the map is modified.
+     */
+    public synchronized String toSortedString() {
+        if (sortedVersion != version || sorted == null) {
+            sorted = toSortedString(this);
+            sortedVersion = version;
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the content of <code>map</code> sorted by key, in the
+     * form <code>{{key1,value1}{key2,value2}}</code>. Returns
+     * <code>{}</code> if <code>map</code> is <code>null</code> or empty.
+     */
+    public static String toSortedString(final Map map) {
+        if (map == null || map.isEmpty()) {
+            return "{}";
+        }
+        Object[] keys = map.keySet().toArray();
+        Arrays.sort(keys);
+        StringBuffer buf = new StringBuffer("{");
+        for (int i = 0; i < keys.length; i++) {
+            buf.append('{');
+            buf.append(keys[i]);
+            buf.append(',');
+            buf.append(map.get(keys[i]));
+            buf.append('}');
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    public synchronized Object put(Object key, Object value) {
+        version++;
+        return super.put(key, value);
+    }
+
+    public synchronized Object remove(Object key) {
+        version++;
+        return super.remove(key);
+    }
+
+    public synchronized void clear() {
+        version++;
+        super.clear();
+    }
+
+    public synchronized Object putIfAbsent(Object key, Object value) {
+        version++;
+        return super.putIfAbsent(key, value);
+    }
+
+    public synchronized boolean remove(Object key, Object value) {
+        version++;
+        return super.remove(key, value);
+    }
+
+    public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+        version++;
+        return super.replace(key, oldValue, newValue);
+    }
+
+    public synchronized Object replace(Object key, Object value) {
+        version++;
+        return super.replace(key, value);
+    }
+
+    public synchronized void replaceAll(BiFunction function) {
+        version++;
+        super.replaceAll(function);
+    }
+
+    public synchronized Object computeIfAbsent(Object key, Function mappingFunction) {
+        version++;
+        return super.computeIfAbsent(key, mappingFunction);
+    }
+
+    public synchronized Object computeIfPresent(Object key, BiFunction remappingFunction) {
+        version++;
+        return super.computeIfPresent(key, remappingFunction);
+    }
+
+    public synchronized Object compute(Object key, BiFunction remappingFunction) {
+        version++;
+        return super.compute(key, remappingFunction);
+    }
+
+    public synchronized Object merge(Object key, Object value, BiFunction remappingFunction) {
+        version++;
+        return super.merge(key, value, remappingFunction);
+    }
+
+    /**
+     * Serialize as a plain hashtable.
+     */
+    private Object writeReplace() {
+        return new Hashtable(this);
+    }
+}
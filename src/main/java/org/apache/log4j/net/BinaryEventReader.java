@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.log4j.helpers.BinaryEventDecoder;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Reads the events sent by a {@link BinaryEventWriter}.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @since 1.2.18
+ */
+public class BinaryEventReader {
+
+    /**
+     * Frames larger than this are rejected as corrupted.
+     */
+    static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final DataInputStream in;
+
+    private final Inflater inflater;
+
+    private final BinaryEventDecoder decoder;
+
+    private byte[] frame = new byte[8 * 1024];
+    private int pos;
+    private int limit;
+
+    /**
+     * Reads the header from <code>in</code>.
+     *
+     * @param in         the stream, positioned at the header.
+     * @param repository repository in which loggers are looked up.
+     */
+    public BinaryEventReader(InputStream in, LoggerRepository repository)
+            throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] magic = new byte[BinaryEventWriter.MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != BinaryEventWriter.MAGIC[i]) {
+                throw new StreamCorruptedException("Not a binary event stream.");
+            }
+        }
+        int version = data.readUnsignedByte();
+        if (version != BinaryEventWriter.VERSION) {
+            throw new StreamCorruptedException("Unsupported binary event stream version "
+                    + version + ".");
+        }
+        int flags = data.readUnsignedByte();
+        if ((flags & BinaryEventWriter.FLAG_DEFLATE) != 0) {
+            inflater = new Inflater();
+            this.in = new DataInputStream(new InflaterInputStream(in, inflater, 8 * 1024));
+        } else {
+            inflater = null;
+            this.in = data;
+        }
+        this.decoder = new BinaryEventDecoder(repository);
+    }
+
+    /**
+     * Returns true if <code>firstByte</code>, the first byte of a
+     * stream, starts a binary event stream rather than a Java
+     * serialization stream.
+     */
+    public static boolean isBinaryStream(int firstByte) {
+        return firstByte == BinaryEventWriter.MAGIC[0];
+    }
+
+    /**
+     * Reads the next event.
+     *
+     * @throws EOFException at the end of the stream, like
+     *                      <code>ObjectInputStream.readObject</code>.
+     */
+    public LoggingEvent read() throws IOException {
+        while (pos == limit) {
+            readFrame();
+        }
+        int length = BinaryEventDecoder.readRecordLength(frame, pos, limit - pos);
+        if (length < 0) {
+            throw new StreamCorruptedException("Truncated record length.");
+        }
+        pos += BinaryEventDecoder.recordLengthSize(length);
+        if (length > limit - pos) {
+            throw new StreamCorruptedException("Record exceeds frame.");
+        }
+        LoggingEvent event = decoder.decode(frame, pos, length);
+        pos += length;
+        return event;
+    }
+
+    private void readFrame() throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Invalid frame length " + length + ".");
+        }
+        if (length > frame.length) {
+            frame = new byte[Math.max(length, frame.length * 2)];
+        }
+        in.readFully(frame, 0, length);
+        pos = 0;
+        limit = length;
+    }
+
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+}
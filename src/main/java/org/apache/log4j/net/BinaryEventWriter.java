@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.log4j.helpers.BinaryEventEncoder;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Writes {@link LoggingEvent} objects to a stream in the binary wire
+ * format read by {@link BinaryEventReader}.
+ *
+ * <p>The stream starts with a header: the magic bytes
+ * <code>L4JW</code>, a version byte and a flags byte. As a Java
+ * serialization stream starts with a different byte, a receiver can
+ * tell both formats apart from the first byte. When the
+ * {@link #FLAG_DEFLATE} flag is set, the rest of the stream is
+ * compressed in the zlib format.
+ *
+ * <p>The header is followed by frames, each made of a 4 byte length
+ * and of the records of several events, as encoded by a
+ * {@link BinaryEventEncoder}. Logger and thread names are written in
+ * full only once per connection. Events are buffered by
+ * {@link #write} until {@link #flush} sends them as one frame.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @since 1.2.18
+ */
+public class BinaryEventWriter {
+
+    static final byte[] MAGIC = {'L', '4', 'J', 'W'};
+
+    /**
+     * Version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Set in the header flags when the stream is compressed.
+     */
+    public static final int FLAG_DEFLATE = 1;
+
+    private final OutputStream out;
+
+    private final Deflater deflater;
+
+    private final BinaryEventEncoder encoder;
+
+    private final byte[] frameHeader = new byte[4];
+
+    /**
+     * Writes the header to <code>out</code>.
+     *
+     * @param out          the stream, usually a socket stream.
+     * @param locationInfo if true, the location of each event is sent.
+     * @param deflate      if true, frames are compressed.
+     */
+    public BinaryEventWriter(OutputStream out, boolean locationInfo, boolean deflate)
+            throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out, 8 * 1024);
+        buffered.write(MAGIC);
+        buffered.write(VERSION);
+        buffered.write(deflate ? FLAG_DEFLATE : 0);
+        if (deflate) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            this.out = new DeflaterOutputStream(buffered, deflater, 8 * 1024, true);
+        } else {
+            deflater = null;
+            this.out = buffered;
+        }
+        this.encoder = new BinaryEventEncoder(locationInfo);
+    }
+
+    /**
+     * Adds <code>event</code> to the current frame.
+     *
+     * @return the size of the frame in bytes.
+     */
+    public int write(LoggingEvent event) {
+        return encoder.encode(event);
+    }
+
+    /**
+     * Returns the size in bytes of the events waiting for
+     * {@link #flush}.
+     */
+    public int size() {
+        return encoder.size();
+    }
+
+    /**
+     * Sends the buffered events as one frame.
+     */
+    public void flush() throws IOException {
+        int length = encoder.size();
+        if (length > 0) {
+            frameHeader[0] = (byte) (length >>> 24);
+            frameHeader[1] = (byte) (length >>> 16);
+            frameHeader[2] = (byte) (length >>> 8);
+            frameHeader[3] = (byte) length;
+            // the encoder is cleared first, a failed frame is not sent again
+            encoder.clear();
+            out.write(frameHeader);
+            out.write(encoder.getBuffer(), 0, length);
+        }
+        out.flush();
+    }
+
+    /**
+     * Sends the buffered events and closes the stream.
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+            out.close();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.helpers.BinaryEventDecoder;
+import org.apache.log4j.helpers.BinaryEventEncoder;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A bounded file of the events {@link SocketAppender} could not send
+ * yet, read back in the order they were written.
+ *
+ * <p>The file starts with a header holding the offset of the first
+ * event not delivered yet, the checkpoint. It is followed by chunks,
+ * each made of a length, a CRC32 checksum and the records of several
+ * events encoded by a {@link BinaryEventEncoder} reset at the start of
+ * the chunk, so that every chunk can be decoded on its own. A chunk
+ * header with a length of -1 marks the end of the chunks.
+ *
+ * <p>{@link #read} returns the events of the next chunk and
+ * {@link #commit} moves the checkpoint past it once they are
+ * delivered. When every chunk has been delivered the file is truncated
+ * back to its header. Otherwise, once the delivered chunks take at
+ * least a quarter of the maximum size and as much room as the chunks
+ * left, the chunks left are moved to the start of the file, which is
+ * then truncated. A chunk torn by a crash, as told by its length or
+ * checksum, is dropped when the journal is opened again, and so is
+ * everything after an end marker.
+ *
+ * <p>The maximum size bounds the chunks not delivered yet, the file may
+ * hold up to as many delivered chunks until it is compacted.
+ *
+ * <p>This class is not thread safe.
+ */
+class EventJournal {
+
+    static final byte[] MAGIC = {'L', '4', 'J', 'J'};
+
+    static final int VERSION = 1;
+
+    /**
+     * Magic bytes, version, 3 reserved bytes and the checkpoint.
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * Size of the length and checksum in front of each chunk.
+     */
+    static final int CHUNK_OVERHEAD = 8;
+
+    /**
+     * Length of the chunk header marking the end of the chunks.
+     */
+    private static final int END_MARKER = -1;
+
+    private final RandomAccessFile file;
+    private final long maxSize;
+    private final BinaryEventEncoder encoder;
+    private final BinaryEventDecoder decoder =
+            new BinaryEventDecoder(LogManager.getLoggerRepository());
+    private final CRC32 crc = new CRC32();
+    private final byte[] chunkHeader = new byte[CHUNK_OVERHEAD];
+    private byte[] chunk = new byte[8 * 1024];
+
+    private long checkpoint;
+    private long readPosition;
+    private long end;
+
+    /**
+     * Opens <code>file</code>, creating it if needed.
+     *
+     * @param maxSize      size the file does not grow beyond.
+     * @param locationInfo if true, the location of the events is kept.
+     */
+    EventJournal(File file, long maxSize, boolean locationInfo) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        this.file = new RandomAccessFile(file, "rw");
+        this.maxSize = Math.max(maxSize, HEADER_SIZE + CHUNK_OVERHEAD);
+        this.encoder = new BinaryEventEncoder(locationInfo);
+        try {
+            open();
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    private void open() throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            file.setLength(0);
+            file.write(MAGIC);
+            file.write(VERSION);
+            file.write(new byte[3]);
+            file.writeLong(HEADER_SIZE);
+            checkpoint = readPosition = end = HEADER_SIZE;
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        file.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new StreamCorruptedException("Not an event journal.");
+            }
+        }
+        int version = file.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported journal version " + version + ".");
+        }
+        file.skipBytes(3);
+        checkpoint = file.readLong();
+        long length = file.length();
+        if (checkpoint < HEADER_SIZE || checkpoint > length) {
+            throw new StreamCorruptedException("Invalid journal checkpoint.");
+        }
+        // find the end of the last complete chunk
+        end = checkpoint;
+        while (end < length) {
+            if (length - end < CHUNK_OVERHEAD) {
+                break;
+            }
+            file.seek(end);
+            int size = file.readInt();
+            int checksum = file.readInt();
+            if (size == END_MARKER) {
+                LogLog.debug("Dropping the delivered chunks left by an interrupted compaction.");
+                file.setLength(end);
+                length = end;
+                break;
+            }
+            if (size < 0 || size > length - end - CHUNK_OVERHEAD) {
+                break;
+            }
+            if (size > chunk.length) {
+                chunk = new byte[size];
+            }
+            file.readFully(chunk, 0, size);
+            crc.reset();
+            crc.update(chunk, 0, size);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            end += CHUNK_OVERHEAD + size;
+        }
+        if (end < length) {
+            LogLog.warn("Event journal ends with a truncated chunk, dropping it.");
+            file.setLength(end);
+        }
+        readPosition = checkpoint;
+    }
+
+    /**
+     * Returns true if every event written has been delivered.
+     */
+    boolean isEmpty() {
+        return checkpoint == end;
+    }
+
+    /**
+     * Returns the size in bytes of the chunks not delivered yet.
+     */
+    long getBacklog() {
+        return end - checkpoint;
+    }
+
+    /**
+     * Writes the first <code>count</code> events as one chunk. The
+     * events which would make the chunks not delivered exceed the
+     * maximum size are not written, nor any event after them.
+     *
+     * @return the number of events written.
+     */
+    int append(LoggingEvent[] events, int count) throws IOException {
+        encoder.reset();
+        encoder.clear();
+        long room = maxSize - HEADER_SIZE - (end - checkpoint) - CHUNK_OVERHEAD;
+        int length = 0;
+        int n = 0;
+        while (n < count) {
+            int size = encoder.encode(events[n]);
+            if (size > room) {
+                break;
+            }
+            length = size;
+            n++;
+        }
+        if (n > 0) {
+            byte[] buf = encoder.getBuffer();
+            crc.reset();
+            crc.update(buf, 0, length);
+            writeInt(chunkHeader, 0, length);
+            writeInt(chunkHeader, 4, (int) crc.getValue());
+            file.seek(end);
+            file.write(chunkHeader);
+            file.write(buf, 0, length);
+            end += CHUNK_OVERHEAD + length;
+        }
+        encoder.clear();
+        return n;
+    }
+
+    /**
+     * Reads the events of the chunk following the last one read.
+     *
+     * @return the number of events put in <code>events</code>, which
+     * must be at least as large as the chunks written; 0 if all the
+     * chunks have been read.
+     */
+    int read(LoggingEvent[] events) throws IOException {
+        if (readPosition >= end) {
+            return 0;
+        }
+        file.seek(readPosition);
+        int length = file.readInt();
+        int checksum = file.readInt();
+        if (length > chunk.length) {
+            chunk = new byte[length];
+        }
+        file.readFully(chunk, 0, length);
+        crc.reset();
+        crc.update(chunk, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new StreamCorruptedException("Journal chunk checksum mismatch.");
+        }
+        decoder.reset();
+        int n = 0;
+        int pos = 0;
+        while (pos < length) {
+            int size = BinaryEventDecoder.readRecordLength(chunk, pos, length - pos);
+            if (size < 0) {
+                throw new StreamCorruptedException("Truncated record length.");
+            }
+            pos += BinaryEventDecoder.recordLengthSize(size);
+            if (size > length - pos || n == events.length) {
+                throw new StreamCorruptedException("Record exceeds journal chunk.");
+            }
+            events[n++] = decoder.decode(chunk, pos, size);
+            pos += size;
+        }
+        readPosition += CHUNK_OVERHEAD + length;
+        return n;
+    }
+
+    /**
+     * Marks the chunks read so far as delivered.
+     */
+    void commit() throws IOException {
+        if (readPosition == end) {
+            clear();
+            return;
+        }
+        checkpoint = readPosition;
+        file.seek(HEADER_SIZE - 8);
+        file.writeLong(checkpoint);
+        long delivered = checkpoint - HEADER_SIZE;
+        if (delivered >= maxSize / 4 && delivered >= end - checkpoint + CHUNK_OVERHEAD) {
+            compact();
+        }
+    }
+
+    /**
+     * Moves the chunks not delivered to the start of the file. They do
+     * not overlap their new place, nor the end marker written after it
+     * before the checkpoint moves, so that a crash while copying leaves
+     * them where the checkpoint says. After a crash between the update
+     * of the checkpoint and the truncation, the end marker keeps the
+     * delivered chunks left behind from being sent again.
+     */
+    private void compact() throws IOException {
+        long length = end - checkpoint;
+        long done = 0;
+        while (done < length) {
+            int n = (int) Math.min(chunk.length, length - done);
+            file.seek(checkpoint + done);
+            file.readFully(chunk, 0, n);
+            file.seek(HEADER_SIZE + done);
+            file.write(chunk, 0, n);
+            done += n;
+        }
+        writeEndMarker(HEADER_SIZE + length);
+        long shift = checkpoint - HEADER_SIZE;
+        checkpoint = HEADER_SIZE;
+        readPosition -= shift;
+        end -= shift;
+        file.seek(HEADER_SIZE - 8);
+        file.writeLong(checkpoint);
+        file.setLength(end);
+    }
+
+    /**
+     * Drops every chunk.
+     */
+    void clear() throws IOException {
+        // the chunks are gone whichever checkpoint a crash leaves
+        if (checkpoint < end) {
+            writeEndMarker(checkpoint);
+        }
+        if (checkpoint > HEADER_SIZE) {
+            writeEndMarker(HEADER_SIZE);
+        }
+        checkpoint = readPosition = end = HEADER_SIZE;
+        file.seek(HEADER_SIZE - 8);
+        file.writeLong(checkpoint);
+        file.setLength(end);
+    }
+
+    private void writeEndMarker(long position) throws IOException {
+        writeInt(chunkHeader, 0, END_MARKER);
+        writeInt(chunkHeader, 4, 0);
+        file.seek(position);
+        file.write(chunkHeader);
+    }
+
+    /**
+     * Goes back to the first chunk not delivered, after a failed
+     * delivery.
+     */
+    void rewind() {
+        readPosition = checkpoint;
+    }
+
+    /**
+     * Returns the size of the file.
+     */
+    long length() {
+        return end;
+    }
+
+    void close() throws IOException {
+        file.close();
+    }
+
+    private static void writeInt(byte[] b, int offset, int v) {
+        b[offset] = (byte) (v >>> 24);
+        b[offset + 1] = (byte) (v >>> 16);
+        b[offset + 2] = (byte) (v >>> 8);
+        b[offset + 3] = (byte) v;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.helpers.BinaryEventDecoder;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Decodes the stream of a {@link SocketAppender} from the bytes handed
+ * to {@link #decode} as they arrive, without blocking for the rest of
+ * an event. Both the binary format of {@link BinaryEventWriter} and
+ * serialized events are read, as told by the first byte.
+ *
+ * <p>A serialized event is decoded once all its bytes have arrived,
+ * by a new <code>ObjectInputStream</code>. This relies on
+ * {@link SocketAppender} resetting its stream after each event, so
+ * that an event never refers to objects of a previous one.
+ *
+ * <p>This class is not thread safe.
+ */
+class EventStreamDecoder {
+
+    private static final int UNKNOWN = 0;
+    private static final int BINARY = 1;
+    private static final int SERIALIZED = 2;
+
+    private static final byte[] SERIALIZATION_HEADER = {(byte) 0xAC, (byte) 0xED, 0, 5};
+
+    private final LoggerRepository repository;
+
+    private int format = UNKNOWN;
+    private boolean headerRead;
+    private BinaryEventDecoder decoder;
+    private Inflater inflater;
+    private byte[] input;
+
+    private byte[] buf = new byte[8 * 1024];
+    private int start;
+    private int limit;
+
+    /**
+     * @param repository repository in which loggers are looked up.
+     */
+    EventStreamDecoder(LoggerRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Consumes <code>in</code> and adds the events it completes to
+     * <code>events</code>.
+     */
+    void decode(ByteBuffer in, List events) throws IOException {
+        if (inflater != null) {
+            inflate(in, events);
+            return;
+        }
+        append(in);
+        if (format == UNKNOWN) {
+            if (start == limit) {
+                return;
+            }
+            format = BinaryEventReader.isBinaryStream(buf[start]) ? BINARY : SERIALIZED;
+        }
+        if (!headerRead && !readHeader(events)) {
+            return;
+        }
+        if (format == BINARY) {
+            readFrames(events);
+        } else {
+            readObjects(events);
+        }
+    }
+
+    private boolean readHeader(List events) throws IOException {
+        byte[] magic = format == BINARY ? BinaryEventWriter.MAGIC : SERIALIZATION_HEADER;
+        int size = format == BINARY ? magic.length + 2 : magic.length;
+        if (limit - start < size) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (buf[start + i] != magic[i]) {
+                throw new StreamCorruptedException("Not a log4j event stream.");
+            }
+        }
+        headerRead = true;
+        if (format == SERIALIZED) {
+            start += size;
+            return true;
+        }
+        int version = buf[start + magic.length] & 0xFF;
+        if (version != BinaryEventWriter.VERSION) {
+            throw new StreamCorruptedException("Unsupported binary event stream version "
+                    + version + ".");
+        }
+        int flags = buf[start + magic.length + 1] & 0xFF;
+        start += size;
+        decoder = new BinaryEventDecoder(repository);
+        if ((flags & BinaryEventWriter.FLAG_DEFLATE) != 0) {
+            // the rest is compressed
+            ByteBuffer rest = ByteBuffer.allocate(limit - start);
+            rest.put(buf, start, limit - start);
+            rest.flip();
+            start = limit = 0;
+            inflater = new Inflater();
+            input = new byte[8 * 1024];
+            inflate(rest, events);
+            return false;
+        }
+        return true;
+    }
+
+    private void append(ByteBuffer in) throws IOException {
+        int n = in.remaining();
+        ensure(n);
+        in.get(buf, limit, n);
+        limit += n;
+    }
+
+    /**
+     * Makes room for <code>n</code> more bytes.
+     */
+    private void ensure(int n) throws IOException {
+        if (buf.length - limit >= n) {
+            return;
+        }
+        System.arraycopy(buf, start, buf, 0, limit - start);
+        limit -= start;
+        start = 0;
+        if (buf.length - limit < n) {
+            if ((long) limit + n > BinaryEventReader.MAX_FRAME_SIZE + 4) {
+                throw new StreamCorruptedException("Event larger than "
+                        + BinaryEventReader.MAX_FRAME_SIZE + " bytes.");
+            }
+            byte[] b = new byte[Math.max(limit + n, buf.length * 2)];
+            System.arraycopy(buf, 0, b, 0, limit);
+            buf = b;
+        }
+    }
+
+    private void inflate(ByteBuffer in, List events) throws IOException {
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!in.hasRemaining()) {
+                        return;
+                    }
+                    int n = Math.min(in.remaining(), input.length);
+                    in.get(input, 0, n);
+                    inflater.setInput(input, 0, n);
+                }
+                ensure(8 * 1024);
+                int n = inflater.inflate(buf, limit, buf.length - limit);
+                limit += n;
+                if (inflater.needsDictionary()) {
+                    throw new StreamCorruptedException("Unexpected deflate dictionary.");
+                }
+                readFrames(events);
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Invalid compressed stream: " + e.getMessage());
+        }
+    }
+
+    private void readFrames(List events) throws IOException {
+        while (limit - start >= 4) {
+            int length = ((buf[start] & 0xFF) << 24) | ((buf[start + 1] & 0xFF) << 16)
+                    | ((buf[start + 2] & 0xFF) << 8) | (buf[start + 3] & 0xFF);
+            if (length < 0 || length > BinaryEventReader.MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException("Invalid frame length " + length + ".");
+            }
+            if (limit - start - 4 < length) {
+                ensure(length + 4 - (limit - start));
+                return;
+            }
+            int pos = start + 4;
+            int end = pos + length;
+            while (pos < end) {
+                int size = BinaryEventDecoder.readRecordLength(buf, pos, end - pos);
+                if (size < 0) {
+                    throw new StreamCorruptedException("Truncated record length.");
+                }
+                pos += BinaryEventDecoder.recordLengthSize(size);
+                if (size > end - pos) {
+                    throw new StreamCorruptedException("Record exceeds frame.");
+                }
+                events.add(decoder.decode(buf, pos, size));
+                pos += size;
+            }
+            start = end;
+        }
+        if (start == limit) {
+            start = limit = 0;
+        }
+    }
+
+    private void readObjects(List events) throws IOException {
+        while (start < limit) {
+            Available data = new Available(buf, start, limit - start);
+            Object o;
+            try {
+                ObjectInputStream ois = new ObjectInputStream(new SequenceInputStream(
+                        new ByteArrayInputStream(SERIALIZATION_HEADER), data));
+                o = ois.readObject();
+            } catch (IOException e) {
+                if (data.exhausted) {
+                    // the rest of the event has not arrived yet
+                    return;
+                }
+                throw e;
+            } catch (ClassNotFoundException e) {
+                throw (IOException) new StreamCorruptedException(
+                        "Could not read event: " + e).initCause(e);
+            }
+            if (!(o instanceof LoggingEvent)) {
+                throw new StreamCorruptedException("Unexpected object " + o + ".");
+            }
+            events.add(o);
+            start = limit - data.available();
+        }
+        start = limit = 0;
+    }
+
+    /**
+     * The bytes received, telling whether a read asked for more.
+     */
+    private static final class Available extends ByteArrayInputStream {
+        boolean exhausted;
+
+        Available(byte[] buf, int offset, int length) {
+            super(buf, offset, length);
+        }
+
+        public synchronized int read() {
+            if (pos >= count) {
+                exhausted = true;
+            }
+            return super.read();
+        }
+
+        public synchronized int read(byte[] b, int off, int len) {
+            if (len > count - pos) {
+                exhausted = true;
+            }
+            return super.read(b, off, len);
+        }
+
+        public synchronized long skip(long n) {
+            if (n > count - pos) {
+                exhausted = true;
+            }
+            return super.skip(n);
+        }
+    }
+
+    /**
+     * Releases the resources held by the decoder.
+     */
+    void close() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
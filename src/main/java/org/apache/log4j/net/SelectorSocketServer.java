@@ -0,0 +1,480 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.helpers.DeferredWaits;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.xml.DOMConfigurator;
+
+/**
+ * A log server reading the events of many {@link SocketAppender}
+ * clients with a fixed number of threads, instead of a
+ * {@link SocketNode} thread per connection.
+ *
+ * <pre>
+ * <b>Usage:</b> java org.apache.log4j.net.SelectorSocketServer port configFile [ioThreads]
+ *
+ * where <em>port</em> is a port number where the server listens,
+ * <em>configFile</em> is a configuration file fed to the {@link
+ * PropertyConfigurator} or to {@link DOMConfigurator} if an XML file,
+ * and <em>ioThreads</em> the number of I/O threads, the number of
+ * processors by default.
+ * </pre>
+ *
+ * <p>An acceptor thread hands the connections out to the I/O threads
+ * in turn. Each I/O thread waits on a {@link Selector} for its
+ * non-blocking connections to be readable, and decodes the events from
+ * the bytes read as they arrive, in either format a SocketAppender
+ * sends. A dispatcher thread then logs the decoded events of each
+ * connection as a batch, as if they were generated locally.
+ *
+ * <p>A connection is not read while it has
+ * <b>ConnectionQueueSize</b> events waiting for the dispatcher; its
+ * client then waits for TCP, without slowing the other connections.
+ *
+ * @since 1.2.18
+ */
+public class SelectorSocketServer {
+
+    static Logger logger = Logger.getLogger(SelectorSocketServer.class);
+
+    private final int port;
+
+    private final LoggerRepository repository;
+
+    private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+    private int connectionQueueSize = 1024;
+
+    private ServerSocketChannel serverChannel;
+
+    private Thread acceptor;
+
+    private IoThread[] ioThreads;
+
+    private Dispatcher dispatcher;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a server listening on <code>port</code>, zero for any
+     * free port, and logging the events received to
+     * <code>repository</code>.
+     */
+    public SelectorSocketServer(int port, LoggerRepository repository) {
+        this.port = port;
+        this.repository = repository;
+    }
+
+    /**
+     * Number of I/O threads, the number of processors by default.
+     */
+    public void setIoThreads(int ioThreads) {
+        this.ioThreadCount = Math.max(1, ioThreads);
+    }
+
+    public int getIoThreads() {
+        return ioThreadCount;
+    }
+
+    /**
+     * Number of events of a connection waiting to be logged above which
+     * the connection is not read, 1024 by default.
+     */
+    public void setConnectionQueueSize(int connectionQueueSize) {
+        this.connectionQueueSize = Math.max(1, connectionQueueSize);
+    }
+
+    public int getConnectionQueueSize() {
+        return connectionQueueSize;
+    }
+
+    /**
+     * Returns the port the server listens to, once started.
+     */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Binds the port and starts the threads.
+     */
+    public synchronized void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        dispatcher = new Dispatcher();
+        dispatcher.start();
+        ioThreads = new IoThread[ioThreadCount];
+        for (int i = 0; i < ioThreads.length; i++) {
+            ioThreads[i] = new IoThread(i);
+            ioThreads[i].start();
+        }
+        acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "SelectorSocketServer-" + getLocalPort());
+        acceptor.start();
+    }
+
+    private void accept() {
+        int next = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.error("Could not accept connection.", e);
+                }
+                return;
+            }
+            logger.info("Connected to client at " + channel.socket().getInetAddress());
+            ioThreads[next].add(channel);
+            next = (next + 1) % ioThreads.length;
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes those open and waits for the
+     * threads to end.
+     */
+    public synchronized void close() {
+        if (closed || serverChannel == null) {
+            return;
+        }
+        closed = true;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            logger.info("Could not close server socket.", e);
+        }
+        for (int i = 0; i < ioThreads.length; i++) {
+            ioThreads[i].selector.wakeup();
+        }
+        try {
+            acceptor.join();
+            for (int i = 0; i < ioThreads.length; i++) {
+                ioThreads[i].join();
+            }
+            // the dispatcher logs the events already decoded before it ends
+            dispatcher.wakeup();
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A client connection and the events decoded from it.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final IoThread ioThread;
+        final EventStreamDecoder decoder = new EventStreamDecoder(repository);
+        SelectionKey key;
+        // guarded by this
+        List pending = new ArrayList();
+        boolean scheduled;
+        boolean paused;
+
+        Connection(SocketChannel channel, IoThread ioThread) {
+            this.channel = channel;
+            this.ioThread = ioThread;
+        }
+
+        void close() {
+            key.cancel();
+            decoder.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.info("Could not close connection.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads and decodes the connections registered with its selector.
+     */
+    private final class IoThread extends Thread {
+        final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        private final List decoded = new ArrayList();
+        // guarded by itself
+        private final List added = new ArrayList();
+        private final List resumed = new ArrayList();
+
+        IoThread(int index) throws IOException {
+            super("SelectorSocketServer-" + getLocalPort() + "-io-" + index);
+            selector = Selector.open();
+        }
+
+        void add(SocketChannel channel) {
+            synchronized (added) {
+                added.add(channel);
+            }
+            selector.wakeup();
+        }
+
+        void resume(Connection connection) {
+            synchronized (added) {
+                resumed.add(connection);
+            }
+            selector.wakeup();
+        }
+
+        public void run() {
+            try {
+                while (!closed) {
+                    selector.select();
+                    register();
+                    Iterator i = selector.selectedKeys().iterator();
+                    while (i.hasNext()) {
+                        SelectionKey key = (SelectionKey) i.next();
+                        i.remove();
+                        if (key.isValid()) {
+                            read((Connection) key.attachment());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("Unexpected exception in I/O thread.", e);
+            } finally {
+                synchronized (added) {
+                    for (int i = 0; i < added.size(); i++) {
+                        try {
+                            ((SocketChannel) added.get(i)).close();
+                        } catch (IOException e) {
+                            logger.info("Could not close connection.", e);
+                        }
+                    }
+                    added.clear();
+                }
+                Iterator i = selector.keys().iterator();
+                while (i.hasNext()) {
+                    ((Connection) ((SelectionKey) i.next()).attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    logger.info("Could not close selector.", e);
+                }
+            }
+        }
+
+        private void register() {
+            synchronized (added) {
+                for (int i = 0; i < added.size(); i++) {
+                    SocketChannel channel = (SocketChannel) added.get(i);
+                    Connection connection = new Connection(channel, this);
+                    try {
+                        channel.configureBlocking(false);
+                        connection.key = channel.register(selector, SelectionKey.OP_READ,
+                                connection);
+                    } catch (IOException e) {
+                        logger.info("Could not register connection.", e);
+                        try {
+                            channel.close();
+                        } catch (IOException ce) {
+                            logger.info("Could not close connection.", ce);
+                        }
+                    }
+                }
+                added.clear();
+                for (int i = 0; i < resumed.size(); i++) {
+                    SelectionKey key = ((Connection) resumed.get(i)).key;
+                    if (key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                resumed.clear();
+            }
+        }
+
+        private void read(Connection connection) {
+            boolean end = false;
+            buffer.clear();
+            try {
+                end = connection.channel.read(buffer) < 0;
+                buffer.flip();
+                connection.decoder.decode(buffer, decoded);
+            } catch (ClosedChannelException e) {
+                end = true;
+            } catch (IOException e) {
+                logger.info("Caught java.io.IOException: " + e);
+                logger.info("Closing connection.");
+                end = true;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected exception. Closing connection.", e);
+                end = true;
+            }
+            if (end) {
+                connection.close();
+            }
+            if (decoded.isEmpty()) {
+                return;
+            }
+            boolean schedule;
+            synchronized (connection) {
+                connection.pending.addAll(decoded);
+                if (!end && connection.pending.size() >= connectionQueueSize) {
+                    // TCP pushes back on the client until the dispatcher catches up
+                    connection.paused = true;
+                    connection.key.interestOps(0);
+                }
+                schedule = !connection.scheduled;
+                connection.scheduled = true;
+            }
+            decoded.clear();
+            if (schedule) {
+                dispatcher.schedule(connection);
+            }
+        }
+    }
+
+    /**
+     * Logs the events of the connections which have some, a batch per
+     * connection at a time.
+     */
+    private final class Dispatcher extends Thread {
+        private final LinkedList ready = new LinkedList();
+
+        Dispatcher() {
+            super("SelectorSocketServer-" + getLocalPort() + "-dispatcher");
+        }
+
+        void wakeup() {
+            synchronized (ready) {
+                ready.notifyAll();
+            }
+        }
+
+        void schedule(Connection connection) {
+            synchronized (ready) {
+                ready.addLast(connection);
+                if (ready.size() == 1) {
+                    ready.notifyAll();
+                }
+            }
+        }
+
+        public void run() {
+            while (true) {
+                Connection connection;
+                synchronized (ready) {
+                    while (ready.isEmpty()) {
+                        if (closed) {
+                            return;
+                        }
+                        try {
+                            ready.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    connection = (Connection) ready.removeFirst();
+                }
+                List batch;
+                boolean resume;
+                synchronized (connection) {
+                    batch = connection.pending;
+                    connection.pending = new ArrayList();
+                    connection.scheduled = false;
+                    resume = connection.paused;
+                    connection.paused = false;
+                }
+                dispatch(batch);
+                if (resume) {
+                    connection.ioThread.resume(connection);
+                }
+            }
+        }
+
+        private void dispatch(List batch) {
+            // appenders may postpone their flushes to the end of the batch
+            DeferredWaits.begin();
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    LoggingEvent event = (LoggingEvent) batch.get(i);
+                    try {
+                        Logger remoteLogger = repository.getLogger(event.getLoggerName());
+                        if (event.getLevel().isGreaterOrEqual(remoteLogger.getEffectiveLevel())) {
+                            remoteLogger.callAppenders(event);
+                        }
+                    } catch (RuntimeException e) {
+                        // the other events of the batch are still logged
+                        logger.error("Unexpected exception while logging remote event.", e);
+                    }
+                }
+            } finally {
+                DeferredWaits.end();
+            }
+        }
+    }
+
+    public static void main(String[] argv) {
+        if (argv.length < 2 || argv.length > 3) {
+            System.err.println("Usage: java " + SelectorSocketServer.class.getName()
+                    + " port configFile [ioThreads]");
+            System.exit(1);
+        }
+        int port = 0;
+        try {
+            port = Integer.parseInt(argv[0]);
+        } catch (NumberFormatException e) {
+            System.err.println("Could not interpret port number [" + argv[0] + "].");
+            System.exit(1);
+        }
+        if (argv[1].endsWith(".xml")) {
+            DOMConfigurator.configure(argv[1]);
+        } else {
+            PropertyConfigurator.configure(argv[1]);
+        }
+        SelectorSocketServer server = new SelectorSocketServer(port,
+                LogManager.getLoggerRepository());
+        if (argv.length == 3) {
+            server.setIoThreads(Integer.parseInt(argv[2]));
+        }
+        try {
+            server.start();
+            logger.info("Listening on port " + server.getLocalPort());
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -19,14 +19,23 @@
 
 package org.apache.log4j.net;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.helpers.DeferredWaits;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -64,7 +73,9 @@ import org.apache.log4j.spi.LoggingEvent;
  * network connection. However, if the network connection is slower
  * then the rate of event production, then the client can only
  * progress at the network rate. In particular, if the network link
- * to the the server is down, the client will be blocked.
+ * to the the server is down, the client will be blocked. The
+ * <b>NonBlocking</b> option queues events for a sender thread
+ * instead, see {@link #setNonBlocking}.
  *
  * <p>On the other hand, if the network link is up, but the server
  * is down, the client will not be blocked when making log requests
@@ -125,9 +136,50 @@ public class SocketAppender extends AppenderSkeleton {
      */
     public static final String ZONE = "_log4j_obj_tcpconnect_appender.local.";
 
+    /**
+     * Value of the <b>Protocol</b> option sending serialized
+     * <code>LoggingEvent</code> objects, the default.
+     *
+     * @since 1.2.18
+     */
+    public static final String PROTOCOL_SERIALIZED = "SERIALIZED";
+
+    /**
+     * Value of the <b>Protocol</b> option sending events in the format
+     * of {@link BinaryEventWriter}.
+     *
+     * @since 1.2.18
+     */
+    public static final String PROTOCOL_BINARY = "BINARY";
+
+    /**
+     * Value of the <b>OverflowPolicy</b> option dropping the events
+     * which do not fit in the queue, the default.
+     *
+     * @since 1.2.18
+     */
+    public static final String OVERFLOW_DISCARD = "DISCARD";
+
+    /**
+     * Value of the <b>OverflowPolicy</b> option dropping the oldest
+     * queued event to make room for a new one.
+     *
+     * @since 1.2.18
+     */
+    public static final String OVERFLOW_DISCARD_OLDEST = "DISCARD_OLDEST";
+
+    /**
+     * Value of the <b>OverflowPolicy</b> option making the logging
+     * thread wait until the queue has room.
+     *
+     * @since 1.2.18
+     */
+    public static final String OVERFLOW_BLOCK = "BLOCK";
+
     InetAddress address;
     int port = DEFAULT_PORT;
     ObjectOutputStream oos;
+    BinaryEventWriter bos;
     int reconnectionDelay = DEFAULT_RECONNECTION_DELAY;
     boolean locationInfo = false;
     private String application;
@@ -142,6 +194,24 @@ public class SocketAppender extends AppenderSkeleton {
     private boolean advertiseViaMulticastDNS;
     private ZeroConfSupport zeroConf;
 
+    private boolean binary = false;
+    private boolean deflate = false;
+    private int batchSize = 8 * 1024;
+
+    private boolean nonBlocking = false;
+    private int queueSize = 1024;
+    private String overflowPolicy = OVERFLOW_DISCARD;
+    private String journalFile;
+    private long maxJournalSize = 64 * 1024 * 1024;
+    private int replayRate = 1000;
+    private Sender sender;
+
+    private final Runnable frameFlush = new Runnable() {
+        public void run() {
+            flushFrame();
+        }
+    };
+
     public SocketAppender() {
     }
 
@@ -173,7 +243,32 @@ public class SocketAppender extends AppenderSkeleton {
             zeroConf = new ZeroConfSupport(ZONE, port, getName());
             zeroConf.advertise();
         }
-        connect(address, port);
+        if (nonBlocking || journalFile != null) {
+            Sender old = sender;
+            sender = null;
+            if (old != null) {
+                old.shutdown();
+            }
+            if (address == null) {
+                errorHandler.error("No remote host is set for SocketAppender named \"" +
+                        this.name + "\".");
+                return;
+            }
+            cleanUp();
+            EventJournal journal = null;
+            if (journalFile != null) {
+                try {
+                    journal = new EventJournal(new File(journalFile), maxJournalSize, locationInfo);
+                } catch (IOException e) {
+                    errorHandler.error("Could not open event journal [" + journalFile + "].", e,
+                            ErrorCode.FILE_OPEN_FAILURE);
+                }
+            }
+            sender = new Sender(journal);
+            sender.start();
+        } else {
+            connect(address, port);
+        }
     }
 
     /**
@@ -190,6 +285,10 @@ public class SocketAppender extends AppenderSkeleton {
         if (advertiseViaMulticastDNS) {
             zeroConf.unadvertise();
         }
+        if (sender != null) {
+            // kept for its metrics
+            sender.shutdown();
+        }
 
         cleanUp();
     }
@@ -210,6 +309,17 @@ public class SocketAppender extends AppenderSkeleton {
             }
             oos = null;
         }
+        if (bos != null) {
+            try {
+                bos.close();
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException) {
+                    Thread.currentThread().interrupt();
+                }
+                LogLog.error("Could not close bos.", e);
+            }
+            bos = null;
+        }
         if (connector != null) {
             //LogLog.debug("Interrupting the connector.");
             connector.interrupted = true;
@@ -223,7 +333,7 @@ public class SocketAppender extends AppenderSkeleton {
         try {
             // First, close the previous connection if any.
             cleanUp();
-            oos = new ObjectOutputStream(new Socket(address, port).getOutputStream());
+            openStream(new Socket(address, port));
         } catch (IOException e) {
             if (e instanceof InterruptedIOException) {
                 Thread.currentThread().interrupt();
@@ -242,6 +352,17 @@ public class SocketAppender extends AppenderSkeleton {
     }
 
 
+    /**
+     * Opens the stream of the <b>Protocol</b> on <code>socket</code>.
+     */
+    void openStream(Socket socket) throws IOException {
+        if (binary) {
+            bos = new BinaryEventWriter(socket.getOutputStream(), locationInfo, deflate);
+        } else {
+            oos = new ObjectOutputStream(socket.getOutputStream());
+        }
+    }
+
     public void append(LoggingEvent event) {
         if (event == null)
             return;
@@ -252,7 +373,28 @@ public class SocketAppender extends AppenderSkeleton {
             return;
         }
 
-        if (oos != null) {
+        if (sender != null) {
+            // the event is sent later by another thread, take what depends on this one now
+            if (locationInfo) {
+                event.getLocationInformation();
+            }
+            if (application != null) {
+                event.setProperty("application", application);
+            }
+            event.getNDC();
+            event.getThreadName();
+            event.getMDCCopy();
+            event.getRenderedMessage();
+            event.getThrowableStrRep();
+            sender.offer(event);
+        } else if (bos != null) {
+            if (application != null) {
+                event.setProperty("application", application);
+            }
+            if (bos.write(event) >= batchSize || !DeferredWaits.defer(frameFlush)) {
+                flushFrame();
+            }
+        } else if (oos != null) {
             try {
 
                 if (locationInfo) {
@@ -281,21 +423,333 @@ public class SocketAppender extends AppenderSkeleton {
                     oos.reset();
                 }
             } catch (IOException e) {
-                if (e instanceof InterruptedIOException) {
-                    Thread.currentThread().interrupt();
-                }
-                oos = null;
-                LogLog.warn("Detected problem with connection: " + e);
-                if (reconnectionDelay > 0) {
-                    fireConnector();
-                } else {
-                    errorHandler.error("Detected problem with connection, not reconnecting.", e,
-                            ErrorCode.GENERIC_FAILURE);
-                }
+                connectionFailed(e);
             }
         }
     }
 
+    /**
+     * Sends the events encoded since the last frame. Called at the end
+     * of the append call, or once the logging thread is done calling
+     * appenders, so that events appended meanwhile, for instance by an
+     * {@link org.apache.log4j.AsyncAppender} dispatching a batch, share
+     * the frame.
+     */
+    synchronized void flushFrame() {
+        if (bos != null) {
+            try {
+                bos.flush();
+            } catch (IOException e) {
+                connectionFailed(e);
+            }
+        }
+    }
+
+    private void connectionFailed(IOException e) {
+        if (e instanceof InterruptedIOException) {
+            Thread.currentThread().interrupt();
+        }
+        oos = null;
+        bos = null;
+        LogLog.warn("Detected problem with connection: " + e);
+        if (reconnectionDelay > 0) {
+            fireConnector();
+        } else {
+            errorHandler.error("Detected problem with connection, not reconnecting.", e,
+                    ErrorCode.GENERIC_FAILURE);
+        }
+    }
+
+    /**
+     * The <b>Protocol</b> option takes <code>SERIALIZED</code>, the
+     * default, to send serialized <code>LoggingEvent</code> objects, or
+     * <code>BINARY</code> to send events in the compact format of
+     * {@link BinaryEventWriter}. A {@link SocketNode} reads both.
+     *
+     * <p>Serialization sends the class descriptors and every string
+     * again for each event. The binary format sends logger and thread
+     * names once per connection and several events per write: the
+     * events appended during one logging call, or during one batch of
+     * an {@link org.apache.log4j.AsyncAppender}, are sent together, up
+     * to <b>BatchSize</b> bytes.
+     *
+     * @since 1.2.18
+     */
+    public void setProtocol(String protocol) {
+        String p = protocol.trim();
+        if (PROTOCOL_BINARY.equalsIgnoreCase(p)) {
+            binary = true;
+        } else if (PROTOCOL_SERIALIZED.equalsIgnoreCase(p)) {
+            binary = false;
+        } else {
+            LogLog.warn("Unknown protocol [" + protocol + "] for appender [" + name
+                    + "], using " + PROTOCOL_SERIALIZED + ".");
+            binary = false;
+        }
+    }
+
+    /**
+     * Returns value of the <b>Protocol</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getProtocol() {
+        return binary ? PROTOCOL_BINARY : PROTOCOL_SERIALIZED;
+    }
+
+    /**
+     * The <b>Deflate</b> option takes a boolean value, false by
+     * default. When set, the <code>BINARY</code> protocol compresses
+     * the stream, at the fastest compression level.
+     *
+     * @since 1.2.18
+     */
+    public void setDeflate(boolean deflate) {
+        this.deflate = deflate;
+    }
+
+    /**
+     * Returns value of the <b>Deflate</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getDeflate() {
+        return deflate;
+    }
+
+    /**
+     * Size in bytes above which the <code>BINARY</code> protocol sends
+     * the pending events right away, 8K by default.
+     *
+     * @since 1.2.18
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns value of the <b>BatchSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * The <b>NonBlocking</b> option takes a boolean value, false by
+     * default. When set, logging threads hand the events over to a
+     * sender thread through a queue of <b>QueueSize</b> events instead
+     * of writing to the socket. The sender thread owns the connection:
+     * it encodes the queued events in the <b>Protocol</b>, writes them
+     * in batches, and reconnects every <b>ReconnectionDelay</b>
+     * milliseconds when the server is unreachable, keeping the events
+     * queued meanwhile.
+     *
+     * <p>A stalled or unreachable server therefore only fills the
+     * queue; what happens to the events which do not fit is chosen by
+     * the <b>OverflowPolicy</b> option. Dropped events are counted and
+     * reported through {@link LogLog} once sending resumes. On
+     * {@link #close}, the sender thread is given one second to send
+     * the queued events.
+     *
+     * @since 1.2.18
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Returns value of the <b>NonBlocking</b> option.
+     *
+     * @since 1.2.18
+     */
+    public boolean getNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Number of events the queue of the <b>NonBlocking</b> mode holds,
+     * 1024 by default.
+     *
+     * @since 1.2.18
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * Returns value of the <b>QueueSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * The <b>OverflowPolicy</b> option tells what the
+     * <b>NonBlocking</b> mode does with an event when the queue is
+     * full: <code>DISCARD</code>, the default, drops it,
+     * <code>DISCARD_OLDEST</code> drops the oldest queued event instead,
+     * and <code>BLOCK</code> waits until the sender thread makes room,
+     * trading the latency of logging calls for completeness.
+     *
+     * @since 1.2.18
+     */
+    public void setOverflowPolicy(String policy) {
+        String p = policy.trim();
+        if (OVERFLOW_DISCARD.equalsIgnoreCase(p)) {
+            overflowPolicy = OVERFLOW_DISCARD;
+        } else if (OVERFLOW_DISCARD_OLDEST.equalsIgnoreCase(p)) {
+            overflowPolicy = OVERFLOW_DISCARD_OLDEST;
+        } else if (OVERFLOW_BLOCK.equalsIgnoreCase(p)) {
+            overflowPolicy = OVERFLOW_BLOCK;
+        } else {
+            LogLog.warn("Unknown overflow policy [" + policy + "] for appender [" + name
+                    + "], using " + OVERFLOW_DISCARD + ".");
+            overflowPolicy = OVERFLOW_DISCARD;
+        }
+    }
+
+    /**
+     * Returns value of the <b>OverflowPolicy</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Returns the number of events waiting in the queue of the
+     * <b>NonBlocking</b> mode.
+     *
+     * @since 1.2.18
+     */
+    public int getQueuedEvents() {
+        Sender s = sender;
+        return s == null ? 0 : s.getQueued();
+    }
+
+    /**
+     * Returns the largest number of events the queue of the
+     * <b>NonBlocking</b> mode has held.
+     *
+     * @since 1.2.18
+     */
+    public int getMaxQueuedEvents() {
+        Sender s = sender;
+        return s == null ? 0 : s.maxQueued;
+    }
+
+    /**
+     * Returns the number of events written to the socket by the
+     * <b>NonBlocking</b> mode.
+     *
+     * @since 1.2.18
+     */
+    public long getSentEvents() {
+        Sender s = sender;
+        return s == null ? 0 : s.sent;
+    }
+
+    /**
+     * Returns the number of events dropped by the <b>NonBlocking</b>
+     * mode, because the queue was full or the connection failed while
+     * they were being sent.
+     *
+     * @since 1.2.18
+     */
+    public long getDroppedEvents() {
+        Sender s = sender;
+        return s == null ? 0 : s.dropped;
+    }
+
+    /**
+     * The <b>Journal</b> option takes the name of a file where the
+     * events which cannot be sent are stored, so that they are sent
+     * once the server is reachable again, even by a later run of the
+     * application. It implies <b>NonBlocking</b>.
+     *
+     * <p>While the server is unreachable, the sender thread moves the
+     * queued events to the journal. Once connected, it sends the
+     * journal in order, at no more than <b>ReplayRate</b> events per
+     * second, before the events logged meanwhile. The offset of the
+     * events sent is saved in the journal after each batch. Events are
+     * delivered at least once: after a lost connection or a restart,
+     * the events of the batch being sent may be sent again. The events
+     * not sent yet do not take more than <b>MaxJournalSize</b> bytes,
+     * later events are dropped.
+     *
+     * @since 1.2.18
+     */
+    public void setJournal(String file) {
+        this.journalFile = file == null ? null : file.trim();
+    }
+
+    /**
+     * Returns value of the <b>Journal</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getJournal() {
+        return journalFile;
+    }
+
+    /**
+     * The <b>MaxJournalSize</b> option takes a size in bytes, with an
+     * optional "KB", "MB" or "GB" suffix, 64MB by default. It bounds
+     * the events of the journal not sent yet; the file also keeps
+     * events already sent until it is compacted, and may grow up to
+     * twice this size.
+     *
+     * @since 1.2.18
+     */
+    public void setMaxJournalSize(String value) {
+        maxJournalSize = OptionConverter.toFileSize(value, maxJournalSize + 1);
+    }
+
+    /**
+     * Returns value of the <b>MaxJournalSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public long getMaxJournalSize() {
+        return maxJournalSize;
+    }
+
+    /**
+     * Number of events per second the journal is sent at, 1000 by
+     * default, so that a server coming back is not flooded. Zero
+     * sends the journal as fast as the connection allows.
+     *
+     * @since 1.2.18
+     */
+    public void setReplayRate(int replayRate) {
+        this.replayRate = replayRate;
+    }
+
+    /**
+     * Returns value of the <b>ReplayRate</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getReplayRate() {
+        return replayRate;
+    }
+
+    /**
+     * Returns the size in bytes of the events of the journal not sent
+     * yet.
+     *
+     * @since 1.2.18
+     */
+    public long getJournalBacklog() {
+        Sender s = sender;
+        return s == null ? 0 : s.journalBacklog;
+    }
+
     public void setAdvertiseViaMulticastDNS(boolean advertiseViaMulticastDNS) {
         this.advertiseViaMulticastDNS = advertiseViaMulticastDNS;
     }
@@ -422,6 +876,459 @@ public class SocketAppender extends AppenderSkeleton {
         return reconnectionDelay;
     }
 
+    /**
+     * Sends the events queued by the <b>NonBlocking</b> mode. The
+     * socket is a blocking {@link SocketChannel}, closing it from
+     * another thread aborts a write stalled by the server.
+     *
+     * <p>With a journal, the events which cannot be sent are written
+     * to it, and sent from it once connected. While the journal is not
+     * empty, newly queued events are written to it as well so that the
+     * order is kept.
+     */
+    private final class Sender extends Thread {
+        private static final int MAX_BATCH = 256;
+        private final LoggingEvent[] queue = new LoggingEvent[queueSize];
+        private final LoggingEvent[] batch = new LoggingEvent[Math.min(queueSize, MAX_BATCH)];
+        private final boolean block = OVERFLOW_BLOCK.equals(overflowPolicy);
+        private final boolean discardOldest = OVERFLOW_DISCARD_OLDEST.equals(overflowPolicy);
+        private final EventJournal journal;
+        private final LoggingEvent[] replay;
+        private int start;
+        private int count;
+        private boolean closing;
+        private int lost;
+        volatile int maxQueued;
+        volatile long sent;
+        volatile long dropped;
+        volatile long journalBacklog;
+        private volatile SocketChannel channel;
+        private ObjectOutputStream out;
+        private BinaryEventWriter writer;
+        private long replayStart;
+        private long replayed;
+        private int flushedEvents;
+
+        Sender(EventJournal journal) {
+            super("log4j-socket-" + name);
+            setDaemon(true);
+            this.journal = journal;
+            if (journal != null) {
+                replay = new LoggingEvent[MAX_BATCH];
+                journalBacklog = journal.getBacklog();
+            } else {
+                replay = null;
+            }
+        }
+
+        void offer(LoggingEvent event) {
+            synchronized (queue) {
+                if (block) {
+                    while (count == queue.length && !closing) {
+                        try {
+                            queue.wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+                if (closing) {
+                    dropped(1);
+                    return;
+                }
+                if (count == queue.length) {
+                    dropped(1);
+                    if (!discardOldest) {
+                        return;
+                    }
+                    queue[start] = null;
+                    start = (start + 1) % queue.length;
+                    count--;
+                }
+                queue[(start + count) % queue.length] = event;
+                count++;
+                if (count > maxQueued) {
+                    maxQueued = count;
+                }
+                // half a batch wakes a sender waiting to reconnect, to move it to the journal
+                if (count == 1 || count == batch.length / 2) {
+                    queue.notifyAll();
+                }
+            }
+        }
+
+        int getQueued() {
+            synchronized (queue) {
+                return count;
+            }
+        }
+
+        /**
+         * Called with the queue lock held.
+         */
+        private void dropped(int n) {
+            dropped += n;
+            lost += n;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    if (channel == null && !connect()) {
+                        return;
+                    }
+                    if (journal != null && !journal.isEmpty()) {
+                        if (!replay()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    int n = take(true);
+                    if (n == 0) {
+                        return;
+                    }
+                    try {
+                        send(batch, n);
+                        sent += n;
+                        clear(batch, n);
+                    } catch (IOException e) {
+                        connectionLost(e);
+                        // the events flushed before the failure are not stored again
+                        int flushed = flushedEvents;
+                        sent += flushed;
+                        System.arraycopy(batch, flushed, batch, 0, n - flushed);
+                        clear(batch, n - flushed, n);
+                        store(n - flushed);
+                    }
+                    reportLost();
+                }
+            } finally {
+                disconnect();
+                if (journal != null) {
+                    spool();
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        LogLog.error("Could not close the event journal.", e);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Connects, retrying every <b>ReconnectionDelay</b>.
+         *
+         * @return false if the appender is closed or does not retry.
+         */
+        private boolean connect() {
+            while (!isClosing()) {
+                try {
+                    channel = SocketChannel.open(new InetSocketAddress(address, port));
+                    OutputStream os = new BufferedOutputStream(Channels.newOutputStream(channel),
+                            8 * 1024);
+                    if (binary) {
+                        writer = new BinaryEventWriter(os, locationInfo, deflate);
+                    } else {
+                        out = new ObjectOutputStream(os);
+                    }
+                    LogLog.debug("Connection established to " + address.getHostName() + ".");
+                    replayStart = System.currentTimeMillis();
+                    replayed = 0;
+                    return true;
+                } catch (IOException e) {
+                    disconnect();
+                    if (isClosing()) {
+                        return false;
+                    }
+                    if (reconnectionDelay <= 0) {
+                        errorHandler.error("Could not connect to remote log4j server at ["
+                                + address.getHostName() + "]. We are not retrying.", e,
+                                ErrorCode.GENERIC_FAILURE);
+                        if (journal == null) {
+                            synchronized (queue) {
+                                closing = true;
+                                dropped(count);
+                                count = 0;
+                                queue.notifyAll();
+                            }
+                            return false;
+                        }
+                        while (pause(1000)) {
+                            // keep the events in the journal for the next run
+                        }
+                        return false;
+                    }
+                    LogLog.debug("Could not connect to " + address.getHostName() +
+                            ". Exception is " + e);
+                    if (!pause(reconnectionDelay)) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Waits, writing the queued events to the journal if any.
+         *
+         * @return false once closed.
+         */
+        private boolean pause(long millis) {
+            long deadline = System.currentTimeMillis() + millis;
+            while (true) {
+                if (journal != null) {
+                    spool();
+                }
+                synchronized (queue) {
+                    long delay = deadline - System.currentTimeMillis();
+                    if (closing) {
+                        return false;
+                    }
+                    if (delay <= 0) {
+                        return true;
+                    }
+                    try {
+                        queue.wait(journal != null ? Math.min(delay, 100) : delay);
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends the next chunk of the journal, at no more than
+         * <b>ReplayRate</b> events per second.
+         *
+         * @return false once closed.
+         */
+        private boolean replay() {
+            // newer events go behind those of the journal
+            spool();
+            if (isClosing()) {
+                return false;
+            }
+            int n;
+            try {
+                n = journal.read(replay);
+            } catch (IOException e) {
+                LogLog.error("Could not read the event journal, discarding it.", e);
+                try {
+                    journal.clear();
+                } catch (IOException ie) {
+                    LogLog.error("Could not clear the event journal.", ie);
+                }
+                journalBacklog = 0;
+                return true;
+            }
+            try {
+                send(replay, n);
+            } catch (IOException e) {
+                journal.rewind();
+                connectionLost(e);
+                return true;
+            } finally {
+                clear(replay, n);
+            }
+            sent += n;
+            try {
+                journal.commit();
+            } catch (IOException e) {
+                LogLog.error("Could not checkpoint the event journal.", e);
+            }
+            journalBacklog = journal.getBacklog();
+            if (replayRate > 0) {
+                replayed += n;
+                long due = replayStart + replayed * 1000 / replayRate;
+                synchronized (queue) {
+                    long delay;
+                    while (!closing && (delay = due - System.currentTimeMillis()) > 0) {
+                        try {
+                            queue.wait(delay);
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Writes the queued events to the journal.
+         */
+        private void spool() {
+            int n;
+            while ((n = take(false)) > 0) {
+                store(n);
+            }
+        }
+
+        /**
+         * Writes the batch to the journal if any, and counts the events
+         * which could not be written as dropped.
+         */
+        private void store(int n) {
+            int stored = 0;
+            if (journal != null) {
+                try {
+                    stored = journal.append(batch, n);
+                } catch (IOException e) {
+                    LogLog.error("Could not write to the event journal.", e);
+                }
+                journalBacklog = journal.getBacklog();
+            }
+            clear(batch, n);
+            synchronized (queue) {
+                dropped(n - stored);
+            }
+        }
+
+        private void connectionLost(IOException e) {
+            disconnect();
+            if (!isClosing()) {
+                LogLog.warn("Detected problem with connection: " + e);
+            }
+        }
+
+        private boolean isClosing() {
+            synchronized (queue) {
+                return closing;
+            }
+        }
+
+        /**
+         * Moves the queued events to the batch.
+         *
+         * @param wait if true, waits for an event unless closed.
+         * @return the number of events, 0 once closed and drained.
+         */
+        private int take(boolean wait) {
+            synchronized (queue) {
+                while (wait && count == 0 && !closing) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        return 0;
+                    }
+                }
+                int n = Math.min(count, batch.length);
+                for (int i = 0; i < n; i++) {
+                    batch[i] = queue[start];
+                    queue[start] = null;
+                    start = (start + 1) % queue.length;
+                }
+                count -= n;
+                if (block) {
+                    queue.notifyAll();
+                }
+                return n;
+            }
+        }
+
+        /**
+         * Sends the first <code>n</code> events. If this fails,
+         * <code>flushedEvents</code> tells how many of them were flushed
+         * before the failure.
+         */
+        private void send(LoggingEvent[] events, int n) throws IOException {
+            flushedEvents = 0;
+            for (int i = 0; i < n; i++) {
+                if (writer != null) {
+                    if (writer.write(events[i]) >= batchSize) {
+                        writer.flush();
+                        flushedEvents = i + 1;
+                    }
+                } else {
+                    out.writeObject(events[i]);
+                    // as in blocking mode, so the stream does not keep the events
+                    out.reset();
+                }
+            }
+            if (writer != null) {
+                writer.flush();
+            } else {
+                out.flush();
+            }
+        }
+
+        private void clear(LoggingEvent[] events, int n) {
+            clear(events, 0, n);
+        }
+
+        private void clear(LoggingEvent[] events, int from, int to) {
+            for (int i = from; i < to; i++) {
+                events[i] = null;
+            }
+        }
+
+        private void reportLost() {
+            int n;
+            synchronized (queue) {
+                n = lost;
+                lost = 0;
+            }
+            if (n > 0) {
+                LogLog.warn("Dropped " + n + " events of appender [" + name
+                        + "], the remote log4j server is too slow or unreachable.");
+            }
+        }
+
+        private void disconnect() {
+            SocketChannel c = channel;
+            channel = null;
+            out = null;
+            writer = null;
+            if (c != null) {
+                try {
+                    c.close();
+                } catch (IOException e) {
+                    LogLog.debug("Could not close the connection.", e);
+                }
+            }
+        }
+
+        /**
+         * Waits up to one second for the queue to be sent, then aborts
+         * the connection.
+         */
+        void shutdown() {
+            synchronized (queue) {
+                closing = true;
+                queue.notifyAll();
+            }
+            try {
+                join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (isAlive()) {
+                SocketChannel c = channel;
+                if (c != null) {
+                    try {
+                        c.close();
+                    } catch (IOException e) {
+                        LogLog.debug("Could not close the connection.", e);
+                    }
+                }
+                interrupt();
+                try {
+                    // lets the aborted batch be counted
+                    join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (queue) {
+                dropped(count);
+                count = 0;
+                Arrays.fill(queue, null);
+            }
+            reportLost();
+        }
+    }
+
     /**
      * The Connector will reconnect when the server becomes available
      * again.  It does this by attempting to open a new connection every
@@ -445,8 +1352,8 @@ public class SocketAppender extends AppenderSkeleton {
                     sleep(reconnectionDelay);
                     LogLog.debug("Attempting connection to " + address.getHostName());
                     socket = new Socket(address, port);
-                    synchronized (this) {
-                        oos = new ObjectOutputStream(socket.getOutputStream());
+                    synchronized (SocketAppender.this) {
+                        openStream(socket);
                         connector = null;
                         LogLog.debug("Connection established. Exiting connector thread.");
                         break;
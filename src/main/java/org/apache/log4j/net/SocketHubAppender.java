@@ -17,18 +17,26 @@
 
 package org.apache.log4j.net;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Vector;
 
 import org.apache.log4j.AppenderSkeleton;
-import org.apache.log4j.helpers.CyclicBuffer;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -72,24 +80,19 @@ import org.apache.log4j.spi.LoggingEvent;
  * <p><li>If no remote clients are attached, the logging requests are
  * simply dropped.
  *
- * <p><li>Logging events are automatically <em>buffered</em> by the
- * native TCP implementation. This means that if the link to remote
- * client is slow but still faster than the rate of (log) event
- * production, the application will not be affected by the slow network
- * connection. However, if the network connection is slower then the
- * rate of event production, then the local application can only
- * progress at the network rate. In particular, if the network link to
- * the the remote client is down, the application will be blocked.
+ * <p><li>Each event is serialized once, and the bytes are put in the
+ * queue of each client, of <b>ClientQueueSize</b> events. A writer
+ * thread per client sends its queue, so that a slow or stalled client
+ * neither blocks the application nor delays the other clients. When
+ * the queue of a client is full, the <b>SlowClientPolicy</b> option
+ * tells whether the event is dropped for this client or the client is
+ * disconnected.
  *
  * <p>On the other hand, if the network link is up, but the remote
  * client is down, the client will not be blocked when making log
  * requests but the log events will be lost due to client
  * unavailability.
  *
- * <p>The single remote client case extends to multiple clients
- * connections. The rate of logging will be determined by the slowest
- * link.
- *
  * <p><li>If the JVM hosting the <code>SocketHubAppender</code> exits
  * before the <code>SocketHubAppender</code> is closed either
  * explicitly or subsequent to garbage collection, then there might
@@ -113,11 +116,41 @@ public class SocketHubAppender extends AppenderSkeleton {
      */
     static final int DEFAULT_PORT = 4560;
 
+    /**
+     * Value of the <b>SlowClientPolicy</b> option dropping the events
+     * which do not fit in the queue of a client, the default.
+     *
+     * @since 1.2.18
+     */
+    public static final String SLOW_CLIENT_DROP = "DROP";
+
+    /**
+     * Value of the <b>SlowClientPolicy</b> option disconnecting a client
+     * whose queue is full.
+     *
+     * @since 1.2.18
+     */
+    public static final String SLOW_CLIENT_DISCONNECT = "DISCONNECT";
+
+    /**
+     * Start of a Java serialization stream, written to each client
+     * before the events.
+     */
+    private static final byte[] STREAM_HEADER = {(byte) 0xAC, (byte) 0xED, 0, 5};
+
     private int port = DEFAULT_PORT;
-    private Vector oosList = new Vector();
+    private Vector clients = new Vector();
+    private int clientQueueSize = 1024;
+    private boolean disconnectSlowClients = false;
+    private ByteArrayOutputStream encoded;
+    private ObjectOutputStream encoder;
     private ServerMonitor serverMonitor = null;
     private boolean locationInfo = false;
-    private CyclicBuffer buffer = null;
+    private byte[][] backlog = null;
+    private int backlogStart;
+    private int backlogCount;
+    private long backlogBytes;
+    private long maxBacklogBytes = Long.MAX_VALUE;
     private String application;
     private boolean advertiseViaMulticastDNS;
     private ZeroConfSupport zeroConf;
@@ -183,20 +216,10 @@ public class SocketHubAppender extends AppenderSkeleton {
 
         // close all of the connections
         LogLog.debug("closing client connections");
-        while (oosList.size() != 0) {
-            ObjectOutputStream oos = (ObjectOutputStream) oosList.elementAt(0);
-            if (oos != null) {
-                try {
-                    oos.close();
-                } catch (InterruptedIOException e) {
-                    Thread.currentThread().interrupt();
-                    LogLog.error("could not close oos.", e);
-                } catch (IOException e) {
-                    LogLog.error("could not close oos.", e);
-                }
-
-                oosList.removeElementAt(0);
-            }
+        while (clients.size() != 0) {
+            Client client = (Client) clients.elementAt(0);
+            clients.removeElementAt(0);
+            client.shutdown();
         }
     }
 
@@ -217,51 +240,82 @@ public class SocketHubAppender extends AppenderSkeleton {
             event.getMDCCopy();
             event.getRenderedMessage();
             event.getThrowableStrRep();
-
-            if (buffer != null) {
-                buffer.add(event);
-            }
         }
 
-        // if no event or no open connections, exit now
-        if ((event == null) || (oosList.size() == 0)) {
+        // if no event, or no open connections and no buffer, exit now
+        if ((event == null) || (clients.size() == 0 && backlog == null)) {
             return;
         }
 
-        // loop through the current set of open connections, appending the event to each
-        for (int streamCount = 0; streamCount < oosList.size(); streamCount++) {
-
-            ObjectOutputStream oos = null;
-            try {
-                oos = (ObjectOutputStream) oosList.elementAt(streamCount);
-            } catch (ArrayIndexOutOfBoundsException e) {
-                // catch this, but just don't assign a value
-                // this should not really occur as this method is
-                // the only one that can remove oos's (besides cleanUp).
+        byte[] bytes = serialize(event);
+        if (bytes == null) {
+            return;
+        }
+        if (backlog != null) {
+            addToBacklog(bytes);
+        }
+        // hand the same bytes to each client, removing those which failed
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = (Client) clients.elementAt(i);
+            if (!client.offer(bytes)) {
+                clients.removeElementAt(i);
+                client.abort();
+                LogLog.debug("dropped connection");
             }
+        }
+    }
 
-            // list size changed unexpectedly? Just exit the append.
-            if (oos == null)
-                break;
-
-            try {
-                oos.writeObject(event);
-                oos.flush();
-                // Failing to reset the object output stream every now and
-                // then creates a serious memory leak.
-                // right now we always reset. TODO - set up frequency counter per oos?
-                oos.reset();
-            } catch (IOException e) {
-                if (e instanceof InterruptedIOException) {
-                    Thread.currentThread().interrupt();
-                }
-                // there was an io exception so just drop the connection
-                oosList.removeElementAt(streamCount);
-                LogLog.debug("dropped connection");
+    /**
+     * Keeps the bytes of an event for the clients connecting later,
+     * dropping the oldest events beyond <b>BufferSize</b> events or
+     * <b>BufferBytes</b> bytes.
+     */
+    private void addToBacklog(byte[] bytes) {
+        while (backlogCount > 0
+                && (backlogCount == backlog.length || backlogBytes + bytes.length > maxBacklogBytes)) {
+            backlogBytes -= backlog[backlogStart].length;
+            backlog[backlogStart] = null;
+            backlogStart = (backlogStart + 1) % backlog.length;
+            backlogCount--;
+        }
+        if (bytes.length > maxBacklogBytes) {
+            return;
+        }
+        backlog[(backlogStart + backlogCount) % backlog.length] = bytes;
+        backlogCount++;
+        backlogBytes += bytes.length;
+    }
 
-                // decrement to keep the counter in place (for loop always increments)
-                streamCount--;
+    /**
+     * Serializes <code>event</code> as written to a client stream. The
+     * stream is reset after the event, so that the bytes of an event do
+     * not depend on the events sent before and can be shared by all the
+     * clients.
+     *
+     * @return the bytes, or null if the event could not be serialized.
+     */
+    byte[] serialize(LoggingEvent event) {
+        try {
+            if (encoder == null) {
+                encoded = new ByteArrayOutputStream(512);
+                encoder = new ObjectOutputStream(encoded);
+                encoder.flush();
+            }
+            // drops the stream header, or the bytes of the previous event
+            encoded.reset();
+            encoder.writeObject(event);
+            // Failing to reset the object output stream every now and
+            // then creates a serious memory leak.
+            encoder.reset();
+            encoder.flush();
+            return encoded.toByteArray();
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
             }
+            LogLog.error("Could not serialize event for appender [" + name + "].", e);
+            encoder = null;
+            return null;
         }
     }
 
@@ -307,21 +361,48 @@ public class SocketHubAppender extends AppenderSkeleton {
      * The <b>BufferSize</b> option takes a positive integer representing the number of events this appender will buffer and send to newly connected
      * clients.
      */
-    public void setBufferSize(int _bufferSize) {
-        buffer = new CyclicBuffer(_bufferSize);
+    public synchronized void setBufferSize(int _bufferSize) {
+        if (_bufferSize < 1) {
+            throw new IllegalArgumentException("The maxSize argument (" + _bufferSize + ") is not a positive integer.");
+        }
+        backlog = new byte[_bufferSize][];
+        backlogStart = 0;
+        backlogCount = 0;
+        backlogBytes = 0;
     }
 
     /**
      * Returns value of the <b>bufferSize</b> option.
      */
     public int getBufferSize() {
-        if (buffer == null) {
+        if (backlog == null) {
             return 0;
         } else {
-            return buffer.getMaxSize();
+            return backlog.length;
         }
     }
 
+    /**
+     * The <b>BufferBytes</b> option limits the serialized size of the
+     * events kept for newly connected clients, in bytes with an optional
+     * "KB", "MB" or "GB" suffix. It applies on top of <b>BufferSize</b>,
+     * and there is no limit by default.
+     *
+     * @since 1.2.18
+     */
+    public void setBufferBytes(String value) {
+        maxBacklogBytes = OptionConverter.toFileSize(value, maxBacklogBytes);
+    }
+
+    /**
+     * Returns value of the <b>BufferBytes</b> option.
+     *
+     * @since 1.2.18
+     */
+    public long getBufferBytes() {
+        return maxBacklogBytes;
+    }
+
     /**
      * The <b>LocationInfo</b> option takes a boolean value. If true,
      * the information sent to the remote host will include location
@@ -338,6 +419,63 @@ public class SocketHubAppender extends AppenderSkeleton {
         return locationInfo;
     }
 
+    /**
+     * Number of events the queue of each client holds, 1024 by default.
+     *
+     * @since 1.2.18
+     */
+    public void setClientQueueSize(int clientQueueSize) {
+        this.clientQueueSize = Math.max(1, clientQueueSize);
+    }
+
+    /**
+     * Returns value of the <b>ClientQueueSize</b> option.
+     *
+     * @since 1.2.18
+     */
+    public int getClientQueueSize() {
+        return clientQueueSize;
+    }
+
+    /**
+     * The <b>SlowClientPolicy</b> option tells what happens when an
+     * event does not fit in the queue of a client: <code>DROP</code>,
+     * the default, drops the event for this client only, and
+     * <code>DISCONNECT</code> closes the connection of the client.
+     *
+     * @since 1.2.18
+     */
+    public void setSlowClientPolicy(String policy) {
+        String p = policy.trim();
+        if (SLOW_CLIENT_DISCONNECT.equalsIgnoreCase(p)) {
+            disconnectSlowClients = true;
+        } else {
+            if (!SLOW_CLIENT_DROP.equalsIgnoreCase(p)) {
+                LogLog.warn("Unknown slow client policy [" + policy + "] for appender [" + name
+                        + "], using " + SLOW_CLIENT_DROP + ".");
+            }
+            disconnectSlowClients = false;
+        }
+    }
+
+    /**
+     * Returns value of the <b>SlowClientPolicy</b> option.
+     *
+     * @since 1.2.18
+     */
+    public String getSlowClientPolicy() {
+        return disconnectSlowClients ? SLOW_CLIENT_DISCONNECT : SLOW_CLIENT_DROP;
+    }
+
+    /**
+     * Returns the number of clients connected.
+     *
+     * @since 1.2.18
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
     public void setAdvertiseViaMulticastDNS(boolean advertiseViaMulticastDNS) {
         this.advertiseViaMulticastDNS = advertiseViaMulticastDNS;
     }
@@ -350,7 +488,7 @@ public class SocketHubAppender extends AppenderSkeleton {
      * Start the ServerMonitor thread.
      */
     private void startServer() {
-        serverMonitor = new ServerMonitor(port, oosList);
+        serverMonitor = new ServerMonitor(port, clients);
     }
 
     /**
@@ -361,7 +499,18 @@ public class SocketHubAppender extends AppenderSkeleton {
      * @throws IOException IO error when opening the socket.
      */
     protected ServerSocket createServerSocket(final int socketPort) throws IOException {
-        return new ServerSocket(socketPort);
+        // the channel of the accepted sockets sends the buffered events
+        // to a new client with one gathering write
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            ServerSocket socket = channel.socket();
+            socket.setReuseAddress(true);
+            socket.bind(new InetSocketAddress(socketPort));
+            return socket;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
     }
 
     /**
@@ -371,16 +520,16 @@ public class SocketHubAppender extends AppenderSkeleton {
      */
     private class ServerMonitor implements Runnable {
         private int port;
-        private Vector oosList;
+        private Vector clients;
         private boolean keepRunning;
         private Thread monitorThread;
 
         /**
          * Create a thread and start the monitor.
          */
-        public ServerMonitor(int _port, Vector _oosList) {
+        public ServerMonitor(int _port, Vector _clients) {
             port = _port;
-            oosList = _oosList;
+            clients = _clients;
             keepRunning = true;
             monitorThread = new Thread(this);
             monitorThread.setDaemon(true);
@@ -417,13 +566,20 @@ public class SocketHubAppender extends AppenderSkeleton {
             }
         }
 
-        private void sendCachedEvents(ObjectOutputStream stream) throws IOException {
-            if (buffer != null) {
-                for (int i = 0; i < buffer.length(); i++) {
-                    stream.writeObject(buffer.get(i));
+        /**
+         * Starts a client sending the buffered events first, and adds it
+         * to the clients, holding the appender lock so that no event is
+         * missed or sent twice.
+         */
+        private void addClient(Socket socket) throws IOException {
+            synchronized (SocketHubAppender.this) {
+                byte[][] events = new byte[backlogCount][];
+                for (int i = 0; i < backlogCount; i++) {
+                    events[i] = backlog[(backlogStart + i) % backlog.length];
                 }
-                stream.flush();
-                stream.reset();
+                Client client = new Client(socket, port, events);
+                client.start();
+                clients.addElement(client);
             }
         }
 
@@ -459,6 +615,9 @@ public class SocketHubAppender extends AppenderSkeleton {
                         socket = serverSocket.accept();
                     } catch (InterruptedIOException e) {
                         // timeout occurred, so just loop
+                    } catch (ClosedChannelException e) {
+                        // closed by stopMonitor
+                        keepRunning = false;
                     } catch (SocketException e) {
                         LogLog.error("exception accepting socket, shutting down server socket.", e);
                         keepRunning = false;
@@ -473,14 +632,7 @@ public class SocketHubAppender extends AppenderSkeleton {
                             LogLog.debug("accepting connection from " + remoteAddress.getHostName()
                                     + " (" + remoteAddress.getHostAddress() + ")");
 
-                            // create an ObjectOutputStream
-                            ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-                            if (buffer != null && buffer.length() > 0) {
-                                sendCachedEvents(oos);
-                            }
-
-                            // add it to the oosList.  OK since Vector is synchronized.
-                            oosList.addElement(oos);
+                            addClient(socket);
                         } catch (IOException e) {
                             if (e instanceof InterruptedIOException) {
                                 Thread.currentThread().interrupt();
@@ -501,5 +653,175 @@ public class SocketHubAppender extends AppenderSkeleton {
             }
         }
     }
-}
 
+    /**
+     * A connected client, its queue of serialized events and the thread
+     * writing them.
+     */
+    private final class Client extends Thread {
+        private final Socket socket;
+        private final OutputStream out;
+        private byte[][] replay;
+        private final byte[][] queue = new byte[clientQueueSize][];
+        private final byte[][] batch = new byte[Math.min(clientQueueSize, 256)][];
+        private int start;
+        private int count;
+        private int lost;
+        private boolean closing;
+        private boolean failed;
+
+        /**
+         * @param replay buffered events, sent before the queue.
+         */
+        Client(Socket socket, int port, byte[][] replay) throws IOException {
+            super("SocketHubAppender-Client-" + port + "-" + socket.getInetAddress().getHostAddress()
+                    + ":" + socket.getPort());
+            setDaemon(true);
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8 * 1024);
+            this.replay = replay;
+        }
+
+        /**
+         * Writes the stream header and the buffered events, in one
+         * gathering write when the socket has a channel.
+         */
+        private void sendReplay() throws IOException {
+            SocketChannel channel = socket.getChannel();
+            if (channel == null || replay.length == 0) {
+                out.write(STREAM_HEADER);
+                for (int i = 0; i < replay.length; i++) {
+                    out.write(replay[i]);
+                }
+                out.flush();
+            } else {
+                ByteBuffer[] buffers = new ByteBuffer[replay.length + 1];
+                buffers[0] = ByteBuffer.wrap(STREAM_HEADER);
+                for (int i = 0; i < replay.length; i++) {
+                    buffers[i + 1] = ByteBuffer.wrap(replay[i]);
+                }
+                ByteBuffer last = buffers[buffers.length - 1];
+                int offset = 0;
+                while (last.hasRemaining()) {
+                    channel.write(buffers, offset, buffers.length - offset);
+                    while (offset < buffers.length - 1 && !buffers[offset].hasRemaining()) {
+                        offset++;
+                    }
+                }
+            }
+            replay = null;
+        }
+
+        /**
+         * Queues <code>bytes</code>.
+         *
+         * @return false if the client failed, or if its queue is full
+         * and slow clients are disconnected.
+         */
+        boolean offer(byte[] bytes) {
+            synchronized (queue) {
+                if (failed || closing) {
+                    return false;
+                }
+                if (count == queue.length) {
+                    if (disconnectSlowClients) {
+                        LogLog.warn("Disconnecting client " + socket.getInetAddress()
+                                + " of appender [" + name + "], it is too slow.");
+                        return false;
+                    }
+                    lost++;
+                    return true;
+                }
+                queue[(start + count) % queue.length] = bytes;
+                count++;
+                if (count == 1) {
+                    queue.notifyAll();
+                }
+                return true;
+            }
+        }
+
+        public void run() {
+            try {
+                sendReplay();
+                while (true) {
+                    int n;
+                    int dropped;
+                    synchronized (queue) {
+                        while (count == 0 && !closing) {
+                            queue.wait();
+                        }
+                        if (count == 0) {
+                            return;
+                        }
+                        n = Math.min(count, batch.length);
+                        for (int i = 0; i < n; i++) {
+                            batch[i] = queue[start];
+                            queue[start] = null;
+                            start = (start + 1) % queue.length;
+                        }
+                        count -= n;
+                        dropped = lost;
+                        lost = 0;
+                    }
+                    for (int i = 0; i < n; i++) {
+                        out.write(batch[i]);
+                        batch[i] = null;
+                    }
+                    out.flush();
+                    if (dropped > 0) {
+                        LogLog.warn("Dropped " + dropped + " events for client "
+                                + socket.getInetAddress() + " of appender [" + name
+                                + "], it is too slow.");
+                    }
+                }
+            } catch (InterruptedException e) {
+                // aborted
+            } catch (IOException e) {
+                LogLog.debug("Could not write to client " + socket.getInetAddress() + ": " + e);
+            } finally {
+                synchronized (queue) {
+                    failed = true;
+                    count = 0;
+                }
+                close();
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LogLog.debug("Could not close client socket.", e);
+            }
+        }
+
+        /**
+         * Closes the connection without waiting for the queue.
+         */
+        void abort() {
+            synchronized (queue) {
+                closing = true;
+                queue.notifyAll();
+            }
+            close();
+        }
+
+        /**
+         * Waits up to one second for the queue to be written, then
+         * closes the connection.
+         */
+        void shutdown() {
+            synchronized (queue) {
+                closing = true;
+                queue.notifyAll();
+            }
+            try {
+                join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            close();
+        }
+    }
+}
@@ -37,6 +37,9 @@ import org.apache.log4j.spi.LoggingEvent;
  * <p>For example, the socket node might decide to log events to a
  * local file and also resent them to a second socket node.
  *
+ * <p>Events are read as serialized objects or in the binary format of
+ * {@link BinaryEventWriter}, as told by the first byte of the stream.
+ *
  * @author Ceki G&uuml;lc&uuml;
  * @since 0.8.4
  */
@@ -45,6 +48,7 @@ public class SocketNode implements Runnable {
     Socket socket;
     LoggerRepository hierarchy;
     ObjectInputStream ois;
+    BinaryEventReader reader;
 
     static Logger logger = Logger.getLogger(SocketNode.class);
 
@@ -52,8 +56,16 @@ public class SocketNode implements Runnable {
         this.socket = socket;
         this.hierarchy = hierarchy;
         try {
-            ois = new ObjectInputStream(
-                    new BufferedInputStream(socket.getInputStream()));
+            BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+            // the first byte tells the binary format from serialization
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+            if (BinaryEventReader.isBinaryStream(first)) {
+                reader = new BinaryEventReader(in, hierarchy);
+            } else {
+                ois = new ObjectInputStream(in);
+            }
         } catch (InterruptedIOException e) {
             Thread.currentThread().interrupt();
             logger.error("Could not open ObjectInputStream to " + socket, e);
@@ -75,10 +87,10 @@ public class SocketNode implements Runnable {
         Logger remoteLogger;
 
         try {
-            if (ois != null) {
+            if (ois != null || reader != null) {
                 while (true) {
                     // read an event from the wire
-                    event = (LoggingEvent) ois.readObject();
+                    event = reader != null ? reader.read() : (LoggingEvent) ois.readObject();
                     // get a logger from the hierarchy. The name of the logger is taken to be the name contained in the event.
                     remoteLogger = hierarchy.getLogger(event.getLoggerName());
                     //event.logger = remoteLogger;
@@ -110,6 +122,13 @@ public class SocketNode implements Runnable {
                     logger.info("Could not close connection.", e);
                 }
             }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (Exception e) {
+                    logger.info("Could not close connection.", e);
+                }
+            }
             if (socket != null) {
                 try {
                     socket.close();
@@ -17,6 +17,7 @@
 
 package org.apache.log4j.pattern;
 
+import org.apache.log4j.ParameterizedMessage;
 import org.apache.log4j.spi.LoggingEvent;
 
 
@@ -53,6 +54,11 @@ public final class MessagePatternConverter extends LoggingEventPatternConverter
    * {@inheritDoc}
    */
   public void format(final LoggingEvent event, final StringBuffer toAppendTo) {
+    Object message = event.getMessage();
+    if (message instanceof ParameterizedMessage
+        && ((ParameterizedMessage) message).appendTo(toAppendTo)) {
+      return;
+    }
     toAppendTo.append(event.getRenderedMessage());
   }
 }
@@ -19,15 +19,14 @@ package org.apache.log4j.pattern;
 
 import org.apache.log4j.spi.LoggingEvent;
 
-import java.util.Iterator;
-import java.util.Set;
-import org.apache.log4j.helpers.*;
+import java.util.Hashtable;
+import org.apache.log4j.helpers.VersionedHashtable;
 
 
 /**
  * Able to handle the contents of the LoggingEvent's Property bundle and either
  * output the entire contents of the properties in a similar format to the
- * java.util.Hashtable.toString(), or to output the value of a specific key
+ * java.util.Hashtable.toString(), sorted by key, or to output the value of a specific key
  * within the property bundle
  * when this pattern converter has the option set.
  *
@@ -75,23 +74,14 @@ public final class PropertiesPatternConverter
     // if there is no additional options, we output every single
     // Key/Value pair for the MDC in a similar format to Hashtable.toString()
     if (option == null) {
-      toAppendTo.append("{");
-
-      try {
-        Set keySet = MDCKeySetExtractor.INSTANCE.getPropertyKeySet(event);
-          if (keySet != null) {
-            for (Iterator i = keySet.iterator(); i.hasNext();) {
-                Object item = i.next();
-                Object val = event.getMDC(item.toString());
-                toAppendTo.append("{").append(item).append(",").append(val).append(
-                "}");
-            }
-          }
-      } catch(Exception ex) {
-              LogLog.error("Unexpected exception while extracting MDC keys", ex);
+      // the sorted rendering of the thread's MDC is cached until the MDC
+      // changes, copies taken for asynchronous logging share that cache.
+      Hashtable context = event.getMDCContext();
+      if (context instanceof VersionedHashtable) {
+        toAppendTo.append(((VersionedHashtable) context).toSortedString());
+      } else {
+        toAppendTo.append(VersionedHashtable.toSortedString(context));
       }
-
-      toAppendTo.append("}");
     } else {
       // otherwise they just want a single key output
       Object val = event.getMDC(option);
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.spi;
+
+import java.util.function.Supplier;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * The message of a {@link LoggingEvent} produced on demand by a
+ * {@link Supplier}. {@link LoggingEvent} replaces it by the produced
+ * object the first time the message is requested, which normally
+ * happens once the event has passed the threshold and the filters of
+ * an appender.
+ *
+ * @since 1.2.18
+ */
+public final class DeferredMessage {
+
+    private final Supplier supplier;
+
+    /**
+     * @param supplier produces the message, may be null.
+     */
+    public DeferredMessage(Supplier supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Runs the supplier. A failure of the supplier is reported through
+     * {@link LogLog} and results in a <code>null</code> message.
+     */
+    Object get() {
+        if (supplier == null) {
+            return null;
+        }
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            LogLog.error("Message supplier failed.", e);
+            return null;
+        }
+    }
+}
@@ -317,6 +317,9 @@ public class LoggingEvent implements java.io.Serializable {
      * @since 1.1
      */
     public Object getMessage() {
+        if (message instanceof DeferredMessage) {
+            message = ((DeferredMessage) message).get();
+        }
         if (message != null) {
             return message;
         } else {
@@ -379,7 +382,34 @@ public class LoggingEvent implements java.io.Serializable {
         }
     }
 
+    /**
+     * Returns the MDC of this event without copying it: the MDC copy
+     * if one was taken, otherwise the current thread's MDC. The
+     * returned table must not be modified and may be <code>null</code>.
+     *
+     * @since 1.2.18
+     */
+    public Hashtable getMDCContext() {
+        if (mdcCopyLookupRequired) {
+            return MDC.getContext();
+        }
+        return mdcCopy;
+    }
+
+    /**
+     * Returns true if the message is a {@link DeferredMessage} which was
+     * not produced yet.
+     *
+     * @since 1.2.18
+     */
+    public boolean isMessageDeferred() {
+        return message instanceof DeferredMessage;
+    }
+
     public String  getRenderedMessage() {
+        if (message instanceof DeferredMessage) {
+            message = ((DeferredMessage) message).get();
+        }
         if (renderedMessage == null && message != null) {
             if (message instanceof String)
                 renderedMessage = (String) message;
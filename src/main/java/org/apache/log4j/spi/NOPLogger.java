@@ -24,6 +24,7 @@ import org.apache.log4j.Priority;
 import java.util.Enumeration;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.function.Supplier;
 
 /**
  * No-operation implementation of Logger used by NOPLoggerRepository.
@@ -208,5 +209,57 @@ public final class NOPLogger extends Logger {
         return false;
     }
 
+    /** {@inheritDoc} */
+    public void debug(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void debug(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void error(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void error(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void fatal(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void fatal(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void info(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void info(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void warn(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void warn(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void trace(final Supplier<?> supplier) {
+    }
+
+    /** {@inheritDoc} */
+    public void trace(final Supplier<?> supplier, final Throwable t) {
+    }
+
+    /** {@inheritDoc} */
+    public void log(final Priority priority, final Supplier<?> supplier, final Throwable t) {
+    }
+
 
 }
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.helpers.BinaryEventEncoder;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.ErrorCode;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * BinaryFileAppender appends log events to a file in a compact
+ * binary format which can be read back with {@link BinaryFileReader}.
+ *
+ * <p>The file is a sequence of chunks. A header chunk starts each
+ * segment of the file, that is, each time the file is opened. Events
+ * are encoded by a {@link BinaryEventEncoder} into data blocks, each
+ * block being followed by the CRC32 checksum of its content. Logger
+ * names, thread names and levels are written once per segment, later
+ * references are written as small integers. Timestamps are written as
+ * variable length deltas. A block which is only partly written, by a
+ * crash or a failed write, is skipped by the reader, which resumes at
+ * the next segment. After a failed write the appender starts a new
+ * segment.
+ *
+ * <p>The layout of this appender is ignored, events are rendered when
+ * the file is read.
+ *
+ * @since 1.2.18
+ */
+public class BinaryFileAppender extends AppenderSkeleton {
+
+    /**
+     * Marker of a header chunk.
+     */
+    static final int HEADER_CHUNK = 'H';
+
+    /**
+     * Marker of a data block chunk.
+     */
+    static final int BLOCK_CHUNK = 'B';
+
+    /**
+     * Magic bytes following the header marker.
+     */
+    static final byte[] MAGIC = {'L', '4', 'J'};
+
+    /**
+     * Version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of the marker, length and checksum in front of each block.
+     */
+    static final int BLOCK_OVERHEAD = 9;
+
+    /**
+     * Maximum length of a data block, longer blocks are treated as
+     * corrupt by the reader.
+     */
+    static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024;
+
+    /**
+     * The name of the log file.
+     */
+    protected String fileName = null;
+
+    /**
+     * Controls file truncation, see {@link #setAppend}.
+     */
+    protected boolean fileAppend = true;
+
+    /**
+     * Size of a data block, 8K by default.
+     */
+    protected int bufferSize = 8 * 1024;
+
+    /**
+     * Write a block at the end of each append operation.
+     */
+    protected boolean immediateFlush = true;
+
+    /**
+     * Write location information of each event.
+     */
+    protected boolean locationInfo = false;
+
+    private OutputStream out;
+    private BinaryEventEncoder encoder;
+    private final CRC32 crc = new CRC32();
+    private byte[] blockHeader = new byte[BLOCK_OVERHEAD];
+
+    /**
+     * Set when a block could not be written, the next block starts a
+     * new segment.
+     */
+    private boolean segmentLost;
+
+    public BinaryFileAppender() {
+    }
+
+    /**
+     * Instantiate a <code>BinaryFileAppender</code> and open the file
+     * designated by <code>filename</code>.
+     */
+    public BinaryFileAppender(String filename, boolean append) throws IOException {
+        this.fileAppend = append;
+        setFile(filename, append);
+    }
+
+    /**
+     * If the value of <b>File</b> is not <code>null</code>, then the
+     * file is opened.
+     */
+    public void activateOptions() {
+        if (fileName != null) {
+            try {
+                setFile(fileName, fileAppend);
+            } catch (IOException e) {
+                errorHandler.error("setFile(" + fileName + "," + fileAppend + ") call failed.",
+                        e, ErrorCode.FILE_OPEN_FAILURE);
+            }
+        } else {
+            LogLog.warn("File option not set for appender [" + name + "].");
+        }
+    }
+
+    /**
+     * Opens <code>fileName</code> and starts a new segment by writing a
+     * header chunk. A previously opened file is closed first.
+     */
+    public synchronized void setFile(String fileName, boolean append) throws IOException {
+        LogLog.debug("setFile called: " + fileName + ", " + append);
+        closeFile();
+
+        FileOutputStream ostream;
+        try {
+            ostream = new FileOutputStream(fileName, append);
+        } catch (FileNotFoundException ex) {
+            String parentName = new File(fileName).getParent();
+            if (parentName != null) {
+                File parentDir = new File(parentName);
+                if (!parentDir.exists() && parentDir.mkdirs()) {
+                    ostream = new FileOutputStream(fileName, append);
+                } else {
+                    throw ex;
+                }
+            } else {
+                throw ex;
+            }
+        }
+        this.out = createOutputStream(ostream);
+        this.fileName = fileName;
+        this.fileAppend = append;
+        this.encoder = new BinaryEventEncoder(locationInfo);
+        this.segmentLost = false;
+
+        writeHeader();
+        out.flush();
+    }
+
+    /**
+     * Returns the stream the chunks are written to. This implementation
+     * returns <code>os</code>, subclasses may wrap it.
+     */
+    protected OutputStream createOutputStream(OutputStream os) {
+        return os;
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(HEADER_CHUNK);
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    public void append(LoggingEvent event) {
+        if (out == null) {
+            errorHandler.error("No output file set for the appender named [" + name + "].");
+            return;
+        }
+        if (encoder.encode(event) >= bufferSize || immediateFlush) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Write buffered events as a data block.
+     */
+    protected void writeBlock() {
+        int length = encoder.size();
+        if (length == 0 || out == null) {
+            return;
+        }
+        if (length > MAX_BLOCK_LENGTH) {
+            errorHandler.error("Dropping a block of " + length + " bytes exceeding the maximum of "
+                    + MAX_BLOCK_LENGTH + " bytes in [" + fileName + "].");
+            encoder.reset();
+            encoder.clear();
+            segmentLost = true;
+            return;
+        }
+        byte[] buf = encoder.getBuffer();
+        crc.reset();
+        crc.update(buf, 0, length);
+        int checksum = (int) crc.getValue();
+
+        blockHeader[0] = (byte) BLOCK_CHUNK;
+        writeInt(blockHeader, 1, length);
+        writeInt(blockHeader, 5, checksum);
+        try {
+            if (segmentLost) {
+                writeHeader();
+                segmentLost = false;
+            }
+            out.write(blockHeader);
+            out.write(buf, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            errorHandler.error("Failed to write block to [" + fileName + "].", e,
+                    ErrorCode.WRITE_FAILURE);
+            // the lost block may have defined names later blocks refer to,
+            // start over with an empty dictionary in a new segment, which
+            // the reader finds past the partially written block
+            encoder.reset();
+            segmentLost = true;
+        }
+        encoder.clear();
+    }
+
+    static void writeInt(byte[] b, int offset, int v) {
+        b[offset] = (byte) (v >>> 24);
+        b[offset + 1] = (byte) (v >>> 16);
+        b[offset + 2] = (byte) (v >>> 8);
+        b[offset + 3] = (byte) v;
+    }
+
+    /**
+     * Write pending events and close the file.
+     */
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        closeFile();
+    }
+
+    /**
+     * Write pending events and close the current file, if any.
+     */
+    protected void closeFile() {
+        if (out != null) {
+            writeBlock();
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException) {
+                    Thread.currentThread().interrupt();
+                }
+                LogLog.error("Could not close " + fileName, e);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * The binary format does not use a layout.
+     */
+    public boolean requiresLayout() {
+        return false;
+    }
+
+    /**
+     * The <b>File</b> option is the name of the file to append to.
+     */
+    public void setFile(String file) {
+        fileName = file.trim();
+    }
+
+    public String getFile() {
+        return fileName;
+    }
+
+    /**
+     * The <b>Append</b> option takes a boolean value. It is set to
+     * <code>true</code> by default, in which case a new segment is
+     * appended to an existing file. Otherwise the file is truncated.
+     */
+    public void setAppend(boolean flag) {
+        fileAppend = flag;
+    }
+
+    public boolean getAppend() {
+        return fileAppend;
+    }
+
+    /**
+     * The <b>BufferSize</b> option sets the size in bytes a block may
+     * reach before it is written to the file.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * If the <b>ImmediateFlush</b> option is set to <code>true</code>,
+     * the default, each event is written as its own block, with 9 bytes
+     * of overhead. Otherwise events are written once <b>BufferSize</b>
+     * bytes have accumulated, which gives a smaller file at the price of
+     * losing the pending block if the application crashes.
+     */
+    public void setImmediateFlush(boolean value) {
+        immediateFlush = value;
+    }
+
+    public boolean getImmediateFlush() {
+        return immediateFlush;
+    }
+
+    /**
+     * The <b>LocationInfo</b> option takes a boolean value. If true,
+     * the location information of each event is written to the file.
+     * Takes effect the next time the file is opened.
+     */
+    public void setLocationInfo(boolean locationInfo) {
+        this.locationInfo = locationInfo;
+    }
+
+    public boolean getLocationInfo() {
+        return locationInfo;
+    }
+}
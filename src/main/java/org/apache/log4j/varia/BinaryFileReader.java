@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StreamCorruptedException;
+import java.io.Writer;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.BinaryEventDecoder;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Reads the files written by {@link BinaryFileAppender} back into
+ * {@link LoggingEvent} objects.
+ *
+ * <p>The reader can also be used from the command line to print a
+ * binary log file as text.
+ *
+ * <pre>
+ * <b>Usage:</b> java org.apache.log4j.varia.BinaryFileReader file [conversionPattern]
+ *
+ * where <em>file</em> is a file written by a BinaryFileAppender and
+ * <em>conversionPattern</em> is a {@link PatternLayout} conversion
+ * pattern, {@link PatternLayout#TTCC_CONVERSION_PATTERN} by default.
+ * </pre>
+ *
+ * <p>Data which can not be read, such as a block whose checksum does
+ * not match its content or a partial block left by a crash or a
+ * failed write, is skipped up to the next segment with a warning. A
+ * truncated last block is treated as the end of the file. Blocks
+ * longer than {@link BinaryFileAppender#MAX_BLOCK_LENGTH} are
+ * treated as corrupt.
+ *
+ * @since 1.2.18
+ */
+public class BinaryFileReader {
+
+    private final DataInputStream in;
+    private final BinaryEventDecoder decoder;
+    private final CRC32 crc = new CRC32();
+
+    private byte[] block = new byte[8 * 1024];
+    private int blockLength;
+    private int blockPos;
+    private boolean headerSeen;
+
+    /**
+     * Read events from <code>in</code>, resolving loggers in the
+     * default logger repository.
+     */
+    public BinaryFileReader(InputStream in) {
+        this(in, LogManager.getLoggerRepository());
+    }
+
+    /**
+     * Read events from <code>in</code>, resolving loggers in
+     * <code>repository</code>.
+     */
+    public BinaryFileReader(InputStream in, LoggerRepository repository) {
+        // corrupt chunks are read again while looking for the next segment
+        this.in = new DataInputStream(in.markSupported() ? in : new BufferedInputStream(in));
+        this.decoder = new BinaryEventDecoder(repository);
+    }
+
+    /**
+     * Returns the next event, or <code>null</code> at the end of the
+     * file.
+     */
+    public LoggingEvent read() throws IOException {
+        while (blockPos >= blockLength) {
+            if (!readChunk()) {
+                return null;
+            }
+        }
+        int length = BinaryEventDecoder.readRecordLength(block, blockPos, blockLength - blockPos);
+        if (length < 0) {
+            throw new StreamCorruptedException("Truncated record length.");
+        }
+        blockPos += BinaryEventDecoder.recordLengthSize(length);
+        if (length > blockLength - blockPos) {
+            throw new StreamCorruptedException("Record exceeds block.");
+        }
+        LoggingEvent event = decoder.decode(block, blockPos, length);
+        blockPos += length;
+        return event;
+    }
+
+    /**
+     * Read the next header or data block, skipping corrupt data.
+     *
+     * @return false at the end of the file.
+     */
+    private boolean readChunk() throws IOException {
+        in.mark(BinaryFileAppender.MAX_BLOCK_LENGTH + BinaryFileAppender.BLOCK_OVERHEAD);
+        int marker = in.read();
+        if (marker < 0) {
+            return false;
+        }
+        try {
+            if (marker == BinaryFileAppender.HEADER_CHUNK) {
+                if (readHeader()) {
+                    return true;
+                }
+            } else if (marker == BinaryFileAppender.BLOCK_CHUNK && headerSeen) {
+                if (readBlock()) {
+                    return true;
+                }
+            }
+        } catch (EOFException e) {
+            // a truncated chunk, possibly followed by a new segment
+        }
+        in.reset();
+        in.skipBytes(1);
+        if (!skipToHeader()) {
+            LogLog.warn("Binary log file ends with a truncated or corrupt chunk.");
+            return false;
+        }
+        LogLog.warn("Skipped corrupt data in binary log file.");
+        return true;
+    }
+
+    /**
+     * Read the rest of a header chunk.
+     *
+     * @return false if the header is not valid.
+     */
+    private boolean readHeader() throws IOException {
+        for (int i = 0; i < BinaryFileAppender.MAGIC.length; i++) {
+            if (in.readByte() != BinaryFileAppender.MAGIC[i]) {
+                return false;
+            }
+        }
+        int version = in.readUnsignedByte();
+        if (version != BinaryFileAppender.VERSION) {
+            return false;
+        }
+        decoder.reset();
+        headerSeen = true;
+        blockLength = blockPos = 0;
+        return true;
+    }
+
+    /**
+     * Read the rest of a data block chunk. The block buffer grows with
+     * the bytes actually read, so that a corrupt length does not
+     * allocate more than the size of the file.
+     *
+     * @return false if the block is not valid.
+     */
+    private boolean readBlock() throws IOException {
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (length < 0 || length > BinaryFileAppender.MAX_BLOCK_LENGTH) {
+            return false;
+        }
+        int read = 0;
+        while (read < length) {
+            if (read == block.length) {
+                byte[] bigger = new byte[(int) Math.min(length, 2L * block.length)];
+                System.arraycopy(block, 0, bigger, 0, read);
+                block = bigger;
+            }
+            int n = Math.min(length, block.length) - read;
+            in.readFully(block, read, n);
+            read += n;
+        }
+        crc.reset();
+        crc.update(block, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            return false;
+        }
+        blockLength = length;
+        blockPos = 0;
+        return true;
+    }
+
+    /**
+     * Skip to the next valid header chunk and read it.
+     *
+     * @return false if the end of the file was reached.
+     */
+    private boolean skipToHeader() throws IOException {
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == BinaryFileAppender.HEADER_CHUNK) {
+                in.mark(BinaryFileAppender.MAGIC.length + 1);
+                try {
+                    if (readHeader()) {
+                        return true;
+                    }
+                } catch (EOFException e) {
+                    return false;
+                }
+                in.reset();
+            }
+        }
+        blockLength = blockPos = 0;
+        return false;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 1 || argv.length > 2) {
+            System.err.println("Usage: java " + BinaryFileReader.class.getName()
+                    + " file [conversionPattern]");
+            System.exit(1);
+        }
+        String pattern = argv.length == 2 ? argv[1] : PatternLayout.TTCC_CONVERSION_PATTERN;
+        Layout layout = new PatternLayout(pattern);
+        BinaryFileReader reader = new BinaryFileReader(
+                new BufferedInputStream(new FileInputStream(argv[0])));
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            LoggingEvent event;
+            while ((event = reader.read()) != null) {
+                out.write(layout.format(event));
+                if (layout.ignoresThrowable()) {
+                    String[] s = event.getThrowableStrRep();
+                    if (s != null) {
+                        for (int i = 0; i < s.length; i++) {
+                            out.write(s[i]);
+                            out.write(Layout.LINE_SEP);
+                        }
+                    }
+                }
+            }
+        } finally {
+            out.flush();
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.zip.Deflater;
+
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.helpers.BackgroundDeflaterOutputStream;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.ErrorCode;
+
+/**
+ * CompressedFileAppender writes a compressed log file, in the gzip
+ * format by default.
+ *
+ * <p>Compression runs on a thread dedicated to the appender, see
+ * {@link BackgroundDeflaterOutputStream}. Logging threads only encode
+ * the events and copy the bytes into a buffer. The compressor writes
+ * the data it received and sync-flushes at least every
+ * <b>SyncFlushInterval</b> milliseconds, so the file can be read with
+ * <code>zcat</code> up to that point even after a crash. Events logged
+ * during the last interval are lost if the process dies, whatever the
+ * <b>ImmediateFlush</b> option.
+ *
+ * <p>In append mode, gzip files get a new gzip member, which gzip
+ * readers handle transparently. The zlib format does not allow this,
+ * so the <code>DEFLATE</code> compression always truncates the file.
+ *
+ * <p>The <b>ChannelIO</b>, <b>MemoryMappedIO</b> and <b>Durability</b>
+ * options of {@link FileAppender} do not apply to this appender and are
+ * reset with a warning: forcing the file to disk would not reach the
+ * events still in the compressor.
+ *
+ * @since 1.2.18
+ */
+public class CompressedFileAppender extends FileAppender {
+
+    private boolean gzip = true;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private long syncFlushInterval = 1000;
+
+    private int chunkSize = 64 * 1024;
+
+    /**
+     * Set by {@link #createWriter} when compression could not start.
+     */
+    private boolean compressionFailed;
+
+    public CompressedFileAppender() {
+    }
+
+    /**
+     * Returns the value of the <b>Compression</b> option.
+     */
+    public String getCompression() {
+        return gzip ? "GZIP" : "DEFLATE";
+    }
+
+    /**
+     * Takes <code>GZIP</code>, the default, or <code>DEFLATE</code> for
+     * the zlib format.
+     */
+    public void setCompression(String value) {
+        String v = value.trim();
+        if ("GZIP".equalsIgnoreCase(v)) {
+            gzip = true;
+        } else if ("DEFLATE".equalsIgnoreCase(v)) {
+            gzip = false;
+        } else {
+            LogLog.warn("Unknown compression [" + value + "] for appender [" + name
+                    + "], using GZIP.");
+            gzip = true;
+        }
+    }
+
+    /**
+     * Returns the value of the <b>CompressionLevel</b> option.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Compression level, from 1 (fastest) to 9 (smallest). By default
+     * the compressor picks its own trade-off.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            LogLog.warn("Invalid compression level [" + compressionLevel
+                    + "] for appender [" + name + "], using the default level.");
+            compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the value of the <b>SyncFlushInterval</b> option.
+     */
+    public long getSyncFlushInterval() {
+        return syncFlushInterval;
+    }
+
+    /**
+     * Maximum time in milliseconds written events may wait before being
+     * compressed and written to the file, 1000 by default. Shorter
+     * intervals lose less on a crash but compress less well.
+     */
+    public void setSyncFlushInterval(long syncFlushInterval) {
+        this.syncFlushInterval = syncFlushInterval;
+    }
+
+    /**
+     * Returns the value of the <b>ChunkSize</b> option.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Size of the buffers handed to the compressing thread, 64K by
+     * default.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1024, chunkSize);
+    }
+
+    public void activateOptions() {
+        if (channelIO || memoryMappedIO) {
+            LogLog.warn("ChannelIO and MemoryMappedIO are ignored by appender [" + name + "].");
+            channelIO = false;
+            memoryMappedIO = false;
+        }
+        if (!"NONE".equals(getDurability())) {
+            // events in the deflater are not reached by force()
+            LogLog.warn("Durability is ignored by appender [" + name + "].");
+            setDurability("NONE");
+        }
+        super.activateOptions();
+    }
+
+    public synchronized void setFile(String fileName, boolean append, boolean bufferedIO,
+                                     int bufferSize) throws IOException {
+        if (append && !gzip && new File(fileName).length() > 0) {
+            LogLog.warn("Appender [" + name + "] can not append to the zlib file ["
+                    + fileName + "], truncating it.");
+            append = false;
+        }
+        compressionFailed = false;
+        super.setFile(fileName, append, bufferedIO, bufferSize);
+        if (compressionFailed) {
+            // appends are dropped rather than written uncompressed
+            qw = null;
+        }
+    }
+
+    /**
+     * Returns a writer compressing into <code>os</code>. If compression
+     * can not be started, <code>os</code> is closed and the file is left
+     * without a writer.
+     */
+    protected OutputStreamWriter createWriter(OutputStream os) {
+        try {
+            return super.createWriter(new BackgroundDeflaterOutputStream(os, gzip,
+                    compressionLevel, chunkSize, syncFlushInterval,
+                    "log4j-compressor-" + name));
+        } catch (IOException e) {
+            if (e instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            errorHandler.error("Could not start compressing the file of appender [" + name + "].", e,
+                    ErrorCode.FILE_OPEN_FAILURE);
+            compressionFailed = true;
+            try {
+                os.close();
+            } catch (IOException ignored) {
+                // already reported
+            }
+            return super.createWriter(os);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.beans.BeanInfo;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Layout;
+import org.apache.log4j.ParameterizedMessage;
+import org.apache.log4j.config.PropertySetter;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.OptionHandler;
+
+/**
+ * RoutingAppender sends each event to a child appender chosen by a
+ * route, the value of the <b>MDCKey</b> entry of the event, or the
+ * logger name when no key is set. Children are created on first use,
+ * for instance one file per tenant:
+ *
+ * <pre>
+ * log4j.appender.T=org.apache.log4j.varia.RoutingAppender
+ * log4j.appender.T.MDCKey=tenant
+ * log4j.appender.T.File=logs/{route}.log
+ * log4j.appender.T.MaxOpen=100
+ * log4j.appender.T.layout=org.apache.log4j.PatternLayout
+ * log4j.appender.T.layout.ConversionPattern=%d %-5p %c - %m%n
+ * </pre>
+ *
+ * <p>A child is an instance of <b>AppenderClass</b>, a {@link
+ * FileAppender} by default, whose <b>File</b> is the <b>File</b> option
+ * of this appender with <code>{route}</code> replaced by the route.
+ * Characters other than letters, digits, '.', '-' and '_', as well as
+ * a leading '.', are escaped as '%' followed by the hexadecimal value
+ * of their UTF-8 bytes, so that a route can not name a file outside of
+ * the intended directory and different routes never share a file. Each child gets its own copy of the layout
+ * of this appender. Subclasses may override {@link #createAppender} to
+ * build children differently.
+ *
+ * <p>At most <b>MaxOpen</b> children are kept open. When a new route
+ * would exceed this number, the least recently used child is closed,
+ * and reopened in append mode if its route comes back.
+ *
+ * <p>Finding the child of an already open route takes no lock, the
+ * events of different routes are written concurrently, each child
+ * serializing its own events.
+ *
+ * @since 1.2.18
+ */
+public class RoutingAppender extends AppenderSkeleton {
+
+    /**
+     * Placeholder replaced by the route in the <b>File</b> option.
+     */
+    public static final String ROUTE_PLACEHOLDER = "{route}";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private String mdcKey;
+
+    private String defaultRoute = "default";
+
+    private String file;
+
+    private String appenderClass = FileAppender.class.getName();
+
+    private boolean bufferedIO = false;
+
+    private int bufferSize = 8 * 1024;
+
+    private boolean immediateFlush = true;
+
+    private String encoding;
+
+    private int maxOpen = 100;
+
+    /**
+     * Open children by route.
+     */
+    private final ConcurrentHashMap routes = new ConcurrentHashMap();
+
+    /**
+     * Serializes the creation and eviction of children.
+     */
+    private final Object routesLock = new Object();
+
+    /**
+     * Advanced each time a child is opened. A route records the current
+     * value when used, so the routes not used since the most misses are
+     * the least recently used, without a shared counter being written
+     * by every event.
+     */
+    private volatile long clock;
+
+    /**
+     * A child appender and the recency of its last use. The child is
+     * used and closed while holding the lock of its route, so an event
+     * never reaches a child closed by an eviction.
+     */
+    private static final class Route {
+        final String key;
+        final Appender appender;
+        volatile long lastUsed;
+        boolean closed;
+
+        Route(String key, Appender appender, long lastUsed) {
+            this.key = key;
+            this.appender = appender;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public RoutingAppender() {
+    }
+
+    /**
+     * Returns the value of the <b>MDCKey</b> option.
+     */
+    public String getMDCKey() {
+        return mdcKey;
+    }
+
+    /**
+     * Routes events by the value of this MDC entry. When not set,
+     * events are routed by logger name.
+     */
+    public void setMDCKey(String mdcKey) {
+        this.mdcKey = mdcKey;
+    }
+
+    /**
+     * Returns the value of the <b>DefaultRoute</b> option.
+     */
+    public String getDefaultRoute() {
+        return defaultRoute;
+    }
+
+    /**
+     * Route of the events without a <b>MDCKey</b> entry, "default" by
+     * default.
+     */
+    public void setDefaultRoute(String defaultRoute) {
+        this.defaultRoute = defaultRoute;
+    }
+
+    /**
+     * Returns the value of the <b>File</b> option.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * The file of each child, <code>{route}</code> being replaced by
+     * the route.
+     */
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the value of the <b>AppenderClass</b> option.
+     */
+    public String getAppenderClass() {
+        return appenderClass;
+    }
+
+    /**
+     * Class of the children, {@link FileAppender} by default. The
+     * <b>File</b>, <b>BufferedIO</b>, <b>BufferSize</b>,
+     * <b>ImmediateFlush</b> and <b>Encoding</b> options are passed to
+     * each child.
+     */
+    public void setAppenderClass(String appenderClass) {
+        this.appenderClass = appenderClass;
+    }
+
+    public boolean getBufferedIO() {
+        return bufferedIO;
+    }
+
+    public void setBufferedIO(boolean bufferedIO) {
+        this.bufferedIO = bufferedIO;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public boolean getImmediateFlush() {
+        return immediateFlush;
+    }
+
+    public void setImmediateFlush(boolean immediateFlush) {
+        this.immediateFlush = immediateFlush;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Returns the value of the <b>MaxOpen</b> option.
+     */
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    /**
+     * Maximum number of children kept open, 100 by default.
+     */
+    public void setMaxOpen(int maxOpen) {
+        this.maxOpen = Math.max(1, maxOpen);
+    }
+
+    /**
+     * Returns the number of children currently open.
+     */
+    public int getOpenCount() {
+        return routes.size();
+    }
+
+    public void activateOptions() {
+        if (file == null && getClass() == RoutingAppender.class) {
+            LogLog.warn("File option not set for appender [" + name + "].");
+        }
+    }
+
+    /**
+     * Unlike {@link AppenderSkeleton#doAppend}, this method is not
+     * synchronized. Children serialize their own events.
+     */
+    public void doAppend(LoggingEvent event) {
+        if (isAppendable(event)) {
+            // children may keep the event, its message can not be reused
+            ParameterizedMessage.capture(event);
+            append(event);
+        }
+    }
+
+    protected void append(LoggingEvent event) {
+        String key = route(event);
+        while (true) {
+            Route route = (Route) routes.get(key);
+            if (route == null) {
+                route = open(key);
+                if (route == null) {
+                    return;
+                }
+            } else {
+                long now = clock;
+                if (route.lastUsed != now) {
+                    route.lastUsed = now;
+                }
+            }
+            synchronized (route) {
+                if (!route.closed) {
+                    route.appender.doAppend(event);
+                    return;
+                }
+            }
+            // evicted meanwhile, look again
+        }
+    }
+
+    /**
+     * Returns the route of <code>event</code>.
+     */
+    protected String route(LoggingEvent event) {
+        if (mdcKey == null) {
+            return event.getLoggerName();
+        }
+        Object value = event.getMDC(mdcKey);
+        return value == null ? defaultRoute : value.toString();
+    }
+
+    /**
+     * Creates the child of a route, evicting the least recently used
+     * one if <b>MaxOpen</b> children are open.
+     */
+    private Route open(String key) {
+        synchronized (routesLock) {
+            if (closed) {
+                return null;
+            }
+            Route route = (Route) routes.get(key);
+            if (route != null) {
+                return route;
+            }
+            if (routes.size() >= maxOpen) {
+                evictEldest();
+            }
+            Appender appender = createAppender(key);
+            if (appender == null) {
+                return null;
+            }
+            route = new Route(key, appender, ++clock);
+            routes.put(key, route);
+            return route;
+        }
+    }
+
+    private void evictEldest() {
+        Route eldest = null;
+        for (Iterator i = routes.values().iterator(); i.hasNext(); ) {
+            Route route = (Route) i.next();
+            if (eldest == null || route.lastUsed < eldest.lastUsed) {
+                eldest = route;
+            }
+        }
+        if (eldest != null) {
+            LogLog.debug("Closing idle route [" + eldest.key + "] of appender [" + name + "].");
+            routes.remove(eldest.key);
+            close(eldest);
+        }
+    }
+
+    private static void close(Route route) {
+        synchronized (route) {
+            route.closed = true;
+            route.appender.close();
+        }
+    }
+
+    /**
+     * Creates and activates the child appender of <code>route</code>.
+     *
+     * @return the child, or null if it could not be created.
+     */
+    protected Appender createAppender(String route) {
+        Appender appender = (Appender) OptionConverter.instantiateByClassName(
+                appenderClass, Appender.class, null);
+        if (appender == null) {
+            return null;
+        }
+        appender.setName(name + "." + route);
+        PropertySetter setter = new PropertySetter(appender);
+        if (file != null) {
+            setter.setProperty("file", replaceRoute(file, route));
+        }
+        if (appender instanceof FileAppender) {
+            FileAppender fileAppender = (FileAppender) appender;
+            // a child closed as idle must not truncate its file when reopened
+            fileAppender.setAppend(true);
+            fileAppender.setBufferedIO(bufferedIO);
+            fileAppender.setBufferSize(bufferSize);
+            fileAppender.setImmediateFlush(immediateFlush);
+            fileAppender.setEncoding(encoding);
+        }
+        if (layout != null) {
+            appender.setLayout(copyLayout(layout));
+        }
+        if (appender instanceof OptionHandler) {
+            ((OptionHandler) appender).activateOptions();
+        }
+        return appender;
+    }
+
+    /**
+     * Replaces the route placeholder in <code>pattern</code>.
+     */
+    static String replaceRoute(String pattern, String route) {
+        StringBuffer safe = new StringBuffer(route.length());
+        int i = 0;
+        while (i < route.length()) {
+            int c = route.codePointAt(i);
+            int next = i + Character.charCount(c);
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_'
+                    || (c == '.' && i > 0)) {
+                safe.appendCodePoint(c);
+            } else {
+                byte[] bytes;
+                try {
+                    bytes = route.substring(i, next).getBytes("UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e.toString());
+                }
+                for (int j = 0; j < bytes.length; j++) {
+                    safe.append('%').append(HEX[(bytes[j] >> 4) & 0xF]).append(HEX[bytes[j] & 0xF]);
+                }
+            }
+            i = next;
+        }
+        StringBuffer buf = new StringBuffer(pattern.length() + safe.length());
+        int from = 0;
+        while ((i = pattern.indexOf(ROUTE_PLACEHOLDER, from)) != -1) {
+            buf.append(pattern, from, i).append(safe);
+            from = i + ROUTE_PLACEHOLDER.length();
+        }
+        buf.append(pattern, from, pattern.length());
+        return buf.toString();
+    }
+
+    /**
+     * Layouts are not thread safe, each child gets a new instance of the
+     * layout class with the same options.
+     */
+    static Layout copyLayout(Layout layout) {
+        Layout copy = (Layout) OptionConverter.instantiateByClassName(
+                layout.getClass().getName(), Layout.class, null);
+        if (copy == null) {
+            return layout;
+        }
+        try {
+            BeanInfo info = Introspector.getBeanInfo(layout.getClass());
+            PropertyDescriptor[] props = info.getPropertyDescriptors();
+            PropertySetter setter = new PropertySetter(copy);
+            for (int i = 0; i < props.length; i++) {
+                Method getter = props[i].getReadMethod();
+                Class type = props[i].getPropertyType();
+                if (getter == null || props[i].getWriteMethod() == null
+                        || !(type == String.class || type.isPrimitive())) {
+                    continue;
+                }
+                Object value = getter.invoke(layout, new Object[0]);
+                if (value != null) {
+                    setter.setProperty(props[i], props[i].getName(), value.toString());
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LogLog.warn("Could not copy layout " + layout + ", sharing it.", e);
+            return layout;
+        }
+        copy.activateOptions();
+        return copy;
+    }
+
+    /**
+     * Closes all the children.
+     */
+    public void close() {
+        synchronized (routesLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Iterator i = routes.values().iterator(); i.hasNext(); ) {
+                close((Route) i.next());
+            }
+            routes.clear();
+        }
+    }
+
+    public boolean requiresLayout() {
+        return false;
+    }
+}
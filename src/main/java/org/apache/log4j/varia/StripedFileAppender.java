@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * StripedFileAppender spreads events over several files, the stripes,
+ * so that threads logging at the same time do not wait for a single
+ * file. The stripe of an event is chosen by the id of the logging
+ * thread; the events of a thread are therefore all in the same stripe,
+ * in order.
+ *
+ * <pre>
+ * log4j.appender.S=org.apache.log4j.varia.StripedFileAppender
+ * log4j.appender.S.File=logs/app.log
+ * log4j.appender.S.Stripes=4
+ * log4j.appender.S.BufferedIO=true
+ * log4j.appender.S.layout=org.apache.log4j.PatternLayout
+ * log4j.appender.S.layout.ConversionPattern=%d %-5p [%t] %c - %m%n
+ * </pre>
+ *
+ * <p>Stripe <em>i</em> is written to <b>File</b>.<em>i</em> by a
+ * {@link FileAppender} with its own lock, buffer and copy of the
+ * layout. Each record starts with a header:
+ *
+ * <pre>
+ * sequence timeStamp length text
+ * </pre>
+ *
+ * where <em>sequence</em> is a number shared by all stripes, increasing
+ * with each event, <em>timeStamp</em> the time of the event in
+ * milliseconds, and <em>length</em> the number of characters of
+ * <em>text</em>, the event formatted by the layout including its stack
+ * trace. {@link StripedFileMerger} merges the stripes back into a
+ * single stream ordered by sequence.
+ *
+ * <p>The sequence of each activation starts at its time in
+ * milliseconds shifted by 20 bits, so that in append mode the events
+ * of a later run sort after those of an earlier one.
+ *
+ * <p>The header and footer of the layout are written to the first
+ * stripe as records of their own, the header before any event and the
+ * footer after all of them, so that they appear once at the start and
+ * once at the end of the merged stream.
+ *
+ * @since 1.2.18
+ */
+public class StripedFileAppender extends AppenderSkeleton {
+
+    private String file;
+
+    private int stripeCount = Runtime.getRuntime().availableProcessors();
+
+    private boolean fileAppend = true;
+
+    private boolean bufferedIO = false;
+
+    private int bufferSize = 8 * 1024;
+
+    private boolean immediateFlush = true;
+
+    private String encoding;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Stripe[] stripes;
+
+    public StripedFileAppender() {
+    }
+
+    /**
+     * Returns the value of the <b>File</b> option.
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * Base name of the stripes, stripe <em>i</em> being written to
+     * <code>file.i</code>.
+     */
+    public void setFile(String file) {
+        this.file = file.trim();
+    }
+
+    /**
+     * Returns the value of the <b>Stripes</b> option.
+     */
+    public int getStripes() {
+        return stripeCount;
+    }
+
+    /**
+     * Number of stripes, the number of processors by default.
+     */
+    public void setStripes(int stripes) {
+        this.stripeCount = Math.max(1, stripes);
+    }
+
+    public boolean getAppend() {
+        return fileAppend;
+    }
+
+    public void setAppend(boolean append) {
+        this.fileAppend = append;
+    }
+
+    public boolean getBufferedIO() {
+        return bufferedIO;
+    }
+
+    public void setBufferedIO(boolean bufferedIO) {
+        this.bufferedIO = bufferedIO;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public boolean getImmediateFlush() {
+        return immediateFlush;
+    }
+
+    public void setImmediateFlush(boolean immediateFlush) {
+        this.immediateFlush = immediateFlush;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Opens the stripes.
+     */
+    public void activateOptions() {
+        if (file == null) {
+            LogLog.warn("File option not set for appender [" + name + "].");
+            return;
+        }
+        if (layout == null) {
+            LogLog.error("No layout set for the appender named [" + name + "].");
+            return;
+        }
+        // like FileAppender.setFile, the old files get their footer first
+        Stripe[] old = stripes;
+        stripes = null;
+        closeStripes(old);
+        sequence.set(Math.max(System.currentTimeMillis() << 20, sequence.get()));
+        Stripe[] s = new Stripe[stripeCount];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = new Stripe(sequence, i == 0);
+            s[i].setName(name + "." + i);
+            s[i].setFile(file + "." + i);
+            s[i].setAppend(fileAppend);
+            s[i].setBufferedIO(bufferedIO);
+            s[i].setBufferSize(bufferSize);
+            s[i].setImmediateFlush(immediateFlush);
+            s[i].setEncoding(encoding);
+            s[i].setErrorHandler(errorHandler);
+            s[i].setLayout(i == 0 ? layout : RoutingAppender.copyLayout(layout));
+            s[i].activateOptions();
+        }
+        stripes = s;
+    }
+
+    /**
+     * Unlike {@link AppenderSkeleton#doAppend}, this method is not
+     * synchronized. Each stripe serializes its own events.
+     */
+    public void doAppend(LoggingEvent event) {
+        if (isAppendable(event)) {
+            append(event);
+        }
+    }
+
+    protected void append(LoggingEvent event) {
+        Stripe[] s = stripes;
+        if (s == null) {
+            errorHandler.error("No output stripes for the appender named [" + name + "].");
+            return;
+        }
+        s[(int) (Thread.currentThread().getId() % s.length)].doAppend(event);
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeStripes(stripes);
+        stripes = null;
+    }
+
+    /**
+     * Closes the first stripe last, its footer then follows every event.
+     */
+    private static void closeStripes(Stripe[] s) {
+        if (s != null) {
+            for (int i = s.length - 1; i >= 0; i--) {
+                s[i].close();
+            }
+        }
+    }
+
+    public boolean requiresLayout() {
+        return true;
+    }
+
+    /**
+     * Writes the events of one stripe, each preceded by its header.
+     */
+    private static final class Stripe extends FileAppender {
+        private final AtomicLong sequence;
+        private final boolean first;
+        private final StringBuffer record = new StringBuffer(256);
+
+        Stripe(AtomicLong sequence, boolean first) {
+            this.sequence = sequence;
+            this.first = first;
+        }
+
+        /**
+         * Writes the header of the layout as a record, on the first
+         * stripe only.
+         */
+        protected void writeHeader() {
+            if (first && layout != null) {
+                String h = layout.getHeader();
+                if (h != null && this.qw != null) {
+                    writeRecord(System.currentTimeMillis(), h);
+                }
+            }
+        }
+
+        /**
+         * Writes the footer of the layout as a record, on the first
+         * stripe only.
+         */
+        protected void writeFooter() {
+            if (first && layout != null) {
+                String f = layout.getFooter();
+                if (f != null && this.qw != null) {
+                    writeRecord(System.currentTimeMillis(), f);
+                    this.qw.flush();
+                }
+            }
+        }
+
+        protected void subAppend(LoggingEvent event) {
+            String text = layout.format(event);
+            if (layout.ignoresThrowable()) {
+                String[] s = event.getThrowableStrRep();
+                if (s != null) {
+                    StringBuffer buf = new StringBuffer(text);
+                    for (int i = 0; i < s.length; i++) {
+                        buf.append(s[i]).append(Layout.LINE_SEP);
+                    }
+                    text = buf.toString();
+                }
+            }
+            writeRecord(event.timeStamp, text);
+            if (shouldFlush(event)) {
+                qw.flush();
+            }
+        }
+
+        private void writeRecord(long timeStamp, String text) {
+            // taken under the lock of the stripe, so each stripe is in sequence order
+            long seq = sequence.getAndIncrement();
+            record.setLength(0);
+            record.append(seq).append(' ').append(timeStamp).append(' ')
+                    .append(text.length()).append(' ').append(text);
+            qw.write(record.toString());
+            if (record.capacity() > 8 * 1024) {
+                record.setLength(0);
+                record.trimToSize();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Vector;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+ * Merges the stripes written by {@link StripedFileAppender} into a
+ * single stream of records ordered by sequence number.
+ *
+ * <p>Each stripe is already in sequence order, the merger repeatedly
+ * picks the record with the lowest sequence number among the next
+ * record of each stripe.
+ *
+ * <pre>
+ * <b>Usage:</b> java org.apache.log4j.varia.StripedFileMerger file [encoding]
+ *
+ * where <em>file</em> is the <b>File</b> option of the appender. The
+ * stripes <em>file</em>.0, <em>file</em>.1, ... are merged and the
+ * text of the records printed to the standard output.
+ * </pre>
+ *
+ * <p>A record truncated by a crash ends its stripe with a warning.
+ *
+ * @since 1.2.18
+ */
+public class StripedFileMerger {
+
+    private final Stripe[] stripes;
+
+    private Stripe current;
+
+    /**
+     * A stripe and its next record.
+     */
+    private static final class Stripe {
+        final Reader in;
+        final StringBuffer field = new StringBuffer(20);
+        final char[] chunk = new char[8 * 1024];
+        boolean hasRecord;
+        long sequence;
+        long timeStamp;
+        String text;
+
+        Stripe(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * Reads the next record.
+         */
+        void advance() throws IOException {
+            hasRecord = false;
+            long seq = readNumber(true);
+            if (seq < 0) {
+                return;
+            }
+            long time = readNumber(false);
+            long length = readNumber(false);
+            if (time < 0 || length < 0 || length > Integer.MAX_VALUE) {
+                truncated();
+                return;
+            }
+            // the length comes from the file, the text grows with what is actually read
+            StringBuffer buf = new StringBuffer((int) Math.min(length, chunk.length));
+            long remaining = length;
+            while (remaining > 0) {
+                int n = in.read(chunk, 0, (int) Math.min(remaining, chunk.length));
+                if (n == -1) {
+                    truncated();
+                    return;
+                }
+                buf.append(chunk, 0, n);
+                remaining -= n;
+            }
+            sequence = seq;
+            timeStamp = time;
+            text = buf.toString();
+            hasRecord = true;
+        }
+
+        /**
+         * Reads a decimal number followed by a space.
+         *
+         * @return the number, or -1 at the end of the stripe.
+         */
+        private long readNumber(boolean first) throws IOException {
+            field.setLength(0);
+            int c;
+            while ((c = in.read()) != ' ') {
+                if (c == -1) {
+                    if (!first || field.length() > 0) {
+                        truncated();
+                    }
+                    return -1;
+                }
+                if (c < '0' || c > '9' || field.length() == 19) {
+                    throw new IOException("Invalid record header in stripe.");
+                }
+                field.append((char) c);
+            }
+            if (field.length() == 0) {
+                throw new IOException("Invalid record header in stripe.");
+            }
+            return Long.parseLong(field.toString());
+        }
+
+        private void truncated() {
+            LogLog.warn("Stripe ends with a truncated record.");
+        }
+    }
+
+    /**
+     * Merges the records read from <code>stripes</code>.
+     */
+    public StripedFileMerger(Reader[] stripes) throws IOException {
+        this.stripes = new Stripe[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            this.stripes[i] = new Stripe(stripes[i]);
+            this.stripes[i].advance();
+        }
+    }
+
+    /**
+     * Moves to the next record in sequence order.
+     *
+     * @return false when all the stripes have been read.
+     */
+    public boolean next() throws IOException {
+        if (current != null) {
+            current.advance();
+        }
+        current = null;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe s = stripes[i];
+            if (s.hasRecord && (current == null || s.sequence < current.sequence)) {
+                current = s;
+            }
+        }
+        return current != null;
+    }
+
+    /**
+     * Returns the sequence number of the current record.
+     */
+    public long getSequence() {
+        return current.sequence;
+    }
+
+    /**
+     * Returns the time stamp of the current record.
+     */
+    public long getTimeStamp() {
+        return current.timeStamp;
+    }
+
+    /**
+     * Returns the formatted event of the current record.
+     */
+    public String getText() {
+        return current.text;
+    }
+
+    public void close() throws IOException {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i].in.close();
+        }
+    }
+
+    /**
+     * Returns the existing stripes of <code>file</code>, the
+     * <b>File</b> option of a {@link StripedFileAppender}.
+     */
+    public static File[] getStripeFiles(String file) {
+        Vector files = new Vector();
+        File f;
+        while ((f = new File(file + "." + files.size())).exists()) {
+            files.addElement(f);
+        }
+        File[] result = new File[files.size()];
+        files.copyInto(result);
+        return result;
+    }
+
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 1 || argv.length > 2) {
+            System.err.println("Usage: java " + StripedFileMerger.class.getName()
+                    + " file [encoding]");
+            System.exit(1);
+        }
+        File[] files = getStripeFiles(argv[0]);
+        if (files.length == 0) {
+            System.err.println("No stripe found for " + argv[0] + ".");
+            System.exit(1);
+        }
+        Reader[] readers = new Reader[files.length];
+        for (int i = 0; i < files.length; i++) {
+            FileInputStream in = new FileInputStream(files[i]);
+            readers[i] = new BufferedReader(argv.length == 2
+                    ? new InputStreamReader(in, argv[1]) : new InputStreamReader(in));
+        }
+        StripedFileMerger merger = new StripedFileMerger(readers);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        try {
+            while (merger.next()) {
+                out.write(merger.getText());
+            }
+        } finally {
+            out.flush();
+            merger.close();
+        }
+    }
+}
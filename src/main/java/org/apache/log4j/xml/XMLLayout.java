@@ -139,13 +139,13 @@ public class XMLLayout extends Layout {
         // We yield to the \r\n heresy.
 
         buf.append("<log4j:event logger=\"");
-        buf.append(Transform.escapeTags(event.getLoggerName()));
+        Transform.appendEscapingTags(buf, event.getLoggerName());
         buf.append("\" timestamp=\"");
         buf.append(event.timeStamp);
         buf.append("\" level=\"");
-        buf.append(Transform.escapeTags(String.valueOf(event.getLevel())));
+        Transform.appendEscapingTags(buf, String.valueOf(event.getLevel()));
         buf.append("\" thread=\"");
-        buf.append(Transform.escapeTags(event.getThreadName()));
+        Transform.appendEscapingTags(buf, event.getThreadName());
         buf.append("\">\r\n");
 
         buf.append("<log4j:message><![CDATA[");
@@ -174,11 +174,11 @@ public class XMLLayout extends Layout {
         if (locationInfo) {
             LocationInfo locationInfo = event.getLocationInformation();
             buf.append("<log4j:locationInfo class=\"");
-            buf.append(Transform.escapeTags(locationInfo.getClassName()));
+            Transform.appendEscapingTags(buf, locationInfo.getClassName());
             buf.append("\" method=\"");
-            buf.append(Transform.escapeTags(locationInfo.getMethodName()));
+            Transform.appendEscapingTags(buf, locationInfo.getMethodName());
             buf.append("\" file=\"");
-            buf.append(Transform.escapeTags(locationInfo.getFileName()));
+            Transform.appendEscapingTags(buf, locationInfo.getFileName());
             buf.append("\" line=\"");
             buf.append(locationInfo.getLineNumber());
             buf.append("\"/>\r\n");
@@ -195,9 +195,9 @@ public class XMLLayout extends Layout {
                     Object val = event.getMDC(key);
                     if (val != null) {
                         buf.append("<log4j:data name=\"");
-                        buf.append(Transform.escapeTags(key));
+                        Transform.appendEscapingTags(buf, key);
                         buf.append("\" value=\"");
-                        buf.append(Transform.escapeTags(String.valueOf(val)));
+                        Transform.appendEscapingTags(buf, String.valueOf(val));
                         buf.append("\"/>\r\n");
                     }
                 }
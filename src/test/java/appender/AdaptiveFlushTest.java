@@ -0,0 +1,91 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveFlushTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(AdaptiveFlushTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    @After
+    public void removeAppenders() {
+        logger.removeAllAppenders();
+    }
+
+    /**
+     * 记录flush次数的Writer，每次flush耗时1毫秒，模拟较慢的输出
+     */
+    static class SlowFlushWriter extends StringWriter {
+        volatile int flushes;
+        volatile String flushed = "";
+
+        public void flush() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                flushes++;
+                flushed = toString();
+            }
+        }
+    }
+
+    WriterAppender appender(SlowFlushWriter writer) {
+        WriterAppender appender = new WriterAppender(new PatternLayout("%m%n"), writer);
+        appender.setAdaptiveFlush(true);
+        return appender;
+    }
+
+    /**
+     * 单个线程逐条写日志时，每次调用返回前都已flush，与ImmediateFlush相同
+     */
+    @Test
+    public void testFlushedWhenIdle() {
+        SlowFlushWriter writer = new SlowFlushWriter();
+        logger.addAppender(appender(writer));
+        for (int i = 0; i < 10; i++) {
+            logger.info("message " + i);
+            assertTrue(writer.flushed.endsWith("message " + i + Layout.LINE_SEP));
+        }
+        assertEquals(10, writer.flushes);
+    }
+
+    /**
+     * AsyncAppender分发一批事件时只在批次结束时flush，空闲后最后的事件也会被flush
+     */
+    @Test
+    public void testAsyncDispatcherBatch() throws Exception {
+        SlowFlushWriter writer = new SlowFlushWriter();
+        AsyncAppender async = new AsyncAppender();
+        async.setBufferSize(1000);
+        async.addAppender(appender(writer));
+        logger.addAppender(async);
+        for (int i = 0; i < 1000; i++) {
+            logger.info("message " + i);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!writer.flushed.endsWith("message 999" + Layout.LINE_SEP)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(writer.flushed.endsWith("message 999" + Layout.LINE_SEP));
+        assertTrue(String.valueOf(writer.flushes), writer.flushes < 500);
+        async.close();
+    }
+}
@@ -0,0 +1,178 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class AsyncRolloverTest {
+
+    Logger logger;
+    File dir;
+
+    @Before
+    public void configLogger() throws IOException {
+        logger = Logger.getLogger(AsyncRolloverTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        dir = File.createTempFile("rollover", "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+    }
+
+    RollingFileAppender rollingAppender(File file) {
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setMaximumFileSize(200);
+        appender.setMaxBackupIndex(3);
+        appender.setAsyncRollover(true);
+        return appender;
+    }
+
+    static List readLines(InputStream in) throws IOException {
+        List lines = new ArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    /**
+     * 后台线程按顺序移动备份文件并用gzip压缩，close后只剩MaxBackupIndex个备份，且日志首尾相接
+     */
+    @Test
+    public void testGzipBackups() throws Exception {
+        File file = new File(dir, "gzip.log");
+        RollingFileAppender appender = rollingAppender(file);
+        appender.setCompression("gzip");
+        appender.setCompressionLevel(9);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        appender.close();
+
+        List lines = new ArrayList();
+        for (int i = 3; i >= 1; i--) {
+            File backup = new File(dir, "gzip.log." + i + ".gz");
+            assertTrue(backup.getName(), backup.exists());
+            lines.addAll(readLines(new GZIPInputStream(new FileInputStream(backup))));
+            backup.deleteOnExit();
+        }
+        assertFalse(new File(dir, "gzip.log.4.gz").exists());
+        lines.addAll(readLines(new FileInputStream(file)));
+        file.deleteOnExit();
+
+        int first = 100 - lines.size();
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals("message " + (first + i), lines.get(i));
+        }
+        assertEquals(4, dir.list().length);
+    }
+
+    /**
+     * DEFLATE压缩和不压缩的异步滚动
+     */
+    @Test
+    public void testDeflateAndPlainBackups() throws Exception {
+        File file = new File(dir, "deflate.log");
+        RollingFileAppender appender = rollingAppender(file);
+        appender.setCompression("DEFLATE");
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 30; i++) {
+            logger.info("message " + i);
+        }
+        appender.close();
+        File backup = new File(dir, "deflate.log.1.deflate");
+        List lines = readLines(new InflaterInputStream(new FileInputStream(backup)));
+        List current = readLines(new FileInputStream(file));
+        assertEquals("message " + (30 - current.size() - 1), lines.get(lines.size() - 1));
+        backup.deleteOnExit();
+        file.deleteOnExit();
+
+        logger.removeAllAppenders();
+        file = new File(dir, "plain.log");
+        appender = rollingAppender(file);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 30; i++) {
+            logger.info("message " + i);
+        }
+        appender.close();
+        lines = readLines(new FileInputStream(new File(dir, "plain.log.1")));
+        current = readLines(new FileInputStream(file));
+        assertEquals("message " + (30 - current.size() - 1), lines.get(lines.size() - 1));
+        String[] names = dir.list();
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], -1, names[i].indexOf(".rolling"));
+            new File(dir, names[i]).deleteOnExit();
+        }
+    }
+
+    /**
+     * 崩溃或压缩失败留下的.rollingN文件在activateOptions时按时间顺序压缩为备份文件，
+     * 超出MaxBackupIndex的被删除；MaxBackupIndex为0时直接删除
+     */
+    @Test
+    public void testLeftoverRollingFilesRecovered() throws Exception {
+        File file = new File(dir, "leftover.log");
+        long now = System.currentTimeMillis();
+        for (int n = 1; n <= 5; n++) {
+            File leftover = new File(dir, "leftover.log.rolling" + (n == 5 ? 10 : n));
+            Writer writer = new OutputStreamWriter(new FileOutputStream(leftover), "UTF-8");
+            writer.write("leftover " + n + "\n");
+            writer.close();
+            leftover.setLastModified(now - 10000 + n * 1000);
+        }
+        File unrelated = new File(dir, "leftover.log.rollingX");
+        unrelated.createNewFile();
+
+        RollingFileAppender appender = rollingAppender(file);
+        appender.setCompression("gzip");
+        appender.activateOptions();
+        appender.close();
+
+        for (int i = 1; i <= 3; i++) {
+            File backup = new File(dir, "leftover.log." + i + ".gz");
+            List lines = readLines(new GZIPInputStream(new FileInputStream(backup)));
+            assertEquals("leftover " + (6 - i), lines.get(0));
+            backup.delete();
+        }
+        assertFalse(new File(dir, "leftover.log.4.gz").exists());
+        assertTrue(unrelated.exists());
+        String[] names = dir.list();
+        for (int i = 0; i < names.length; i++) {
+            assertFalse(names[i], names[i].matches("leftover\\.log\\.rolling[0-9]+"));
+        }
+
+        new File(dir, "leftover.log.rolling2").createNewFile();
+        appender = rollingAppender(file);
+        appender.setMaxBackupIndex(0);
+        appender.activateOptions();
+        appender.close();
+        assertFalse(new File(dir, "leftover.log.rolling2").exists());
+        assertFalse(new File(dir, "leftover.log.1").exists());
+        unrelated.delete();
+        file.delete();
+    }
+}
@@ -0,0 +1,67 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class BackgroundFlushTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(BackgroundFlushTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    static Thread flusherThread() {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if ("log4j-flusher".equals(t.getName())) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 开启BufferedIO后，安静的服务中缓冲的日志也会在间隔后被后台线程flush到文件
+     */
+    @Test
+    public void testQuietAppenderIsFlushed() throws Exception {
+        File file = File.createTempFile("background", ".log");
+        file.deleteOnExit();
+        FileAppender appender = new FileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.setBackgroundFlushInterval(100);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        logger.info("quiet");
+        assertEquals(0, file.length());
+        long deadline = System.currentTimeMillis() + 2000;
+        while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(("quiet" + Layout.LINE_SEP).length(), file.length());
+
+        // nothing to flush: the flusher does not wait for the appender lock
+        Thread flusher = flusherThread();
+        assertNotNull(flusher);
+        synchronized (appender) {
+            for (int i = 0; i < 10; i++) {
+                Thread.sleep(30);
+                assertNotEquals(Thread.State.BLOCKED, flusher.getState());
+            }
+        }
+        appender.close();
+    }
+}
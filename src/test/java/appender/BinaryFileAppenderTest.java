@@ -0,0 +1,208 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.BinaryFileAppender;
+import org.apache.log4j.varia.BinaryFileReader;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class BinaryFileAppenderTest {
+
+    Logger rootLogger;
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        rootLogger = Logger.getRootLogger();
+        logger = Logger.getLogger(BinaryFileAppenderTest.class);
+        rootLogger.removeAllAppenders();
+        rootLogger.setLevel(Level.DEBUG);
+    }
+
+    /**
+     * 写入二进制文件后再读回LoggingEvent，字段应保持一致；追加写入时会新起一个segment，字典会重置
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        File file = File.createTempFile("binary", ".log");
+        file.deleteOnExit();
+
+        BinaryFileAppender appender = new BinaryFileAppender();
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setLocationInfo(true);
+        appender.activateOptions();
+        rootLogger.addAppender(appender);
+
+        MDC.put("tenant", "t1");
+        NDC.push("ndc");
+        logger.info("first");
+        logger.warn("second", new Exception("boom"));
+        NDC.remove();
+        MDC.remove("tenant");
+        Logger.getLogger("other").debug("third");
+        appender.close();
+        rootLogger.removeAllAppenders();
+
+        appender = new BinaryFileAppender(file.getPath(), true);
+        rootLogger.addAppender(appender);
+        logger.error("fourth");
+        appender.close();
+        rootLogger.removeAllAppenders();
+
+        BinaryFileReader reader = new BinaryFileReader(new FileInputStream(file));
+        LoggingEvent e1 = reader.read();
+        assertEquals("first", e1.getRenderedMessage());
+        assertEquals(Level.INFO, e1.getLevel());
+        assertEquals(logger.getName(), e1.getLoggerName());
+        assertEquals(Thread.currentThread().getName(), e1.getThreadName());
+        assertEquals("t1", e1.getMDC("tenant"));
+        assertEquals("ndc", e1.getNDC());
+        assertEquals("testRoundTrip", e1.getLocationInformation().getMethodName());
+
+        LoggingEvent e2 = reader.read();
+        assertEquals(Level.WARN, e2.getLevel());
+        assertEquals("java.lang.Exception: boom", e2.getThrowableStrRep()[0]);
+        assertTrue(e2.getTimeStamp() >= e1.getTimeStamp());
+
+        LoggingEvent e3 = reader.read();
+        assertEquals("other", e3.getLoggerName());
+        assertEquals(Level.DEBUG, e3.getLevel());
+
+        LoggingEvent e4 = reader.read();
+        assertEquals("fourth", e4.getRenderedMessage());
+        assertEquals(Level.ERROR, e4.getLevel());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    /**
+     * 与PatternLayout文本输出的文件大小进行对比
+     */
+    @Test
+    public void testSizeComparedWithText() throws Exception {
+        File text = File.createTempFile("text", ".log");
+        File binary = File.createTempFile("binary", ".log");
+        text.deleteOnExit();
+        binary.deleteOnExit();
+
+        FileAppender textAppender = new FileAppender(
+                new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"), text.getPath(), false, true, 8192);
+        BinaryFileAppender binaryAppender = new BinaryFileAppender();
+        binaryAppender.setFile(binary.getPath());
+        binaryAppender.setAppend(false);
+        binaryAppender.setImmediateFlush(false);
+        binaryAppender.activateOptions();
+        rootLogger.addAppender(textAppender);
+        rootLogger.addAppender(binaryAppender);
+
+        Logger[] loggers = new Logger[]{
+                Logger.getLogger("com.example.service.OrderService"),
+                Logger.getLogger("com.example.service.PaymentService"),
+                Logger.getLogger("com.example.repository.OrderRepository")};
+        for (int i = 0; i < 20000; i++) {
+            loggers[i % loggers.length].info("processed order " + i);
+        }
+        textAppender.close();
+        binaryAppender.close();
+        rootLogger.removeAllAppenders();
+
+        assertTrue(binary.length() * 3 < text.length());
+
+        BinaryFileReader reader = new BinaryFileReader(new FileInputStream(binary));
+        int n = 0;
+        while (reader.read() != null) {
+            n++;
+        }
+        reader.close();
+        assertEquals(20000, n);
+    }
+
+    /**
+     * 写入失败时只写出了半个block，之后新起一个segment；进程崩溃留下的半个block后面追加了新的segment；
+     * 文件末尾是长度字段被破坏的block。读取时跳过这些数据，不会把下一个segment的header当作block内容，也不会按错误的长度分配内存
+     */
+    @Test
+    public void testPartialBlocksSkipped() throws Exception {
+        File file = File.createTempFile("binary", ".log");
+        file.deleteOnExit();
+
+        final FailingStream[] stream = new FailingStream[1];
+        BinaryFileAppender appender = new BinaryFileAppender() {
+            protected OutputStream createOutputStream(OutputStream os) {
+                stream[0] = new FailingStream(os);
+                return stream[0];
+            }
+        };
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.activateOptions();
+        rootLogger.addAppender(appender);
+        logger.info("e1");
+        logger.info("e2");
+        stream[0].failNext = true;
+        Logger.getLogger("lost").info("lost");
+        Logger.getLogger("lost").info("e3");
+        appender.close();
+        rootLogger.removeAllAppenders();
+
+        // a crash in the middle of a block
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+        out.write('B');
+        out.writeInt(1000);
+        out.writeInt(0);
+        out.write(new byte[10]);
+        out.close();
+
+        appender = new BinaryFileAppender(file.getPath(), true);
+        rootLogger.addAppender(appender);
+        Logger.getLogger("reopened").info("e4");
+        appender.close();
+        rootLogger.removeAllAppenders();
+
+        // a corrupt length at the end of the file
+        out = new DataOutputStream(new FileOutputStream(file, true));
+        out.write('B');
+        out.writeInt(Integer.MAX_VALUE - 16);
+        out.writeInt(0);
+        out.write(new byte[100]);
+        out.close();
+
+        BinaryFileReader reader = new BinaryFileReader(new FileInputStream(file));
+        assertEquals("e1", reader.read().getRenderedMessage());
+        assertEquals("e2", reader.read().getRenderedMessage());
+        LoggingEvent e3 = reader.read();
+        assertEquals("e3", e3.getRenderedMessage());
+        assertEquals("lost", e3.getLoggerName());
+        LoggingEvent e4 = reader.read();
+        assertEquals("e4", e4.getRenderedMessage());
+        assertEquals("reopened", e4.getLoggerName());
+        assertNull(reader.read());
+        reader.close();
+    }
+
+    /**
+     * 下一次较大的写入只写出一半就抛出IOException
+     */
+    static class FailingStream extends FilterOutputStream {
+        boolean failNext;
+
+        FailingStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (failNext && len > 9) {
+                failNext = false;
+                out.write(b, off, len / 2);
+                throw new IOException("disk full");
+            }
+            out.write(b, off, len);
+        }
+    }
+}
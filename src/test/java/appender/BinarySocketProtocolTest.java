@@ -0,0 +1,177 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.SocketAppender;
+import org.apache.log4j.net.SocketNode;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BinarySocketProtocolTest {
+
+    Logger logger;
+    ServerSocket server;
+    Hierarchy remote;
+    final List received = new ArrayList();
+
+    /**
+     * 收集服务端收到的事件
+     */
+    class Collector extends AppenderSkeleton {
+        protected void append(LoggingEvent event) {
+            synchronized (received) {
+                received.add(event);
+                received.notifyAll();
+            }
+        }
+
+        public void close() {
+        }
+
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+
+    @Before
+    public void startServer() throws Exception {
+        logger = Logger.getLogger(BinarySocketProtocolTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        remote = new Hierarchy(new RootLogger(Level.DEBUG));
+        remote.getRootLogger().addAppender(new Collector());
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        new Thread(new SocketNode(socket, remote)).start();
+                    }
+                } catch (Exception e) {
+                    // server closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        logger.removeAllAppenders();
+        server.close();
+        NDC.remove();
+        MDC.remove("user");
+    }
+
+    List awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (received) {
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+            return new ArrayList(received);
+        }
+    }
+
+    void roundTrip(String protocol, boolean deflate) throws Exception {
+        SocketAppender appender = new SocketAppender();
+        appender.setRemoteHost("127.0.0.1");
+        appender.setPort(server.getLocalPort());
+        appender.setReconnectionDelay(0);
+        appender.setProtocol(protocol);
+        appender.setDeflate(deflate);
+        appender.setLocationInfo(true);
+        appender.setApplication("test-app");
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        NDC.push("ndc");
+        MDC.put("user", "alice");
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        logger.error("failure", new IllegalStateException("boom"));
+        appender.close();
+
+        List events = awaitEvents(101);
+        assertEquals(101, events.size());
+        for (int i = 0; i < 100; i++) {
+            LoggingEvent event = (LoggingEvent) events.get(i);
+            assertEquals("message " + i, event.getRenderedMessage());
+            assertEquals(Level.INFO, event.getLevel());
+            assertEquals(BinarySocketProtocolTest.class.getName(), event.getLoggerName());
+            assertEquals(Thread.currentThread().getName(), event.getThreadName());
+            assertEquals("ndc", event.getNDC());
+            assertEquals("alice", event.getMDC("user"));
+            assertEquals("test-app", event.getProperty("application"));
+            assertEquals(BinarySocketProtocolTest.class.getName(),
+                    event.getLocationInformation().getClassName());
+        }
+        LoggingEvent last = (LoggingEvent) events.get(100);
+        assertEquals(Level.ERROR, last.getLevel());
+        assertEquals("java.lang.IllegalStateException: boom", last.getThrowableStrRep()[0]);
+    }
+
+    /**
+     * 二进制协议发送的事件在SocketNode端完整还原
+     */
+    @Test
+    public void testBinary() throws Exception {
+        roundTrip(SocketAppender.PROTOCOL_BINARY, false);
+    }
+
+    /**
+     * 压缩的二进制协议发送的事件在SocketNode端完整还原
+     */
+    @Test
+    public void testBinaryDeflate() throws Exception {
+        roundTrip(SocketAppender.PROTOCOL_BINARY, true);
+    }
+
+    /**
+     * 原有的序列化协议仍然可用
+     */
+    @Test
+    public void testSerialized() throws Exception {
+        roundTrip(SocketAppender.PROTOCOL_SERIALIZED, false);
+    }
+
+    /**
+     * AsyncAppender分发的一批事件合并成一帧发送
+     */
+    @Test
+    public void testAsyncBatch() throws Exception {
+        SocketAppender appender = new SocketAppender();
+        appender.setRemoteHost("127.0.0.1");
+        appender.setPort(server.getLocalPort());
+        appender.setReconnectionDelay(0);
+        appender.setProtocol(SocketAppender.PROTOCOL_BINARY);
+        appender.activateOptions();
+        AsyncAppender async = new AsyncAppender();
+        async.setBufferSize(1000);
+        async.addAppender(appender);
+        logger.addAppender(async);
+        for (int i = 0; i < 1000; i++) {
+            logger.info("message " + i);
+        }
+        List events = awaitEvents(1000);
+        assertEquals(1000, events.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("message " + i, ((LoggingEvent) events.get(i)).getRenderedMessage());
+        }
+        async.close();
+    }
+}
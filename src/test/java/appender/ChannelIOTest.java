@@ -0,0 +1,135 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.helpers.CountingQuietWriter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class ChannelIOTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(ChannelIOTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    File tempDir() throws Exception {
+        File dir = Files.createTempDirectory("channel").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * ChannelIO开启时，文件内容与默认的Writer链输出一致
+     */
+    @Test
+    public void testSameOutputAsWriter() throws Exception {
+        File dir = tempDir();
+        File plain = new File(dir, "plain.log");
+        File channel = new File(dir, "channel.log");
+        FileAppender plainAppender = new FileAppender(new PatternLayout("%p %m%n"), plain.getPath(), false);
+        plainAppender.setEncoding("UTF-8");
+        plainAppender.activateOptions();
+        FileAppender channelAppender = new FileAppender();
+        channelAppender.setLayout(new PatternLayout("%p %m%n"));
+        channelAppender.setFile(channel.getPath());
+        channelAppender.setAppend(false);
+        channelAppender.setEncoding("UTF-8");
+        channelAppender.setChannelIO(true);
+        channelAppender.setBufferedIO(true);
+        channelAppender.setBufferSize(64);
+        channelAppender.activateOptions();
+        logger.addAppender(plainAppender);
+        logger.addAppender(channelAppender);
+
+        for (int i = 0; i < 100; i++) {
+            logger.info("消息 message " + i + " 😀");
+        }
+        logger.error("failure", new Exception("boom"));
+        plainAppender.close();
+        channelAppender.close();
+
+        assertTrue(plain.length() > 0);
+        assertArrayEquals(Files.readAllBytes(plain.toPath()), Files.readAllBytes(channel.toPath()));
+
+        // appending keeps the existing content
+        channelAppender = new FileAppender();
+        channelAppender.setLayout(new PatternLayout("%m%n"));
+        channelAppender.setFile(channel.getPath());
+        channelAppender.setChannelIO(true);
+        channelAppender.activateOptions();
+        logger.removeAllAppenders();
+        logger.addAppender(channelAppender);
+        logger.info("last");
+        channelAppender.close();
+        assertEquals(plain.length() + ("last" + Layout.LINE_SEP).length(), channel.length());
+    }
+
+    /**
+     * 滚动文件按实际写入的字节数统计大小，多字节字符不会导致文件超出MaxFileSize
+     */
+    @Test
+    public void testRollingCountsBytes() throws Exception {
+        File dir = tempDir();
+        File file = new File(dir, "rolling.log");
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setEncoding("UTF-8");
+        appender.setChannelIO(true);
+        appender.setMaximumFileSize(1000);
+        appender.setMaxBackupIndex(3);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        // 3 bytes per character in UTF-8
+        String message = "日志日志日志日志日志日志日志日志日志日志";
+        int eventSize = message.length() * 3 + Layout.LINE_SEP.length();
+        for (int i = 0; i < 100; i++) {
+            logger.info(message);
+        }
+        appender.close();
+
+        int events = (1000 + eventSize - 1) / eventSize;
+        for (int i = 1; i <= 3; i++) {
+            File backup = new File(dir, "rolling.log." + i);
+            assertEquals(events * eventSize, backup.length());
+        }
+        assertEquals(100 % events * eventSize, file.length());
+    }
+
+    /**
+     * 以追加方式打开已有文件时，字节计数从文件长度开始
+     */
+    @Test
+    public void testCountStartsAtFileLength() throws Exception {
+        File file = new File(tempDir(), "count.log");
+        Files.write(file.toPath(), "0123456789".getBytes("US-ASCII"));
+        CountingAppender appender = new CountingAppender();
+        appender.setLayout(new PatternLayout("%m"));
+        appender.setFile(file.getPath());
+        appender.setChannelIO(true);
+        appender.setBufferedIO(true);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        logger.info("abc");
+        assertEquals(13, appender.count());
+        appender.close();
+        assertEquals(13, file.length());
+    }
+
+    static class CountingAppender extends RollingFileAppender {
+        long count() {
+            return ((CountingQuietWriter) qw).getCount();
+        }
+    }
+}
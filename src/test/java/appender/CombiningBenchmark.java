@@ -0,0 +1,113 @@
+package appender;
+
+import org.apache.log4j.*;
+
+import java.io.File;
+
+/**
+ * 合并写入模式与普通模式在高并发下的吞吐量和日志调用延迟分布对比(ImmediateFlush=true)
+ *
+ * <pre>
+ * java appender.CombiningBenchmark [durationMillis] [threads...]
+ * </pre>
+ */
+public class CombiningBenchmark {
+
+    /**
+     * 延迟直方图的精度为1微秒，超过MAX_MICROS的记入最后一格
+     */
+    static final int MAX_MICROS = 100000;
+
+    public static void main(String[] args) throws Exception {
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int[] threadCounts = {8, 32, 64};
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Logger root = Logger.getRootLogger();
+        root.removeAllAppenders();
+        root.setLevel(Level.INFO);
+        Logger logger = Logger.getLogger(CombiningBenchmark.class);
+
+        System.out.println("mode        threads    events/s     p50 us   p99 us  p99.9 us    max us");
+        for (int t = 0; t < threadCounts.length; t++) {
+            for (int combining = 0; combining < 2; combining++) {
+                File file = File.createTempFile("combining", ".log");
+                file.deleteOnExit();
+                FileAppender appender = new FileAppender();
+                appender.setLayout(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"));
+                appender.setFile(file.getPath());
+                appender.setAppend(false);
+                appender.setCombining(combining == 1);
+                appender.activateOptions();
+                logger.addAppender(appender);
+                long[] histogram = new long[MAX_MICROS + 1];
+                long events = run(logger, threadCounts[t], duration, histogram);
+                logger.removeAppender(appender);
+                appender.close();
+                file.delete();
+                System.out.println(DurabilityBenchmark.pad(combining == 1 ? "combining" : "plain", 12)
+                        + DurabilityBenchmark.pad(String.valueOf(threadCounts[t]), 8)
+                        + DurabilityBenchmark.pad(String.valueOf(events * 1000 / duration), 13)
+                        + DurabilityBenchmark.pad(String.valueOf(percentile(histogram, events, 0.5)), 9)
+                        + DurabilityBenchmark.pad(String.valueOf(percentile(histogram, events, 0.99)), 9)
+                        + DurabilityBenchmark.pad(String.valueOf(percentile(histogram, events, 0.999)), 11)
+                        + percentile(histogram, events, 1.0));
+            }
+        }
+    }
+
+    /**
+     * 运行duration毫秒，返回事件总数，并把每次调用的延迟累加到histogram
+     */
+    static long run(final Logger logger, int threads, final long duration,
+                    final long[] histogram) throws InterruptedException {
+        final long[] counts = new long[threads];
+        final long[][] histograms = new long[threads][];
+        final long end = System.currentTimeMillis() + duration;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    long[] h = new long[MAX_MICROS + 1];
+                    long n = 0;
+                    while (System.currentTimeMillis() < end) {
+                        long start = System.nanoTime();
+                        logger.info("benchmark message number " + n);
+                        long micros = (System.nanoTime() - start) / 1000;
+                        h[(int) Math.min(micros, MAX_MICROS)]++;
+                        n++;
+                    }
+                    counts[index] = n;
+                    histograms[index] = h;
+                }
+            };
+            workers[i].start();
+        }
+        long total = 0;
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            total += counts[i];
+            for (int j = 0; j <= MAX_MICROS; j++) {
+                histogram[j] += histograms[i][j];
+            }
+        }
+        return total;
+    }
+
+    static int percentile(long[] histogram, long total, double p) {
+        long rank = (long) Math.ceil(total * p);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank && histogram[i] > 0) {
+                return i;
+            }
+        }
+        return histogram.length - 1;
+    }
+}
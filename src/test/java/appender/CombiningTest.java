@@ -0,0 +1,227 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CombiningTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(CombiningTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    /**
+     * 记录flush次数的Writer
+     */
+    static class CountingWriter extends StringWriter {
+        int flushes;
+
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+    }
+
+    /**
+     * 第一次flush时阻塞，直到测试放行；记录每次flush写出的行数
+     */
+    static class GatedWriter extends CountingWriter {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        int flushed;
+        int maxBatch;
+
+        public void flush() {
+            blocked.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String text = getBuffer().toString();
+            int lines = 0;
+            for (int i = text.indexOf('\n', flushed); i >= 0; i = text.indexOf('\n', i + 1)) {
+                lines++;
+            }
+            flushed = text.length();
+            maxBatch = Math.max(maxBatch, lines);
+            super.flush();
+        }
+    }
+
+    WriterAppender appender(CountingWriter writer, String pattern) {
+        WriterAppender appender = new WriterAppender(new PatternLayout(pattern), writer);
+        appender.setCombining(true);
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    /**
+     * 合并模式下每次日志调用返回时事件已写入并flush
+     */
+    @Test
+    public void testWrittenWhenCallReturns() {
+        CountingWriter writer = new CountingWriter();
+        appender(writer, "%m%n");
+        for (int i = 0; i < 10; i++) {
+            logger.info("message " + i);
+            assertTrue(writer.toString().endsWith("message " + i + Layout.LINE_SEP));
+            assertEquals(i + 1, writer.flushes);
+        }
+    }
+
+    /**
+     * 多线程并发写入时不丢失事件，每个线程的事件保持顺序，线程名和MDC取自写日志的线程。
+     * 第一次flush阻塞期间其他线程都在等待，放行后它们发布的事件合并为一批写入，flush次数少于事件数
+     */
+    @Test
+    public void testConcurrentThreads() throws Exception {
+        GatedWriter writer = new GatedWriter();
+        WriterAppender appender = appender(writer, "%t %X{worker} %m%n");
+        final int threads = 16;
+        final int count = 2000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final String id = String.valueOf(t);
+            workers[t] = new Thread("worker" + t) {
+                public void run() {
+                    MDC.put("worker", id);
+                    for (int i = 0; i < count; i++) {
+                        logger.info(String.valueOf(i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        assertTrue(writer.blocked.await(10, TimeUnit.SECONDS));
+        // the first batch holds the appender, let the other threads publish
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!allWaiting(workers) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(allWaiting(workers));
+        writer.release.countDown();
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+        }
+        appender.close();
+
+        int[] next = new int[threads];
+        BufferedReader reader = new BufferedReader(new StringReader(writer.toString()));
+        String line;
+        int total = 0;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(" ");
+            int t = Integer.parseInt(fields[1]);
+            assertEquals("worker" + t, fields[0]);
+            assertEquals(next[t]++, Integer.parseInt(fields[2]));
+            total++;
+        }
+        assertEquals(threads * count, total);
+        assertTrue(writer.maxBatch > 1);
+        assertTrue(writer.flushes < total);
+    }
+
+    static boolean allWaiting(Thread[] threads) {
+        for (int i = 0; i < threads.length; i++) {
+            Thread.State state = threads[i].getState();
+            if (state != Thread.State.WAITING
+                    && state != Thread.State.TIMED_WAITING
+                    && state != Thread.State.BLOCKED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * AsyncAppender的分发线程把整批事件的等待推迟到批次结束，线程自己的槽位中还有未写出的事件时，
+     * 后面的事件不能先于它写出，输出顺序与日志调用顺序一致
+     */
+    @Test
+    public void testOrderThroughAsyncAppender() {
+        CountingWriter writer = new CountingWriter();
+        WriterAppender combining = new WriterAppender(new PatternLayout("%m%n"), writer);
+        combining.setCombining(true);
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(combining);
+        logger.addAppender(async);
+        for (int i = 0; i < 1000; i++) {
+            logger.info(String.valueOf(i));
+        }
+        async.close();
+        assertInOrder(writer.toString(), 1000, 1);
+    }
+
+    /**
+     * 同一个Appender挂在logger链的两个层级上时，每个事件写两次，事件之间的顺序不变
+     */
+    @Test
+    public void testOrderWhenAttachedTwice() {
+        CountingWriter writer = new CountingWriter();
+        WriterAppender appender = appender(writer, "%m%n");
+        Logger child = Logger.getLogger(CombiningTest.class.getName() + ".child");
+        child.removeAllAppenders();
+        child.addAppender(appender);
+        try {
+            for (int i = 0; i < 100; i++) {
+                child.info(String.valueOf(i));
+            }
+        } finally {
+            child.removeAllAppenders();
+        }
+        assertInOrder(writer.toString(), 100, 2);
+    }
+
+    static void assertInOrder(String text, int count, int copies) {
+        String[] lines = text.split(Layout.LINE_SEP);
+        assertEquals(count * copies, lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(String.valueOf(i / copies), lines[i]);
+        }
+    }
+
+    /**
+     * 设置LocationInfo后，由其他线程格式化的事件位置信息仍然正确
+     */
+    @Test
+    public void testLocationInfo() throws Exception {
+        CountingWriter writer = new CountingWriter();
+        WriterAppender appender = appender(writer, "%M%n");
+        appender.setLocationInfo(true);
+        Thread[] workers = new Thread[8];
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        logger.info("x");
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < workers.length; t++) {
+            workers[t].join();
+        }
+        BufferedReader reader = new BufferedReader(new StringReader(writer.toString()));
+        String line;
+        int total = 0;
+        while ((line = reader.readLine()) != null) {
+            assertEquals("run", line);
+            total++;
+        }
+        assertEquals(1600, total);
+    }
+}
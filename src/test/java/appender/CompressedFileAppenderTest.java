@@ -0,0 +1,177 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.varia.CompressedFileAppender;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class CompressedFileAppenderTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(CompressedFileAppenderTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    CompressedFileAppender appender(File file, boolean append) {
+        CompressedFileAppender appender = new CompressedFileAppender();
+        appender.setName("compressed");
+        appender.setLayout(new PatternLayout("%p %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(append);
+        return appender;
+    }
+
+    /**
+     * 读出尽可能多的行，文件未正常关闭时流的结尾不完整
+     */
+    static List readLines(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                bytes.write(buf, 0, n);
+            }
+        } catch (EOFException e) {
+            // truncated stream
+        } finally {
+            in.close();
+        }
+        List lines = new ArrayList();
+        BufferedReader reader = new BufferedReader(new StringReader(bytes.toString()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * gzip格式写入后可以完整读回，追加模式写入新的gzip member
+     */
+    @Test
+    public void testGzipRoundTripAndAppend() throws Exception {
+        File file = File.createTempFile("compressed", ".log.gz");
+        file.deleteOnExit();
+        for (int session = 0; session < 2; session++) {
+            CompressedFileAppender appender = appender(file, session > 0);
+            appender.activateOptions();
+            logger.addAppender(appender);
+            for (int i = 0; i < 1000; i++) {
+                logger.info("message " + i);
+            }
+            logger.removeAppender(appender);
+            appender.close();
+        }
+        List lines = readLines(new GZIPInputStream(new FileInputStream(file)));
+        assertEquals(2000, lines.size());
+        String prefix = "INFO " + CompressedFileAppenderTest.class.getName() + " - message ";
+        assertEquals(prefix + "0", lines.get(0));
+        assertEquals(prefix + "999", lines.get(1999));
+        long plain = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            plain += ((String) lines.get(i)).length() + Layout.LINE_SEP.length();
+        }
+        assertTrue(file.length() * 5 < plain);
+    }
+
+    /**
+     * 不关闭appender时，SyncFlushInterval之后已写入的日志也能被解压读出
+     */
+    @Test
+    public void testReadableBeforeClose() throws Exception {
+        File file = File.createTempFile("compressed", ".log.z");
+        file.deleteOnExit();
+        CompressedFileAppender appender = appender(file, false);
+        appender.setCompression("deflate");
+        appender.setSyncFlushInterval(50);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        List lines;
+        do {
+            Thread.sleep(50);
+            lines = readLines(new InflaterInputStream(new FileInputStream(file)));
+        } while (lines.size() < 100 && System.currentTimeMillis() < deadline);
+        assertEquals(100, lines.size());
+
+        logger.info("last");
+        appender.close();
+        lines = readLines(new InflaterInputStream(new FileInputStream(file)));
+        assertEquals(101, lines.size());
+    }
+
+    /**
+     * 压缩线程缓冲中的日志无法被force()写入磁盘，Durability选项被重置为NONE，
+     * 不会把仍在压缩缓冲中的日志当作已经持久化
+     */
+    @Test
+    public void testDurabilityIgnored() throws Exception {
+        File file = File.createTempFile("compressed", ".log.gz");
+        file.deleteOnExit();
+        CompressedFileAppender appender = appender(file, false);
+        appender.setDurability("SYNC");
+        appender.setChannelIO(true);
+        appender.activateOptions();
+        assertEquals("NONE", appender.getDurability());
+        assertFalse(appender.getChannelIO());
+        logger.addAppender(appender);
+        logger.info("message");
+        logger.removeAppender(appender);
+        appender.close();
+        List lines = readLines(new GZIPInputStream(new FileInputStream(file)));
+        assertEquals(1, lines.size());
+    }
+
+    /**
+     * 压缩无法启动时不写入任何未压缩的内容
+     */
+    @Test
+    public void testNoPlainTextWhenCompressionFails() throws Exception {
+        File file = File.createTempFile("compressed", ".log.gz");
+        file.deleteOnExit();
+        CompressedFileAppender appender = new CompressedFileAppender() {
+            protected OutputStreamWriter createWriter(final OutputStream os) {
+                // the gzip header can not be written
+                return super.createWriter(new FilterOutputStream(os) {
+                    int writes;
+
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (writes++ == 0) {
+                            throw new IOException("disk full");
+                        }
+                        out.write(b, off, len);
+                    }
+                });
+            }
+        };
+        appender.setName("failing");
+        appender.setLayout(new PatternLayout("%p %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        logger.removeAppender(appender);
+        appender.close();
+        assertEquals(0, file.length());
+    }
+}
@@ -0,0 +1,69 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.varia.CompressedFileAppender;
+
+import java.io.File;
+
+/**
+ * 普通文本输出与压缩输出的吞吐量和磁盘写入量对比
+ *
+ * <pre>
+ * java appender.CompressionBenchmark [durationMillis] [threads]
+ * </pre>
+ */
+public class CompressionBenchmark {
+
+    static final String[] MODES = {"plain", "GZIP(1)", "GZIP(6)", "DEFLATE(1)"};
+
+    public static void main(String[] args) throws Exception {
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Logger root = Logger.getRootLogger();
+        root.removeAllAppenders();
+        root.setLevel(Level.INFO);
+        final Logger logger = Logger.getLogger(CompressionBenchmark.class);
+
+        System.out.println("mode          events/s   written bytes   bytes/event   ratio");
+        double plainBytesPerEvent = 0;
+        for (int m = 0; m < MODES.length; m++) {
+            File file = File.createTempFile("compression", ".log");
+            file.deleteOnExit();
+            FileAppender appender = createAppender(file, MODES[m]);
+            logger.addAppender(appender);
+            long events = DurabilityBenchmark.run(logger, threads, duration);
+            logger.removeAppender(appender);
+            appender.close();
+            long bytes = file.length();
+            double bytesPerEvent = (double) bytes / events;
+            if (m == 0) {
+                plainBytesPerEvent = bytesPerEvent;
+            }
+            file.delete();
+            System.out.println(DurabilityBenchmark.pad(MODES[m], 14)
+                    + DurabilityBenchmark.pad(String.valueOf(events * 1000 / duration), 11)
+                    + DurabilityBenchmark.pad(String.valueOf(bytes), 16)
+                    + DurabilityBenchmark.pad(String.valueOf(Math.round(bytesPerEvent * 10) / 10.0), 14)
+                    + Math.round(plainBytesPerEvent / bytesPerEvent * 10) / 10.0);
+        }
+    }
+
+    static FileAppender createAppender(File file, String mode) {
+        FileAppender appender;
+        if ("plain".equals(mode)) {
+            appender = new FileAppender();
+        } else {
+            CompressedFileAppender compressed = new CompressedFileAppender();
+            compressed.setCompression(mode.substring(0, mode.indexOf('(')));
+            compressed.setCompressionLevel(mode.charAt(mode.indexOf('(') + 1) - '0');
+            appender = compressed;
+        }
+        appender.setName(mode);
+        appender.setLayout(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.activateOptions();
+        return appender;
+    }
+}
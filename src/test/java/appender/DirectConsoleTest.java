@@ -0,0 +1,169 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirectConsoleTest {
+
+    /**
+     * 在子进程中运行：direct、nonblocking 或 stacktrace 模式输出 count 条日志，direct 模式中间穿插 System.out 的输出，
+     * stacktrace 模式以 nonblocking 方式输出带异常堆栈的日志
+     */
+    public static void main(String[] args) throws Exception {
+        boolean trace = "stacktrace".equals(args[0]);
+        boolean nonBlocking = trace || "nonblocking".equals(args[0]);
+        int count = Integer.parseInt(args[1]);
+        Logger logger = Logger.getLogger(DirectConsoleTest.class);
+        logger.setAdditivity(false);
+        ConsoleAppender appender = new ConsoleAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setDirect(true);
+        appender.setNonBlocking(nonBlocking);
+        appender.setImmediateFlush(false);
+        appender.setQueueSize(16 * 1024);
+        if (trace) {
+            // each event spans several buffers
+            appender.setBufferSize(256);
+        }
+        appender.activateOptions();
+        logger.addAppender(appender);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            if (trace) {
+                logger.info("message " + i, deepException(40, "trace " + i));
+            } else {
+                logger.info("message " + i);
+            }
+            if (!nonBlocking && i % 100 == 0) {
+                System.out.println("stream " + i);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        appender.close();
+        if (!trace) {
+            System.out.println("elapsed " + elapsed);
+        }
+    }
+
+    /**
+     * 创建一个有较深调用栈的异常
+     */
+    static Exception deepException(int depth, String message) {
+        return depth == 0 ? new Exception(message) : deepException(depth - 1, message);
+    }
+
+    static Process start(String mode, int count) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-Dlog4j.configuration=none",
+                "-cp", System.getProperty("java.class.path"),
+                DirectConsoleTest.class.getName(), mode, String.valueOf(count));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    static List readLines(Process process) throws Exception {
+        List lines = new ArrayList();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        assertEquals(0, process.waitFor());
+        return lines;
+    }
+
+    /**
+     * direct 模式下日志完整输出，且与 System.out 的输出不会交错在同一行，顺序保持
+     */
+    @Test
+    public void testDirect() throws Exception {
+        List lines = readLines(start("direct", 10000));
+        int message = 0;
+        int stream = 0;
+        for (int i = 0; i < lines.size() - 1; i++) {
+            String line = (String) lines.get(i);
+            if (line.startsWith("message ")) {
+                assertEquals("message " + message++, line);
+            } else {
+                assertEquals("stream " + stream, line);
+                // buffered events logged before the print come first
+                assertTrue(message <= stream + 1);
+                stream += 100;
+            }
+        }
+        assertEquals(10000, message);
+        assertEquals(10000, stream);
+        assertTrue(((String) lines.get(lines.size() - 1)).startsWith("elapsed "));
+    }
+
+    /**
+     * nonblocking 模式下输出管道无人读取时，日志线程不会阻塞，超出队列的日志被丢弃
+     */
+    @Test
+    public void testNonBlockingSlowPipe() throws Exception {
+        Process process = start("nonblocking", 100000);
+        // nobody reads the pipe for a while
+        Thread.sleep(3000);
+        List lines = readLines(process);
+        int messages = 0;
+        long elapsed = -1;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = (String) lines.get(i);
+            if (line.startsWith("message ")) {
+                messages++;
+            } else {
+                // the writer thread may still write the queue after close
+                assertTrue(line, line.startsWith("elapsed "));
+                elapsed = Long.parseLong(line.substring("elapsed ".length()));
+            }
+        }
+        // logging did not wait for the reader
+        assertTrue(elapsed >= 0);
+        assertTrue(String.valueOf(elapsed), elapsed < 2500);
+        assertTrue(messages > 0);
+        assertTrue(messages < 100000);
+    }
+
+    /**
+     * nonblocking 模式下队列满时，日志连同其异常堆栈作为一个整体写出或丢弃
+     */
+    @Test
+    public void testNonBlockingKeepsStackTraceWithEvent() throws Exception {
+        Process process = start("stacktrace", 20000);
+        Thread.sleep(3000);
+        List lines = readLines(process);
+        // the last event may be cut by the exit of the process
+        int last = lines.size() - 1;
+        while (last >= 0 && !((String) lines.get(last)).startsWith("message ")) {
+            last--;
+        }
+        int events = 0;
+        int frames = -1;
+        int i = 0;
+        while (i < last) {
+            String line = (String) lines.get(i++);
+            assertTrue(line, line.startsWith("message "));
+            String n = line.substring("message ".length());
+            assertEquals("java.lang.Exception: trace " + n, lines.get(i++));
+            int f = 0;
+            while (i < last && ((String) lines.get(i)).startsWith("\tat ")) {
+                f++;
+                i++;
+            }
+            if (frames == -1) {
+                frames = f;
+            }
+            assertEquals(frames, f);
+            events++;
+        }
+        assertTrue(frames > 0);
+        assertTrue(events > 0);
+        assertTrue(events < 20000);
+    }
+}
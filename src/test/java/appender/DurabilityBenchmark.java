@@ -0,0 +1,114 @@
+package appender;
+
+import org.apache.log4j.*;
+
+import java.io.File;
+
+/**
+ * 不同Durability策略下的吞吐量对比，同时给出每种策略在进程崩溃(flush策略)或掉电(SYNC)时可能丢失的数据范围
+ *
+ * <pre>
+ * java appender.DurabilityBenchmark [durationMillis] [threads...]
+ * </pre>
+ */
+public class DurabilityBenchmark {
+
+    static final String[][] POLICIES = {
+            // durability, option value, loss window
+            {"NONE", "immediateFlush", "process crash: none, power loss: unbounded"},
+            {"NONE", "bufferedIO", "process crash: up to 8K, power loss: unbounded"},
+            {"INTERVAL", "100", "process crash: 100 ms, power loss: unbounded"},
+            {"EVENTS", "100", "process crash: 100 events, power loss: unbounded"},
+            {"SYNC", "0", "none once the call returns"},
+            {"SYNC", "10", "none once the call returns"},
+    };
+
+    public static void main(String[] args) throws Exception {
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int[] threadCounts = {1, 8};
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Logger root = Logger.getRootLogger();
+        root.removeAllAppenders();
+        root.setLevel(Level.INFO);
+        final Logger logger = Logger.getLogger(DurabilityBenchmark.class);
+
+        System.out.println("policy                threads    events/s  loss window");
+        for (int p = 0; p < POLICIES.length; p++) {
+            for (int t = 0; t < threadCounts.length; t++) {
+                File file = File.createTempFile("durability", ".log");
+                file.deleteOnExit();
+                FileAppender appender = createAppender(file, POLICIES[p]);
+                logger.addAppender(appender);
+                long events = run(logger, threadCounts[t], duration);
+                logger.removeAppender(appender);
+                appender.close();
+                file.delete();
+                System.out.println(pad(POLICIES[p][0] + "(" + POLICIES[p][1] + ")", 22)
+                        + pad(String.valueOf(threadCounts[t]), 8)
+                        + pad(String.valueOf(events * 1000 / duration), 12)
+                        + "  " + POLICIES[p][2]);
+            }
+        }
+    }
+
+    static FileAppender createAppender(File file, String[] policy) {
+        FileAppender appender = new FileAppender();
+        appender.setLayout(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setDurability(policy[0]);
+        if ("bufferedIO".equals(policy[1])) {
+            appender.setBufferedIO(true);
+        } else if ("INTERVAL".equals(policy[0])) {
+            appender.setBufferedIO(true);
+            appender.setFlushInterval(Long.parseLong(policy[1]));
+        } else if ("EVENTS".equals(policy[0])) {
+            appender.setBufferedIO(true);
+            appender.setFlushEvents(Integer.parseInt(policy[1]));
+        } else if ("SYNC".equals(policy[0])) {
+            appender.setBufferedIO(true);
+            appender.setSyncInterval(Long.parseLong(policy[1]));
+        }
+        appender.activateOptions();
+        return appender;
+    }
+
+    static long run(final Logger logger, int threads, final long duration) throws InterruptedException {
+        final long[] counts = new long[threads];
+        final long end = System.currentTimeMillis() + duration;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            workers[i] = new Thread() {
+                public void run() {
+                    long n = 0;
+                    while (System.currentTimeMillis() < end) {
+                        logger.info("benchmark message number " + n);
+                        n++;
+                    }
+                    counts[index] = n;
+                }
+            };
+            workers[i].start();
+        }
+        long total = 0;
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            total += counts[i];
+        }
+        return total;
+    }
+
+    static String pad(String s, int width) {
+        StringBuffer buf = new StringBuffer(s);
+        while (buf.length() < width) {
+            buf.append(' ');
+        }
+        return buf.toString();
+    }
+}
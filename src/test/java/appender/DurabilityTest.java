@@ -0,0 +1,229 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.helpers.OnlyOnceErrorHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DurabilityTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(DurabilityTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    File tempFile() throws Exception {
+        File file = File.createTempFile("durability", ".log");
+        file.deleteOnExit();
+        return file;
+    }
+
+    FileAppender bufferedAppender(File file, String durability) {
+        FileAppender appender = new FileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.setDurability(durability);
+        return appender;
+    }
+
+    /**
+     * EVENTS策略下每N个事件flush一次
+     */
+    @Test
+    public void testFlushEveryEvents() throws Exception {
+        File file = tempFile();
+        FileAppender appender = bufferedAppender(file, "events");
+        appender.setFlushEvents(10);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        String line = "event" + Layout.LINE_SEP;
+
+        for (int i = 0; i < 9; i++) {
+            logger.info("event");
+        }
+        assertEquals(0, file.length());
+        logger.info("event");
+        assertEquals(10 * line.length(), file.length());
+        for (int i = 0; i < 15; i++) {
+            logger.info("event");
+        }
+        assertEquals(20 * line.length(), file.length());
+        appender.close();
+        assertEquals(25 * line.length(), file.length());
+    }
+
+    /**
+     * INTERVAL策略下距上次flush超过间隔的事件触发flush
+     */
+    @Test
+    public void testFlushInterval() throws Exception {
+        File file = tempFile();
+        FileAppender appender = bufferedAppender(file, "INTERVAL");
+        appender.setFlushInterval(200);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        String line = "event" + Layout.LINE_SEP;
+
+        // the first event flushes
+        logger.info("event");
+        logger.info("event");
+        assertEquals(line.length(), file.length());
+        Thread.sleep(250);
+        logger.info("event");
+        assertEquals(3 * line.length(), file.length());
+        appender.close();
+    }
+
+    /**
+     * INTERVAL策略下之后没有新事件时，后台线程在间隔后flush最后的事件
+     */
+    @Test
+    public void testFlushIntervalWithoutLaterEvent() throws Exception {
+        File file = tempFile();
+        FileAppender appender = bufferedAppender(file, "INTERVAL");
+        appender.setFlushInterval(200);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        String line = "event" + Layout.LINE_SEP;
+
+        logger.info("event");
+        logger.info("event");
+        assertEquals(line.length(), file.length());
+        Thread.sleep(500);
+        assertEquals(2 * line.length(), file.length());
+        logger.removeAppender(appender);
+        appender.close();
+    }
+
+    /**
+     * SYNC策略下并发线程共享force，force次数远少于事件数；返回时数据已写入操作系统
+     */
+    @Test
+    public void testGroupCommit() throws Exception {
+        final File file = tempFile();
+        final AtomicInteger forces = new AtomicInteger();
+        final FileAppender appender = new FileAppender() {
+            protected void force() throws IOException {
+                forces.incrementAndGet();
+                super.force();
+            }
+        };
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.setDurability("SYNC");
+        appender.setSyncInterval(20);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        final int threads = 8;
+        final int events = 50;
+        final String line = "event" + Layout.LINE_SEP;
+        Thread[] workers = new Thread[threads];
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < events; j++) {
+                        logger.info("event");
+                        // every completed logging call is in the file
+                        long completed = done.incrementAndGet();
+                        if (file.length() < completed * line.length()) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            workers[i].start();
+        }
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+        }
+        assertEquals(0, failures.get());
+        assertEquals(threads * events * line.length(), file.length());
+        assertTrue(forces.get() < threads * events / 2);
+
+        // events discarded by the threshold do not wait
+        appender.setThreshold(Level.ERROR);
+        int before = forces.get();
+        logger.info("discarded");
+        assertEquals(before, forces.get());
+        appender.close();
+    }
+
+    /**
+     * SYNC策略下force失败时不能把等待中的事件当作已经落盘，等待的线程被唤醒后重新force
+     */
+    @Test
+    public void testFailedForceIsRetried() throws Exception {
+        final File file = tempFile();
+        final AtomicInteger forces = new AtomicInteger();
+        final AtomicInteger succeeded = new AtomicInteger();
+        final FileAppender appender = new FileAppender() {
+            protected void force() throws IOException {
+                if (forces.incrementAndGet() == 2) {
+                    throw new IOException("disk failure");
+                }
+                super.force();
+                succeeded.incrementAndGet();
+            }
+        };
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.setDurability("SYNC");
+        appender.setSyncInterval(2000);
+        appender.setErrorHandler(new OnlyOnceErrorHandler());
+        appender.activateOptions();
+        logger.addAppender(appender);
+        // the waits are deferred until the category locks are released from now on
+        logger.info("warm up");
+        assertEquals(1, succeeded.get());
+
+        // waits for the SyncInterval, then its force fails
+        Thread first = new Thread() {
+            public void run() {
+                logger.info("first");
+            }
+        };
+        first.start();
+        final AtomicInteger succeededOnReturn = new AtomicInteger(-1);
+        Thread second = new Thread() {
+            public void run() {
+                logger.info("second");
+                succeededOnReturn.set(succeeded.get());
+            }
+        };
+        second.start();
+        // the second event is written and waits for the force of the first thread
+        long deadline = System.currentTimeMillis() + 1500;
+        while (second.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, second.getState());
+        assertEquals(1, forces.get());
+        first.join();
+        second.join();
+
+        assertEquals(3, forces.get());
+        assertEquals(2, succeededOnReturn.get());
+        appender.close();
+    }
+}
@@ -0,0 +1,282 @@
+package appender;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class EventJournalTest {
+
+    File file;
+    Logger logger = Logger.getLogger(EventJournalTest.class);
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("events", ".journal");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    LoggingEvent event(int i) {
+        return new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                "message " + (10000 + i), null);
+    }
+
+    /**
+     * 重放期间不断写入新事件，大小限制只作用于未送达的事件，已送达的部分被压缩掉
+     */
+    @Test
+    public void testLimitAppliesToBacklog() throws Exception {
+        Journal journal = new Journal(file, 4096);
+        LoggingEvent[] events = new LoggingEvent[10];
+        LoggingEvent[] read = new LoggingEvent[256];
+        int written = 0;
+        int delivered = 0;
+        long maxLength = 0;
+        for (int round = 0; round < 500; round++) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] = event(written + i);
+            }
+            assertEquals(events.length, journal.append(events, events.length));
+            written += events.length;
+            // a throttled replay delivers one chunk, keeping a backlog of 2 chunks
+            if (round >= 2) {
+                int n = journal.read(read);
+                assertEquals(events.length, n);
+                for (int i = 0; i < n; i++) {
+                    assertEquals(event(delivered++).getMessage(), read[i].getRenderedMessage());
+                }
+                journal.commit();
+            }
+            assertTrue(journal.getBacklog() <= 4096);
+            maxLength = Math.max(maxLength, file.length());
+        }
+        assertTrue(String.valueOf(maxLength), maxLength <= 2 * 4096);
+        journal.close();
+
+        // the compacted file is read back from its checkpoint
+        journal = new Journal(file, 4096);
+        int n;
+        while ((n = journal.read(read)) > 0) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(event(delivered++).getMessage(), read[i].getRenderedMessage());
+            }
+        }
+        assertEquals(written, delivered);
+        journal.close();
+    }
+
+    /**
+     * 未送达的事件达到上限后，之后的事件被丢弃
+     */
+    @Test
+    public void testBacklogLimit() throws Exception {
+        Journal journal = new Journal(file, 4096);
+        LoggingEvent[] events = new LoggingEvent[10];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = event(i);
+        }
+        int stored = 0;
+        for (int round = 0; round < 100; round++) {
+            stored += journal.append(events, events.length);
+        }
+        assertTrue(stored > 0);
+        assertTrue(stored < 1000);
+        assertTrue(file.length() <= 4096);
+        journal.close();
+    }
+
+    /**
+     * 压缩时在更新checkpoint之后、截断文件之前崩溃，重新打开后只读出未送达的事件，
+     * 已送达的事件不会被再次发送
+     */
+    @Test
+    public void testCrashDuringCompaction() throws Exception {
+        Journal journal = new Journal(file, 4096);
+        CrashingFile crashing = journal.crashOnTruncate();
+        LoggingEvent[] events = new LoggingEvent[10];
+        LoggingEvent[] read = new LoggingEvent[256];
+        int written = 0;
+        for (int round = 0; round < 12; round++) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] = event(written++);
+            }
+            assertEquals(events.length, journal.append(events, events.length));
+        }
+        int delivered = 0;
+        crashing.crash = true;
+        try {
+            while (true) {
+                int n = journal.read(read);
+                assertEquals(events.length, n);
+                delivered += n;
+                journal.commit();
+            }
+        } catch (IOException e) {
+            assertEquals("crash", e.getMessage());
+        }
+        assertTrue(delivered < written);
+        journal.close();
+
+        journal = new Journal(file, 4096);
+        int n;
+        while ((n = journal.read(read)) > 0) {
+            for (int i = 0; i < n; i++) {
+                assertEquals(event(delivered++).getMessage(), read[i].getRenderedMessage());
+            }
+        }
+        assertEquals(written, delivered);
+        journal.close();
+    }
+
+    /**
+     * 全部送达后清空文件时崩溃，重新打开后日志为空，不会重复发送
+     */
+    @Test
+    public void testCrashDuringClear() throws Exception {
+        Journal journal = new Journal(file, 1 << 20);
+        CrashingFile crashing = journal.crashOnTruncate();
+        LoggingEvent[] events = new LoggingEvent[10];
+        LoggingEvent[] read = new LoggingEvent[256];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < events.length; i++) {
+                events[i] = event(round * events.length + i);
+            }
+            journal.append(events, events.length);
+        }
+        journal.read(read);
+        journal.commit();
+        journal.read(read);
+        journal.read(read);
+        crashing.crash = true;
+        try {
+            journal.commit();
+            fail();
+        } catch (IOException e) {
+            assertEquals("crash", e.getMessage());
+        }
+        journal.close();
+
+        journal = new Journal(file, 1 << 20);
+        assertEquals(0, journal.read(read));
+        assertEquals(0, journal.getBacklog());
+        journal.close();
+    }
+
+    /**
+     * 一个在截断文件时模拟崩溃的文件
+     */
+    static final class CrashingFile extends RandomAccessFile {
+        boolean crash;
+
+        CrashingFile(File file) throws IOException {
+            super(file, "rw");
+        }
+
+        public void setLength(long newLength) throws IOException {
+            if (crash) {
+                throw new IOException("crash");
+            }
+            super.setLength(newLength);
+        }
+    }
+
+    /**
+     * Calls the package private EventJournal of org.apache.log4j.net.
+     */
+    static final class Journal {
+        static final Class type;
+        static final Constructor constructor;
+        static final Method append;
+        static final Method read;
+        static final Method commit;
+        static final Method getBacklog;
+        static final Method close;
+        static final Field file;
+
+        static {
+            try {
+                type = Class.forName("org.apache.log4j.net.EventJournal");
+                constructor = type.getDeclaredConstructor(File.class, long.class, boolean.class);
+                append = type.getDeclaredMethod("append", LoggingEvent[].class, int.class);
+                read = type.getDeclaredMethod("read", LoggingEvent[].class);
+                commit = type.getDeclaredMethod("commit");
+                getBacklog = type.getDeclaredMethod("getBacklog");
+                close = type.getDeclaredMethod("close");
+                file = type.getDeclaredField("file");
+                constructor.setAccessible(true);
+                append.setAccessible(true);
+                read.setAccessible(true);
+                commit.setAccessible(true);
+                getBacklog.setAccessible(true);
+                close.setAccessible(true);
+                file.setAccessible(true);
+            } catch (Exception e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final File path;
+        final Object journal;
+
+        Journal(File path, long maxSize) throws Exception {
+            this.path = path;
+            this.journal = constructor.newInstance(path, Long.valueOf(maxSize), Boolean.FALSE);
+        }
+
+        /**
+         * Replaces the file of the journal by one failing when truncated.
+         */
+        CrashingFile crashOnTruncate() throws Exception {
+            ((RandomAccessFile) file.get(journal)).close();
+            CrashingFile crashing = new CrashingFile(path);
+            file.set(journal, crashing);
+            return crashing;
+        }
+
+        int append(LoggingEvent[] events, int count) throws Exception {
+            return ((Integer) invoke(append, new Object[]{events, Integer.valueOf(count)})).intValue();
+        }
+
+        int read(LoggingEvent[] events) throws Exception {
+            return ((Integer) invoke(read, new Object[]{events})).intValue();
+        }
+
+        void commit() throws Exception {
+            invoke(commit, null);
+        }
+
+        long getBacklog() throws Exception {
+            return ((Long) invoke(getBacklog, null)).longValue();
+        }
+
+        void close() throws Exception {
+            invoke(close, null);
+        }
+
+        private Object invoke(Method method, Object[] args) throws Exception {
+            try {
+                return method.invoke(journal, args);
+            } catch (InvocationTargetException e) {
+                throw (Exception) e.getCause();
+            }
+        }
+    }
+}
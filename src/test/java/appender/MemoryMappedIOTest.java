@@ -0,0 +1,146 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MemoryMappedIOTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(MemoryMappedIOTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    File tempDir() throws Exception {
+        File dir = Files.createTempDirectory("mapped").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * 跨越多个映射区域写入，关闭后文件截断为实际长度，内容与默认方式一致
+     */
+    @Test
+    public void testSameOutputAsWriter() throws Exception {
+        File dir = tempDir();
+        File plain = new File(dir, "plain.log");
+        File mapped = new File(dir, "sub/mapped.log");
+        FileAppender plainAppender = new FileAppender(new PatternLayout("%p %m%n"), plain.getPath(), false);
+        plainAppender.setEncoding("UTF-8");
+        plainAppender.activateOptions();
+        FileAppender mappedAppender = new FileAppender();
+        mappedAppender.setLayout(new PatternLayout("%p %m%n"));
+        mappedAppender.setFile(mapped.getPath());
+        mappedAppender.setAppend(false);
+        mappedAppender.setEncoding("UTF-8");
+        mappedAppender.setMemoryMappedIO(true);
+        mappedAppender.setMapRegionSize(4096);
+        mappedAppender.activateOptions();
+        logger.addAppender(plainAppender);
+        logger.addAppender(mappedAppender);
+
+        for (int i = 0; i < 1000; i++) {
+            logger.info("消息 message " + i + " 😀");
+        }
+        logger.error("failure", new Exception("boom"));
+        plainAppender.close();
+        // the mapped file can be read before it is closed
+        byte[] expected = Files.readAllBytes(plain.toPath());
+        assertTrue(expected.length > 3 * 4096);
+        byte[] content = Files.readAllBytes(mapped.toPath());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], content[i]);
+        }
+        mappedAppender.close();
+        assertArrayEquals(expected, Files.readAllBytes(mapped.toPath()));
+
+        // appending starts at the end of the truncated file
+        mappedAppender = new FileAppender();
+        mappedAppender.setLayout(new PatternLayout("%m%n"));
+        mappedAppender.setFile(mapped.getPath());
+        mappedAppender.setMemoryMappedIO(true);
+        mappedAppender.setMapRegionSize(4096);
+        mappedAppender.activateOptions();
+        logger.removeAllAppenders();
+        logger.addAppender(mappedAppender);
+        logger.info("last");
+        mappedAppender.close();
+        assertEquals(expected.length + ("last" + Layout.LINE_SEP).length(), mapped.length());
+    }
+
+    /**
+     * 滚动时当前文件被截断为实际写入的字节数
+     */
+    @Test
+    public void testRollingTruncatesBackups() throws Exception {
+        File dir = tempDir();
+        File file = new File(dir, "rolling.log");
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setMemoryMappedIO(true);
+        appender.setMapRegionSize(700);
+        appender.setMaximumFileSize(1000);
+        appender.setMaxBackupIndex(2);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        String message = "0123456789012345678901234567890123456789";
+        int eventSize = message.length() + Layout.LINE_SEP.length();
+        for (int i = 0; i < 100; i++) {
+            logger.info(message);
+        }
+        appender.close();
+
+        int events = (1000 + eventSize - 1) / eventSize;
+        assertEquals(events * eventSize, new File(dir, "rolling.log.1").length());
+        assertEquals(events * eventSize, new File(dir, "rolling.log.2").length());
+        assertEquals(100 % events * eventSize, file.length());
+    }
+
+    /**
+     * 进程崩溃时文件没有截断，末尾是映射区域剩余的0字节；追加方式重新打开时从数据末尾继续写，中间不留0字节，
+     * UTF-16这类编码中字符自身的0字节保留
+     */
+    @Test
+    public void testAppendAfterCrash() throws Exception {
+        String[] encodings = {"UTF-8", "UTF-16LE", "UTF-16BE"};
+        for (int e = 0; e < encodings.length; e++) {
+            String encoding = encodings[e];
+            File file = new File(tempDir(), "crashed.log");
+            String first = "first 中" + Layout.LINE_SEP;
+            byte[] data = first.getBytes(encoding);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.write(data);
+            // the rest of the mapped region
+            raf.setLength(4096);
+            raf.close();
+
+            FileAppender appender = new FileAppender();
+            appender.setLayout(new PatternLayout("%m%n"));
+            appender.setFile(file.getPath());
+            appender.setEncoding(encoding);
+            appender.setMemoryMappedIO(true);
+            appender.setMapRegionSize(4096);
+            appender.activateOptions();
+            logger.removeAllAppenders();
+            logger.addAppender(appender);
+            logger.info("second");
+            appender.close();
+
+            assertEquals(encoding, first + "second" + Layout.LINE_SEP,
+                    new String(Files.readAllBytes(file.toPath()), encoding));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.SocketAppender;
+import org.apache.log4j.net.SocketNode;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NonBlockingSocketTest {
+
+    Logger logger;
+    final List received = new ArrayList();
+    final List sockets = new ArrayList();
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(NonBlockingSocketTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    @After
+    public void closeSockets() throws Exception {
+        logger.removeAllAppenders();
+        for (int i = 0; i < sockets.size(); i++) {
+            ((java.io.Closeable) sockets.get(i)).close();
+        }
+    }
+
+    /**
+     * 启动一个SocketNode服务端，收到的事件放入received
+     */
+    ServerSocket startServer(int port) throws Exception {
+        final ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        sockets.add(server);
+        final Hierarchy remote = new Hierarchy(new RootLogger(Level.DEBUG));
+        remote.getRootLogger().addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                synchronized (received) {
+                    received.add(event.getRenderedMessage());
+                    received.notifyAll();
+                }
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        new Thread(new SocketNode(socket, remote)).start();
+                    }
+                } catch (Exception e) {
+                    // server closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+
+    List awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (received) {
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+            return new ArrayList(received);
+        }
+    }
+
+    SocketAppender createAppender(int port, String protocol) {
+        SocketAppender appender = new SocketAppender();
+        appender.setRemoteHost("127.0.0.1");
+        appender.setPort(port);
+        appender.setReconnectionDelay(100);
+        appender.setProtocol(protocol);
+        appender.setNonBlocking(true);
+        return appender;
+    }
+
+    void sendAll(String protocol) throws Exception {
+        ServerSocket server = startServer(0);
+        SocketAppender appender = createAppender(server.getLocalPort(), protocol);
+        appender.setQueueSize(2000);
+        appender.setOverflowPolicy(SocketAppender.OVERFLOW_BLOCK);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 5000; i++) {
+            logger.info("message " + i);
+        }
+        logger.removeAppender(appender);
+        appender.close();
+        assertEquals(5000, appender.getSentEvents());
+        assertEquals(0, appender.getDroppedEvents());
+        List events = awaitEvents(5000);
+        assertEquals(5000, events.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("message " + i, events.get(i));
+        }
+    }
+
+    /**
+     * 非阻塞模式下两种协议的事件都按顺序送达
+     */
+    @Test
+    public void testSendInOrder() throws Exception {
+        sendAll(SocketAppender.PROTOCOL_SERIALIZED);
+        received.clear();
+        sendAll(SocketAppender.PROTOCOL_BINARY);
+    }
+
+    /**
+     * 服务端不读取数据时，日志调用不阻塞，超出队列的事件被丢弃，关闭也不会卡住
+     */
+    @Test
+    public void testStalledServer() throws Exception {
+        // accepts connections but never reads them
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        server.setReceiveBufferSize(4096);
+        sockets.add(server);
+        SocketAppender appender = createAppender(server.getLocalPort(), SocketAppender.PROTOCOL_SERIALIZED);
+        appender.setQueueSize(100);
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        StringBuffer payload = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            payload.append('x');
+        }
+        // log until the socket buffers are full and the sender thread is stuck
+        int total = 0;
+        long deadline = System.currentTimeMillis() + 10000;
+        long sent = -1;
+        int idle = 0;
+        while (idle < 20 && System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 100; i++) {
+                logger.info(payload + " " + total++);
+            }
+            Thread.sleep(5);
+            idle = appender.getSentEvents() == sent ? idle + 1 : 0;
+            sent = appender.getSentEvents();
+        }
+        assertEquals(20, idle);
+        assertEquals(100, appender.getQueuedEvents());
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            logger.info(payload + " " + total++);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(String.valueOf(elapsed), elapsed < 1000);
+        assertTrue(appender.getDroppedEvents() >= 10000);
+        assertEquals(100, appender.getMaxQueuedEvents());
+
+        start = System.currentTimeMillis();
+        appender.close();
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertEquals(total, appender.getSentEvents() + appender.getDroppedEvents());
+    }
+
+    /**
+     * 服务端不可达时事件留在队列中，DISCARD_OLDEST 丢弃最早的事件，服务端启动后发送其余事件
+     */
+    @Test
+    public void testDiscardOldestUntilReconnect() throws Exception {
+        ServerSocket probe = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = probe.getLocalPort();
+        probe.close();
+        SocketAppender appender = createAppender(port, SocketAppender.PROTOCOL_BINARY);
+        appender.setQueueSize(10);
+        appender.setOverflowPolicy("discard_oldest");
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        assertEquals(10, appender.getQueuedEvents());
+        assertEquals(90, appender.getDroppedEvents());
+
+        startServer(port);
+        List events = awaitEvents(10);
+        assertEquals(10, events.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("message " + (90 + i), events.get(i));
+        }
+        assertEquals(10, appender.getSentEvents());
+        appender.close();
+    }
+}
@@ -0,0 +1,134 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class PreallocationTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(PreallocationTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    static String read(File file) throws IOException {
+        Reader reader = new FileReader(file);
+        StringBuffer buf = new StringBuffer();
+        int c;
+        while ((c = reader.read()) != -1) {
+            buf.append((char) c);
+        }
+        reader.close();
+        return buf.toString();
+    }
+
+    /**
+     * 文件按预分配大小扩展，关闭时截断到实际写入的长度；追加模式跳过崩溃遗留的预分配空间
+     */
+    @Test
+    public void testPreallocateAndTruncate() throws Exception {
+        File file = File.createTempFile("preallocation", ".log");
+        file.deleteOnExit();
+        // left by a crash: data followed by preallocated zero bytes
+        OutputStream out = new FileOutputStream(file);
+        out.write(("crashed" + Layout.LINE_SEP).getBytes());
+        out.write(new byte[1000]);
+        out.close();
+
+        FileAppender appender = new FileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setPreallocationSize("64KB");
+        appender.activateOptions();
+        logger.addAppender(appender);
+
+        // the space left by the crash is used first
+        long crashedLength = file.length();
+        logger.info("first");
+        long expected = ("crashed" + Layout.LINE_SEP + "first" + Layout.LINE_SEP).length();
+        assertEquals(crashedLength, file.length());
+        for (int i = 0; i < 10000; i++) {
+            logger.info("message");
+        }
+        expected += 10000 * ("message" + Layout.LINE_SEP).length();
+        assertTrue(file.length() > expected);
+        assertTrue(file.length() <= expected + 64 * 1024);
+        appender.close();
+
+        assertEquals(expected, file.length());
+        String content = read(file);
+        assertTrue(content.startsWith("crashed" + Layout.LINE_SEP + "first" + Layout.LINE_SEP));
+        assertEquals(-1, content.indexOf('\0'));
+    }
+
+    /**
+     * 滚动时旧文件被截断，备份文件中不含预分配的空间
+     */
+    @Test
+    public void testRollover() throws Exception {
+        File file = File.createTempFile("preallocation", ".log");
+        file.deleteOnExit();
+        RollingFileAppender appender = new RollingFileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setMaximumFileSize(1000);
+        appender.setPreallocationSize("64KB");
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 200; i++) {
+            logger.info("message");
+        }
+        appender.close();
+        File backup = new File(file.getPath() + ".1");
+        backup.deleteOnExit();
+        assertTrue(backup.length() >= 1000);
+        assertTrue(backup.length() < 1000 + 20);
+        assertEquals(-1, read(backup).indexOf('\0'));
+        assertTrue(file.length() < 1000);
+    }
+
+    /**
+     * UTF-16编码的字符含有0字节，忽略预分配，追加模式重新打开后内容完整
+     */
+    @Test
+    public void testUtf16Reopen() throws Exception {
+        File file = File.createTempFile("preallocation", ".log");
+        file.deleteOnExit();
+        String[] encodings = {"UTF-16LE", "UTF-16BE"};
+        for (int e = 0; e < encodings.length; e++) {
+            for (int session = 0; session < 2; session++) {
+                FileAppender appender = new FileAppender();
+                appender.setLayout(new PatternLayout("%m%n"));
+                appender.setFile(file.getPath());
+                appender.setAppend(session > 0);
+                appender.setEncoding(encodings[e]);
+                appender.setPreallocationSize("64KB");
+                appender.activateOptions();
+                logger.addAppender(appender);
+                logger.info("session " + session);
+                // not preallocated, two bytes per character
+                assertEquals(2 * (session + 1) * ("session 0" + Layout.LINE_SEP).length(), file.length());
+                logger.removeAppender(appender);
+                appender.close();
+            }
+            Reader reader = new InputStreamReader(new FileInputStream(file), encodings[e]);
+            StringBuffer buf = new StringBuffer();
+            int c;
+            while ((c = reader.read()) != -1) {
+                buf.append((char) c);
+            }
+            reader.close();
+            assertEquals("session 0" + Layout.LINE_SEP + "session 1" + Layout.LINE_SEP, buf.toString());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.ErrorHandler;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.RoutingAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RoutingAppenderTest {
+
+    Logger logger;
+    File dir;
+
+    @Before
+    public void configLogger() throws IOException {
+        logger = Logger.getLogger(RoutingAppenderTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        dir = File.createTempFile("routing", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void deleteFiles() {
+        logger.removeAllAppenders();
+        MDC.remove("tenant");
+        String[] names = dir.list();
+        for (int i = 0; i < names.length; i++) {
+            new File(dir, names[i]).delete();
+        }
+        dir.delete();
+    }
+
+    RoutingAppender routingAppender(int maxOpen) {
+        RoutingAppender appender = new RoutingAppender();
+        appender.setMDCKey("tenant");
+        appender.setFile(new File(dir, "{route}.log").getPath());
+        appender.setMaxOpen(maxOpen);
+        appender.setLayout(new PatternLayout("%X{tenant}:%m%n"));
+        appender.activateOptions();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    void log(String tenant, String message) {
+        if (tenant == null) {
+            MDC.remove("tenant");
+        } else {
+            MDC.put("tenant", tenant);
+        }
+        logger.info(message);
+    }
+
+    static String read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        StringBuffer buf = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buf.append(line).append('|');
+        }
+        reader.close();
+        return buf.toString();
+    }
+
+    /**
+     * 按MDC的值把日志写到各自的文件，没有MDC值的写到默认文件
+     */
+    @Test
+    public void testRouteByMDC() throws Exception {
+        RoutingAppender appender = routingAppender(10);
+        log("a", "1");
+        log("b", "2");
+        log("a", "3");
+        log(null, "4");
+        assertEquals(3, appender.getOpenCount());
+        appender.close();
+
+        assertEquals("a:1|a:3|", read(new File(dir, "a.log")));
+        assertEquals("b:2|", read(new File(dir, "b.log")));
+        assertEquals(":4|", read(new File(dir, "default.log")));
+    }
+
+    /**
+     * 超过MaxOpen时关闭最久未使用的文件，再次使用时以追加方式重新打开；路由值不能指向目录之外
+     */
+    @Test
+    public void testEvictionAndReopen() throws Exception {
+        RoutingAppender appender = routingAppender(2);
+        log("a", "1");
+        log("b", "2");
+        log("a", "3");
+        // b is the least recently used
+        log("c", "4");
+        assertEquals(2, appender.getOpenCount());
+        log("b", "5");
+        log("../x", "6");
+        assertEquals(2, appender.getOpenCount());
+        appender.close();
+
+        assertEquals("a:1|a:3|", read(new File(dir, "a.log")));
+        assertEquals("b:2|b:5|", read(new File(dir, "b.log")));
+        assertEquals("c:4|", read(new File(dir, "c.log")));
+        assertFalse(new File(dir.getParentFile(), "x.log").exists());
+        assertEquals("../x:6|", read(new File(dir, "%2E.%2Fx.log")));
+    }
+
+    /**
+     * 只有特殊字符不同的路由值写到不同的文件
+     */
+    @Test
+    public void testSimilarRoutesDoNotShareFile() throws Exception {
+        RoutingAppender appender = routingAppender(10);
+        for (int i = 0; i < 3; i++) {
+            log("a/b", "1");
+            log("a b", "2");
+            log("a_b", "3");
+            log("a%2Fb", "4");
+        }
+        assertEquals(4, appender.getOpenCount());
+        appender.close();
+
+        assertEquals("a/b:1|a/b:1|a/b:1|", read(new File(dir, "a%2Fb.log")));
+        assertEquals("a b:2|a b:2|a b:2|", read(new File(dir, "a%20b.log")));
+        assertEquals("a_b:3|a_b:3|a_b:3|", read(new File(dir, "a_b.log")));
+        assertEquals("a%2Fb:4|a%2Fb:4|a%2Fb:4|", read(new File(dir, "a%252Fb.log")));
+        assertEquals(4, dir.list().length);
+    }
+
+    /**
+     * RoutingAppender在路由之前标记参数化消息，子appender不是AppenderSkeleton时保存的事件
+     * 也不会被之后的日志请求覆盖
+     */
+    @Test
+    public void testParameterizedMessageCaptured() throws Exception {
+        KeepingAppender.events.clear();
+        RoutingAppender appender = new RoutingAppender();
+        appender.setAppenderClass(KeepingAppender.class.getName());
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 3; i++) {
+            LogMF.info(logger, "value {0}", i);
+        }
+        appender.close();
+        assertEquals(3, KeepingAppender.events.size());
+        for (int i = 0; i < 3; i++) {
+            LoggingEvent event = (LoggingEvent) KeepingAppender.events.get(i);
+            assertEquals("value " + i, event.getRenderedMessage());
+        }
+    }
+
+    /**
+     * 保存收到的事件，不继承AppenderSkeleton
+     */
+    public static class KeepingAppender implements Appender {
+        static final List events = new ArrayList();
+        String name;
+
+        public void doAppend(LoggingEvent event) {
+            events.add(event);
+        }
+
+        public void addFilter(Filter newFilter) {
+        }
+
+        public Filter getFilter() {
+            return null;
+        }
+
+        public void clearFilters() {
+        }
+
+        public void close() {
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setErrorHandler(ErrorHandler errorHandler) {
+        }
+
+        public ErrorHandler getErrorHandler() {
+            return null;
+        }
+
+        public void setLayout(Layout layout) {
+        }
+
+        public Layout getLayout() {
+            return null;
+        }
+
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.BinaryEventWriter;
+import org.apache.log4j.net.SelectorSocketServer;
+import org.apache.log4j.net.SocketNode;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 每个连接一个 SocketNode 线程与 SelectorSocketServer 在大量连接下的吞吐量和线程数对比
+ *
+ * <pre>
+ * java appender.SelectorServerBenchmark [connections] [eventsPerConnection]
+ * </pre>
+ */
+public class SelectorServerBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        byte[] stream = encode(events);
+        System.out.println("server          connections   events/s   threads");
+        for (int round = 0; round < 2; round++) {
+            run("thread-per-conn", connections, events, stream, round > 0);
+            run("selector", connections, events, stream, round > 0);
+        }
+    }
+
+    /**
+     * 一个连接发送的字节：每帧 10 条事件的二进制协议
+     */
+    static byte[] encode(int events) throws Exception {
+        Logger logger = Logger.getLogger(SelectorServerBenchmark.class);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEventWriter writer = new BinaryEventWriter(bytes, false, false);
+        for (int i = 0; i < events; i++) {
+            writer.write(new LoggingEvent(Category.class.getName(), logger, Level.INFO,
+                    "Processed order " + i + " in 12 ms", null));
+            if (i % 10 == 9) {
+                writer.flush();
+            }
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    static void run(String mode, int connections, int events, byte[] stream, boolean print)
+            throws Exception {
+        final AtomicLong received = new AtomicLong();
+        final Hierarchy remote = new Hierarchy(new RootLogger(Level.DEBUG));
+        remote.getRootLogger().addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                received.incrementAndGet();
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        int threadsBefore = Thread.activeCount();
+        SelectorSocketServer selector = null;
+        final ServerSocket serverSocket;
+        int port;
+        if ("selector".equals(mode)) {
+            serverSocket = null;
+            selector = new SelectorSocketServer(0, remote);
+            selector.start();
+            port = selector.getLocalPort();
+        } else {
+            serverSocket = new ServerSocket(0, connections, InetAddress.getByName("127.0.0.1"));
+            port = serverSocket.getLocalPort();
+            Thread acceptor = new Thread() {
+                public void run() {
+                    try {
+                        while (true) {
+                            Socket socket = serverSocket.accept();
+                            new Thread(new SocketNode(socket, remote)).start();
+                        }
+                    } catch (Exception e) {
+                        // server closed
+                    }
+                }
+            };
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        Socket[] sockets = new Socket[connections];
+        for (int c = 0; c < connections; c++) {
+            sockets[c] = new Socket("127.0.0.1", port);
+        }
+        long start = System.nanoTime();
+        // interleave the connections, a frame at a time
+        int chunk = stream.length / (events / 10);
+        for (int pos = 0; pos < stream.length; pos += chunk) {
+            int n = Math.min(chunk, stream.length - pos);
+            for (int c = 0; c < connections; c++) {
+                OutputStream out = sockets[c].getOutputStream();
+                out.write(stream, pos, n);
+            }
+        }
+        long total = (long) connections * events;
+        int threads = Thread.activeCount() - threadsBefore;
+        while (received.get() < total) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (int c = 0; c < connections; c++) {
+            sockets[c].close();
+        }
+        if (selector != null) {
+            selector.close();
+        } else {
+            serverSocket.close();
+        }
+        if (print) {
+            System.out.println(DurabilityBenchmark.pad(mode, 16)
+                    + DurabilityBenchmark.pad(String.valueOf(connections), 14)
+                    + DurabilityBenchmark.pad(String.valueOf(total * 1000000000L / elapsed), 11)
+                    + threads);
+        }
+    }
+}
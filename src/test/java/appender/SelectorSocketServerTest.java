@@ -0,0 +1,274 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.BinaryEventWriter;
+import org.apache.log4j.net.SelectorSocketServer;
+import org.apache.log4j.net.SocketAppender;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SelectorSocketServerTest {
+
+    Hierarchy remote;
+    SelectorSocketServer server;
+    final List received = new ArrayList();
+    volatile boolean blocked;
+
+    @Before
+    public void startServer() throws Exception {
+        remote = new Hierarchy(new RootLogger(Level.DEBUG));
+        remote.getRootLogger().addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                synchronized (received) {
+                    while (blocked) {
+                        try {
+                            received.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    received.add(event.getLoggerName() + " " + event.getRenderedMessage());
+                    received.notifyAll();
+                }
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        server = new SelectorSocketServer(0, remote);
+        server.setIoThreads(2);
+        server.setConnectionQueueSize(16);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        synchronized (received) {
+            blocked = false;
+            received.notifyAll();
+        }
+        server.close();
+    }
+
+    List awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        synchronized (received) {
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+            return new ArrayList(received);
+        }
+    }
+
+    /**
+     * 检查每个客户端的事件都收到了，并且顺序不变
+     */
+    static void assertInOrder(List events, String[] names, int count) {
+        assertEquals(names.length * count, events.size());
+        for (int n = 0; n < names.length; n++) {
+            int next = 0;
+            for (int i = 0; i < events.size(); i++) {
+                String event = (String) events.get(i);
+                if (event.startsWith(names[n] + " ")) {
+                    assertEquals(names[n] + " message " + next++, event);
+                }
+            }
+            assertEquals(count, next);
+        }
+    }
+
+    /**
+     * 多个客户端以不同协议同时发送，事件全部收到且各自保持顺序
+     */
+    @Test
+    public void testManyClients() throws Exception {
+        String[] protocols = {"serialized", "binary", "deflate"};
+        final String[] names = new String[12];
+        final SocketAppender[] appenders = new SocketAppender[names.length];
+        for (int c = 0; c < names.length; c++) {
+            names[c] = "client" + c;
+            appenders[c] = new SocketAppender();
+            appenders[c].setRemoteHost("127.0.0.1");
+            appenders[c].setPort(server.getLocalPort());
+            appenders[c].setReconnectionDelay(0);
+            String protocol = protocols[c % protocols.length];
+            appenders[c].setProtocol("serialized".equals(protocol)
+                    ? SocketAppender.PROTOCOL_SERIALIZED : SocketAppender.PROTOCOL_BINARY);
+            appenders[c].setDeflate("deflate".equals(protocol));
+            appenders[c].activateOptions();
+        }
+        Thread[] threads = new Thread[names.length];
+        for (int c = 0; c < names.length; c++) {
+            final int client = c;
+            threads[c] = new Thread() {
+                public void run() {
+                    Logger logger = Logger.getLogger(names[client]);
+                    for (int i = 0; i < 300; i++) {
+                        appenders[client].doAppend(new LoggingEvent(Category.class.getName(), logger,
+                                Level.INFO, "message " + i, null));
+                    }
+                }
+            };
+            threads[c].start();
+        }
+        for (int c = 0; c < names.length; c++) {
+            threads[c].join();
+            appenders[c].close();
+        }
+        assertInOrder(awaitEvents(names.length * 300), names, 300);
+    }
+
+    /**
+     * 事件的字节被拆成任意小的片段到达时也能逐步解码
+     */
+    @Test
+    public void testFragmentedStreams() throws Exception {
+        String[] names = {"serialized", "binary", "deflate"};
+        Socket[] sockets = new Socket[names.length];
+        byte[][] streams = new byte[names.length][];
+        for (int c = 0; c < names.length; c++) {
+            Logger logger = Logger.getLogger(names[c]);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (c == 0) {
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                for (int i = 0; i < 100; i++) {
+                    oos.writeObject(new LoggingEvent(Category.class.getName(), logger,
+                            Level.INFO, "message " + i, null));
+                    oos.reset();
+                }
+                oos.close();
+            } else {
+                BinaryEventWriter writer = new BinaryEventWriter(bytes, false, c == 2);
+                for (int i = 0; i < 100; i++) {
+                    writer.write(new LoggingEvent(Category.class.getName(), logger,
+                            Level.INFO, "message " + i, null));
+                    if (i % 7 == 0) {
+                        writer.flush();
+                    }
+                }
+                writer.close();
+            }
+            streams[c] = bytes.toByteArray();
+            sockets[c] = new Socket("127.0.0.1", server.getLocalPort());
+            sockets[c].setTcpNoDelay(true);
+        }
+        Random random = new Random(42);
+        int[] positions = new int[names.length];
+        boolean more = true;
+        while (more) {
+            more = false;
+            for (int c = 0; c < names.length; c++) {
+                int n = Math.min(1 + random.nextInt(7), streams[c].length - positions[c]);
+                if (n > 0) {
+                    OutputStream out = sockets[c].getOutputStream();
+                    out.write(streams[c], positions[c], n);
+                    out.flush();
+                    positions[c] += n;
+                    more = true;
+                }
+            }
+            if (random.nextInt(20) == 0) {
+                Thread.sleep(1);
+            }
+        }
+        for (int c = 0; c < names.length; c++) {
+            sockets[c].close();
+        }
+        assertInOrder(awaitEvents(names.length * 100), names, 100);
+    }
+
+    /**
+     * 事件处理不过来时服务端停止读取，发送方被TCP阻塞而不是服务端无限缓存
+     */
+    @Test
+    public void testBackpressure() throws Exception {
+        blocked = true;
+        final SocketAppender appender = new SocketAppender();
+        appender.setRemoteHost("127.0.0.1");
+        appender.setPort(server.getLocalPort());
+        appender.setReconnectionDelay(0);
+        appender.setProtocol(SocketAppender.PROTOCOL_BINARY);
+        appender.setBatchSize(0);
+        appender.activateOptions();
+        final StringBuffer payload = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            payload.append('x');
+        }
+        final int count = 20000;
+        Thread client = new Thread() {
+            public void run() {
+                Logger logger = Logger.getLogger("flood");
+                for (int i = 0; i < count; i++) {
+                    appender.doAppend(new LoggingEvent(Category.class.getName(), logger,
+                            Level.INFO, payload + " " + i, null));
+                }
+            }
+        };
+        client.start();
+        client.join(2000);
+        // about 20MB cannot fit in the socket buffers and the connection queue
+        assertTrue(client.isAlive());
+
+        synchronized (received) {
+            blocked = false;
+            received.notifyAll();
+        }
+        client.join(10000);
+        assertFalse(client.isAlive());
+        appender.close();
+        List events = awaitEvents(count);
+        assertEquals(count, events.size());
+        assertEquals("flood " + payload + " " + (count - 1), events.get(count - 1));
+    }
+
+    /**
+     * 某个事件的appender抛出异常时，同一批的其余事件仍然被处理
+     */
+    @Test
+    public void testFailingEventDoesNotDropBatch() throws Exception {
+        remote.getRootLogger().addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                if ("message 3".equals(event.getRenderedMessage())) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        Logger logger = Logger.getLogger("faulty");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryEventWriter writer = new BinaryEventWriter(bytes, false, false);
+        for (int i = 0; i < 10; i++) {
+            writer.write(new LoggingEvent(Category.class.getName(), logger,
+                    Level.INFO, "message " + i, null));
+        }
+        writer.close();
+        // a single write, decoded as one batch
+        Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.getOutputStream().write(bytes.toByteArray());
+        socket.close();
+        assertInOrder(awaitEvents(10), new String[]{"faulty"}, 10);
+    }
+}
@@ -0,0 +1,169 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class SizeAndTimeRollingTest {
+
+    static final long DAY = 24 * 60 * 60 * 1000L;
+
+    Logger logger;
+    File dir;
+    SimpleDateFormat format = new SimpleDateFormat("'.'yyyy-MM-dd");
+
+    @Before
+    public void configLogger() throws IOException {
+        logger = Logger.getLogger(SizeAndTimeRollingTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        dir = File.createTempFile("sizeandtime", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void deleteFiles() {
+        logger.removeAllAppenders();
+        String[] names = dir.list();
+        for (int i = 0; i < names.length; i++) {
+            new File(dir, names[i]).delete();
+        }
+        dir.delete();
+    }
+
+    SizeAndTimeRollingFileAppender appender(File file) {
+        SizeAndTimeRollingFileAppender appender = new SizeAndTimeRollingFileAppender();
+        appender.setLayout(new PatternLayout("%m%n"));
+        appender.setFile(file.getPath());
+        return appender;
+    }
+
+    File archive(long time, int index, int size) throws IOException {
+        File file = new File(dir, "app.log" + format.format(new Date(time)) + "." + index);
+        OutputStream out = new FileOutputStream(file);
+        out.write(new byte[size]);
+        out.close();
+        file.setLastModified(time);
+        return file;
+    }
+
+    /**
+     * 按大小滚动时同一周期内的归档文件序号递增，MaxHistory只保留最新的几个
+     */
+    @Test
+    public void testSizeRolloverWithMaxHistory() throws Exception {
+        File file = new File(dir, "app.log");
+        SizeAndTimeRollingFileAppender appender = appender(file);
+        appender.setMaximumFileSize(100);
+        appender.setMaxHistory(3);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        appender.close();
+
+        String[] names = dir.list();
+        assertEquals(4, names.length);
+        String today = "app.log" + format.format(new Date());
+        int[] indexes = new int[3];
+        int n = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].equals("app.log")) {
+                assertTrue(names[i], names[i].startsWith(today + "."));
+                indexes[n++] = Integer.parseInt(names[i].substring(today.length() + 1));
+            }
+        }
+        Arrays.sort(indexes);
+        assertTrue(indexes[0] > 0);
+        assertEquals(indexes[0] + 1, indexes[1]);
+        assertEquals(indexes[1] + 1, indexes[2]);
+
+        // the archives kept and the file hold the last messages in order
+        StringBuffer content = new StringBuffer();
+        for (int i = 0; i < 3; i++) {
+            content.append(read(new File(dir, today + "." + indexes[i])));
+        }
+        content.append(read(file));
+        String[] lines = content.toString().split(Layout.LINE_SEP);
+        int first = 100 - lines.length;
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals("message " + (first + i), lines[i]);
+        }
+    }
+
+    static String read(File file) throws IOException {
+        Reader reader = new FileReader(file);
+        StringBuffer buf = new StringBuffer();
+        char[] chars = new char[1024];
+        int n;
+        while ((n = reader.read(chars)) != -1) {
+            buf.append(chars, 0, n);
+        }
+        reader.close();
+        return buf.toString();
+    }
+
+    /**
+     * 启动时后台扫描一次目录，按MaxAge和TotalSizeCap删除最旧的归档，不相关的文件不受影响
+     */
+    @Test
+    public void testRetentionByAgeAndTotalSize() throws Exception {
+        long now = System.currentTimeMillis();
+        File expired = archive(now - 40 * DAY, 0, 100);
+        File oldest = archive(now - 5 * DAY, 0, 100);
+        File older = archive(now - 4 * DAY, 0, 100);
+        File old1 = archive(now - 3 * DAY, 0, 100);
+        File old2 = archive(now - 3 * DAY, 1, 100);
+        File other = new File(dir, "app.log.bak");
+        other.createNewFile();
+
+        File file = new File(dir, "app.log");
+        SizeAndTimeRollingFileAppender appender = appender(file);
+        appender.setMaxAge("30d");
+        appender.setTotalSizeCap("250");
+        appender.activateOptions();
+        appender.close();
+
+        assertFalse(expired.exists());
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertTrue(old1.exists());
+        assertTrue(old2.exists());
+        assertTrue(other.exists());
+    }
+
+    /**
+     * 文件属于上一个周期时，第一条日志前先滚动到该周期的归档
+     */
+    @Test
+    public void testTimeRollover() throws Exception {
+        File file = new File(dir, "app.log");
+        Writer writer = new FileWriter(file);
+        writer.write("yesterday" + Layout.LINE_SEP);
+        writer.close();
+        long yesterday = System.currentTimeMillis() - DAY;
+        file.setLastModified(yesterday);
+
+        SizeAndTimeRollingFileAppender appender = appender(file);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        logger.info("today");
+        appender.close();
+
+        File rolled = new File(dir, "app.log" + format.format(new Date(yesterday)) + ".0");
+        assertTrue(rolled.exists());
+        assertEquals(("yesterday" + Layout.LINE_SEP).length(), rolled.length());
+        assertEquals(("today" + Layout.LINE_SEP).length(), file.length());
+    }
+}
@@ -0,0 +1,265 @@
+package appender;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.net.SocketHubAppender;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ObjectInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SocketHubFanOutTest {
+
+    Logger logger;
+    SocketHubAppender appender;
+    final List received = new ArrayList();
+    final List sockets = new ArrayList();
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(SocketHubFanOutTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+    }
+
+    @After
+    public void closeSockets() throws Exception {
+        logger.removeAllAppenders();
+        if (appender != null) {
+            appender.close();
+        }
+        for (int i = 0; i < sockets.size(); i++) {
+            ((Socket) sockets.get(i)).close();
+        }
+    }
+
+    SocketHubAppender createAppender(int queueSize, String policy) throws Exception {
+        ServerSocket probe = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = probe.getLocalPort();
+        probe.close();
+        if (appender == null) {
+            appender = new SocketHubAppender();
+        }
+        appender.setName("hub");
+        appender.setPort(port);
+        appender.setClientQueueSize(queueSize);
+        appender.setSlowClientPolicy(policy);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    Socket connect() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", appender.getPort());
+                sockets.add(socket);
+                return socket;
+            } catch (java.net.ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * 连接一个读取事件的客户端，收到的消息放入received
+     */
+    void connectReader() throws Exception {
+        final Socket socket = connect();
+        Thread reader = new Thread() {
+            public void run() {
+                try {
+                    ObjectInputStream in = new ObjectInputStream(
+                            new BufferedInputStream(socket.getInputStream()));
+                    while (true) {
+                        LoggingEvent event = (LoggingEvent) in.readObject();
+                        synchronized (received) {
+                            received.add(event.getRenderedMessage());
+                            received.notifyAll();
+                        }
+                    }
+                } catch (Exception e) {
+                    // connection closed
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 连接一个从不读取的客户端
+     */
+    void connectStalled() throws Exception {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        sockets.add(socket);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            try {
+                socket.connect(new java.net.InetSocketAddress("127.0.0.1", appender.getPort()));
+                return;
+            } catch (java.net.ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                socket = new Socket();
+                socket.setReceiveBufferSize(4096);
+                sockets.add(socket);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    void awaitClients(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (appender.getClientCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, appender.getClientCount());
+    }
+
+    static String payload() {
+        StringBuffer payload = new StringBuffer();
+        for (int i = 0; i < 1000; i++) {
+            payload.append('x');
+        }
+        return payload.toString();
+    }
+
+    /**
+     * 一个不读取的客户端既不阻塞日志调用，也不影响其它客户端按顺序收到全部事件
+     */
+    @Test
+    public void testStalledClientDoesNotBlock() throws Exception {
+        createAppender(25000, SocketHubAppender.SLOW_CLIENT_DROP);
+        connectStalled();
+        connectReader();
+        awaitClients(2);
+
+        String payload = payload();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 20000; i++) {
+            logger.info(payload + " " + i);
+        }
+        assertTrue(System.currentTimeMillis() - start < 10000);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        synchronized (received) {
+            while (received.size() < 20000 && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+        }
+        assertEquals(20000, received.size());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(payload + " " + i, received.get(i));
+        }
+        assertEquals(2, appender.getClientCount());
+
+        start = System.currentTimeMillis();
+        logger.removeAppender(appender);
+        appender.close();
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    /**
+     * DISCONNECT 策略下，队列满的客户端被断开
+     */
+    @Test
+    public void testDisconnectSlowClient() throws Exception {
+        createAppender(100, "disconnect");
+        connectStalled();
+        awaitClients(1);
+
+        String payload = payload();
+        long deadline = System.currentTimeMillis() + 10000;
+        int i = 0;
+        while (appender.getClientCount() > 0 && System.currentTimeMillis() < deadline) {
+            logger.info(payload + " " + i++);
+        }
+        assertEquals(0, appender.getClientCount());
+        Socket socket = (Socket) sockets.get(sockets.size() - 1);
+        socket.setSoTimeout(5000);
+        // the connection is closed once the buffered bytes are read
+        byte[] b = new byte[8192];
+        while (socket.getInputStream().read(b) != -1) {
+        }
+    }
+
+    List awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (received) {
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+            return new ArrayList(received);
+        }
+    }
+
+    /**
+     * 新客户端先收到缓存的最后BufferSize个事件，再收到之后的事件
+     */
+    @Test
+    public void testReplayBuffer() throws Exception {
+        appender = new SocketHubAppender();
+        appender.setBufferSize(10);
+        createAppender(1024, SocketHubAppender.SLOW_CLIENT_DROP);
+        for (int i = 0; i < 50; i++) {
+            logger.info("message " + i);
+        }
+        connectReader();
+        awaitClients(1);
+        logger.info("message 50");
+        List events = awaitEvents(11);
+        assertEquals(11, events.size());
+        for (int i = 0; i < 11; i++) {
+            assertEquals("message " + (40 + i), events.get(i));
+        }
+    }
+
+    /**
+     * BufferBytes 按字节数限制缓存，只保留能放下的最近事件
+     */
+    @Test
+    public void testReplayByteLimit() throws Exception {
+        appender = new SocketHubAppender();
+        appender.setBufferSize(100);
+        appender.setBufferBytes("20KB");
+        createAppender(1024, SocketHubAppender.SLOW_CLIENT_DROP);
+        assertEquals(20 * 1024, appender.getBufferBytes());
+        String payload = payload();
+        for (int i = 0; i < 100; i++) {
+            logger.info(payload + " " + i);
+        }
+        connectReader();
+        awaitClients(1);
+        logger.info("last");
+        List events = awaitEvents(1);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!events.contains("last") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            events = awaitEvents(1);
+        }
+        int n = events.size();
+        assertTrue(String.valueOf(n), n > 5 && n <= 21);
+        assertEquals("last", events.get(n - 1));
+        for (int i = 0; i < n - 1; i++) {
+            assertEquals(payload + " " + (101 - n + i), events.get(i));
+        }
+    }
+}
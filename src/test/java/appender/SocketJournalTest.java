@@ -0,0 +1,178 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.SocketAppender;
+import org.apache.log4j.net.SocketNode;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SocketJournalTest {
+
+    Logger logger;
+    File journal;
+    int port;
+    ServerSocket server;
+    final List received = new ArrayList();
+
+    @Before
+    public void configLogger() throws Exception {
+        logger = Logger.getLogger(SocketJournalTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        journal = File.createTempFile("socket", ".journal");
+        journal.delete();
+        journal.deleteOnExit();
+        // a port nobody listens to until startServer
+        ServerSocket probe = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        port = probe.getLocalPort();
+        probe.close();
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        logger.removeAllAppenders();
+        if (server != null) {
+            server.close();
+        }
+        journal.delete();
+    }
+
+    void startServer() throws Exception {
+        server = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        final Hierarchy remote = new Hierarchy(new RootLogger(Level.DEBUG));
+        remote.getRootLogger().addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                synchronized (received) {
+                    received.add(event.getRenderedMessage());
+                    received.notifyAll();
+                }
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = server.accept();
+                        new Thread(new SocketNode(socket, remote)).start();
+                    }
+                } catch (Exception e) {
+                    // server closed
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    List awaitEvents(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        synchronized (received) {
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                received.wait(100);
+            }
+            return new ArrayList(received);
+        }
+    }
+
+    SocketAppender createAppender(int replayRate) {
+        SocketAppender appender = new SocketAppender();
+        appender.setRemoteHost("127.0.0.1");
+        appender.setPort(port);
+        appender.setReconnectionDelay(100);
+        appender.setProtocol(SocketAppender.PROTOCOL_BINARY);
+        appender.setQueueSize(1000);
+        appender.setJournal(journal.getPath());
+        appender.setReplayRate(replayRate);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    /**
+     * 服务端不可达时事件写入日志文件，恢复后按顺序限速重放，之后的事件排在重放的事件后面
+     */
+    @Test
+    public void testReplayInOrder() throws Exception {
+        SocketAppender appender = createAppender(1000);
+        for (int i = 0; i < 500; i++) {
+            logger.info("message " + i);
+        }
+        Thread.sleep(300);
+        assertEquals(0, appender.getSentEvents());
+        assertEquals(0, appender.getDroppedEvents());
+        assertTrue(appender.getJournalBacklog() > 0);
+
+        long start = System.currentTimeMillis();
+        startServer();
+        for (int i = 500; i < 600; i++) {
+            logger.info("message " + i);
+        }
+        List events = awaitEvents(600);
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(600, events.size());
+        for (int i = 0; i < 600; i++) {
+            assertEquals("message " + i, events.get(i));
+        }
+        // 500 events at 1000 per second
+        assertTrue(String.valueOf(elapsed), elapsed >= 400);
+        // the checkpoint follows the delivery
+        for (int i = 0; i < 100 && appender.getJournalBacklog() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, appender.getJournalBacklog());
+        appender.close();
+    }
+
+    /**
+     * 关闭时未发送的事件保存在日志文件中，下次启动后发送，已发送的事件不会重复发送
+     */
+    @Test
+    public void testRestart() throws Exception {
+        SocketAppender appender = createAppender(0);
+        for (int i = 0; i < 100; i++) {
+            logger.info("message " + i);
+        }
+        logger.removeAppender(appender);
+        appender.close();
+        assertEquals(0, appender.getSentEvents());
+        assertTrue(journal.length() > 16);
+
+        startServer();
+        appender = createAppender(0);
+        List events = awaitEvents(100);
+        assertEquals(100, events.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("message " + i, events.get(i));
+        }
+        logger.removeAppender(appender);
+        appender.close();
+        assertEquals(16, journal.length());
+
+        appender = createAppender(0);
+        logger.info("last");
+        events = awaitEvents(101);
+        assertEquals(101, events.size());
+        assertEquals("last", events.get(100));
+        appender.close();
+    }
+}
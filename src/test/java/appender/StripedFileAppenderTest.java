@@ -0,0 +1,204 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.varia.StripedFileAppender;
+import org.apache.log4j.varia.StripedFileMerger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+public class StripedFileAppenderTest {
+
+    Logger logger;
+    File base;
+
+    @Before
+    public void configLogger() throws IOException {
+        logger = Logger.getLogger(StripedFileAppenderTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.DEBUG);
+        base = File.createTempFile("striped", ".log");
+        base.delete();
+    }
+
+    @After
+    public void deleteFiles() {
+        logger.removeAllAppenders();
+        File[] files = StripedFileMerger.getStripeFiles(base.getPath());
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    StripedFileAppender appender(int stripes) {
+        return appender(stripes, new PatternLayout("%t %m%n"));
+    }
+
+    StripedFileAppender appender(int stripes, Layout layout) {
+        StripedFileAppender appender = new StripedFileAppender();
+        appender.setName("striped");
+        appender.setFile(base.getPath());
+        appender.setStripes(stripes);
+        appender.setBufferedIO(true);
+        appender.setLayout(layout);
+        appender.activateOptions();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    StripedFileMerger merger() throws IOException {
+        File[] files = StripedFileMerger.getStripeFiles(base.getPath());
+        Reader[] readers = new Reader[files.length];
+        for (int i = 0; i < files.length; i++) {
+            readers[i] = new BufferedReader(new FileReader(files[i]));
+        }
+        return new StripedFileMerger(readers);
+    }
+
+    /**
+     * 多线程写入多个分片，合并后序号严格递增，每个线程的日志保持顺序且不丢失
+     */
+    @Test
+    public void testConcurrentWriteAndMerge() throws Exception {
+        StripedFileAppender appender = appender(4);
+        final int threads = 8;
+        final int count = 2000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread("worker" + t) {
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        logger.info(String.valueOf(i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+        }
+        appender.close();
+        assertEquals(4, StripedFileMerger.getStripeFiles(base.getPath()).length);
+
+        StripedFileMerger merger = merger();
+        int[] next = new int[threads];
+        long last = -1;
+        int total = 0;
+        while (merger.next()) {
+            assertTrue(merger.getSequence() > last);
+            last = merger.getSequence();
+            String text = merger.getText();
+            assertTrue(text.endsWith(Layout.LINE_SEP));
+            String[] fields = text.trim().split(" ");
+            int t = Integer.parseInt(fields[0].substring("worker".length()));
+            assertEquals(next[t]++, Integer.parseInt(fields[1]));
+            total++;
+        }
+        merger.close();
+        assertEquals(threads * count, total);
+    }
+
+    /**
+     * 带异常堆栈的多行记录可以完整读回，追加模式下后一次运行的记录排在前一次之后
+     */
+    @Test
+    public void testMultiLineRecordsAndAppend() throws Exception {
+        StripedFileAppender appender = appender(2);
+        logger.info("first", new Exception("boom"));
+        appender.close();
+        logger.removeAllAppenders();
+        Thread.sleep(2);
+        appender = appender(2);
+        logger.info("second");
+        appender.close();
+
+        StripedFileMerger merger = merger();
+        assertTrue(merger.next());
+        String text = merger.getText();
+        assertTrue(text.indexOf(" first" + Layout.LINE_SEP + "java.lang.Exception: boom") > 0);
+        assertTrue(text.indexOf("testMultiLineRecordsAndAppend") > 0);
+        assertTrue(merger.next());
+        assertTrue(merger.getText().endsWith(" second" + Layout.LINE_SEP));
+        assertFalse(merger.next());
+        merger.close();
+    }
+
+    /**
+     * layout的header和footer作为单独的记录写入第一个分片，合并后header只出现一次且在所有日志之前，
+     * footer只出现一次且在所有日志之后；重新activateOptions时旧文件先写footer，再写新的header
+     */
+    @Test
+    public void testHeaderAndFooter() throws Exception {
+        HeaderLayout layout = new HeaderLayout();
+        layout.setConversionPattern("%t %m%n");
+        StripedFileAppender appender = appender(3, layout);
+        final int threads = 6;
+        final int count = 200;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread("worker" + t) {
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        logger.info(String.valueOf(i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+        }
+        appender.activateOptions();
+        logger.info("after reactivation");
+        appender.close();
+
+        StripedFileMerger merger = merger();
+        StringBuffer merged = new StringBuffer();
+        int events = 0;
+        while (merger.next()) {
+            String text = merger.getText();
+            if (!text.startsWith("HEADER") && !text.startsWith("FOOTER")) {
+                events++;
+            }
+            merged.append(text.charAt(0));
+        }
+        merger.close();
+        assertEquals(threads * count + 1, events);
+        String order = merged.toString();
+        assertEquals('H', order.charAt(0));
+        assertEquals('F', order.charAt(threads * count + 1));
+        assertEquals('H', order.charAt(threads * count + 2));
+        assertEquals('F', order.charAt(order.length() - 1));
+        assertEquals(threads * count + 5, order.length());
+    }
+
+    /**
+     * 记录头中的长度大于文件中实际剩余的字符时，按截断的记录处理，不会按该长度分配内存
+     */
+    @Test
+    public void testHugeLengthIsTruncatedRecord() throws Exception {
+        String valid = "first" + Layout.LINE_SEP;
+        Reader in = new StringReader("1 100 " + valid.length() + " " + valid
+                + "2 100 " + (Integer.MAX_VALUE - 1) + " short");
+        StripedFileMerger merger = new StripedFileMerger(new Reader[]{in});
+        assertTrue(merger.next());
+        assertEquals(valid, merger.getText());
+        assertFalse(merger.next());
+        merger.close();
+    }
+
+    public static class HeaderLayout extends PatternLayout {
+        public String getHeader() {
+            return "HEADER" + LINE_SEP;
+        }
+
+        public String getFooter() {
+            return "FOOTER" + LINE_SEP;
+        }
+    }
+}
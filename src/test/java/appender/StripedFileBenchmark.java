@@ -0,0 +1,77 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.varia.StripedFileAppender;
+import org.apache.log4j.varia.StripedFileMerger;
+
+import java.io.File;
+
+/**
+ * 单个FileAppender与StripedFileAppender在不同线程数下的吞吐量对比
+ *
+ * <pre>
+ * java appender.StripedFileBenchmark [durationMillis] [threads...]
+ * </pre>
+ */
+public class StripedFileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        int[] threadCounts = {1, 4, 8, 16};
+        if (args.length > 1) {
+            threadCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                threadCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        Logger root = Logger.getRootLogger();
+        root.removeAllAppenders();
+        root.setLevel(Level.INFO);
+        Logger logger = Logger.getLogger(StripedFileBenchmark.class);
+        int cpus = Runtime.getRuntime().availableProcessors();
+
+        System.out.println("appender        threads    events/s");
+        for (int t = 0; t < threadCounts.length; t++) {
+            for (int striped = 0; striped < 2; striped++) {
+                File file = File.createTempFile("striped", ".log");
+                file.delete();
+                AppenderSkeleton appender = striped == 1
+                        ? (AppenderSkeleton) createStriped(file, cpus)
+                        : createFile(file);
+                logger.addAppender(appender);
+                long events = DurabilityBenchmark.run(logger, threadCounts[t], duration);
+                logger.removeAppender(appender);
+                appender.close();
+                File[] files = striped == 1
+                        ? StripedFileMerger.getStripeFiles(file.getPath()) : new File[]{file};
+                for (int i = 0; i < files.length; i++) {
+                    files[i].delete();
+                }
+                System.out.println(DurabilityBenchmark.pad(striped == 1 ? "striped(" + cpus + ")" : "file", 16)
+                        + DurabilityBenchmark.pad(String.valueOf(threadCounts[t]), 8)
+                        + DurabilityBenchmark.pad(String.valueOf(events * 1000 / duration), 12));
+            }
+        }
+    }
+
+    static FileAppender createFile(File file) {
+        FileAppender appender = new FileAppender();
+        appender.setLayout(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.activateOptions();
+        return appender;
+    }
+
+    static StripedFileAppender createStriped(File file, int stripes) {
+        StripedFileAppender appender = new StripedFileAppender();
+        appender.setLayout(new PatternLayout("%d{ISO8601} %-5p [%t] %c - %m%n"));
+        appender.setFile(file.getPath());
+        appender.setStripes(stripes);
+        appender.setAppend(false);
+        appender.setBufferedIO(true);
+        appender.activateOptions();
+        return appender;
+    }
+}
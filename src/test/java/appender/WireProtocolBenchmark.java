@@ -0,0 +1,94 @@
+package appender;
+
+import org.apache.log4j.*;
+import org.apache.log4j.net.BinaryEventWriter;
+import org.apache.log4j.spi.LoggingEvent;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * SocketAppender 序列化协议与二进制协议的每条事件字节数和编码 CPU 时间对比
+ *
+ * <pre>
+ * java appender.WireProtocolBenchmark [events]
+ * </pre>
+ */
+public class WireProtocolBenchmark {
+
+    static final String[] MODES = {"serialized", "binary(1)", "binary(64)", "binary+deflate(1)", "binary+deflate(64)"};
+
+    /**
+     * 只统计写入的字节数
+     */
+    static class CountingOutputStream extends OutputStream {
+        long count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Logger logger = Logger.getLogger(WireProtocolBenchmark.class);
+        LoggingEvent[] samples = new LoggingEvent[64];
+        MDC.put("user", "alice");
+        NDC.push("request-42");
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new LoggingEvent(Category.class.getName(), logger, Level.INFO,
+                    "Processed order " + (1000 + i) + " for customer " + (i % 7) + " in 12 ms", null);
+            samples[i].getNDC();
+            samples[i].getMDCCopy();
+            samples[i].getThreadName();
+            samples[i].setProperty("application", "shop");
+        }
+        NDC.remove();
+        MDC.remove("user");
+
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        System.out.println("mode                bytes/event   cpu ns/event");
+        for (int m = 0; m < MODES.length; m++) {
+            // warm up, then measure
+            run(MODES[m], samples, events / 10);
+            long cpu = mx.getCurrentThreadCpuTime();
+            long bytes = run(MODES[m], samples, events);
+            cpu = mx.getCurrentThreadCpuTime() - cpu;
+            System.out.println(DurabilityBenchmark.pad(MODES[m], 20)
+                    + DurabilityBenchmark.pad(String.valueOf(Math.round((double) bytes / events * 10) / 10.0), 14)
+                    + cpu / events);
+        }
+    }
+
+    static long run(String mode, LoggingEvent[] samples, int events) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        if ("serialized".equals(mode)) {
+            // as SocketAppender does: flush and reset after each event
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            for (int i = 0; i < events; i++) {
+                oos.writeObject(samples[i % samples.length]);
+                oos.flush();
+                oos.reset();
+            }
+            oos.close();
+        } else {
+            int batch = Integer.parseInt(mode.substring(mode.indexOf('(') + 1, mode.indexOf(')')));
+            BinaryEventWriter writer = new BinaryEventWriter(out, false, mode.indexOf("deflate") >= 0);
+            for (int i = 0; i < events; i++) {
+                writer.write(samples[i % samples.length]);
+                if ((i + 1) % batch == 0) {
+                    writer.flush();
+                }
+            }
+            writer.close();
+        }
+        return out.count;
+    }
+}
@@ -0,0 +1,136 @@
+package layout;
+
+import org.apache.log4j.*;
+import org.apache.log4j.helpers.VersionedHashtable;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Hashtable;
+
+import static org.junit.Assert.*;
+
+public class MDCSortedOutputTest {
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(MDCSortedOutputTest.class);
+        MDC.clear();
+    }
+
+    @After
+    public void clearMDC() {
+        MDC.clear();
+    }
+
+    /**
+     * MDC使用VersionedHashtable保存，未修改时toSortedString返回缓存的同一个字符串，
+     * put/remove/clear之后版本号增加，缓存失效并重新按key排序生成
+     */
+    @Test
+    public void testSortedStringCache() {
+        MDC.put("b", "2");
+        MDC.put("a", "1");
+        VersionedHashtable context = (VersionedHashtable) MDC.getContext();
+
+        long version = context.getVersion();
+        String first = context.toSortedString();
+        assertEquals("{{a,1}{b,2}}", first);
+        assertSame(first, context.toSortedString());
+        assertEquals(version, context.getVersion());
+
+        MDC.put("c", "3");
+        assertTrue(context.getVersion() > version);
+        assertEquals("{{a,1}{b,2}{c,3}}", context.toSortedString());
+
+        version = context.getVersion();
+        MDC.put("a", "one");
+        assertTrue(context.getVersion() > version);
+        assertEquals("{{a,one}{b,2}{c,3}}", context.toSortedString());
+
+        version = context.getVersion();
+        MDC.remove("b");
+        assertTrue(context.getVersion() > version);
+        assertEquals("{{a,one}{c,3}}", context.toSortedString());
+
+        MDC.clear();
+        assertEquals("{}", context.toSortedString());
+        assertEquals("{}", VersionedHashtable.toSortedString(null));
+    }
+
+    /**
+     * VersionedHashtable序列化为普通的Hashtable，反序列化后内容不变，旧版本的log4j也能读取
+     */
+    @Test
+    public void testSerializedAsHashtable() throws Exception {
+        MDC.put("b", "2");
+        MDC.put("a", "1");
+        Hashtable context = MDC.getContext();
+
+        Object copy = roundTrip(context);
+        assertEquals(Hashtable.class, copy.getClass());
+        assertEquals(context, copy);
+    }
+
+    /**
+     * 带MDC的LoggingEvent序列化之后MDC保持不变，%X输出与序列化之前相同
+     */
+    @Test
+    public void testSerializedEventKeepsMDC() throws Exception {
+        MDC.put("user", "alice");
+        MDC.put("id", Integer.valueOf(7));
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+                Level.INFO, "message", null);
+        event.getMDCCopy();
+
+        LoggingEvent copy = (LoggingEvent) roundTrip(event);
+        MDC.clear();
+
+        assertEquals("alice", copy.getMDC("user"));
+        assertEquals(Integer.valueOf(7), copy.getMDC("id"));
+        assertEquals(Hashtable.class, copy.getMDCContext().getClass());
+        assertEquals("{{id,7}{user,alice}} alice",
+                new EnhancedPatternLayout("%X %X{user}").format(copy));
+        assertEquals("{{id,7}{user,alice}}",
+                new PatternLayout("%X").format(copy));
+    }
+
+    /**
+     * 不带key的%X和%properties按key排序输出（1.2.18之前按hashtable的顺序输出）
+     */
+    @Test
+    public void testWholeMDCSortedByKey() {
+        String[] keys = {"zeta", "alpha", "mu", "beta", "omega", "kappa"};
+        for (int i = 0; i < keys.length; i++) {
+            MDC.put(keys[i], String.valueOf(i));
+        }
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+                Level.INFO, "message", null);
+
+        String expected = "{{alpha,1}{beta,3}{kappa,5}{mu,2}{omega,4}{zeta,0}}";
+        assertEquals(expected, new EnhancedPatternLayout("%X").format(event));
+        assertEquals(expected, new EnhancedPatternLayout("%properties").format(event));
+        assertEquals(expected, new PatternLayout("%X").format(event));
+
+        event.getMDCCopy();
+        MDC.remove("zeta");
+        assertEquals(expected, new EnhancedPatternLayout("%X").format(event));
+    }
+
+    private static Object roundTrip(Object o) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(o);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        return in.readObject();
+    }
+}
@@ -0,0 +1,179 @@
+package layout;
+
+import org.apache.log4j.HTMLLayout;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.helpers.Transform;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.apache.log4j.xml.XMLLayout;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TransformEscapingTest {
+
+    static final String[] INPUTS = {
+            "", "plain text", "<", ">", "&", "\"", "'", "<>&\"",
+            "<b>bold</b> & \"quoted\"", "&amp; already escaped",
+            "a<b", "tail>", "\"head", "x&&y",
+            "中文<日志>&\"引号\"", "café üß",
+            "emoji 😀 <💩> &𝄞\"",
+            "lone surrogates \ud800 < \udc00 >",
+            "controls \u0000\t\r\n<\u001f>", "＜＞＆＂",
+            "￿>\u007f<\u0080&"
+    };
+
+    /**
+     * appendEscapingTags和escapeTags的输出与原来逐字符判断的escapeTags完全相同，
+     * 包括&lt;&gt;&amp;&quot;、中文、代理对、孤立的代理字符和控制字符
+     */
+    @Test
+    public void testSameAsOldEscapeTags() {
+        for (int i = 0; i < INPUTS.length; i++) {
+            assertEscaped(INPUTS[i]);
+        }
+        assertEquals("&lt;&gt;&amp;&quot;", Transform.escapeTags("<>&\""));
+        assertEquals("😀&lt;😀", Transform.escapeTags("😀<😀"));
+
+        Random random = new Random(42);
+        char[] alphabet = {'<', '>', '&', '"', '\'', 'a', ' ', '=', '中', 'é',
+                '\ud83d', '\ude00', '\u0000', '￿', '?', '\n'};
+        for (int n = 0; n < 2000; n++) {
+            char[] chars = new char[random.nextInt(20)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = random.nextInt(4) == 0
+                        ? (char) random.nextInt(Character.MAX_VALUE + 1)
+                        : alphabet[random.nextInt(alphabet.length)];
+            }
+            assertEscaped(new String(chars));
+        }
+    }
+
+    /**
+     * 不需要转义的字符串直接返回原对象；null时escapeTags返回null，appendEscapingTags追加"null"
+     */
+    @Test
+    public void testUnchangedAndNull() {
+        String plain = "no special characters, 中文 😀";
+        assertSame(plain, Transform.escapeTags(plain));
+        assertNull(Transform.escapeTags(null));
+
+        StringBuffer buf = new StringBuffer("[");
+        Transform.appendEscapingTags(buf, null);
+        Transform.appendEscapingTags(buf, "]<");
+        assertEquals("[null]&lt;", buf.toString());
+    }
+
+    /**
+     * HTMLLayout中线程名、级别、logger名、文件名、消息、NDC和异常栈都按原来的escapeTags转义
+     */
+    @Test
+    public void testHTMLLayout() {
+        String loggerName = "html.<logger>&\"中\"";
+        String thread = "thread <😀> & \"t\"";
+        String message = "message <script>alert(\"x&y\")</script> café 𝄞";
+        String ndc = "ndc <&> \"n\"";
+        String[] trace = {"java.lang.Exception: <bad> & \"worse\"", "\tat a.B<init>(B.java:1)"};
+        LoggingEvent event = event(loggerName, thread, message, ndc, trace, null);
+
+        HTMLLayout layout = new HTMLLayout();
+        layout.setLocationInfo(true);
+        String html = layout.format(event);
+
+        assertContains(html, "<td title=\"" + oldEscapeTags(thread) + " thread\">"
+                + oldEscapeTags(thread) + "</td>");
+        assertContains(html, "<td title=\"" + oldEscapeTags(loggerName) + " category\">"
+                + oldEscapeTags(loggerName) + "</td>");
+        assertContains(html, "<td>" + oldEscapeTags("F<i>le&.java") + ":12</td>");
+        assertContains(html, "<td title=\"Message\">" + oldEscapeTags(message) + "</td>");
+        assertContains(html, "NDC: " + oldEscapeTags(ndc) + "</td></tr>");
+        assertContains(html, oldEscapeTags(trace[0]));
+        assertContains(html, "&nbsp;&nbsp;&nbsp;&nbsp;" + oldEscapeTags(trace[1]));
+        assertFalse(html.contains("<script>"));
+        assertFalse(html.contains("<bad>"));
+    }
+
+    /**
+     * XMLLayout中logger名、级别、线程名、位置信息和MDC属性都按原来的escapeTags转义
+     */
+    @Test
+    public void testXMLLayout() {
+        String loggerName = "xml.<logger>&\"é\"";
+        String thread = "thread <😀> & \"t\"";
+        Map properties = new HashMap();
+        properties.put("key<&>", "value \"<😀>\" 中");
+        LoggingEvent event = event(loggerName, thread, "message", null, null, properties);
+
+        XMLLayout layout = new XMLLayout();
+        layout.setLocationInfo(true);
+        layout.setProperties(true);
+        String xml = layout.format(event);
+
+        assertContains(xml, "<log4j:event logger=\"" + oldEscapeTags(loggerName) + "\"");
+        assertContains(xml, "\" level=\"INFO\" thread=\"" + oldEscapeTags(thread) + "\">");
+        assertContains(xml, "<log4j:locationInfo class=\"" + oldEscapeTags("a.B<C>")
+                + "\" method=\"" + oldEscapeTags("m&\"n\"") + "\" file=\""
+                + oldEscapeTags("F<i>le&.java") + "\" line=\"12\"/>");
+        assertContains(xml, "<log4j:data name=\"" + oldEscapeTags("key<&>") + "\" value=\""
+                + oldEscapeTags("value \"<😀>\" 中") + "\"/>");
+    }
+
+    private static LoggingEvent event(String loggerName, String thread, String message,
+                                      String ndc, String[] trace, Map properties) {
+        return new LoggingEvent(Logger.class.getName(), Logger.getLogger(loggerName),
+                0L, Level.INFO, message, thread,
+                trace == null ? null : new ThrowableInformation(trace), ndc,
+                new LocationInfo("F<i>le&.java", "a.B<C>", "m&\"n\"", "12"), properties);
+    }
+
+    private static void assertEscaped(String input) {
+        String expected = oldEscapeTags(input);
+        assertEquals(expected, Transform.escapeTags(input));
+        StringBuffer buf = new StringBuffer("prefix");
+        Transform.appendEscapingTags(buf, input);
+        assertEquals("prefix" + expected, buf.toString());
+    }
+
+    private static void assertContains(String text, String expected) {
+        assertTrue(expected + " not found in " + text, text.contains(expected));
+    }
+
+    /**
+     * Transform.escapeTags of log4j 1.2.17.
+     */
+    private static String oldEscapeTags(final String input) {
+        if (input == null
+                || input.length() == 0
+                || (input.indexOf('"') == -1
+                && input.indexOf('&') == -1
+                && input.indexOf('<') == -1
+                && input.indexOf('>') == -1)) {
+            return input;
+        }
+        StringBuffer buf = new StringBuffer(input.length() + 6);
+        int len = input.length();
+        for (int i = 0; i < len; i++) {
+            char ch = input.charAt(i);
+            if (ch > '>') {
+                buf.append(ch);
+            } else if (ch == '<') {
+                buf.append("&lt;");
+            } else if (ch == '>') {
+                buf.append("&gt;");
+            } else if (ch == '&') {
+                buf.append("&amp;");
+            } else if (ch == '"') {
+                buf.append("&quot;");
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.toString();
+    }
+}
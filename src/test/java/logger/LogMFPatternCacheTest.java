@@ -0,0 +1,324 @@
+package logger;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LogMFPatternCacheTest {
+
+    static Method parse;
+    static Method format;
+    static Map patternCache;
+
+    Logger logger;
+    Locale defaultLocale;
+
+    @Before
+    public void setUp() throws Exception {
+        parse = LogMF.class.getDeclaredMethod("parse", String.class);
+        parse.setAccessible(true);
+        format = LogMF.class.getDeclaredMethod("format", String.class, Object[].class);
+        format.setAccessible(true);
+        Field field = LogMF.class.getDeclaredField("patternCache");
+        field.setAccessible(true);
+        patternCache = (Map) field.get(null);
+        patternCache.clear();
+
+        logger = Logger.getLogger(LogMFPatternCacheTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+        defaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+        logger.removeAllAppenders();
+        patternCache.clear();
+    }
+
+    /**
+     * 同一个pattern只解析一次，再次使用时直接从缓存中取出同一个解析结果；只包含{n}的pattern
+     * 解析为SimplePattern，其他的交给MessageFormat
+     */
+    @Test
+    public void testCacheHitsAndMisses() throws Exception {
+        Object simple = parse.invoke(null, "user {0} logged in from {1}");
+        assertEquals("SimplePattern", simple.getClass().getSimpleName());
+        assertEquals(1, patternCache.size());
+        assertSame(simple, parse.invoke(null, "user {0} logged in from {1}"));
+        assertEquals(1, patternCache.size());
+
+        Object complex = parse.invoke(null, "'quoted' {0,number,#}");
+        assertEquals("MessageFormatPattern", complex.getClass().getSimpleName());
+        assertEquals(2, patternCache.size());
+        assertSame(complex, parse.invoke(null, "'quoted' {0,number,#}"));
+
+        Object other = parse.invoke(null, "user {0} logged out");
+        assertNotSame(simple, other);
+        assertEquals(3, patternCache.size());
+    }
+
+    /**
+     * 默认Locale改变之后，MessageFormat的原型需要重新解析，SimplePattern不受影响
+     */
+    @Test
+    public void testLocaleChangeReparses() throws Exception {
+        Locale.setDefault(Locale.US);
+        Object simple = parse.invoke(null, "value {0}");
+        Object complex = parse.invoke(null, "value {0,number}");
+        assertEquals("value 1,234.5", format.invoke(null, "value {0,number}",
+                new Object[] { new Double(1234.5) }));
+
+        Locale.setDefault(Locale.GERMANY);
+        assertSame(simple, parse.invoke(null, "value {0}"));
+        assertNotSame(complex, parse.invoke(null, "value {0,number}"));
+        assertEquals("value 1.234,5", format.invoke(null, "value {0,number}",
+                new Object[] { new Double(1234.5) }));
+        assertEquals("value 1.234,5", format.invoke(null, "value {0}",
+                new Object[] { new Double(1234.5) }));
+    }
+
+    /**
+     * 缓存最多保留256个pattern，达到上限时清空缓存，之前缓存的pattern需要重新解析
+     */
+    @Test
+    public void testEvictionAtMaximumSize() throws Exception {
+        Object first = parse.invoke(null, "pattern 0 {0}");
+        for (int i = 1; i < 256; i++) {
+            parse.invoke(null, "pattern " + i + " {0}");
+        }
+        assertEquals(256, patternCache.size());
+        assertSame(first, parse.invoke(null, "pattern 0 {0}"));
+        assertEquals(256, patternCache.size());
+
+        parse.invoke(null, "pattern 256 {0}");
+        assertEquals(1, patternCache.size());
+        assertTrue(patternCache.containsKey("pattern 256 {0}"));
+
+        Object reparsed = parse.invoke(null, "pattern 0 {0}");
+        assertNotSame(first, reparsed);
+        assertEquals(2, patternCache.size());
+    }
+
+    /**
+     * SimplePattern的输出与原来逐个字符串拼接的实现一致：重复的参数、缺少的参数、null参数、数字和日期
+     */
+    @Test
+    public void testSimplePatternMatchesOldFormatting() throws Exception {
+        Date date = new Date(1234567890123L);
+        String[] patterns = {
+                "", "no arguments", "{0}", "{0}{0}", "a {0} b {1} c {0}",
+                "{1} before {0}", "missing {3} and {9}", "{0} end", "x {2}"
+        };
+        Object[][] arguments = {
+                null, new Object[0], new Object[] { null },
+                new Object[] { "s", Integer.valueOf(-5) },
+                new Object[] { new Double(1234.5), new Float(0.25f), date },
+                new Object[] { Long.valueOf(9876543210L), Boolean.TRUE, Character.valueOf('c') }
+        };
+        for (int i = 0; i < patterns.length; i++) {
+            assertEquals("SimplePattern",
+                    parse.invoke(null, patterns[i]).getClass().getSimpleName());
+            for (int j = 0; j < arguments.length; j++) {
+                String expected = oldFormat(patterns[i], arguments[j]);
+                assertEquals(patterns[i], expected,
+                        format.invoke(null, patterns[i], arguments[j]));
+            }
+        }
+    }
+
+    /**
+     * MessageFormat不是线程安全的，缓存中保存的原型每次使用前都要clone；多个线程同时使用同一个
+     * 包含日期和数字格式的pattern，每个结果都要与单独创建的MessageFormat的输出相同
+     */
+    @Test
+    public void testMessageFormatPrototypeThreadSafe() throws Exception {
+        final String pattern = "{0,date,yyyy-MM-dd HH:mm:ss.SSS} '{'{1,number,#,##0.000}'}'";
+        final int iterations = 2000;
+        final AtomicInteger failures = new AtomicInteger();
+        final List errors = new ArrayList();
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++) {
+            final long seed = t * 7919L;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < iterations; i++) {
+                            long n = seed * 1000003L + i * 86400123L;
+                            Object[] args = { new Date(n), new Double(n / 7.0) };
+                            String expected = new MessageFormat(pattern).format(args);
+                            String actual = (String) format.invoke(null, pattern, args);
+                            if (!expected.equals(actual)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception ex) {
+                        synchronized (errors) {
+                            errors.add(ex);
+                        }
+                    }
+                }
+            };
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(0, failures.get());
+        assertEquals("MessageFormatPattern",
+                parse.invoke(null, pattern).getClass().getSimpleName());
+    }
+
+    /**
+     * LogXF.valueOf改为使用JDK的valueOf缓存之后，装箱结果与原来new出来的对象相等，
+     * LogMF/LogSF的输出与使用new装箱的参数格式化的结果相同
+     */
+    @Test
+    public void testValueOfBoxingUnchanged() {
+        assertBoxed(Boolean.TRUE, Boxing.box(true));
+        assertBoxed(new Character('中'), Boxing.box('中'));
+        assertBoxed(new Byte((byte) -128), Boxing.box((byte) -128));
+        assertBoxed(new Short((short) 1000), Boxing.box((short) 1000));
+        assertBoxed(new Integer(127), Boxing.box(127));
+        assertBoxed(new Integer(-129), Boxing.box(-129));
+        assertBoxed(new Long(Long.MIN_VALUE), Boxing.box(Long.MIN_VALUE));
+        assertBoxed(new Float(-0.0f), Boxing.box(-0.0f));
+        assertBoxed(new Double(Double.NaN), Boxing.box(Double.NaN));
+
+        Locale.setDefault(Locale.US);
+        ParameterizedMessageTest.EventList events = new ParameterizedMessageTest.EventList();
+        logger.addAppender(events);
+        String simple = "value {0} and {0}";
+        String complex = "'{0}' {0}";
+        Object[] expected = {
+                new Character('x'), new Byte((byte) 7), new Short((short) -300),
+                new Integer(123456), new Long(-9876543210L), new Float(2.5f),
+                new Double(1234.5678)
+        };
+        for (int k = 0; k < 2; k++) {
+            String pattern = k == 0 ? simple : complex;
+            LogMF.log(logger, Level.INFO, pattern, 'x');
+            LogMF.log(logger, Level.INFO, pattern, (byte) 7);
+            LogMF.log(logger, Level.INFO, pattern, (short) -300);
+            LogMF.log(logger, Level.INFO, pattern, 123456);
+            LogMF.log(logger, Level.INFO, pattern, -9876543210L);
+            LogMF.log(logger, Level.INFO, pattern, 2.5f);
+            LogMF.log(logger, Level.INFO, pattern, 1234.5678);
+            for (int i = 0; i < expected.length; i++) {
+                LogMF.log(logger, Level.INFO, pattern, new Object[] { expected[i] });
+            }
+            int base = 2 * k * expected.length;
+            for (int i = 0; i < expected.length; i++) {
+                LoggingEvent unboxed = (LoggingEvent) events.events.get(base + i);
+                LoggingEvent boxed = (LoggingEvent) events.events.get(base + expected.length + i);
+                assertEquals(boxed.getRenderedMessage(), unboxed.getRenderedMessage());
+            }
+        }
+        assertEquals("value 123456 and 123456",
+                ((LoggingEvent) events.events.get(3)).getRenderedMessage());
+        assertEquals("{0} 1,234.568",
+                ((LoggingEvent) events.events.get(3 * expected.length - 1)).getRenderedMessage());
+
+        LogSF.log(logger, Level.INFO, "{} and {}", -129);
+        LogSF.log(logger, Level.INFO, "{} and {}", 'y');
+        int count = events.events.size();
+        assertEquals("-129 and {}",
+                ((LoggingEvent) events.events.get(count - 2)).getRenderedMessage());
+        assertEquals("y and {}",
+                ((LoggingEvent) events.events.get(count - 1)).getRenderedMessage());
+    }
+
+    /**
+     * The simple pattern formatting of log4j 1.2.17.
+     */
+    private static String oldFormat(String pattern, Object[] arguments) {
+        String[] formatted = new String[10];
+        int prev = 0;
+        String retval = "";
+        int pos = pattern.indexOf('{');
+        while (pos >= 0) {
+            int index = pattern.charAt(pos + 1) - '0';
+            retval += pattern.substring(prev, pos);
+            if (formatted[index] == null) {
+                if (arguments == null || index >= arguments.length) {
+                    formatted[index] = pattern.substring(pos, pos + 3);
+                } else {
+                    Object arg = arguments[index];
+                    if (arg instanceof Double || arg instanceof Float) {
+                        formatted[index] = NumberFormat.getInstance().format(arg);
+                    } else if (arg instanceof Date) {
+                        formatted[index] = DateFormat.getDateTimeInstance(
+                                DateFormat.SHORT, DateFormat.SHORT).format(arg);
+                    } else {
+                        formatted[index] = String.valueOf(arg);
+                    }
+                }
+            }
+            retval += formatted[index];
+            prev = pos + 3;
+            pos = pattern.indexOf('{', prev);
+        }
+        return retval + pattern.substring(prev);
+    }
+
+    private static void assertBoxed(Object expected, Object actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    static final class Boxing extends LogXF {
+        static Object box(boolean b) {
+            return valueOf(b);
+        }
+
+        static Object box(char c) {
+            return valueOf(c);
+        }
+
+        static Object box(byte b) {
+            return valueOf(b);
+        }
+
+        static Object box(short s) {
+            return valueOf(s);
+        }
+
+        static Object box(int i) {
+            return valueOf(i);
+        }
+
+        static Object box(long l) {
+            return valueOf(l);
+        }
+
+        static Object box(float f) {
+            return valueOf(f);
+        }
+
+        static Object box(double d) {
+            return valueOf(d);
+        }
+    }
+}
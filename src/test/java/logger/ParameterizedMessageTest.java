@@ -0,0 +1,168 @@
+package logger;
+
+import org.apache.log4j.*;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.DenyAllFilter;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParameterizedMessageTest {
+
+    static final int ITERATIONS = 100000;
+
+    Logger logger;
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(ParameterizedMessageTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+    }
+
+    @After
+    public void resetLogger() {
+        logger.removeAllAppenders();
+        logger.getLoggerRepository().setThreshold(Level.ALL);
+    }
+
+    /**
+     * 基本类型参数不装箱，输出内容与原有的格式化结果一致
+     */
+    @Test
+    public void testFormatting() {
+        StringWriter out = new StringWriter();
+        WriterAppender appender = new WriterAppender(new PatternLayout("%m|"), out);
+        logger.addAppender(appender);
+        EventList events = new EventList();
+        logger.addAppender(events);
+
+        LogMF.info(logger, "int {0} and {0}", 42);
+        LogMF.info(logger, "long {0}", 1234567L);
+        LogMF.info(logger, "double {0}", 1.5d);
+        LogMF.info(logger, "bool {0} char {0}", true);
+        LogMF.info(logger, "quoted '{0}' {0,number,#}", 7);
+        LogSF.info(logger, "float {} end", 2.5f);
+        LogSF.info(logger, "char {}", 'c');
+        LogSF.info(logger, "escaped \\{} {}", 3);
+        LogMF.info(logger, null, 1);
+
+        assertEquals("int 42 and 42|long 1234567|double 1.5|bool true char true|"
+                + "quoted {0} 7|float 2.5 end|char c|escaped {} 3||", out.toString());
+
+        // the messages kept by an appender are not overwritten by later requests
+        List list = events.events;
+        assertEquals("int 42 and 42", ((LoggingEvent) list.get(0)).getRenderedMessage());
+        assertEquals("char c", ((LoggingEvent) list.get(6)).getRenderedMessage());
+        assertNotSame(((LoggingEvent) list.get(0)).getMessage(),
+                ((LoggingEvent) list.get(1)).getMessage());
+        assertNull(((LoggingEvent) list.get(8)).getRenderedMessage());
+    }
+
+    /**
+     * 日志级别未开启、或被Hierarchy阈值过滤时不产生任何垃圾对象
+     */
+    @Test
+    public void testNoAllocationWhenDisabled() {
+        assumeAllocationMeasurable();
+        logger.addAppender(new EventList());
+        assertEquals(0, allocatedPerCall(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    LogMF.debug(logger, "value {0}", i);
+                    LogSF.debug(logger, "value {}", i * 0.5d);
+                }
+            }
+        }));
+
+        logger.getLoggerRepository().setThreshold(Level.WARN);
+        assertEquals(0, allocatedPerCall(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    LogMF.info(logger, "value {0}", i);
+                    LogSF.info(logger, "value {}", (long) i);
+                }
+            }
+        }));
+    }
+
+    /**
+     * 被Appender的阈值或Filter丢弃时，只剩下LoggingEvent本身的分配，消息对象被复用
+     */
+    @Test
+    public void testReuseWhenFiltered() {
+        assumeAllocationMeasurable();
+        ConsoleAppender thresholdAppender = new ConsoleAppender(new PatternLayout("%m%n"));
+        thresholdAppender.setThreshold(Level.ERROR);
+        ConsoleAppender filteredAppender = new ConsoleAppender(new PatternLayout("%m%n"));
+        filteredAppender.addFilter(new DenyAllFilter());
+        logger.addAppender(thresholdAppender);
+        logger.addAppender(filteredAppender);
+
+        long unboxed = allocatedPerCall(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    LogMF.info(logger, "value {0}", i + 1000);
+                }
+            }
+        });
+        long boxed = allocatedPerCall(new Runnable() {
+            public void run() {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    LogMF.info(logger, "value {0}", (Object) Integer.valueOf(i + 1000));
+                }
+            }
+        });
+        // at most one LoggingEvent per call
+        assertTrue(unboxed < 128);
+        assertTrue(unboxed < boxed);
+    }
+
+    /**
+     * Skips the test unless the JVM can count the bytes allocated by a thread.
+     */
+    static void assumeAllocationMeasurable() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+        Assume.assumeTrue(sunBean.isThreadAllocatedMemoryEnabled());
+    }
+
+    static long allocatedPerCall(Runnable r) {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        // warm up
+        r.run();
+        r.run();
+        long before = bean.getThreadAllocatedBytes(id);
+        r.run();
+        long after = bean.getThreadAllocatedBytes(id);
+        return (after - before) / ITERATIONS;
+    }
+
+    static class EventList extends AppenderSkeleton {
+        List events = new ArrayList();
+
+        protected void append(LoggingEvent event) {
+            events.add(event);
+        }
+
+        public void close() {
+        }
+
+        public boolean requiresLayout() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package logger;
+
+import org.apache.log4j.*;
+import org.apache.log4j.or.ObjectRenderer;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.DenyAllFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class SupplierLoggingTest {
+
+    Logger logger;
+    int supplied;
+    int rendered;
+
+    static class Order {
+    }
+
+    @Before
+    public void configLogger() {
+        logger = Logger.getLogger(SupplierLoggingTest.class);
+        logger.removeAllAppenders();
+        logger.setAdditivity(false);
+        logger.setLevel(Level.INFO);
+        ((Hierarchy) logger.getLoggerRepository()).addRenderer(Order.class, new ObjectRenderer() {
+            public String doRender(Object o) {
+                rendered++;
+                return "order";
+            }
+        });
+    }
+
+    @After
+    public void resetLogger() {
+        logger.removeAllAppenders();
+    }
+
+    Supplier<Order> orderSupplier() {
+        return () -> {
+            supplied++;
+            return new Order();
+        };
+    }
+
+    /**
+     * 日志级别未开启、被Appender阈值或Filter拒绝时，Supplier都不会被调用
+     */
+    @Test
+    public void testNotCalledWhenDiscarded() {
+        ConsoleAppender thresholdAppender = new ConsoleAppender(new PatternLayout("%m%n"));
+        thresholdAppender.setThreshold(Level.ERROR);
+        ConsoleAppender filteredAppender = new ConsoleAppender(new PatternLayout("%m%n"));
+        filteredAppender.addFilter(new DenyAllFilter());
+        logger.addAppender(thresholdAppender);
+        logger.addAppender(filteredAppender);
+
+        logger.debug(orderSupplier());
+        logger.trace(orderSupplier(), new Exception());
+        logger.info(orderSupplier());
+        logger.warn(orderSupplier(), new Exception());
+        logger.log(Level.INFO, orderSupplier(), null);
+        assertEquals(0, supplied);
+        assertEquals(0, rendered);
+    }
+
+    /**
+     * 多个Appender接受同一事件时，Supplier只调用一次，且只经RendererMap渲染一次
+     */
+    @Test
+    public void testCalledAndRenderedOnce() {
+        StringWriter out1 = new StringWriter();
+        StringWriter out2 = new StringWriter();
+        logger.addAppender(new WriterAppender(new PatternLayout("%p %m|"), out1));
+        logger.addAppender(new WriterAppender(new PatternLayout("%m|"), out2));
+
+        logger.info(orderSupplier());
+        logger.error(orderSupplier(), new Exception("boom"));
+        logger.warn(() -> "text");
+        logger.info((Supplier<?>) null);
+
+        assertEquals(2, supplied);
+        assertEquals(2, rendered);
+        assertEquals("INFO order|ERROR order|WARN text|INFO |", out1.toString().replaceAll("java.lang.Exception: boom\\s+(at .*\\s+)*", ""));
+        assertEquals("order|order|text||", out2.toString().replaceAll("java.lang.Exception: boom\\s+(at .*\\s+)*", ""));
+    }
+
+    /**
+     * Supplier抛出异常时不影响调用方
+     */
+    @Test
+    public void testFailingSupplier() {
+        StringWriter out = new StringWriter();
+        logger.addAppender(new WriterAppender(new PatternLayout("%m|"), out));
+        logger.info(() -> {
+            throw new IllegalStateException("no message");
+        });
+        logger.info("after");
+        assertEquals("|after|", out.toString());
+    }
+
+    /**
+     * 被接受的事件，getMessage返回Supplier产生的对象
+     */
+    @Test
+    public void testEventMessage() {
+        final LoggingEvent[] last = new LoggingEvent[1];
+        logger.addAppender(new AppenderSkeleton() {
+            protected void append(LoggingEvent event) {
+                last[0] = event;
+            }
+
+            public void close() {
+            }
+
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        logger.info(orderSupplier());
+        assertTrue(last[0].isMessageDeferred());
+        assertTrue(last[0].getMessage() instanceof Order);
+        assertFalse(last[0].isMessageDeferred());
+        assertEquals(1, supplied);
+    }
+}